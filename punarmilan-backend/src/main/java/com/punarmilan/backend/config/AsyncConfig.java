@@ -24,4 +24,40 @@ public class AsyncConfig {
         executor.initialize();
         return executor;
     }
+
+    // Image resizing is CPU bound, keep it off the shared pool
+    @Bean(name = "imageExecutor")
+    public Executor imageExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(2);
+        executor.setQueueCapacity(200);
+        executor.setThreadNamePrefix("PunarMilan-Image-");
+        executor.initialize();
+        return executor;
+    }
+
+    // Mass fan-out jobs run for minutes, a small pool of their own keeps them off the shared one
+    @Bean(name = "fanoutExecutor")
+    public Executor fanoutExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(2);
+        executor.setQueueCapacity(50);
+        executor.setThreadNamePrefix("PunarMilan-Fanout-");
+        executor.initialize();
+        return executor;
+    }
+
+    // Outbox senders, one SMTP connection each, see EmailOutboxSender
+    @Bean(name = "mailExecutor")
+    public Executor mailExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(4);
+        executor.setMaxPoolSize(4);
+        executor.setQueueCapacity(20);
+        executor.setThreadNamePrefix("PunarMilan-Mail-");
+        executor.initialize();
+        return executor;
+    }
 }
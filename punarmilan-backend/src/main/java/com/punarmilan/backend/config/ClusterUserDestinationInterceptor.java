@@ -0,0 +1,51 @@
+package com.punarmilan.backend.config;
+
+import com.punarmilan.backend.service.ClusterMessageRelay;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sits on the broker channel and hands every {@code /user/...} message to the
+ * cluster relay before the local user destination handler resolves it, so
+ * users connected to other nodes receive it too.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "app.websocket.cluster.enabled", havingValue = "true")
+public class ClusterUserDestinationInterceptor implements ChannelInterceptor {
+
+    static final String USER_PREFIX = "/user/";
+
+    private final ClusterMessageRelay clusterMessageRelay;
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        if (destination == null || !destination.startsWith(USER_PREFIX)
+                || SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE
+                || message.getHeaders().containsKey(ClusterMessageRelay.RELAYED_HEADER)) {
+            return message;
+        }
+
+        int end = destination.indexOf('/', USER_PREFIX.length());
+        if (end < 0) {
+            return message;
+        }
+
+        try {
+            clusterMessageRelay.forward(destination.substring(USER_PREFIX.length(), end), message);
+        } catch (Exception e) {
+            // Never block local delivery because Redis is unavailable
+            log.warn("Could not relay {} to other nodes: {}", destination, e.getMessage());
+        }
+        return message;
+    }
+}
@@ -0,0 +1,38 @@
+package com.punarmilan.backend.config;
+
+import com.punarmilan.backend.repository.DataMigrationRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+
+/**
+ * Turns notifications.type from the MySQL ENUM that schema updates created
+ * into a VARCHAR. Schema updates never change an existing column, so types
+ * added later (SHORTLISTED) were rejected on older databases. Runs once per
+ * database and is recorded in data_migrations like the other backfills.
+ */
+@Slf4j
+@Configuration
+@RequiredArgsConstructor
+public class NotificationTypeColumnMigration {
+
+    static final String NAME = "notification-type-varchar";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DataMigrationRepository dataMigrationRepository;
+
+    @PostConstruct
+    public void widenNotificationType() {
+        if (dataMigrationRepository.existsById(NAME)) {
+            return;
+        }
+        // Changes nothing on a database created with the VARCHAR column, so a second node running it is harmless
+        jdbcTemplate.execute("ALTER TABLE notifications MODIFY COLUMN type VARCHAR(40) NOT NULL");
+        dataMigrationRepository.markApplied(NAME, LocalDateTime.now());
+        log.info("✅ Migrated notifications.type to VARCHAR");
+    }
+}
@@ -0,0 +1,38 @@
+package com.punarmilan.backend.config;
+
+import com.punarmilan.backend.repository.ConversationRepository;
+import com.punarmilan.backend.repository.DataMigrationRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.LocalDateTime;
+
+/**
+ * Derives the conversation read watermarks from the legacy messages.is_read
+ * flags. Runs once per database: a row in data_migrations records that it
+ * completed, later startups only look that row up.
+ */
+@Slf4j
+@Configuration
+@RequiredArgsConstructor
+public class ReadWatermarkMigration {
+
+    static final String NAME = "read-watermarks-backfill";
+
+    private final ConversationRepository conversationRepository;
+    private final DataMigrationRepository dataMigrationRepository;
+
+    @PostConstruct
+    public void backfillReadWatermarks() {
+        if (dataMigrationRepository.existsById(NAME)) {
+            return;
+        }
+        // Only conversations without a watermark are touched, so a run cut short is safe to repeat
+        int migrated = conversationRepository.backfillReadWatermarksUser1()
+                + conversationRepository.backfillReadWatermarksUser2();
+        dataMigrationRepository.markApplied(NAME, LocalDateTime.now());
+        log.info("✅ Migrated read state of {} conversation participants to watermarks", migrated);
+    }
+}
@@ -1,9 +1,15 @@
 package com.punarmilan.backend.config;
 
+import com.punarmilan.backend.service.ClusterMessageRelay;
+import com.punarmilan.backend.service.ConversationCache;
+import com.punarmilan.backend.service.NotificationPreferenceCache;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
@@ -20,4 +26,35 @@ public class RedisConfig {
         template.setHashValueSerializer(new GenericJackson2JsonRedisSerializer());
         return template;
     }
+
+    // Preference changes made on other nodes
+    @Bean
+    public RedisMessageListenerContainer notificationPreferenceListenerContainer(
+            RedisConnectionFactory connectionFactory, NotificationPreferenceCache notificationPreferenceCache) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(notificationPreferenceCache,
+                new ChannelTopic(NotificationPreferenceCache.INVALIDATION_CHANNEL));
+        return container;
+    }
+
+    // Block changes and deletions made on other nodes
+    @Bean
+    public RedisMessageListenerContainer conversationCacheListenerContainer(
+            RedisConnectionFactory connectionFactory, ConversationCache conversationCache) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(conversationCache, new ChannelTopic(ConversationCache.INVALIDATION_CHANNEL));
+        return container;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "app.websocket.cluster.enabled", havingValue = "true")
+    public RedisMessageListenerContainer clusterRelayListenerContainer(RedisConnectionFactory connectionFactory,
+            ClusterMessageRelay clusterMessageRelay) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(clusterMessageRelay, new ChannelTopic(clusterMessageRelay.getInboundChannel()));
+        return container;
+    }
 }
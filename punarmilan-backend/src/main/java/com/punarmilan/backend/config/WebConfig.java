@@ -1,12 +1,16 @@
 package com.punarmilan.backend.config;
 
+import com.punarmilan.backend.service.ImageDerivativeService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.CacheControl;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import java.util.concurrent.TimeUnit;
+
 @Slf4j
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
@@ -25,9 +29,15 @@ public class WebConfig implements WebMvcConfigurer {
         log.info("Upload directory absolute path: {}", 
             new java.io.File(uploadDir).getAbsolutePath());
         
-        registry.addResourceHandler("/uploads/**")
-                .addResourceLocations(uploadPath)
-                .setCachePeriod(3600);
+        // Derivatives are content addressed and never rewritten
+        CacheControl immutable = CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable();
+        for (String dir : new String[] { ImageDerivativeService.VARIANTS_DIR, ImageDerivativeService.BLURRED_DIR }) {
+            registry.addResourceHandler("/uploads/" + dir + "/**")
+                    .addResourceLocations(uploadPath + dir + "/")
+                    .setCacheControl(immutable);
+        }
+
+        // Originals are served by FileController through the storage backend
     }
     
     @Override
@@ -1,5 +1,7 @@
 package com.punarmilan.backend.config;
 
+import com.punarmilan.backend.entity.User;
+import com.punarmilan.backend.repository.UserRepository;
 import com.punarmilan.backend.service.JwtService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -16,14 +18,20 @@ import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
+import java.util.Map;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class WebSocketAuthInterceptor implements ChannelInterceptor {
 
+    // Session attributes read by the ephemeral chat handlers instead of the database
+    public static final String SESSION_USER_ID = "userId";
+    public static final String SESSION_HIDDEN = "hidden";
+
     private final JwtService jwtService;
     private final UserDetailsService userDetailsService;
+    private final UserRepository userRepository;
 
     @Override
     public Message<?> preSend(Message<?> message, MessageChannel channel) {
@@ -43,11 +51,21 @@ public class WebSocketAuthInterceptor implements ChannelInterceptor {
                         if (username != null) {
                             UserDetails userDetails = userDetailsService.loadUserByUsername(username);
                             
-                            if (jwtService.isTokenValid(token, userDetails)) {
+                            User user = userRepository.findByEmail(username.toLowerCase()).orElse(null);
+
+                            if (user != null && jwtService.isTokenValid(token, userDetails)) {
+                                // Principal name is the user id, matching convertAndSendToUser destinations
                                 UsernamePasswordAuthenticationToken authToken = 
-                                    new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
+                                    new UsernamePasswordAuthenticationToken(user.getId().toString(), null, userDetails.getAuthorities());
+                                authToken.setDetails(userDetails);
                                 SecurityContextHolder.getContext().setAuthentication(authToken);
                                 accessor.setUser(authToken);
+
+                                Map<String, Object> attributes = accessor.getSessionAttributes();
+                                if (attributes != null) {
+                                    attributes.put(SESSION_USER_ID, user.getId());
+                                    attributes.put(SESSION_HIDDEN, user.isHidden());
+                                }
                                 
                                 log.info("WebSocket user authenticated: {}", username);
                             } else {
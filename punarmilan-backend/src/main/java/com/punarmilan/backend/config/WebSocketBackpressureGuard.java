@@ -0,0 +1,242 @@
+package com.punarmilan.backend.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps one slow client from backing up the outbound channel for everyone.
+ *
+ * Owns the bounded executor behind the client outbound channel and watches
+ * every frame going through it. A session counts as slow while its frames
+ * pile up or a single send takes too long. Slow sessions, and every session
+ * once the shared queue is under pressure, lose their non-critical frames
+ * (typing, presence) first. A session that stays slow past the eviction
+ * window, or reaches the hard pending limit, is closed so the client
+ * reconnects and resyncs.
+ */
+@Slf4j
+@Component
+public class WebSocketBackpressureGuard implements ExecutorChannelInterceptor, WebSocketHandlerDecoratorFactory {
+
+    private static final String ORIGINAL_DESTINATION = "simpOrigDestination";
+
+    @Getter
+    private final ThreadPoolTaskExecutor outboundExecutor;
+    private final List<String> nonCriticalDestinations;
+    private final int pressureQueue;
+    private final int softPendingLimit;
+    private final int hardPendingLimit;
+    private final long slowSendNanos;
+    private final long evictAfterMillis;
+    private final long recoverAfterMillis;
+
+    private final Map<String, SessionState> sessions = new ConcurrentHashMap<>();
+    private final ThreadLocal<Long> handleStart = new ThreadLocal<>();
+
+    private final Timer sendTimer;
+    private final Counter droppedCounter;
+    private final Counter evictedCounter;
+
+    private static final class SessionState {
+        final WebSocketSession session;
+        final AtomicInteger pending = new AtomicInteger();
+        volatile long slowSince;
+        volatile long lastSlowAt;
+
+        SessionState(WebSocketSession session) {
+            this.session = session;
+        }
+    }
+
+    public WebSocketBackpressureGuard(MeterRegistry meterRegistry,
+            @Value("${app.websocket.outbound.pool-size:16}") int poolSize,
+            @Value("${app.websocket.outbound.queue-capacity:10000}") int queueCapacity,
+            @Value("${app.websocket.outbound.pressure-queue:2000}") int pressureQueue,
+            @Value("${app.websocket.outbound.non-critical-destinations:/queue/typing,/queue/presence,/queue/online-status}") List<String> nonCriticalDestinations,
+            @Value("${app.websocket.session.soft-pending-limit:50}") int softPendingLimit,
+            @Value("${app.websocket.session.hard-pending-limit:500}") int hardPendingLimit,
+            @Value("${app.websocket.session.slow-send-ms:1000}") long slowSendMillis,
+            @Value("${app.websocket.session.evict-after-ms:30000}") long evictAfterMillis,
+            @Value("${app.websocket.session.recover-after-ms:5000}") long recoverAfterMillis) {
+        this.nonCriticalDestinations = nonCriticalDestinations;
+        this.pressureQueue = pressureQueue;
+        this.softPendingLimit = softPendingLimit;
+        this.hardPendingLimit = hardPendingLimit;
+        this.slowSendNanos = TimeUnit.MILLISECONDS.toNanos(slowSendMillis);
+        this.evictAfterMillis = evictAfterMillis;
+        this.recoverAfterMillis = recoverAfterMillis;
+
+        // Critical frames that find the queue full are sent on the broker thread, which slows producers down
+        outboundExecutor = new ThreadPoolTaskExecutor();
+        outboundExecutor.setCorePoolSize(poolSize);
+        outboundExecutor.setMaxPoolSize(poolSize);
+        outboundExecutor.setQueueCapacity(queueCapacity);
+        outboundExecutor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        outboundExecutor.setThreadNamePrefix("ws-outbound-");
+        outboundExecutor.initialize();
+
+        sendTimer = Timer.builder("websocket.outbound.send")
+                .description("Time to hand one frame to a client session")
+                .register(meterRegistry);
+        droppedCounter = Counter.builder("websocket.outbound.dropped")
+                .description("Non-critical frames dropped under backpressure")
+                .register(meterRegistry);
+        evictedCounter = Counter.builder("websocket.outbound.evicted")
+                .description("Sessions closed for being too slow")
+                .register(meterRegistry);
+        Gauge.builder("websocket.outbound.queued", outboundExecutor, executor -> executor.getQueueSize())
+                .register(meterRegistry);
+        Gauge.builder("websocket.outbound.active", outboundExecutor, executor -> executor.getActiveCount())
+                .register(meterRegistry);
+        Gauge.builder("websocket.outbound.slow-sessions", sessions,
+                states -> states.values().stream().filter(state -> state.slowSince != 0).count())
+                .register(meterRegistry);
+    }
+
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                sessions.put(session.getId(), new SessionState(session));
+                super.afterConnectionEstablished(session);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                sessions.remove(session.getId());
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SessionState state = stateOf(message);
+        if (state == null) {
+            return message;
+        }
+        if (state.pending.get() >= hardPendingLimit) {
+            evict(state, "reached " + hardPendingLimit + " pending frames");
+            return null;
+        }
+        if (isNonCritical(message) && (state.slowSince != 0 || state.pending.get() >= softPendingLimit
+                || outboundExecutor.getQueueSize() >= pressureQueue)) {
+            droppedCounter.increment();
+            return null;
+        }
+        state.pending.incrementAndGet();
+        return message;
+    }
+
+    @Override
+    public void afterSendCompletion(Message<?> message, MessageChannel channel, boolean sent, Exception ex) {
+        SessionState state = sent ? null : stateOf(message);
+        if (state != null) {
+            state.pending.decrementAndGet();
+        }
+    }
+
+    @Override
+    public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+        handleStart.set(System.nanoTime());
+        return message;
+    }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler,
+            Exception ex) {
+        Long started = handleStart.get();
+        handleStart.remove();
+        SessionState state = stateOf(message);
+        if (started == null || state == null) {
+            return;
+        }
+        long elapsed = System.nanoTime() - started;
+        sendTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        int pending = state.pending.decrementAndGet();
+
+        // Frames that only joined another thread's flush return fast, so a session
+        // recovers after a quiet period rather than on the first quick send
+        long now = System.currentTimeMillis();
+        if (elapsed >= slowSendNanos || pending >= softPendingLimit) {
+            state.lastSlowAt = now;
+            if (state.slowSince == 0) {
+                state.slowSince = now;
+                log.debug("WebSocket session {} is falling behind, {} frames pending", state.session.getId(), pending);
+            } else if (now - state.slowSince >= evictAfterMillis) {
+                evict(state, "slow for " + (now - state.slowSince) + "ms");
+            }
+        } else if (state.slowSince != 0 && now - state.lastSlowAt >= recoverAfterMillis
+                && pending < softPendingLimit / 2) {
+            state.slowSince = 0;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        outboundExecutor.shutdown();
+    }
+
+    // ==================== PRIVATE HELPER METHODS ====================
+
+    private SessionState stateOf(Message<?> message) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        return sessionId != null ? sessions.get(sessionId) : null;
+    }
+
+    // User destinations reach this channel as /queue/typing-user{session}, the original is kept in a header
+    private boolean isNonCritical(Message<?> message) {
+        Object original = message.getHeaders().get(ORIGINAL_DESTINATION);
+        String destination = original instanceof String value ? value
+                : SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        if (destination == null) {
+            return false;
+        }
+        for (String prefix : nonCriticalDestinations) {
+            if (destination.startsWith(prefix) || destination.startsWith("/user" + prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void evict(SessionState state, String reason) {
+        if (sessions.remove(state.session.getId()) == null) {
+            return;
+        }
+        evictedCounter.increment();
+        log.warn("Closing slow WebSocket session {}: {}", state.session.getId(), reason);
+        try {
+            state.session.close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException e) {
+            log.debug("Could not close WebSocket session {}: {}", state.session.getId(), e.getMessage());
+        }
+    }
+}
@@ -1,20 +1,38 @@
 package com.punarmilan.backend.config;
 
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
     private final WebSocketAuthInterceptor webSocketAuthInterceptor;
+    private final ObjectProvider<ClusterUserDestinationInterceptor> clusterUserDestinationInterceptor;
+    private final WebSocketBackpressureGuard backpressureGuard;
+    private final int sendTimeLimitMillis;
+    private final int sendBufferLimitKb;
+    private final int messageSizeLimitKb;
 
-    public WebSocketConfig(WebSocketAuthInterceptor webSocketAuthInterceptor) {
+    public WebSocketConfig(WebSocketAuthInterceptor webSocketAuthInterceptor,
+            ObjectProvider<ClusterUserDestinationInterceptor> clusterUserDestinationInterceptor,
+            WebSocketBackpressureGuard backpressureGuard,
+            @Value("${app.websocket.session.send-time-limit-ms:10000}") int sendTimeLimitMillis,
+            @Value("${app.websocket.session.send-buffer-limit-kb:512}") int sendBufferLimitKb,
+            @Value("${app.websocket.session.message-size-limit-kb:64}") int messageSizeLimitKb) {
         this.webSocketAuthInterceptor = webSocketAuthInterceptor;
+        this.clusterUserDestinationInterceptor = clusterUserDestinationInterceptor;
+        this.backpressureGuard = backpressureGuard;
+        this.sendTimeLimitMillis = sendTimeLimitMillis;
+        this.sendBufferLimitKb = sendBufferLimitKb;
+        this.messageSizeLimitKb = messageSizeLimitKb;
     }
 
     @Override
@@ -22,11 +40,30 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         registration.interceptors(webSocketAuthInterceptor);
     }
 
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor(backpressureGuard.getOutboundExecutor());
+        registration.interceptors(backpressureGuard);
+    }
+
+    // A session whose buffer or send time overflows these limits is closed by Spring itself
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendTimeLimit(sendTimeLimitMillis)
+                .setSendBufferSizeLimit(sendBufferLimitKb * 1024)
+                .setMessageSizeLimit(messageSizeLimitKb * 1024)
+                .addDecoratorFactory(backpressureGuard);
+    }
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
         config.enableSimpleBroker("/topic", "/queue");
         config.setApplicationDestinationPrefixes("/app");
         config.setUserDestinationPrefix("/user");
+
+        // With app.websocket.cluster.enabled user messages also reach sessions on other nodes
+        clusterUserDestinationInterceptor.ifAvailable(
+                interceptor -> config.configureBrokerChannel().interceptors(interceptor));
     }
 
     @Override
@@ -2,6 +2,10 @@ package com.punarmilan.backend.controller;
 
 import com.punarmilan.backend.dto.*;
 import com.punarmilan.backend.service.AdminService;
+import com.punarmilan.backend.service.EmailOutboxService;
+import com.punarmilan.backend.service.FanoutService;
+import com.punarmilan.backend.service.MessageArchiveService;
+import com.punarmilan.backend.service.MessageSearchService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
@@ -26,6 +30,10 @@ import java.util.Map;
 public class AdminController {
 
     private final AdminService adminService;
+    private final FanoutService fanoutService;
+    private final EmailOutboxService emailOutboxService;
+    private final MessageSearchService messageSearchService;
+    private final MessageArchiveService messageArchiveService;
 
     // ==================== USER MANAGEMENT ====================
 
@@ -206,15 +214,71 @@ public class AdminController {
         return ResponseEntity.ok("Cleanup completed successfully");
     }
 
+    @Operation(summary = "Rebuild chat search index for one user or everyone")
+    @PostMapping("/search/rebuild")
+    public ResponseEntity<String> rebuildSearchIndex(@RequestParam(required = false) Long userId) {
+        messageSearchService.rebuild(userId);
+        return ResponseEntity.accepted().body("Search index rebuild started");
+    }
+
+    @Operation(summary = "Chat archive size and compression savings")
+    @GetMapping("/messages/archive/stats")
+    public ResponseEntity<MessageArchiveStatsDto> getMessageArchiveStats() {
+        return ResponseEntity.ok(messageArchiveService.getStats());
+    }
+
+    @Operation(summary = "Archive old chat messages now")
+    @PostMapping("/messages/archive")
+    public ResponseEntity<MessageArchiveStatsDto> archiveMessages() {
+        messageArchiveService.archive();
+        return ResponseEntity.ok(messageArchiveService.getStats());
+    }
+
     @Operation(summary = "Send bulk notification")
     @PostMapping("/notifications/bulk")
-    public ResponseEntity<String> sendBulkNotification(
+    public ResponseEntity<FanoutJobDto> sendBulkNotification(
             @RequestParam List<Long> userIds,
             @RequestParam String title,
             @RequestParam String message) {
 
-        adminService.sendBulkNotification(userIds, title, message);
-        return ResponseEntity.ok("Bulk notification sent successfully");
+        FanoutJobDto job = adminService.sendBulkNotification(userIds, title, message);
+        return ResponseEntity.accepted().body(job);
+    }
+
+    @Operation(summary = "Get recent fan-out jobs")
+    @GetMapping("/fanout/jobs")
+    public ResponseEntity<List<FanoutJobDto>> getFanoutJobs() {
+        return ResponseEntity.ok(fanoutService.getRecentJobs());
+    }
+
+    @Operation(summary = "Get fan-out job progress")
+    @GetMapping("/fanout/jobs/{jobId}")
+    public ResponseEntity<FanoutJobDto> getFanoutJob(@PathVariable Long jobId) {
+        return ResponseEntity.ok(fanoutService.getJob(jobId));
+    }
+
+    @Operation(summary = "Cancel a fan-out job")
+    @PostMapping("/fanout/jobs/{jobId}/cancel")
+    public ResponseEntity<FanoutJobDto> cancelFanoutJob(@PathVariable Long jobId) {
+        return ResponseEntity.ok(fanoutService.cancel(jobId));
+    }
+
+    @Operation(summary = "Resume a failed or cancelled fan-out job")
+    @PostMapping("/fanout/jobs/{jobId}/resume")
+    public ResponseEntity<FanoutJobDto> resumeFanoutJob(@PathVariable Long jobId) {
+        return ResponseEntity.ok(fanoutService.resume(jobId));
+    }
+
+    @Operation(summary = "List emails that could not be delivered")
+    @GetMapping("/email-outbox/dead")
+    public ResponseEntity<List<OutboxEmailDto>> getDeadEmails() {
+        return ResponseEntity.ok(emailOutboxService.getDeadLetters());
+    }
+
+    @Operation(summary = "Retry an undelivered email")
+    @PostMapping("/email-outbox/{emailId}/retry")
+    public ResponseEntity<OutboxEmailDto> retryDeadEmail(@PathVariable Long emailId) {
+        return ResponseEntity.ok(emailOutboxService.requeue(emailId));
     }
 
     @Operation(summary = "Export data")
@@ -308,9 +372,9 @@ public class AdminController {
 
     @Operation(summary = "Blast profile to all active users")
     @PostMapping("/profiles/{userId}/blast")
-    public ResponseEntity<Void> blastProfile(@PathVariable Long userId) {
-        adminService.blastProfile(userId);
-        return ResponseEntity.ok().build();
+    public ResponseEntity<FanoutJobDto> blastProfile(@PathVariable Long userId) {
+        FanoutJobDto job = adminService.blastProfile(userId);
+        return ResponseEntity.accepted().body(job);
     }
     
 }
\ No newline at end of file
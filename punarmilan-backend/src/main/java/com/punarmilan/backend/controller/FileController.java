@@ -0,0 +1,118 @@
+package com.punarmilan.backend.controller;
+
+import com.punarmilan.backend.service.FileStorageService;
+import com.punarmilan.backend.service.StorageBackend;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Serves uploaded originals from the storage backend with ETag and single
+ * Range support. The body is copied with the backend's transferTo so the
+ * local filesystem backend avoids a user space copy.
+ */
+@RestController
+@RequiredArgsConstructor
+@Tag(name = "Files", description = "Uploaded file downloads")
+public class FileController {
+
+    private static final Pattern CONTENT_ADDRESSED = Pattern.compile("^[0-9a-f]{64}\\.[a-z]+$");
+
+    private final FileStorageService fileStorageService;
+
+    @Operation(summary = "Download an uploaded file")
+    @GetMapping("/uploads/{fileName:.+}")
+    public void download(@PathVariable String fileName, HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        StorageBackend backend = fileStorageService.getStorageBackend();
+
+        if (fileName.contains("/") || fileName.contains("..") || !backend.exists(fileName)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        long length = backend.contentLength(fileName);
+        boolean contentAddressed = CONTENT_ADDRESSED.matcher(fileName).matches();
+
+        // Content addressed names are their own ETag, legacy files use size and mtime
+        String etag = contentAddressed
+                ? "\"" + fileName.substring(0, fileName.indexOf('.')) + "\""
+                : "\"" + Long.toHexString(length) + "-" + Long.toHexString(backend.lastModified(fileName)) + "\"";
+
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.CACHE_CONTROL, contentAddressed
+                ? CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable().getHeaderValue()
+                : CacheControl.maxAge(1, TimeUnit.HOURS).getHeaderValue());
+        response.setContentType(MediaTypeFactory.getMediaType(fileName)
+                .map(Object::toString)
+                .orElse("application/octet-stream"));
+
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null && (ifNoneMatch.equals("*") || ifNoneMatch.contains(etag))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        long start = 0;
+        long count = length;
+
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (rangeHeader != null && (ifRange == null || ifRange.equals(etag))) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(rangeHeader);
+            } catch (IllegalArgumentException e) {
+                ranges = List.of();
+            }
+
+            // Multipart ranges are rare for images, answer those with the full body
+            if (ranges.size() == 1) {
+                HttpRange range = ranges.get(0);
+                long end;
+                try {
+                    start = range.getRangeStart(length);
+                    end = range.getRangeEnd(length);
+                } catch (IllegalArgumentException e) {
+                    start = length;
+                    end = length - 1;
+                }
+                // HttpRange clamps the end but lets a start past the end through
+                if (start >= length || end < start) {
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    return;
+                }
+                count = end - start + 1;
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+
+        response.setContentLengthLong(count);
+        if ("HEAD".equalsIgnoreCase(request.getMethod())) {
+            return;
+        }
+
+        WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+        backend.transferTo(fileName, start, count, out);
+        response.flushBuffer();
+    }
+}
@@ -4,6 +4,8 @@ import com.punarmilan.backend.dto.ConversationDto;
 
 
 import com.punarmilan.backend.dto.MessageDto;
+import com.punarmilan.backend.dto.MessageSearchResultDto;
+import com.punarmilan.backend.dto.MessageWindowDto;
 import com.punarmilan.backend.dto.SendMessageDto;
 import com.punarmilan.backend.service.MessagingService;
 import io.swagger.v3.oas.annotations.Operation;
@@ -66,6 +68,30 @@ public class MessagingController {
         return ResponseEntity.ok(messages);
     }
 
+    @Operation(summary = "Get message history with before/after/around message id cursors")
+    @GetMapping("/conversation/{conversationId}/history")
+    public ResponseEntity<MessageWindowDto> getMessageHistory(
+            @PathVariable Long conversationId,
+            @RequestParam(required = false) Long before,
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Long around,
+            @RequestParam(defaultValue = "50") int limit) {
+
+        MessageWindowDto window = messagingService.getMessageHistory(conversationId, before, after, around, limit);
+        return ResponseEntity.ok(window);
+    }
+
+    @Operation(summary = "Search my messages by words, \"phrases\" and prefix*")
+    @GetMapping("/search")
+    public ResponseEntity<List<MessageSearchResultDto>> searchMessages(
+            @RequestParam String q,
+            @RequestParam(required = false) Long before,
+            @RequestParam(defaultValue = "20") int limit) {
+
+        List<MessageSearchResultDto> results = messagingService.searchMessages(q, before, limit);
+        return ResponseEntity.ok(results);
+    }
+
     @Operation(summary = "Mark conversation as read")
     @PatchMapping("/conversation/{conversationId}/read")
     public ResponseEntity<Void> markConversationAsRead(@PathVariable Long conversationId) {
@@ -121,4 +147,11 @@ public class MessagingController {
         messagingService.sendReadReceipt(messageId);
         return ResponseEntity.ok().build();
     }
+
+    @Operation(summary = "Send delivery receipt")
+    @PostMapping("/delivery-receipt/{messageId}")
+    public ResponseEntity<Void> sendDeliveryReceipt(@PathVariable Long messageId) {
+        messagingService.sendDeliveryReceipt(messageId);
+        return ResponseEntity.ok().build();
+    }
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package com.punarmilan.backend.controller;
 
 import com.punarmilan.backend.dto.NotificationDto;
 import com.punarmilan.backend.dto.NotificationStatsDto;
+import com.punarmilan.backend.dto.NotificationSyncDto;
 import com.punarmilan.backend.service.NotificationService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -10,10 +11,12 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @RestController
@@ -50,6 +53,15 @@ public class NotificationController {
         return ResponseEntity.ok(stats);
     }
 
+    @Operation(summary = "Catch up after reconnecting, from the last seen notification's createdAt and id")
+    @GetMapping("/sync")
+    public ResponseEntity<NotificationSyncDto> sync(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since,
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "50") int limit) {
+        return ResponseEntity.ok(notificationService.sync(since, after, limit));
+    }
+
     @Operation(summary = "Mark notification as read")
     @PatchMapping("/{notificationId}/read")
     public ResponseEntity<Void> markAsRead(@PathVariable Long notificationId) {
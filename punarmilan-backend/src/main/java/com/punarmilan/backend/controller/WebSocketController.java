@@ -1,8 +1,13 @@
 package com.punarmilan.backend.controller;
 
+import com.punarmilan.backend.config.WebSocketAuthInterceptor;
+import com.punarmilan.backend.service.ChatActivityService;
+import com.punarmilan.backend.service.ChatActivityService.Activity;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.SendTo;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.annotation.SendToUser;
 import org.springframework.stereotype.Controller;
 
@@ -12,8 +17,28 @@ import java.util.Map;
 
 @Slf4j
 @Controller
+@RequiredArgsConstructor
 public class WebSocketController {
 
+    private final ChatActivityService chatActivityService;
+
+    /**
+     * Typing indicator, payload {"conversationId": 1, "isTyping": true}.
+     * Identity comes from the session, so no database access per frame.
+     */
+    @MessageMapping("/chat.typing")
+    public void typing(Map<String, Object> payload, SimpMessageHeaderAccessor headerAccessor) {
+        publishActivity(payload, headerAccessor, Activity.TYPING, "isTyping");
+    }
+
+    /**
+     * Conversation open/closed signal, payload {"conversationId": 1, "isViewing": true}.
+     */
+    @MessageMapping("/chat.presence")
+    public void presence(Map<String, Object> payload, SimpMessageHeaderAccessor headerAccessor) {
+        publishActivity(payload, headerAccessor, Activity.VIEWING, "isViewing");
+    }
+
     @MessageMapping("/chat.test")
     @SendTo("/topic/test")
     public Map<String, Object> testMessage(Map<String, Object> message, Principal principal) {
@@ -45,4 +70,16 @@ public class WebSocketController {
             "status", "success"
         );
     }
-}
\ No newline at end of file
+
+    private void publishActivity(Map<String, Object> payload, SimpMessageHeaderAccessor headerAccessor,
+            Activity activity, String field) {
+        Map<String, Object> session = headerAccessor.getSessionAttributes();
+        if (session == null || !(session.get(WebSocketAuthInterceptor.SESSION_USER_ID) instanceof Long userId)
+                || !(payload.get("conversationId") instanceof Number conversationId)) {
+            return;
+        }
+        boolean hidden = Boolean.TRUE.equals(session.get(WebSocketAuthInterceptor.SESSION_HIDDEN));
+        chatActivityService.publish(userId, hidden, conversationId.longValue(), activity,
+                !Boolean.FALSE.equals(payload.get(field)));
+    }
+}
@@ -0,0 +1,30 @@
+package com.punarmilan.backend.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Change to one row of the conversation list. Only the fields that changed
+ * are set, the client patches its cached {@link ConversationDto} with them.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ConversationDeltaDto {
+    private Long conversationId;
+    private String lastMessage;
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime lastMessageTime;
+
+    private Long lastMessageBy;
+    private Integer unreadCount;
+}
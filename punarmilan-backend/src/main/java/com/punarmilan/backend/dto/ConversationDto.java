@@ -38,6 +38,11 @@ public class ConversationDto {
     private Boolean blocked;
     private Long blockedBy;
 
+    // Read watermarks, messages with an id up to these are read/delivered
+    private Long lastReadMessageId;
+    private Long otherLastReadMessageId;
+    private Long otherLastDeliveredMessageId;
+
     @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
     private LocalDateTime updatedAt;
 
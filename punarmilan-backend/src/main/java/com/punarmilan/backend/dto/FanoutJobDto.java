@@ -0,0 +1,34 @@
+package com.punarmilan.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Progress of a fan-out job. totalRecipients is counted when the job starts,
+ * users who sign up or deactivate meanwhile make processed drift from it.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FanoutJobDto {
+    private Long jobId;
+    private String kind;
+    private String status;
+    private String title;
+    private Long totalRecipients;
+    private long processed;
+    private long notified;
+    private long emailed;
+    private long failed;
+    private Long lastUserId;
+    private String error;
+    private String createdBy;
+    private LocalDateTime createdAt;
+    private LocalDateTime heartbeatAt;
+    private LocalDateTime finishedAt;
+}
@@ -0,0 +1,24 @@
+package com.punarmilan.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Size of the hot and cold chat tiers. Raw bytes are the serialized messages
+ * before compression, so savedBytes is what zstd bought over storing them as is.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageArchiveStatsDto {
+    private long hotMessages;
+    private long archivedMessages;
+    private long archiveBlocks;
+    private long rawBytes;
+    private long compressedBytes;
+    private long savedBytes;
+    private double compressionRatio;
+}
@@ -0,0 +1,28 @@
+package com.punarmilan.backend.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A chat search hit. Open it with
+ * {@code GET /api/messaging/conversation/{conversationId}/history?around={messageId}}.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageSearchResultDto {
+    private Long messageId;
+    private Long conversationId;
+    private Long senderId;
+    private Long otherUserId;
+    private String snippet;
+
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,24 @@
+package com.punarmilan.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One keyset page of a conversation, newest message first. Pass oldestId as
+ * "before" to scroll back and newestId as "after" to catch up.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageWindowDto {
+    private List<MessageDto> messages;
+    private boolean hasOlder;
+    private boolean hasNewer;
+    private Long oldestId;
+    private Long newestId;
+}
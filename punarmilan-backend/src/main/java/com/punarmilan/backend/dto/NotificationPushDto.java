@@ -0,0 +1,42 @@
+package com.punarmilan.backend.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * Frame on /user/queue/notifications/v2. Badge changes come as deltas on the
+ * unread count of {@code type} and on the unseen count. Resets (mark all read
+ * or seen, clear) send absolute counts instead. SYNC carries nothing, the
+ * client fetches /api/notifications/sync.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class NotificationPushDto {
+
+    public static final String CREATED = "CREATED";
+    public static final String UPDATED = "UPDATED";
+    public static final String READ = "READ";
+    public static final String DELETED = "DELETED";
+    public static final String ALL_READ = "ALL_READ";
+    public static final String ALL_SEEN = "ALL_SEEN";
+    public static final String CLEARED = "CLEARED";
+    public static final String SYNC = "SYNC";
+
+    private String event;
+    private Long notificationId;
+    private NotificationDto notification;
+    private String type;
+    private Integer unreadDelta;
+    private Integer unseenDelta;
+    private Long unread;
+    private Long unseen;
+    private Map<String, Long> unreadByType;
+}
@@ -0,0 +1,27 @@
+package com.punarmilan.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * What a reconnecting client missed since its last seen notification, newest
+ * first, with the current badge counts. The next call passes lastCreatedAt and
+ * lastId back. hasMore means the gap was larger than one page and the list
+ * should be reloaded instead.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationSyncDto {
+    private List<NotificationDto> notifications;
+    private boolean hasMore;
+    private LocalDateTime lastCreatedAt;
+    private Long lastId;
+    private NotificationStatsDto stats;
+}
@@ -13,4 +13,5 @@ public class PhotoDto {
     private String url;
     private boolean blurred;
     private String restrictionReason; // PREMIUM_ONLY, LIKE_REQUIRED
+    private String thumbnailUrl;
 }
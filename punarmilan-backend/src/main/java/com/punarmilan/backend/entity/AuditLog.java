@@ -8,7 +8,10 @@ import java.util.Map;
 import java.util.HashMap;
 
 @Entity
-@Table(name = "audit_logs")
+@Table(name = "audit_logs", indexes = {
+        // Retention finds the expired id range from this index
+        @Index(name = "idx_audit_created_at", columnList = "created_at")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -7,7 +7,11 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "conversations")
+@Table(name = "conversations", indexes = {
+        // Users with unread left in the flushed columns, walked by the hourly reconciliation
+        @Index(name = "idx_conversation_unread_user1", columnList = "unread_count_user1, user1_id"),
+        @Index(name = "idx_conversation_unread_user2", columnList = "unread_count_user2, user2_id")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -44,6 +48,23 @@ public class Conversation {
     @Builder.Default
     private Integer unreadCountUser2 = 0;
 
+    // Read state watermarks, every message up to the id counts as read/delivered for that user
+    @Column(name = "last_read_message_id_user1")
+    private Long lastReadMessageIdUser1;
+
+    @Column(name = "last_read_message_id_user2")
+    private Long lastReadMessageIdUser2;
+
+    @Column(name = "last_delivered_message_id_user1")
+    private Long lastDeliveredMessageIdUser1;
+
+    @Column(name = "last_delivered_message_id_user2")
+    private Long lastDeliveredMessageIdUser2;
+
+    // Highest message id moved to message_archive_blocks, history below it is read from the archive
+    @Column(name = "archived_through_message_id")
+    private Long archivedThroughMessageId;
+
     @Column(name = "user1_deleted")
     @Builder.Default
     private Boolean user1Deleted = false;
@@ -87,4 +108,18 @@ public class Conversation {
     protected void onUpdate() {
         updatedAt = LocalDateTime.now();
     }
+
+    public long getLastReadMessageId(Long userId) {
+        Long watermark = user1.getId().equals(userId) ? lastReadMessageIdUser1 : lastReadMessageIdUser2;
+        return watermark != null ? watermark : 0L;
+    }
+
+    public boolean isDeletedBy(Long userId) {
+        return Boolean.TRUE.equals(user1.getId().equals(userId) ? user1Deleted : user2Deleted);
+    }
+
+    public long getLastDeliveredMessageId(Long userId) {
+        Long watermark = user1.getId().equals(userId) ? lastDeliveredMessageIdUser1 : lastDeliveredMessageIdUser2;
+        return Math.max(watermark != null ? watermark : 0L, getLastReadMessageId(userId));
+    }
 }
\ No newline at end of file
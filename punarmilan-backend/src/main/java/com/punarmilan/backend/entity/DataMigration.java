@@ -0,0 +1,27 @@
+package com.punarmilan.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Marker row of a one-off data migration that has completed, so startup
+ * migrations run once per database instead of once per boot.
+ */
+@Entity
+@Table(name = "data_migrations")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class DataMigration {
+
+    @Id
+    @Column(name = "name", length = 100)
+    private String name;
+
+    @Column(name = "applied_at", nullable = false)
+    private LocalDateTime appliedAt;
+}
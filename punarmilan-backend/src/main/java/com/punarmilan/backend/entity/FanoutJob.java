@@ -0,0 +1,122 @@
+package com.punarmilan.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * One mass notification campaign, e.g. a profile blast or an admin bulk
+ * notification. Recipients are walked in user id order and lastUserId is the
+ * keyset cursor, so a job picked up again after a restart continues from the
+ * last finished chunk instead of starting over.
+ */
+@Entity
+@Table(name = "fanout_jobs", indexes = {
+        @Index(name = "idx_fanout_status_heartbeat", columnList = "status, heartbeat_at")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class FanoutJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 32)
+    private Kind kind;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    @Builder.Default
+    private Status status = Status.PENDING;
+
+    @Column(nullable = false)
+    private String title;
+
+    @Column(columnDefinition = "TEXT")
+    private String message;
+
+    @Column(name = "related_id")
+    private Long relatedId;
+
+    @Column(name = "related_type", length = 50)
+    private String relatedType;
+
+    // Profile blasts skip the featured user
+    @Column(name = "exclude_user_id")
+    private Long excludeUserId;
+
+    // Explicit audience of a bulk notification, comma separated and sorted
+    @Column(name = "recipient_ids", columnDefinition = "LONGTEXT")
+    private String recipientIds;
+
+    @Column(name = "send_email", nullable = false)
+    private boolean sendEmail;
+
+    // Fixed for the job, so a chunk written twice folds into the same rows
+    @Column(name = "time_bucket", nullable = false)
+    private Long timeBucket;
+
+    @Column(name = "last_user_id", nullable = false)
+    @Builder.Default
+    private Long lastUserId = 0L;
+
+    @Column(name = "total_recipients")
+    private Long totalRecipients;
+
+    @Builder.Default
+    private long processed = 0;
+
+    @Builder.Default
+    private long notified = 0;
+
+    @Builder.Default
+    private long emailed = 0;
+
+    @Builder.Default
+    private long failed = 0;
+
+    // Node working on the job and its last sign of life
+    @Column(length = 64)
+    private String owner;
+
+    @Column(name = "heartbeat_at")
+    private LocalDateTime heartbeatAt;
+
+    @Column(length = 1000)
+    private String error;
+
+    @Column(name = "created_by")
+    private String createdBy;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
+    }
+
+    public enum Kind {
+        PROFILE_BLAST,
+        BULK_NOTIFICATION
+    }
+
+    public enum Status {
+        PENDING,
+        RUNNING,
+        COMPLETED,
+        FAILED,
+        CANCELLED
+    }
+}
@@ -0,0 +1,42 @@
+package com.punarmilan.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * One of a user's precomputed top matches, ranked from 1. MatchSuggestionService
+ * rewrites a user's rows on every refresh, so digests read them with a plain
+ * lookup instead of scoring every active user at send time.
+ */
+@Entity
+@Table(name = "match_suggestions", uniqueConstraints = @UniqueConstraint(columnNames = { "user_id", "rank_no" }),
+        indexes = @Index(name = "idx_suggestion_computed_at", columnList = "computed_at"))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class MatchSuggestion {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "candidate_id", nullable = false)
+    private Long candidateId;
+
+    @Column(name = "rank_no", nullable = false)
+    private int rank;
+
+    // Compatibility score 0-100 at the time of the refresh
+    @Column(nullable = false)
+    private int score;
+
+    @Column(name = "computed_at", nullable = false)
+    private LocalDateTime computedAt;
+}
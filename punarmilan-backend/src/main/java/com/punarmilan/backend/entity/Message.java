@@ -5,7 +5,12 @@ import lombok.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "messages")
+@Table(name = "messages", indexes = {
+        // Keyset history, (conversation_id, id) serves both cursor directions without a filesort
+        @Index(name = "idx_message_conversation_id", columnList = "conversation_id, id"),
+        // Finds conversations with messages due for the cold archive
+        @Index(name = "idx_message_created_at", columnList = "created_at")
+})
 @Getter
 @Setter
 @NoArgsConstructor
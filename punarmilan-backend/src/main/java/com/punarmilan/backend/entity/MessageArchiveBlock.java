@@ -0,0 +1,61 @@
+package com.punarmilan.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * A run of consecutive old messages of one conversation, serialized and zstd
+ * compressed into a single row. Blocks of a conversation never overlap and
+ * always hold lower ids than anything still in {@code messages}.
+ */
+@Entity
+@Table(name = "message_archive_blocks", indexes = {
+        @Index(name = "idx_archive_conversation_first", columnList = "conversation_id, first_message_id"),
+        @Index(name = "idx_archive_conversation_last", columnList = "conversation_id, last_message_id")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class MessageArchiveBlock {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "conversation_id", nullable = false)
+    private Long conversationId;
+
+    @Column(name = "first_message_id", nullable = false)
+    private Long firstMessageId;
+
+    @Column(name = "last_message_id", nullable = false)
+    private Long lastMessageId;
+
+    @Column(name = "message_count", nullable = false)
+    private Integer messageCount;
+
+    // Serialized size before compression, also needed to decompress
+    @Column(name = "raw_bytes", nullable = false)
+    private Integer rawBytes;
+
+    @Column(name = "compressed_bytes", nullable = false)
+    private Integer compressedBytes;
+
+    @Lob
+    @Column(nullable = false, columnDefinition = "LONGBLOB")
+    private byte[] payload;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.punarmilan.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * One posting of the per-user chat search index: a normalized word and a
+ * message it occurs in. Each message is posted once for the sender and once
+ * for the receiver, so a user's search never touches anyone else's rows.
+ */
+@Entity
+@Table(name = "message_search_terms", indexes = {
+        @Index(name = "idx_search_user_term", columnList = "user_id, term, message_id"),
+        @Index(name = "idx_search_user_conversation", columnList = "user_id, conversation_id"),
+        @Index(name = "idx_search_message", columnList = "message_id")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class MessageSearchTerm {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(nullable = false, length = 64)
+    private String term;
+
+    @Column(name = "message_id", nullable = false)
+    private Long messageId;
+
+    @Column(name = "conversation_id", nullable = false)
+    private Long conversationId;
+}
@@ -6,7 +6,16 @@ import lombok.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "notifications")
+@Table(name = "notifications", uniqueConstraints = {
+        // Repeats of the same event within one bucket fold into a single row, see NotificationServiceImpl.upsert
+        @UniqueConstraint(name = "uk_notification_coalesce", columnNames = { "user_id", "type", "related_id", "time_bucket" })
+}, indexes = {
+        // Unread stats per type, GROUP BY type is served from the index alone
+        @Index(name = "idx_notification_user_read_type", columnList = "user_id, is_read, type"),
+        @Index(name = "idx_notification_user_seen", columnList = "user_id, is_seen"),
+        @Index(name = "idx_notification_user_created", columnList = "user_id, created_at"),
+        @Index(name = "idx_notification_created_at", columnList = "created_at")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -22,8 +31,9 @@ public class Notification {
     @JoinColumn(name = "user_id", nullable = false)
     private User user;
 
+    // A plain string column rather than a MySQL ENUM, so a new type needs no ALTER
     @Enumerated(EnumType.STRING)
-    @Column(nullable = false)
+    @Column(nullable = false, columnDefinition = "VARCHAR(40)")
     private NotificationType type;
 
     @Column(nullable = false, length = 500)
@@ -49,6 +59,10 @@ public class Notification {
     @Column(name = "created_at", nullable = false)
     private LocalDateTime createdAt;
 
+    // Coalescing window the notification was created in, null when it has no related id
+    @Column(name = "time_bucket")
+    private Long timeBucket;
+
     @PrePersist
     protected void onCreate() {
         if (createdAt == null) {
@@ -66,6 +80,7 @@ public class Notification {
         VERIFICATION_REJECTED,
         MESSAGE_RECEIVED,
         SYSTEM_ALERT,
-        PROFILE_COMPLETION
+        PROFILE_COMPLETION,
+        SHORTLISTED
     }
 }
\ No newline at end of file
@@ -0,0 +1,101 @@
+package com.punarmilan.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * One rendered email waiting to go out, written in the transaction of whatever
+ * caused it, so an email exists exactly when the change it reports committed.
+ * EmailOutboxSender drains the table: claimed rows are SENDING until
+ * lockedUntil, failed ones return to PENDING with a later nextAttemptAt, and
+ * after the last attempt they stay DEAD for an admin to look at. Due rows go
+ * out by priority first, so a bulk send never holds up a password reset.
+ */
+@Entity
+@Table(name = "email_outbox", indexes = {
+        @Index(name = "idx_outbox_status_priority_next_attempt", columnList = "status, priority, next_attempt_at"),
+        @Index(name = "idx_outbox_claim_token", columnList = "claim_token"),
+        @Index(name = "idx_outbox_created_at", columnList = "created_at")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class OutboxEmail {
+
+    // Lower goes first: mail a user is waiting on to get into their account, everything else, bulk sends
+    public static final int PRIORITY_ACCOUNT = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_BULK = 2;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Template it was rendered from, e.g. welcome-email
+    @Column(nullable = false, length = 50)
+    private String kind;
+
+    @Column(nullable = false, length = 320)
+    private String recipient;
+
+    // Rate limits are per recipient domain
+    @Column(nullable = false)
+    private String domain;
+
+    @Column(nullable = false, length = 500)
+    private String subject;
+
+    @Column(nullable = false, columnDefinition = "LONGTEXT")
+    private String body;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    @Builder.Default
+    private Status status = Status.PENDING;
+
+    @Builder.Default
+    private int priority = PRIORITY_NORMAL;
+
+    @Builder.Default
+    private int attempts = 0;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    // Set by the drain that claimed the row, so only it records the outcome
+    @Column(name = "claim_token", length = 36)
+    private String claimToken;
+
+    @Column(name = "locked_until")
+    private LocalDateTime lockedUntil;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "sent_at")
+    private LocalDateTime sentAt;
+
+    @PrePersist
+    protected void onCreate() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
+        if (nextAttemptAt == null) {
+            nextAttemptAt = createdAt;
+        }
+    }
+
+    public enum Status {
+        PENDING,
+        SENDING,
+        SENT,
+        DEAD
+    }
+}
@@ -9,7 +9,8 @@ import java.time.LocalDateTime;
 @Table(name = "user_view_history",
        indexes = {
            @Index(name = "idx_viewer_viewed", columnList = "viewer_id, viewed_user_id"),
-           @Index(name = "idx_viewed_at", columnList = "viewed_at")
+           @Index(name = "idx_viewed_at", columnList = "viewed_at"),
+           @Index(name = "idx_viewed_user_at", columnList = "viewed_user_id, viewed_at")
        })
 @Getter
 @Setter
@@ -0,0 +1,28 @@
+package com.punarmilan.backend.event;
+
+import com.punarmilan.backend.service.MessageSearchService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class MessageSearchIndexListener {
+
+    private final MessageSearchService messageSearchService;
+
+    // Off the send path, a failure only costs search recall until the next rebuild
+    @Async
+    @TransactionalEventListener(fallbackExecution = true)
+    public void handleMessageSent(MessageSentEvent event) {
+        try {
+            messageSearchService.index(event.getMessageId(), event.getConversationId(), event.getSenderId(),
+                    event.getReceiverId(), event.getContent(), event.getFileName());
+        } catch (Exception e) {
+            log.error("Could not index message {} for search", event.getMessageId(), e);
+        }
+    }
+}
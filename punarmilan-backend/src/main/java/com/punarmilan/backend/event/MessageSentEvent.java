@@ -0,0 +1,29 @@
+package com.punarmilan.backend.event;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published when a chat message is saved. Carries plain values so listeners
+ * running after commit don't touch detached entities.
+ */
+@Getter
+public class MessageSentEvent extends ApplicationEvent {
+    private final Long messageId;
+    private final Long conversationId;
+    private final Long senderId;
+    private final Long receiverId;
+    private final String content;
+    private final String fileName;
+
+    public MessageSentEvent(Object source, Long messageId, Long conversationId, Long senderId, Long receiverId,
+            String content, String fileName) {
+        super(source);
+        this.messageId = messageId;
+        this.conversationId = conversationId;
+        this.senderId = senderId;
+        this.receiverId = receiverId;
+        this.content = content;
+        this.fileName = fileName;
+    }
+}
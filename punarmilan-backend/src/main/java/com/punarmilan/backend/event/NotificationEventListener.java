@@ -1,62 +1,184 @@
 package com.punarmilan.backend.event;
 
-import com.punarmilan.backend.entity.NotificationPreference;
 import com.punarmilan.backend.entity.User;
-import com.punarmilan.backend.repository.NotificationPreferenceRepository;
+import com.punarmilan.backend.service.BatchDrainer;
 import com.punarmilan.backend.service.EmailService;
+import com.punarmilan.backend.service.NotificationPreferenceCache;
+import com.punarmilan.backend.service.NotificationPreferenceCache.Preferences;
+import com.punarmilan.backend.service.NotificationRollupService;
 import com.punarmilan.backend.service.NotificationService;
-import lombok.RequiredArgsConstructor;
+import com.punarmilan.backend.service.NotificationService.NewNotification;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.context.event.EventListener;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Turns likes, messages and views into in-app notifications and emails.
+ *
+ * Events are queued after commit and handled in micro-batches by one worker:
+ * it waits up to linger-ms after the first event for more to arrive, then does
+ * one preference lookup for every recipient in the batch and one grouped
+ * insert for all their notifications. When the queue is full the event is
+ * handled on a separate overflow thread while the publisher waits for it,
+ * which slows the producer down. The publisher itself is still in the
+ * completion phase of its transaction, where a transactional call would join
+ * the finished transaction instead of starting its own.
+ */
 @Component
-@RequiredArgsConstructor
 @Slf4j
 public class NotificationEventListener {
 
     private final EmailService emailService;
     private final NotificationService notificationService;
-    private final NotificationPreferenceRepository preferenceRepository;
+    private final NotificationPreferenceCache preferenceCache;
+    private final NotificationRollupService rollupService;
+    private final MeterRegistry meterRegistry;
+    private final BlockingQueue<NotificationEvent> queue;
+    private final BatchDrainer<NotificationEvent> worker;
+    private final ExecutorService overflow = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "notification-events-overflow");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Counter batchesCounter;
+    private Counter eventsCounter;
+
+    public NotificationEventListener(EmailService emailService,
+            NotificationService notificationService,
+            NotificationPreferenceCache preferenceCache,
+            NotificationRollupService rollupService,
+            MeterRegistry meterRegistry,
+            @Value("${app.notification.events.queue-capacity:10000}") int queueCapacity,
+            @Value("${app.notification.events.batch-size:200}") int batchSize,
+            @Value("${app.notification.events.linger-ms:50}") long lingerMillis) {
+        this.emailService = emailService;
+        this.notificationService = notificationService;
+        this.preferenceCache = preferenceCache;
+        this.rollupService = rollupService;
+        this.meterRegistry = meterRegistry;
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+        this.worker = new BatchDrainer<>("notification-events", queue, batchSize, lingerMillis, event -> 1,
+                this::process);
+    }
+
+    @PostConstruct
+    public void start() {
+        batchesCounter = Counter.builder("notification.events.batches").register(meterRegistry);
+        eventsCounter = Counter.builder("notification.events.handled").register(meterRegistry);
+        Gauge.builder("notification.events.queued", queue, BlockingQueue::size)
+                .description("Events waiting for the next batch")
+                .register(meterRegistry);
+
+        worker.start();
+    }
 
-    @Async
-    @EventListener
+    // After commit, so a rolled back send never notifies anyone
+    @TransactionalEventListener(fallbackExecution = true)
     public void handleNotificationEvent(NotificationEvent event) {
-        User recipient = event.getRecipient();
-        String type = event.getType();
+        if (!queue.offer(event)) {
+            log.warn("Notification event queue is full, handling {} for user {} on the overflow thread",
+                    event.getType(), event.getRecipient().getId());
+            try {
+                overflow.submit(() -> process(List.of(event))).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                log.error("Overflow notification event failed", e.getCause());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        // Queued events were committed already, so they are still handled before shutting down
+        worker.stop();
+        overflow.shutdown();
+    }
+
+    // ==================== PRIVATE HELPER METHODS ====================
 
-        NotificationPreference prefs = preferenceRepository.findByUser(recipient)
-                .orElse(getDefaultPreferences(recipient));
+    private void process(List<NotificationEvent> events) {
+        Set<Long> recipientIds = new LinkedHashSet<>();
+        events.forEach(event -> recipientIds.add(event.getRecipient().getId()));
+        Map<Long, Preferences> preferences = preferenceCache.getAll(recipientIds);
+
+        // Views and shortlists are folded into one rollup per window, preferences are checked again when it closes
+        List<NotificationEvent> direct = new ArrayList<>();
+        for (NotificationEvent event : events) {
+            if (event.getSender() != null && rollupService.handles(event.getType())) {
+                Preferences prefs = preferences.getOrDefault(event.getRecipient().getId(), Preferences.DEFAULTS);
+                if (prefs.webNotifications() || prefs.wantsEmail(event.getType())) {
+                    rollupService.record(event.getRecipient().getId(), event.getSender().getId(), event.getType());
+                }
+            } else {
+                direct.add(event);
+            }
+        }
 
         // 1. Web Notification (In-app)
-        if (prefs.isWebNotifications()) {
-            notificationService.createNotification(
-                    recipient.getId(),
-                    type,
-                    "New Notification",
-                    event.getMessage(),
-                    null, // relatedId
-                    "SYSTEM");
+        List<NewNotification> notifications = new ArrayList<>();
+        for (NotificationEvent event : direct) {
+            User recipient = event.getRecipient();
+            if (preferences.getOrDefault(recipient.getId(), Preferences.DEFAULTS).webNotifications()) {
+                notifications.add(new NewNotification(
+                        recipient.getId(),
+                        event.getType(),
+                        "New Notification",
+                        event.getMessage(),
+                        null, // relatedId
+                        "SYSTEM"));
+            }
+        }
+        if (!notifications.isEmpty()) {
+            try {
+                notificationService.createNotifications(notifications);
+            } catch (Exception e) {
+                log.error("Grouped insert of {} notifications failed, retrying one by one", notifications.size(), e);
+                createOneByOne(notifications);
+            }
         }
 
         // 2. Email Delivery
-        if (shouldSendEmail(type, prefs)) {
-            sendEmail(event);
+        for (NotificationEvent event : direct) {
+            Preferences prefs = preferences.getOrDefault(event.getRecipient().getId(), Preferences.DEFAULTS);
+            if (prefs.wantsEmail(event.getType())) {
+                sendEmail(event);
+            }
         }
+
+        batchesCounter.increment();
+        eventsCounter.increment(events.size());
     }
 
-    private boolean shouldSendEmail(String type, NotificationPreference prefs) {
-        if (!prefs.isEmailAlerts())
-            return false;
-
-        return switch (type) {
-            case "MATCH_FOUND" -> prefs.isMatchMail();
-            case "PROFILE_VIEW" -> prefs.isVisitorAlerts();
-            case "SHORTLISTED" -> prefs.isShortlistAlerts();
-            case "MESSAGE_RECEIVED" -> prefs.isMessageAlerts();
-            default -> false;
-        };
+    // One bad row (e.g. a user deleted meanwhile) must not cost the rest of the batch
+    private void createOneByOne(List<NewNotification> notifications) {
+        for (NewNotification notification : notifications) {
+            try {
+                notificationService.createNotification(notification.userId(), notification.type(),
+                        notification.title(), notification.message(), notification.relatedId(),
+                        notification.relatedType());
+            } catch (Exception e) {
+                log.error("Failed to create notification for user {}: {}", notification.userId(), e.getMessage());
+            }
+        }
     }
 
     private void sendEmail(NotificationEvent event) {
@@ -74,16 +196,4 @@ public class NotificationEventListener {
             log.error("Error sending notification email", e);
         }
     }
-
-    private NotificationPreference getDefaultPreferences(User user) {
-        return NotificationPreference.builder()
-                .user(user)
-                .emailAlerts(true)
-                .matchMail(true)
-                .visitorAlerts(true)
-                .shortlistAlerts(true)
-                .messageAlerts(true)
-                .webNotifications(true)
-                .build();
-    }
 }
@@ -5,9 +5,12 @@ import com.punarmilan.backend.entity.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -20,6 +23,124 @@ public interface ConversationRepository extends JpaRepository<Conversation, Long
        Optional<Conversation> findConversationBetweenUsers(@Param("user1") User user1,
                      @Param("user2") User user2);
 
+       @Query("SELECT c FROM Conversation c WHERE " +
+                     "(c.user1.id = :userA AND c.user2.id = :userB) OR " +
+                     "(c.user1.id = :userB AND c.user2.id = :userA)")
+       Optional<Conversation> findConversationBetweenUserIds(@Param("userA") Long userA,
+                     @Param("userB") Long userB);
+
+       // Last message and receiver unread count in one statement, no read-modify-write
+       @Modifying
+       @Query("UPDATE Conversation c SET c.lastMessage = :lastMessage, c.lastMessageTime = :time, " +
+                     "c.lastMessageBy = :senderId, c.updatedAt = :time, " +
+                     "c.unreadCountUser1 = c.unreadCountUser1 + :user1Increment, " +
+                     "c.unreadCountUser2 = c.unreadCountUser2 + :user2Increment " +
+                     "WHERE c.id = :id")
+       int recordMessage(@Param("id") Long id, @Param("lastMessage") String lastMessage,
+                     @Param("time") LocalDateTime time, @Param("senderId") Long senderId,
+                     @Param("user1Increment") int user1Increment, @Param("user2Increment") int user2Increment);
+
+       @Modifying
+       @Query("UPDATE Conversation c SET c.archivedThroughMessageId = :messageId WHERE c.id = :id " +
+                     "AND (c.archivedThroughMessageId IS NULL OR c.archivedThroughMessageId < :messageId)")
+       int recordArchived(@Param("id") Long id, @Param("messageId") Long messageId);
+
+       interface UnreadCounts {
+              Integer getUnreadCountUser1();
+
+              Integer getUnreadCountUser2();
+       }
+
+       @Query("SELECT c.unreadCountUser1 AS unreadCountUser1, c.unreadCountUser2 AS unreadCountUser2 " +
+                     "FROM Conversation c WHERE c.id = :id")
+       Optional<UnreadCounts> findUnreadCounts(@Param("id") Long id);
+
+       interface ConversationUnread {
+              Long getId();
+
+              Integer getUnreadCount();
+       }
+
+       // Keyset walks over users whose flushed column still shows unread, the Pageable only carries the limit
+       @Query("SELECT DISTINCT c.user1.id FROM Conversation c WHERE c.unreadCountUser1 > 0 " +
+                     "AND c.user1.id > :after ORDER BY c.user1.id")
+       List<Long> findUser1WithUnreadAfter(@Param("after") Long after, Pageable limit);
+
+       @Query("SELECT DISTINCT c.user2.id FROM Conversation c WHERE c.unreadCountUser2 > 0 " +
+                     "AND c.user2.id > :after ORDER BY c.user2.id")
+       List<Long> findUser2WithUnreadAfter(@Param("after") Long after, Pageable limit);
+
+       // Seeds the Redis unread counters of one user
+       @Query("SELECT c.id AS id, CASE WHEN c.user1.id = :userId THEN c.unreadCountUser1 " +
+                     "ELSE c.unreadCountUser2 END AS unreadCount FROM Conversation c WHERE " +
+                     "(c.user1.id = :userId AND c.unreadCountUser1 > 0) OR " +
+                     "(c.user2.id = :userId AND c.unreadCountUser2 > 0)")
+       List<ConversationUnread> findUnreadCountsForUser(@Param("userId") Long userId);
+
+       // Flush of the Redis unread counters, a negative count leaves the column as it is
+       @Modifying
+       @Transactional
+       @Query("UPDATE Conversation c SET " +
+                     "c.unreadCountUser1 = CASE WHEN :user1Count < 0 THEN c.unreadCountUser1 ELSE :user1Count END, " +
+                     "c.unreadCountUser2 = CASE WHEN :user2Count < 0 THEN c.unreadCountUser2 ELSE :user2Count END " +
+                     "WHERE c.id = :id")
+       int updateUnreadCounts(@Param("id") Long id, @Param("user1Count") int user1Count,
+                     @Param("user2Count") int user2Count);
+
+       // Moves the user's read watermark forward, never back. Read implies delivered
+       @Modifying
+       @Query("UPDATE Conversation c SET " +
+                     "c.lastReadMessageIdUser1 = CASE WHEN c.user1.id = :userId " +
+                     "AND COALESCE(c.lastReadMessageIdUser1, 0) < :messageId THEN :messageId ELSE c.lastReadMessageIdUser1 END, " +
+                     "c.lastReadMessageIdUser2 = CASE WHEN c.user2.id = :userId " +
+                     "AND COALESCE(c.lastReadMessageIdUser2, 0) < :messageId THEN :messageId ELSE c.lastReadMessageIdUser2 END, " +
+                     "c.lastDeliveredMessageIdUser1 = CASE WHEN c.user1.id = :userId " +
+                     "AND COALESCE(c.lastDeliveredMessageIdUser1, 0) < :messageId THEN :messageId ELSE c.lastDeliveredMessageIdUser1 END, " +
+                     "c.lastDeliveredMessageIdUser2 = CASE WHEN c.user2.id = :userId " +
+                     "AND COALESCE(c.lastDeliveredMessageIdUser2, 0) < :messageId THEN :messageId ELSE c.lastDeliveredMessageIdUser2 END " +
+                     "WHERE c.id = :id")
+       int advanceReadWatermark(@Param("id") Long id, @Param("userId") Long userId,
+                     @Param("messageId") Long messageId);
+
+       @Modifying
+       @Query("UPDATE Conversation c SET " +
+                     "c.lastDeliveredMessageIdUser1 = CASE WHEN c.user1.id = :userId " +
+                     "AND COALESCE(c.lastDeliveredMessageIdUser1, 0) < :messageId THEN :messageId ELSE c.lastDeliveredMessageIdUser1 END, " +
+                     "c.lastDeliveredMessageIdUser2 = CASE WHEN c.user2.id = :userId " +
+                     "AND COALESCE(c.lastDeliveredMessageIdUser2, 0) < :messageId THEN :messageId ELSE c.lastDeliveredMessageIdUser2 END " +
+                     "WHERE c.id = :id")
+       int advanceDeliveredWatermark(@Param("id") Long id, @Param("userId") Long userId,
+                     @Param("messageId") Long messageId);
+
+       // One-off migration from messages.is_read, only touches conversations that still need it
+       @Modifying
+       @Transactional
+       @Query("UPDATE Conversation c SET c.lastReadMessageIdUser1 = " +
+                     "(SELECT MAX(m.id) FROM Message m WHERE m.conversation = c AND m.receiver = c.user1 AND m.read = true) " +
+                     "WHERE c.lastReadMessageIdUser1 IS NULL AND EXISTS " +
+                     "(SELECT 1 FROM Message r WHERE r.conversation = c AND r.receiver = c.user1 AND r.read = true)")
+       int backfillReadWatermarksUser1();
+
+       @Modifying
+       @Transactional
+       @Query("UPDATE Conversation c SET c.lastReadMessageIdUser2 = " +
+                     "(SELECT MAX(m.id) FROM Message m WHERE m.conversation = c AND m.receiver = c.user2 AND m.read = true) " +
+                     "WHERE c.lastReadMessageIdUser2 IS NULL AND EXISTS " +
+                     "(SELECT 1 FROM Message r WHERE r.conversation = c AND r.receiver = c.user2 AND r.read = true)")
+       int backfillReadWatermarksUser2();
+
+       interface InboxEntry {
+              Long getId();
+
+              LocalDateTime getSortTime();
+       }
+
+       // Ids and sort times of a user's visible conversations, what the Redis inbox is rebuilt from
+       @Query("SELECT c.id AS id, COALESCE(c.lastMessageTime, c.updatedAt) AS sortTime FROM Conversation c WHERE " +
+                     "(c.user1.id = :userId AND c.user1Deleted = false) OR " +
+                     "(c.user2.id = :userId AND c.user2Deleted = false)")
+       List<InboxEntry> findInboxEntries(@Param("userId") Long userId);
+
        // Find all conversations for a user
        @Query("SELECT c FROM Conversation c WHERE " +
                      "(c.user1 = :user AND c.user1Deleted = false) OR " +
@@ -0,0 +1,20 @@
+package com.punarmilan.backend.repository;
+
+import com.punarmilan.backend.entity.DataMigration;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+public interface DataMigrationRepository extends JpaRepository<DataMigration, String> {
+
+       // Two nodes finishing the same migration at once both succeed
+       @Modifying
+       @Transactional
+       @Query(value = "INSERT IGNORE INTO data_migrations (name, applied_at) VALUES (:name, :now)",
+                     nativeQuery = true)
+       int markApplied(@Param("name") String name, @Param("now") LocalDateTime now);
+}
@@ -0,0 +1,65 @@
+package com.punarmilan.backend.repository;
+
+import com.punarmilan.backend.entity.FanoutJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface FanoutJobRepository extends JpaRepository<FanoutJob, Long> {
+
+    List<FanoutJob> findTop20ByOrderByIdDesc();
+
+    // Unfinished jobs nobody is working on, including those of a node that died
+    @Query("SELECT j.id FROM FanoutJob j WHERE j.status IN ('PENDING', 'RUNNING') " +
+           "AND (j.heartbeatAt IS NULL OR j.heartbeatAt < :staleBefore) ORDER BY j.id")
+    List<Long> findResumable(@Param("staleBefore") LocalDateTime staleBefore);
+
+    // Only one node wins, the rest see 0
+    @Modifying
+    @Transactional
+    @Query("UPDATE FanoutJob j SET j.status = 'RUNNING', j.owner = :owner, j.heartbeatAt = :now " +
+           "WHERE j.id = :id AND j.status IN ('PENDING', 'RUNNING') " +
+           "AND (j.heartbeatAt IS NULL OR j.heartbeatAt < :staleBefore)")
+    int claim(@Param("id") Long id, @Param("owner") String owner, @Param("now") LocalDateTime now,
+              @Param("staleBefore") LocalDateTime staleBefore);
+
+    // Returns 0 once the job was cancelled or taken over, the owner then stops
+    @Modifying
+    @Transactional
+    @Query("UPDATE FanoutJob j SET j.lastUserId = :lastUserId, j.processed = j.processed + :processed, " +
+           "j.notified = j.notified + :notified, j.emailed = j.emailed + :emailed, " +
+           "j.failed = j.failed + :failed, j.heartbeatAt = :now " +
+           "WHERE j.id = :id AND j.owner = :owner AND j.status = 'RUNNING'")
+    int recordProgress(@Param("id") Long id, @Param("owner") String owner,
+                       @Param("lastUserId") Long lastUserId, @Param("processed") long processed,
+                       @Param("notified") long notified, @Param("emailed") long emailed,
+                       @Param("failed") long failed, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE FanoutJob j SET j.status = :status, j.error = :error, j.finishedAt = :now, j.heartbeatAt = :now " +
+           "WHERE j.id = :id AND j.owner = :owner AND j.status = 'RUNNING'")
+    int finish(@Param("id") Long id, @Param("owner") String owner, @Param("status") FanoutJob.Status status,
+               @Param("error") String error, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE FanoutJob j SET j.status = 'CANCELLED', j.finishedAt = :now " +
+           "WHERE j.id = :id AND j.status IN ('PENDING', 'RUNNING')")
+    int cancel(@Param("id") Long id, @Param("now") LocalDateTime now);
+
+    // Back in the queue, continuing from the saved cursor
+    @Modifying
+    @Transactional
+    @Query("UPDATE FanoutJob j SET j.status = 'PENDING', j.owner = NULL, j.heartbeatAt = NULL, " +
+           "j.error = NULL, j.finishedAt = NULL " +
+           "WHERE j.id = :id AND j.status IN ('FAILED', 'CANCELLED')")
+    int reopen(@Param("id") Long id);
+}
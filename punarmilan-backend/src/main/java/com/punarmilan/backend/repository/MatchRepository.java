@@ -12,6 +12,7 @@ import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -37,6 +38,36 @@ public interface MatchRepository extends JpaRepository<Match, Long> {
 
        List<Match> findByUser1OrUser2(User user1, User user2);
 
+       // Single statement variant of findMatchBetweenUsers
+       @Query("SELECT m FROM Match m WHERE (m.user1.id = :userA AND m.user2.id = :userB) " +
+                     "OR (m.user1.id = :userB AND m.user2.id = :userA)")
+       Optional<Match> findMatchBetweenUserIds(@Param("userA") Long userA, @Param("userB") Long userB);
+
+       // Mirrors Match.updateLastMessage as one atomic UPDATE, a no-op when the users never matched.
+       // unreadIncrement is 0 while the Redis unread counters own the counts
+       @Modifying
+       @Query("UPDATE Match m SET m.lastMessage = :lastMessage, m.lastMessageAt = :time, m.updatedAt = :time, " +
+                     "m.unreadCountUser1 = m.unreadCountUser1 + CASE WHEN m.user2.id = :senderId THEN :unreadIncrement ELSE 0 END, " +
+                     "m.unreadCountUser2 = m.unreadCountUser2 + CASE WHEN m.user1.id = :senderId THEN :unreadIncrement ELSE 0 END " +
+                     "WHERE (m.user1.id = :senderId AND m.user2.id = :receiverId) " +
+                     "OR (m.user1.id = :receiverId AND m.user2.id = :senderId)")
+       int recordMessage(@Param("senderId") Long senderId, @Param("receiverId") Long receiverId,
+                     @Param("lastMessage") String lastMessage, @Param("time") LocalDateTime time,
+                     @Param("unreadIncrement") int unreadIncrement);
+
+       // Flush of the Redis unread counters, a negative count leaves the column as it is
+       @Modifying
+       @Transactional
+       @Query("UPDATE Match m SET " +
+                     "m.unreadCountUser1 = CASE WHEN m.user1.id = :userA AND :countA >= 0 THEN :countA " +
+                     "WHEN m.user1.id = :userB AND :countB >= 0 THEN :countB ELSE m.unreadCountUser1 END, " +
+                     "m.unreadCountUser2 = CASE WHEN m.user2.id = :userA AND :countA >= 0 THEN :countA " +
+                     "WHEN m.user2.id = :userB AND :countB >= 0 THEN :countB ELSE m.unreadCountUser2 END " +
+                     "WHERE (m.user1.id = :userA AND m.user2.id = :userB) " +
+                     "OR (m.user1.id = :userB AND m.user2.id = :userA)")
+       int updateUnreadCounts(@Param("userA") Long userA, @Param("countA") int countA,
+                     @Param("userB") Long userB, @Param("countB") int countB);
+
        // ==================== STATUS-BASED QUERIES ====================
 
        Page<Match> findByStatus(Match.MatchStatus status, Pageable pageable);
@@ -131,12 +162,34 @@ public interface MatchRepository extends JpaRepository<Match, Long> {
 
        // ==================== CONNECTION CHECK QUERIES ====================
 
+       // [userId, otherUserId] for every pair in which one of these users liked the other or
+       // they are matched, both directions of a Match row
+       @Query("SELECT m.user1.id, m.user2.id FROM Match m WHERE m.user1.id IN :userIds " +
+                     "AND (m.user1Liked = true OR m.matched = true)")
+       List<Object[]> findLikedOrMatchedByUser1(@Param("userIds") Collection<Long> userIds);
+
+       @Query("SELECT m.user2.id, m.user1.id FROM Match m WHERE m.user2.id IN :userIds " +
+                     "AND (m.user2Liked = true OR m.matched = true)")
+       List<Object[]> findLikedOrMatchedByUser2(@Param("userIds") Collection<Long> userIds);
+
        @Query("SELECT COUNT(m) > 0 FROM Match m WHERE " +
                      "((m.user1 = :user1 AND m.user2 = :user2) OR " +
                      "(m.user1 = :user2 AND m.user2 = :user1)) " +
                      "AND m.matched = true AND m.active = true AND m.blocked = false")
        boolean areUsersMatched(@Param("user1") User user1, @Param("user2") User user2);
 
+       // Which of these users liked the given user, for the photo visibility of a whole page at once
+       @Query("SELECT CASE WHEN m.user1.id = :userId THEN m.user2.id ELSE m.user1.id END FROM Match m WHERE " +
+                     "(m.user1.id = :userId AND m.user2.id IN :otherIds AND m.user2Liked = true) OR " +
+                     "(m.user2.id = :userId AND m.user1.id IN :otherIds AND m.user1Liked = true)")
+       List<Long> findLikersAmong(@Param("userId") Long userId, @Param("otherIds") Collection<Long> otherIds);
+
+       // Ids of everyone the user is actively matched with, no entities loaded
+       @Query("SELECT CASE WHEN m.user1.id = :userId THEN m.user2.id ELSE m.user1.id END FROM Match m " +
+                     "WHERE (m.user1.id = :userId OR m.user2.id = :userId) " +
+                     "AND m.matched = true AND m.active = true AND m.blocked = false")
+       List<Long> findMatchedUserIds(@Param("userId") Long userId);
+
        @Query("SELECT COUNT(m) > 0 FROM Match m WHERE " +
                      "((m.user1 = :user1 AND m.user2 = :user2) OR " +
                      "(m.user1 = :user2 AND m.user2 = :user1)) " +
@@ -0,0 +1,24 @@
+package com.punarmilan.backend.repository;
+
+import com.punarmilan.backend.entity.MatchSuggestion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface MatchSuggestionRepository extends JpaRepository<MatchSuggestion, Long> {
+
+    // Top matches of a whole chunk of users in one read, served by the (user_id, rank_no) key
+    @Query("SELECT s FROM MatchSuggestion s WHERE s.userId IN :userIds AND s.rank <= :limit " +
+           "ORDER BY s.userId, s.rank")
+    List<MatchSuggestion> findTopForUsers(@Param("userIds") Collection<Long> userIds, @Param("limit") int limit);
+
+    @Modifying
+    @Query("DELETE FROM MatchSuggestion s WHERE s.userId IN :userIds")
+    int deleteForUsers(@Param("userIds") Collection<Long> userIds);
+}
@@ -0,0 +1,88 @@
+package com.punarmilan.backend.repository;
+
+import com.punarmilan.backend.entity.MessageArchiveBlock;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+public interface MessageArchiveBlockRepository extends JpaRepository<MessageArchiveBlock, Long> {
+
+       // Blocks holding ids below the cursor, newest block first
+       @Query("SELECT b FROM MessageArchiveBlock b WHERE b.conversationId = :conversationId " +
+                     "AND b.firstMessageId < :before ORDER BY b.firstMessageId DESC")
+       List<MessageArchiveBlock> findBlocksBefore(@Param("conversationId") Long conversationId,
+                     @Param("before") Long before, Pageable limit);
+
+       // Blocks holding ids above the cursor, oldest block first
+       @Query("SELECT b FROM MessageArchiveBlock b WHERE b.conversationId = :conversationId " +
+                     "AND b.lastMessageId > :after ORDER BY b.lastMessageId ASC")
+       List<MessageArchiveBlock> findBlocksAfter(@Param("conversationId") Long conversationId,
+                     @Param("after") Long after, Pageable limit);
+
+       // The one block of the conversation whose range covers the id, blocks of a conversation never overlap
+       @Query("SELECT b FROM MessageArchiveBlock b WHERE b.conversationId = :conversationId " +
+                     "AND b.firstMessageId <= :messageId AND b.lastMessageId >= :messageId")
+       List<MessageArchiveBlock> findBlockContaining(@Param("conversationId") Long conversationId,
+                     @Param("messageId") Long messageId);
+
+       // Blocks of any of the user's conversations covering the id, ranges of different conversations interleave
+       @Query("SELECT b FROM MessageArchiveBlock b, Conversation c WHERE c.id = b.conversationId " +
+                     "AND (c.user1.id = :userId OR c.user2.id = :userId) " +
+                     "AND b.firstMessageId <= :messageId AND b.lastMessageId >= :messageId")
+       List<MessageArchiveBlock> findUserBlocksContaining(@Param("userId") Long userId,
+                     @Param("messageId") Long messageId);
+
+       // Index rebuild, walks the primary key in chunks
+       @Query("SELECT b FROM MessageArchiveBlock b WHERE b.id > :afterId ORDER BY b.id ASC")
+       List<MessageArchiveBlock> findBlocksAfterId(@Param("afterId") Long afterId, Pageable limit);
+
+       @Query("SELECT b FROM MessageArchiveBlock b, Conversation c WHERE c.id = b.conversationId " +
+                     "AND b.id > :afterId AND ((c.user1.id = :userId AND c.user1Deleted = false) " +
+                     "OR (c.user2.id = :userId AND c.user2Deleted = false)) ORDER BY b.id ASC")
+       List<MessageArchiveBlock> findUserBlocksAfterId(@Param("userId") Long userId, @Param("afterId") Long afterId,
+                     Pageable limit);
+
+       // Sizes of the conversation's blocks newest first, without loading their payloads
+       @Query("SELECT b.id AS id, b.messageCount AS messageCount FROM MessageArchiveBlock b " +
+                     "WHERE b.conversationId = :conversationId ORDER BY b.firstMessageId DESC")
+       List<BlockSpan> findSpans(@Param("conversationId") Long conversationId);
+
+       interface BlockSpan {
+              Long getId();
+
+              int getMessageCount();
+       }
+
+       @Modifying
+       @Transactional
+       @Query("DELETE FROM MessageArchiveBlock b WHERE b.conversationId = :conversationId")
+       int deleteByConversationId(@Param("conversationId") Long conversationId);
+
+       @Modifying
+       @Transactional
+       @Query("DELETE FROM MessageArchiveBlock b WHERE b.conversationId IN " +
+                     "(SELECT c.id FROM Conversation c WHERE c.user1.id = :userId OR c.user2.id = :userId)")
+       int deleteByConversationsOfUser(@Param("userId") Long userId);
+
+       interface ArchiveTotals {
+              long getBlocks();
+
+              long getMessages();
+
+              long getRawBytes();
+
+              long getCompressedBytes();
+       }
+
+       @Query("SELECT COUNT(b) AS blocks, COALESCE(SUM(b.messageCount), 0) AS messages, " +
+                     "COALESCE(SUM(b.rawBytes), 0) AS rawBytes, " +
+                     "COALESCE(SUM(b.compressedBytes), 0) AS compressedBytes FROM MessageArchiveBlock b")
+       ArchiveTotals summarize();
+}
@@ -12,6 +12,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -20,19 +21,43 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
        // Find messages in a conversation
        Page<Message> findByConversationOrderByCreatedAtDesc(Conversation conversation, Pageable pageable);
 
+       // Keyset history on (conversation_id, id), the Pageable only carries the limit
+       @Query("SELECT m FROM Message m JOIN FETCH m.sender JOIN FETCH m.receiver " +
+                     "WHERE m.conversation.id = :conversationId AND m.id < :before ORDER BY m.id DESC")
+       List<Message> findBefore(@Param("conversationId") Long conversationId, @Param("before") Long before,
+                     Pageable limit);
+
+       @Query("SELECT m FROM Message m JOIN FETCH m.sender JOIN FETCH m.receiver " +
+                     "WHERE m.conversation.id = :conversationId AND m.id > :after ORDER BY m.id ASC")
+       List<Message> findAfter(@Param("conversationId") Long conversationId, @Param("after") Long after,
+                     Pageable limit);
+
        // Find unread messages for a user in a conversation
        List<Message> findByReceiverAndConversationAndReadFalse(User receiver, Conversation conversation);
 
-       // Count unread messages for a user
-       @Query("SELECT COUNT(m) FROM Message m WHERE m.receiver = :user AND m.read = false")
+       // Count unread messages for a user, is_read is kept for rows from before the read watermarks
+       @Query("SELECT COUNT(m) FROM Message m JOIN m.conversation c WHERE m.receiver = :user AND m.read = false " +
+                     "AND m.id > COALESCE(CASE WHEN c.user1 = :user THEN c.lastReadMessageIdUser1 " +
+                     "ELSE c.lastReadMessageIdUser2 END, 0)")
        long countUnreadMessages(@Param("user") User user);
 
+       @Query("SELECT MAX(m.id) FROM Message m WHERE m.conversation.id = :conversationId")
+       Long findLatestMessageId(@Param("conversationId") Long conversationId);
+
        // Count unread messages in a conversation for a specific user
        @Query("SELECT COUNT(m) FROM Message m WHERE m.conversation = :conversation " +
                      "AND m.receiver = :user AND m.read = false")
        long countUnreadMessagesInConversation(@Param("conversation") Conversation conversation,
                      @Param("user") User user);
 
+       // Unread counts as stored in messages for one page of users, used to reconcile the Redis counters
+       @Query("SELECT m.receiver.id, c.id, COUNT(m) FROM Message m JOIN m.conversation c " +
+                     "WHERE m.receiver.id IN :receiverIds AND m.read = false " +
+                     "AND m.id > COALESCE(CASE WHEN c.user1 = m.receiver THEN c.lastReadMessageIdUser1 " +
+                     "ELSE c.lastReadMessageIdUser2 END, 0) " +
+                     "GROUP BY m.receiver.id, c.id")
+       List<Object[]> countUnreadByConversationForReceivers(@Param("receiverIds") Collection<Long> receiverIds);
+
        // Mark messages as read
        @Modifying
        @Transactional
@@ -44,6 +69,16 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
        // Get last message in conversation
        Optional<Message> findTopByConversationOrderByCreatedAtDesc(Conversation conversation);
 
+       // Conversations holding messages older than the cutoff, in id order for resumable paging
+       @Query("SELECT DISTINCT m.conversation.id FROM Message m WHERE m.createdAt < :cutoff " +
+                     "AND m.conversation.id > :afterConversationId ORDER BY m.conversation.id")
+       List<Long> findConversationIdsWithMessagesBefore(@Param("cutoff") LocalDateTime cutoff,
+                     @Param("afterConversationId") Long afterConversationId, Pageable limit);
+
+       @Modifying
+       @Query("DELETE FROM Message m WHERE m.id IN :ids")
+       int deleteByIds(@Param("ids") List<Long> ids);
+
        // Delete messages older than specified date
        @Modifying
        @Transactional
@@ -58,6 +93,55 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
        // Find messages by conversation
        List<Message> findByConversation(Conversation conversation);
 
+       // What the chat search index needs from a message, no entities or joins loaded
+       interface SearchSource {
+              Long getId();
+
+              Long getConversationId();
+
+              Long getSenderId();
+
+              Long getReceiverId();
+
+              String getContent();
+
+              String getFileName();
+
+              LocalDateTime getCreatedAt();
+       }
+
+       @Query("SELECT m.id AS id, m.conversation.id AS conversationId, m.sender.id AS senderId, " +
+                     "m.receiver.id AS receiverId, m.content AS content, m.fileName AS fileName, " +
+                     "m.createdAt AS createdAt FROM Message m WHERE m.id IN :ids")
+       List<SearchSource> findSearchSources(@Param("ids") List<Long> ids);
+
+       // A rebuild also needs to know which side deleted the conversation, neither gets it back
+       interface IndexSource extends SearchSource {
+              Boolean getSenderDeleted();
+
+              Boolean getReceiverDeleted();
+       }
+
+       // Index rebuild, walks the primary key in chunks
+       @Query("SELECT m.id AS id, c.id AS conversationId, m.sender.id AS senderId, " +
+                     "m.receiver.id AS receiverId, m.content AS content, m.fileName AS fileName, " +
+                     "m.createdAt AS createdAt, " +
+                     "CASE WHEN c.user1.id = m.sender.id THEN c.user1Deleted ELSE c.user2Deleted END AS senderDeleted, " +
+                     "CASE WHEN c.user1.id = m.receiver.id THEN c.user1Deleted ELSE c.user2Deleted END AS receiverDeleted " +
+                     "FROM Message m JOIN m.conversation c WHERE m.id > :afterId ORDER BY m.id ASC")
+       List<IndexSource> findSearchSourcesAfter(@Param("afterId") Long afterId, Pageable limit);
+
+       @Query("SELECT m.id AS id, c.id AS conversationId, m.sender.id AS senderId, " +
+                     "m.receiver.id AS receiverId, m.content AS content, m.fileName AS fileName, " +
+                     "m.createdAt AS createdAt, " +
+                     "CASE WHEN c.user1.id = m.sender.id THEN c.user1Deleted ELSE c.user2Deleted END AS senderDeleted, " +
+                     "CASE WHEN c.user1.id = m.receiver.id THEN c.user1Deleted ELSE c.user2Deleted END AS receiverDeleted " +
+                     "FROM Message m JOIN m.conversation c WHERE m.id > :afterId " +
+                     "AND ((c.user1.id = :userId AND c.user1Deleted = false) " +
+                     "OR (c.user2.id = :userId AND c.user2Deleted = false)) ORDER BY m.id ASC")
+       List<IndexSource> findSearchSourcesForUserAfter(@Param("userId") Long userId, @Param("afterId") Long afterId,
+                     Pageable limit);
+
        @Modifying
        @Transactional
        @Query("DELETE FROM Message m WHERE m.sender = :user OR m.receiver = :user")
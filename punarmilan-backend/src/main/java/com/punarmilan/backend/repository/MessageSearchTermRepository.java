@@ -0,0 +1,55 @@
+package com.punarmilan.backend.repository;
+
+import com.punarmilan.backend.entity.MessageSearchTerm;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface MessageSearchTermRepository extends JpaRepository<MessageSearchTerm, Long> {
+
+       // Newest messages containing the exact term, an index range on (user_id, term, message_id)
+       @Query("SELECT t.messageId FROM MessageSearchTerm t " +
+                     "WHERE t.userId = :userId AND t.term = :term AND t.messageId < :before " +
+                     "ORDER BY t.messageId DESC")
+       List<Long> findMessageIds(@Param("userId") Long userId, @Param("term") String term,
+                     @Param("before") Long before, Pageable limit);
+
+       // The user's words starting with the prefix, read in index order off (user_id, term, message_id)
+       @Query("SELECT DISTINCT t.term FROM MessageSearchTerm t " +
+                     "WHERE t.userId = :userId AND t.term LIKE :prefix ORDER BY t.term")
+       List<String> findTermsByPrefix(@Param("userId") Long userId, @Param("prefix") String prefix, Pageable limit);
+
+       // [messageId, conversationId] of the user's postings, to find hits that moved to the archive
+       @Query("SELECT DISTINCT t.messageId, t.conversationId FROM MessageSearchTerm t " +
+                     "WHERE t.userId = :userId AND t.messageId IN :messageIds")
+       List<Object[]> findConversationIds(@Param("userId") Long userId,
+                     @Param("messageIds") Collection<Long> messageIds);
+
+       @Modifying
+       @Transactional
+       @Query("DELETE FROM MessageSearchTerm t WHERE t.userId = :userId AND t.conversationId = :conversationId")
+       int deleteByUserAndConversation(@Param("userId") Long userId, @Param("conversationId") Long conversationId);
+
+       @Modifying
+       @Transactional
+       @Query("DELETE FROM MessageSearchTerm t WHERE t.userId = :userId")
+       int deleteByUser(@Param("userId") Long userId);
+
+       // Every posting of the user's conversations, theirs and the other side's
+       @Modifying
+       @Transactional
+       @Query("DELETE FROM MessageSearchTerm t WHERE t.conversationId IN " +
+                     "(SELECT c.id FROM Conversation c WHERE c.user1.id = :userId OR c.user2.id = :userId)")
+       int deleteByConversationsOfUser(@Param("userId") Long userId);
+
+       @Modifying
+       @Transactional
+       @Query("DELETE FROM MessageSearchTerm t WHERE t.messageId IN :messageIds")
+       int deleteByMessageIds(@Param("messageIds") List<Long> messageIds);
+}
@@ -3,8 +3,12 @@ package com.punarmilan.backend.repository;
 import com.punarmilan.backend.entity.NotificationPreference;
 import com.punarmilan.backend.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -12,4 +16,7 @@ public interface NotificationPreferenceRepository extends JpaRepository<Notifica
     Optional<NotificationPreference> findByUser(User user);
 
     Optional<NotificationPreference> findByUserId(Long userId);
+
+    @Query("SELECT p FROM NotificationPreference p WHERE p.user.id IN :userIds")
+    List<NotificationPreference> findByUserIds(@Param("userIds") Collection<Long> userIds);
 }
@@ -45,16 +45,29 @@ public interface NotificationRepository extends JpaRepository<Notification, Long
     @Query("DELETE FROM Notification n WHERE n.user = :user AND n.createdAt < :cutoffDate")
     int deleteOldNotifications(@Param("user") User user, @Param("cutoffDate") LocalDateTime cutoffDate);
 
-    // Find similar notifications (to avoid duplicates)
-    @Query("SELECT n FROM Notification n WHERE n.user = :user AND n.type = :type " +
-            "AND n.relatedId = :relatedId ORDER BY n.createdAt DESC")
-    List<Notification> findSimilarNotifications(@Param("user") User user,
-            @Param("type") Notification.NotificationType type,
-            @Param("relatedId") Long relatedId);
+    // Created or bumped after the (createdAt, id) a reconnecting client last saw, newest first
+    @Query("SELECT n FROM Notification n WHERE n.user.id = :userId AND (n.createdAt > :since " +
+            "OR (n.createdAt = :since AND n.id > :afterId)) ORDER BY n.createdAt DESC, n.id DESC")
+    List<Notification> findChangedSince(@Param("userId") Long userId, @Param("since") LocalDateTime since,
+            @Param("afterId") Long afterId, Pageable pageable);
 
     // Count by user and type
     long countByUserAndTypeAndReadFalse(User user, Notification.NotificationType type);
 
+    interface TypeCount {
+        Notification.NotificationType getNotificationType();
+
+        long getTotal();
+    }
+
+    // Unread per type in one pass over the (user_id, is_read, type) index
+    @Query("SELECT n.type AS notificationType, COUNT(n) AS total FROM Notification n " +
+            "WHERE n.user.id = :userId AND n.read = false GROUP BY n.type")
+    List<TypeCount> countUnreadByType(@Param("userId") Long userId);
+
+    @Query("SELECT COUNT(n) FROM Notification n WHERE n.user.id = :userId AND n.seen = false")
+    long countUnseen(@Param("userId") Long userId);
+
     // List by user
     List<Notification> findByUser(User user);
 
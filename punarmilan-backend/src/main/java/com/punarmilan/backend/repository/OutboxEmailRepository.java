@@ -0,0 +1,73 @@
+package com.punarmilan.backend.repository;
+
+import com.punarmilan.backend.entity.OutboxEmail;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OutboxEmailRepository extends JpaRepository<OutboxEmail, Long> {
+
+    List<OutboxEmail> findTop50ByStatusOrderByIdDesc(OutboxEmail.Status status);
+
+    List<OutboxEmail> findByClaimToken(String claimToken);
+
+    // Due for a first try or a retry, or claimed by a sender that died; most urgent first
+    @Query("SELECT e.id FROM OutboxEmail e WHERE (e.status = 'PENDING' AND e.nextAttemptAt <= :now) " +
+           "OR (e.status = 'SENDING' AND e.lockedUntil < :now) ORDER BY e.priority, e.nextAttemptAt")
+    List<Long> findDue(@Param("now") LocalDateTime now, Pageable pageable);
+
+    // Rows another node claimed first are left out, read back what we got by token
+    @Modifying
+    @Transactional
+    @Query("UPDATE OutboxEmail e SET e.status = 'SENDING', e.claimToken = :token, e.lockedUntil = :lockedUntil " +
+           "WHERE e.id IN :ids AND ((e.status = 'PENDING' AND e.nextAttemptAt <= :now) " +
+           "OR (e.status = 'SENDING' AND e.lockedUntil < :now))")
+    int claim(@Param("ids") Collection<Long> ids, @Param("token") String token,
+              @Param("now") LocalDateTime now, @Param("lockedUntil") LocalDateTime lockedUntil);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE OutboxEmail e SET e.status = 'SENT', e.attempts = e.attempts + 1, e.sentAt = :now, " +
+           "e.claimToken = NULL, e.lockedUntil = NULL, e.lastError = NULL " +
+           "WHERE e.id IN :ids AND e.claimToken = :token")
+    int markSent(@Param("ids") Collection<Long> ids, @Param("token") String token, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE OutboxEmail e SET e.status = 'PENDING', e.attempts = e.attempts + 1, " +
+           "e.nextAttemptAt = :nextAttemptAt, e.lastError = :error, e.claimToken = NULL, e.lockedUntil = NULL " +
+           "WHERE e.id = :id AND e.claimToken = :token")
+    int retryLater(@Param("id") Long id, @Param("token") String token,
+                   @Param("nextAttemptAt") LocalDateTime nextAttemptAt, @Param("error") String error);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE OutboxEmail e SET e.status = 'DEAD', e.attempts = e.attempts + 1, e.lastError = :error, " +
+           "e.claimToken = NULL, e.lockedUntil = NULL " +
+           "WHERE e.id = :id AND e.claimToken = :token")
+    int markDead(@Param("id") Long id, @Param("token") String token, @Param("error") String error);
+
+    // Over the domain's rate, back in the queue without counting as an attempt
+    @Modifying
+    @Transactional
+    @Query("UPDATE OutboxEmail e SET e.status = 'PENDING', e.nextAttemptAt = :nextAttemptAt, " +
+           "e.claimToken = NULL, e.lockedUntil = NULL " +
+           "WHERE e.id IN :ids AND e.claimToken = :token")
+    int release(@Param("ids") Collection<Long> ids, @Param("token") String token,
+                @Param("nextAttemptAt") LocalDateTime nextAttemptAt);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE OutboxEmail e SET e.status = 'PENDING', e.attempts = 0, e.nextAttemptAt = :now " +
+           "WHERE e.id = :id AND e.status = 'DEAD'")
+    int requeue(@Param("id") Long id, @Param("now") LocalDateTime now);
+}
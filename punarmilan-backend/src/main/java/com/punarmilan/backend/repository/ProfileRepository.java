@@ -10,6 +10,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -91,4 +92,12 @@ public interface ProfileRepository extends JpaRepository<Profile, Long> {
         Page<Profile> findByGenderIgnoreCase(String gender, Pageable pageable);
 
         List<Profile> findAllByUserIn(List<User> users);
+
+        @Query("SELECT p FROM Profile p JOIN FETCH p.user WHERE p.user.id IN :userIds")
+        List<Profile> findAllByUserIdIn(@Param("userIds") Collection<Long> userIds);
+
+        // Pool the precomputed suggestions are scored from, most recently updated first
+        @Query("SELECT p FROM Profile p JOIN FETCH p.user u WHERE u.active = true AND u.hidden = false " +
+                        "AND p.profileComplete = true ORDER BY p.updatedAt DESC")
+        List<Profile> findSuggestionCandidates(Pageable pageable);
 }
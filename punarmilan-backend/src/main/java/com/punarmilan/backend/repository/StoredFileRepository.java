@@ -0,0 +1,43 @@
+package com.punarmilan.backend.repository;
+
+import com.punarmilan.backend.entity.StoredFile;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface StoredFileRepository extends JpaRepository<StoredFile, String> {
+
+       // Insert with one reference, or add a reference to an existing blob
+       @Modifying
+       @Query(value = "INSERT INTO stored_files " +
+                     "(storage_key, content_type, size_bytes, ref_count, created_at, updated_at) " +
+                     "VALUES (:key, :contentType, :size, 1, :now, :now) " +
+                     "ON DUPLICATE KEY UPDATE ref_count = ref_count + 1, updated_at = :now",
+                     nativeQuery = true)
+       int addReference(@Param("key") String key, @Param("contentType") String contentType,
+                     @Param("size") long size, @Param("now") LocalDateTime now);
+
+       @Modifying
+       @Query("UPDATE StoredFile f SET f.refCount = f.refCount + 1, f.updatedAt = :now WHERE f.storageKey = :key")
+       int incrementReference(@Param("key") String key, @Param("now") LocalDateTime now);
+
+       @Modifying
+       @Query("UPDATE StoredFile f SET f.refCount = f.refCount - 1, f.updatedAt = :now " +
+                     "WHERE f.storageKey = :key AND f.refCount > 0")
+       int releaseReference(@Param("key") String key, @Param("now") LocalDateTime now);
+
+       @Query("SELECT f.storageKey FROM StoredFile f WHERE f.refCount <= 0 AND f.updatedAt < :before")
+       List<String> findUnreferencedKeys(@Param("before") LocalDateTime before, Pageable pageable);
+
+       @Lock(LockModeType.PESSIMISTIC_WRITE)
+       @Query("SELECT f FROM StoredFile f WHERE f.storageKey = :key")
+       Optional<StoredFile> findByKeyForUpdate(@Param("key") String key);
+}
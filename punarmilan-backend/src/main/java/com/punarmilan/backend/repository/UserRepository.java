@@ -1,6 +1,7 @@
 package com.punarmilan.backend.repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -43,6 +44,15 @@ public interface UserRepository extends JpaRepository<User, Long> {
     @Query("SELECT u FROM User u WHERE u.active = true AND u.id != :userId")
     List<User> findActiveUsersExcept(@Param("userId") Long userId);
 
+    long countByActiveTrue();
+
+    // Keyset page of active users for mass sends, walk it with the last id seen
+    @Query("SELECT u FROM User u WHERE u.active = true AND u.id > :afterId ORDER BY u.id")
+    List<User> findActiveAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    @Query("SELECT u FROM User u WHERE u.id IN :ids ORDER BY u.id")
+    List<User> findByIdsOrdered(@Param("ids") Collection<Long> ids);
+
     // ✅ FIXED: Use 'u.active' (field name) not 'u.isActive'
     @Query("SELECT u FROM User u WHERE u.active = true AND u.createdAt >= :date")
     List<User> findNewUsersSince(@Param("date") LocalDateTime date);
@@ -10,6 +10,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -36,6 +37,16 @@ public interface UserViewHistoryRepository extends JpaRepository<UserViewHistory
     @Query("SELECT v FROM UserViewHistory v WHERE v.viewer = :viewer AND v.viewedAt >= :date")
     List<UserViewHistory> findTodayViews(@Param("viewer") User viewer, @Param("date") LocalDateTime date);
 
+    // [viewedUserId, viewerId, lastViewedAt] for a chunk of users, newest first, via idx_viewed_user_at
+    @Query("SELECT v.viewedUser.id, v.viewer.id, MAX(v.viewedAt) FROM UserViewHistory v " +
+            "WHERE v.viewedUser.id IN :userIds AND v.viewedAt >= :since " +
+            "GROUP BY v.viewedUser.id, v.viewer.id ORDER BY MAX(v.viewedAt) DESC")
+    List<Object[]> findViewersSince(@Param("userIds") Collection<Long> userIds, @Param("since") LocalDateTime since);
+
+    // [viewerId, viewedUserId] of every profile these users have opened
+    @Query("SELECT DISTINCT v.viewer.id, v.viewedUser.id FROM UserViewHistory v WHERE v.viewer.id IN :viewerIds")
+    List<Object[]> findViewedPairs(@Param("viewerIds") Collection<Long> viewerIds);
+
     @org.springframework.data.jpa.repository.Modifying
     @org.springframework.transaction.annotation.Transactional
     @Query("DELETE FROM UserViewHistory v WHERE v.viewer = :user OR v.viewedUser = :user")
@@ -74,9 +74,9 @@ public interface AdminService {
 
     void cleanupOldData(int days);
 
-    void sendBulkNotification(List<Long> userIds, String title, String message);
+    FanoutJobDto sendBulkNotification(List<Long> userIds, String title, String message);
 
     void exportData(String dataType, LocalDateTime start, LocalDateTime end);
 
-    void blastProfile(Long profileUserId);
+    FanoutJobDto blastProfile(Long profileUserId);
 }
\ No newline at end of file
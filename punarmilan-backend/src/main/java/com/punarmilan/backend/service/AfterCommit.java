@@ -0,0 +1,34 @@
+package com.punarmilan.backend.service;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Runs side effects (cache writes, broadcasts, hand-offs to workers) once the
+ * surrounding transaction has committed, or right away outside of one.
+ *
+ * The action runs in the completion phase rather than in afterCommit. The
+ * transaction manager collects synchronizations again for that phase, so an
+ * action registered from another synchronization's afterCommit, for example
+ * an AFTER_COMMIT event listener, still runs instead of being dropped.
+ */
+public final class AfterCommit {
+
+    private AfterCommit() {
+    }
+
+    public static void run(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    action.run();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,127 @@
+package com.punarmilan.backend.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * One daemon worker that takes items off a queue and hands them to a handler
+ * in batches. After the first item it keeps collecting until the batch reaches
+ * its size or the linger time runs out; with no linger it only takes what is
+ * already waiting. The size of a batch is the summed weight of its items, so
+ * an item that stands for several units of work counts as that many.
+ *
+ * Stopping lets the worker finish the batch it is on and leave at its next
+ * idle poll, waits for it, then hands whatever is still queued to the handler
+ * on the calling thread, in batches of the same size. A worker that is still
+ * busy after the wait is left running and the queue drained alongside it.
+ */
+@Slf4j
+public final class BatchDrainer<T> {
+
+    private static final long STOP_TIMEOUT_MILLIS = 5000;
+
+    private final String name;
+    private final BlockingQueue<T> queue;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final ToIntFunction<T> weight;
+    private final Consumer<List<T>> handler;
+    private volatile boolean running = true;
+    private volatile List<T> unfinished = List.of();
+    private Thread worker;
+
+    public BatchDrainer(String name, BlockingQueue<T> queue, int batchSize, long lingerMillis,
+            ToIntFunction<T> weight, Consumer<List<T>> handler) {
+        this.name = name;
+        this.queue = queue;
+        this.batchSize = Math.max(1, batchSize);
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, lingerMillis));
+        this.weight = weight;
+        this.handler = handler;
+    }
+
+    public void start() {
+        worker = new Thread(this::drainLoop, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public void stop() {
+        running = false;
+        if (worker != null) {
+            try {
+                worker.join(STOP_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (worker.isAlive()) {
+                log.warn("{} still busy after {} ms, draining its queue alongside it", name, STOP_TIMEOUT_MILLIS);
+            }
+        }
+        // A batch the worker was collecting when it got interrupted goes first
+        List<T> rest = new ArrayList<>(unfinished);
+        queue.drainTo(rest);
+        List<T> batch = new ArrayList<>();
+        int size = 0;
+        for (T item : rest) {
+            batch.add(item);
+            size += weight.applyAsInt(item);
+            if (size >= batchSize) {
+                handle(batch);
+                batch = new ArrayList<>();
+                size = 0;
+            }
+        }
+        if (!batch.isEmpty()) {
+            handle(batch);
+        }
+    }
+
+    // ==================== PRIVATE HELPER METHODS ====================
+
+    private void drainLoop() {
+        List<T> batch = new ArrayList<>();
+        while (running) {
+            try {
+                T first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                int size = weight.applyAsInt(first);
+                long deadline = System.nanoTime() + lingerNanos;
+                while (size < batchSize) {
+                    T next = queue.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    size += weight.applyAsInt(next);
+                }
+                List<T> full = batch;
+                batch = new ArrayList<>();
+                handler.accept(full);
+            } catch (InterruptedException e) {
+                unfinished = batch;
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("{} batch failed", name, e);
+            }
+        }
+    }
+
+    private void handle(List<T> batch) {
+        try {
+            handler.accept(batch);
+        } catch (Exception e) {
+            log.error("{} batch failed during shutdown", name, e);
+        }
+    }
+}
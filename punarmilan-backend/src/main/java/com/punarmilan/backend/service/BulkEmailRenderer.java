@@ -0,0 +1,145 @@
+package com.punarmilan.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+import org.unbescape.html.HtmlEscape;
+import org.unbescape.html.HtmlEscapeLevel;
+import org.unbescape.html.HtmlEscapeType;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Renders an email once for a whole audience and personalises it per
+ * recipient with string concatenation instead of another Thymeleaf pass.
+ *
+ * The template is rendered with a marker in place of every per-recipient
+ * field, and the output is split at the markers into fixed segments. Markers
+ * carry a random token drawn for each render, so user text in the shared
+ * variables that happens to look like one is left alone. Filling
+ * in a recipient is then one StringBuilder over the segments with the
+ * escaped values in between. Personal fields can only be printed as text
+ * (th:text), never drive th:if or th:each, since those ran with the marker.
+ *
+ * Prepared templates are kept in a small LRU under the caller's key, e.g. the
+ * blasted profile and its last update, so every chunk of a job reuses the
+ * same render. Thymeleaf itself caches the parsed template files.
+ */
+@Service
+public class BulkEmailRenderer {
+
+    private static final String MARKER_PREFIX = "%%PM_";
+    private static final String MARKER_SUFFIX = "%%";
+
+    /**
+     * A rendered body with holes for the personal fields.
+     */
+    public static final class Prepared {
+        private final String[] segments;
+        private final int[] fields;
+        private final int fixedLength;
+
+        private Prepared(String[] segments, int[] fields) {
+            this.segments = segments;
+            this.fields = fields;
+            int length = 0;
+            for (String segment : segments) {
+                length += segment.length();
+            }
+            this.fixedLength = length;
+        }
+
+        /**
+         * The body for one recipient, values in the order the fields were named.
+         */
+        public String render(String... values) {
+            StringBuilder html = new StringBuilder(fixedLength + 32 * fields.length);
+            html.append(segments[0]);
+            for (int i = 0; i < fields.length; i++) {
+                String value = values[fields[i]];
+                if (value != null) {
+                    html.append(escape(value));
+                }
+                html.append(segments[i + 1]);
+            }
+            return html.toString();
+        }
+    }
+
+    private final TemplateEngine templateEngine;
+
+    // Keys in access order, so the render unused the longest is dropped first; guarded by this
+    private final LinkedHashMap<String, Prepared> prepared;
+
+    public BulkEmailRenderer(TemplateEngine templateEngine,
+            @Value("${app.mail.bulk.prepared-cache-size:64}") int cacheSize) {
+        this.templateEngine = templateEngine;
+        this.prepared = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Prepared> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * The template rendered once with the shared variables, cached under key.
+     * The supplier is only asked for them on a cache miss.
+     */
+    public Prepared prepare(String key, String template, Supplier<Map<String, Object>> variables,
+            String... personalFields) {
+        synchronized (this) {
+            Prepared cached = prepared.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        Prepared fresh = prepare(template, variables.get(), personalFields);
+        synchronized (this) {
+            prepared.put(key, fresh);
+        }
+        return fresh;
+    }
+
+    public Prepared prepare(String template, Map<String, Object> variables, String... personalFields) {
+        String prefix = MARKER_PREFIX + UUID.randomUUID().toString().replace("-", "") + "_";
+        Context context = new Context();
+        context.setVariables(variables);
+        for (int i = 0; i < personalFields.length; i++) {
+            context.setVariable(personalFields[i], prefix + i + MARKER_SUFFIX);
+        }
+        return split(templateEngine.process(template, context), prefix);
+    }
+
+    // ==================== PRIVATE HELPER METHODS ====================
+
+    private static Prepared split(String html, String prefix) {
+        List<String> segments = new ArrayList<>();
+        List<Integer> fields = new ArrayList<>();
+        int from = 0;
+        int marker;
+        while ((marker = html.indexOf(prefix, from)) >= 0) {
+            int end = html.indexOf(MARKER_SUFFIX, marker + prefix.length());
+            if (end < 0) {
+                break;
+            }
+            segments.add(html.substring(from, marker));
+            fields.add(Integer.parseInt(html.substring(marker + prefix.length(), end)));
+            from = end + MARKER_SUFFIX.length();
+        }
+        segments.add(html.substring(from));
+        return new Prepared(segments.toArray(String[]::new), fields.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    // Same escaping Thymeleaf applies to th:text
+    private static String escape(String value) {
+        return HtmlEscape.escapeHtml(value, HtmlEscapeType.HTML4_NAMED_REFERENCES_DEFAULT_TO_DECIMAL,
+                HtmlEscapeLevel.LEVEL_1_ONLY_MARKUP_SIGNIFICANT);
+    }
+}
@@ -0,0 +1,139 @@
+package com.punarmilan.backend.service;
+
+import com.punarmilan.backend.service.ConversationCache.ConversationMeta;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.security.Principal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ephemeral typing and "viewing this chat" signals. Nothing here is stored;
+ * membership and block state come from the conversation cache, no older than
+ * its TTL, and every sender gets at most one start frame per conversation per
+ * window, with stop frames only sent after a start actually went out.
+ */
+@Slf4j
+@Service
+public class ChatActivityService {
+
+    public enum Activity {
+        TYPING("/queue/typing", "isTyping"),
+        VIEWING("/queue/presence", "isViewing");
+
+        private final String destination;
+        private final String field;
+
+        Activity(String destination, String field) {
+            this.destination = destination;
+            this.field = field;
+        }
+    }
+
+    private final ConversationCache conversationCache;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final long windowMillis;
+
+    // userId:conversationId:activity -> last frame forwarded
+    private final Map<String, LastFrame> lastFrames = new ConcurrentHashMap<>();
+
+    private record LastFrame(boolean active, long sentAt) {
+    }
+
+    public ChatActivityService(ConversationCache conversationCache,
+            SimpMessagingTemplate messagingTemplate,
+            @Value("${app.chat.activity.throttle-ms:2000}") long windowMillis) {
+        this.conversationCache = conversationCache;
+        this.messagingTemplate = messagingTemplate;
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Forwards the signal to the other participant unless it is coalesced by
+     * the throttle. Returns whether a frame was sent.
+     */
+    public boolean publish(Long userId, boolean hidden, Long conversationId, Activity activity, boolean active) {
+        if (userId == null || conversationId == null || hidden) {
+            return false;
+        }
+
+        ConversationMeta conversation = resolve(conversationId);
+        if (conversation == null || !conversation.hasParticipant(userId) || conversation.isBlocked()) {
+            return false;
+        }
+
+        long now = System.currentTimeMillis();
+        String key = userId + ":" + conversationId + ":" + activity.ordinal();
+        boolean[] send = new boolean[1];
+        lastFrames.compute(key, (k, last) -> {
+            if (active) {
+                // Repeated starts inside the window are dropped
+                if (last != null && last.active() && now - last.sentAt() < windowMillis) {
+                    return last;
+                }
+            } else if (last == null || !last.active()) {
+                // Nothing to clear on the other side
+                return last;
+            }
+            send[0] = true;
+            return new LastFrame(active, now);
+        });
+        if (!send[0]) {
+            return false;
+        }
+
+        Map<String, Object> frame = new HashMap<>();
+        frame.put("conversationId", conversationId);
+        frame.put("userId", userId);
+        frame.put(activity.field, active);
+        frame.put("timestamp", now);
+
+        messagingTemplate.convertAndSendToUser(
+                conversation.otherParticipant(userId).toString(),
+                activity.destination,
+                frame);
+        return true;
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        Principal user = event.getUser();
+        if (user != null) {
+            String prefix = user.getName() + ":";
+            lastFrames.keySet().removeIf(key -> key.startsWith(prefix));
+        }
+    }
+
+    /**
+     * Drops throttle state for senders that went quiet. Runs every minute.
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void evictIdle() {
+        long cutoff = System.currentTimeMillis() - Math.max(windowMillis * 10, 60000);
+        lastFrames.values().removeIf(frame -> frame.sentAt() < cutoff);
+    }
+
+    // ==================== PRIVATE HELPER METHODS ====================
+
+    private ConversationMeta resolve(Long conversationId) {
+        Optional<ConversationMeta> cached = conversationCache.peek(conversationId);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+        // Opening a chat warms the cache; a miss or an expired entry loads once
+        try {
+            return conversationCache.findById(conversationId).orElse(null);
+        } catch (Exception e) {
+            log.debug("Could not resolve conversation {} for activity: {}", conversationId, e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.punarmilan.backend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeType;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Forwards user destination messages to the nodes that own the user's
+ * sessions over Redis pub/sub, and replays frames from other nodes into the
+ * local broker. Each node listens on its own channel so a frame is only
+ * delivered where it is needed.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "app.websocket.cluster.enabled", havingValue = "true")
+public class ClusterMessageRelay implements MessageListener {
+
+    // Set on replayed frames so they are not forwarded again
+    public static final String RELAYED_HEADER = "clusterRelayed";
+
+    private static final String CHANNEL_PREFIX = "ws:relay:";
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final ClusterSessionRegistry sessionRegistry;
+    private final MessageChannel brokerChannel;
+    private final MeterRegistry meterRegistry;
+
+    public ClusterMessageRelay(RedisTemplate<String, Object> redisTemplate,
+            ClusterSessionRegistry sessionRegistry,
+            @Lazy @Qualifier("brokerChannel") MessageChannel brokerChannel,
+            MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.sessionRegistry = sessionRegistry;
+        this.brokerChannel = brokerChannel;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RelayedFrame {
+        private String originNode;
+        private String destination;
+        private String contentType;
+        private byte[] payload;
+        private long sentAt;
+    }
+
+    public String getInboundChannel() {
+        return CHANNEL_PREFIX + sessionRegistry.getNodeId();
+    }
+
+    /**
+     * Publishes the message to every other live node with a session for the user.
+     */
+    public void forward(String userName, Message<?> message) {
+        if (!(message.getPayload() instanceof byte[] payload)) {
+            return;
+        }
+        Set<String> nodes = sessionRegistry.remoteNodesFor(userName);
+        if (nodes.isEmpty()) {
+            return;
+        }
+
+        Object contentType = message.getHeaders().get(MessageHeaders.CONTENT_TYPE);
+        RelayedFrame frame = new RelayedFrame(
+                sessionRegistry.getNodeId(),
+                SimpMessageHeaderAccessor.getDestination(message.getHeaders()),
+                contentType != null ? contentType.toString() : null,
+                payload,
+                System.currentTimeMillis());
+
+        for (String node : nodes) {
+            redisTemplate.convertAndSend(CHANNEL_PREFIX + node, frame);
+            Counter.builder("websocket.cluster.fanout.sent")
+                    .tag("target", node)
+                    .register(meterRegistry)
+                    .increment();
+        }
+    }
+
+    @Override
+    public void onMessage(org.springframework.data.redis.connection.Message message, byte[] pattern) {
+        Object value = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (!(value instanceof RelayedFrame frame)) {
+            log.warn("Ignoring unexpected cluster frame on {}", getInboundChannel());
+            return;
+        }
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(frame.getDestination());
+        if (frame.getContentType() != null) {
+            accessor.setContentType(MimeType.valueOf(frame.getContentType()));
+        }
+        accessor.setHeader(RELAYED_HEADER, Boolean.TRUE);
+        MessageHeaders headers = accessor.getMessageHeaders();
+
+        brokerChannel.send(MessageBuilder.createMessage(frame.getPayload(), headers));
+
+        // Publish to local delivery, includes clock skew between nodes
+        Timer.builder("websocket.cluster.fanout.latency")
+                .tag("origin", frame.getOriginNode())
+                .tag("node", sessionRegistry.getNodeId())
+                .register(meterRegistry)
+                .record(Math.max(0, System.currentTimeMillis() - frame.getSentAt()), TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,182 @@
+package com.punarmilan.backend.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.security.Principal;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks which chat nodes hold WebSocket sessions for which users.
+ *
+ * Each node owns one field in {@code ws:user-nodes:{user}} holding its local
+ * session count, and heartbeats into the {@code ws:nodes} sorted set. Fields
+ * left behind by a node that died are ignored once its heartbeat is stale and
+ * the hash expires when no live node refreshes it.
+ *
+ * Users are keyed by principal name, which WebSocketAuthInterceptor sets to
+ * the user id: the same name convertAndSendToUser puts into /user/{name}/...,
+ * so the relay finds the owning nodes from the destination alone.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "app.websocket.cluster.enabled", havingValue = "true")
+public class ClusterSessionRegistry {
+
+    private static final String USER_NODES_PREFIX = "ws:user-nodes:";
+    private static final String NODES_KEY = "ws:nodes";
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final String nodeId;
+    private final Duration nodeTtl;
+
+    // Local truth, Redis is rebuilt from these on every heartbeat
+    private final Map<String, Integer> localSessions = new ConcurrentHashMap<>();
+    private final Map<String, String> sessionUsers = new ConcurrentHashMap<>();
+
+    private volatile Set<String> liveNodes = Set.of();
+
+    public ClusterSessionRegistry(RedisTemplate<String, Object> redisTemplate,
+            NodeIdentity nodeIdentity,
+            @Value("${app.websocket.cluster.node-ttl-seconds:30}") long nodeTtlSeconds) {
+        this.redisTemplate = redisTemplate;
+        this.nodeId = nodeIdentity.getNodeId();
+        this.nodeTtl = Duration.ofSeconds(nodeTtlSeconds);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @PostConstruct
+    public void register() {
+        log.info("✅ WebSocket cluster node {} starting", nodeId);
+        heartbeat();
+    }
+
+    @EventListener
+    public void onConnected(SessionConnectedEvent event) {
+        Principal user = event.getUser();
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+        if (user == null || sessionId == null || sessionUsers.putIfAbsent(sessionId, user.getName()) != null) {
+            return;
+        }
+        int count = localSessions.merge(user.getName(), 1, Integer::sum);
+        publish(user.getName(), count);
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        String userName = sessionUsers.remove(event.getSessionId());
+        if (userName == null) {
+            return;
+        }
+        Integer remaining = localSessions.computeIfPresent(userName, (key, count) -> count > 1 ? count - 1 : null);
+        publish(userName, remaining == null ? 0 : remaining);
+    }
+
+    /**
+     * Live nodes other than this one that hold at least one session for the user.
+     */
+    public Set<String> remoteNodesFor(String userName) {
+        Map<Object, Object> entries = redisTemplate.opsForHash().entries(USER_NODES_PREFIX + userName);
+        Set<String> nodes = new HashSet<>();
+        Set<String> live = liveNodes;
+        entries.forEach((node, count) -> {
+            String id = node.toString();
+            if (!nodeId.equals(id) && live.contains(id) && count instanceof Number n && n.intValue() > 0) {
+                nodes.add(id);
+            }
+        });
+        return nodes;
+    }
+
+    public int getLocalSessionCount() {
+        return sessionUsers.size();
+    }
+
+    /**
+     * Refreshes this node's heartbeat and re-asserts its user registrations, so
+     * a Redis restart or an expired key heals within one interval. Runs every
+     * 10 seconds by default.
+     */
+    @Scheduled(fixedDelayString = "${app.websocket.cluster.heartbeat-ms:10000}")
+    public void heartbeat() {
+        long now = System.currentTimeMillis();
+        try {
+            redisTemplate.opsForZSet().add(NODES_KEY, nodeId, now);
+            redisTemplate.opsForZSet().removeRangeByScore(NODES_KEY, 0, now - nodeTtl.toMillis() * 10);
+
+            Set<Object> live = redisTemplate.opsForZSet()
+                    .rangeByScore(NODES_KEY, now - nodeTtl.toMillis(), Double.MAX_VALUE);
+            Set<String> ids = new HashSet<>();
+            if (live != null) {
+                live.forEach(id -> ids.add(id.toString()));
+            }
+            liveNodes = ids;
+
+            if (!localSessions.isEmpty()) {
+                redisTemplate.executePipelined(new SessionCallback<Object>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public Object execute(RedisOperations operations) throws DataAccessException {
+                        localSessions.forEach((userName, count) -> {
+                            String key = USER_NODES_PREFIX + userName;
+                            operations.opsForHash().put(key, nodeId, count);
+                            operations.expire(key, nodeTtl.toSeconds() * 3, TimeUnit.SECONDS);
+                        });
+                        return null;
+                    }
+                });
+            }
+        } catch (Exception e) {
+            log.warn("WebSocket cluster heartbeat failed: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void deregister() {
+        try {
+            redisTemplate.opsForZSet().remove(NODES_KEY, nodeId);
+            localSessions.keySet().forEach(userName -> redisTemplate.opsForHash()
+                    .delete(USER_NODES_PREFIX + userName, nodeId));
+        } catch (Exception e) {
+            log.warn("Could not deregister WebSocket cluster node {}: {}", nodeId, e.getMessage());
+        }
+    }
+
+    // ==================== PRIVATE HELPER METHODS ====================
+
+    private void publish(String userName, int count) {
+        String key = USER_NODES_PREFIX + userName;
+        try {
+            if (count > 0) {
+                redisTemplate.opsForHash().put(key, nodeId, count);
+                redisTemplate.expire(key, nodeTtl.multipliedBy(3));
+            } else {
+                redisTemplate.opsForHash().delete(key, nodeId);
+            }
+        } catch (Exception e) {
+            // The next heartbeat re-publishes, local delivery is unaffected
+            log.warn("Could not update session registry for {}: {}", userName, e.getMessage());
+        }
+    }
+}
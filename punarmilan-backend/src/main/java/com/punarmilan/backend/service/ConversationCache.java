@@ -0,0 +1,238 @@
+package com.punarmilan.backend.service;
+
+import com.punarmilan.backend.entity.Conversation;
+import com.punarmilan.backend.repository.ConversationRepository;
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Bounded, short lived cache of conversation participants and block state so
+ * the hot chat paths don't look the conversation up on every message.
+ *
+ * Block changes and deletions evict here and, over Redis pub/sub, on every
+ * other node. The TTL only bounds how long a lost invalidation can linger.
+ * A load that raced with an eviction is not cached.
+ */
+@Slf4j
+@Service
+public class ConversationCache implements MessageListener {
+
+    public static final String INVALIDATION_CHANNEL = "conversations:invalidate";
+
+    // Broadcast payloads: "<userA>:<userB>" for a pair, "user:<id>" for everything of a user
+    private static final String USER_PREFIX = "user:";
+
+    @Value
+    @Builder
+    public static class ConversationMeta {
+        Long id;
+        Long user1Id;
+        Long user2Id;
+        boolean blocked;
+        Long blockedBy;
+        long loadedAt;
+
+        public boolean hasParticipant(Long userId) {
+            return user1Id.equals(userId) || user2Id.equals(userId);
+        }
+
+        public Long otherParticipant(Long userId) {
+            return user1Id.equals(userId) ? user2Id : user1Id;
+        }
+
+        public boolean isUser1(Long userId) {
+            return user1Id.equals(userId);
+        }
+    }
+
+    private final ConversationRepository conversationRepository;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final long ttlMillis;
+
+    // Access ordered maps give us LRU eviction; guarded by this
+    private final LinkedHashMap<String, ConversationMeta> byPair;
+    private final LinkedHashMap<Long, ConversationMeta> byId;
+    private long generation;
+
+    public ConversationCache(ConversationRepository conversationRepository,
+            RedisTemplate<String, Object> redisTemplate,
+            @org.springframework.beans.factory.annotation.Value("${app.chat.conversation-cache.max-size:10000}") int maxSize,
+            @org.springframework.beans.factory.annotation.Value("${app.chat.conversation-cache.ttl-seconds:60}") long ttlSeconds) {
+        this.conversationRepository = conversationRepository;
+        this.redisTemplate = redisTemplate;
+        this.ttlMillis = ttlSeconds * 1000;
+        this.byPair = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ConversationMeta> eldest) {
+                return size() > maxSize;
+            }
+        };
+        this.byId = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, ConversationMeta> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Conversation between two users, loading it on a miss. Empty when none exists.
+     */
+    public Optional<ConversationMeta> findBetween(Long userA, Long userB) {
+        ConversationMeta cached;
+        long loadGeneration;
+        synchronized (this) {
+            cached = fresh(byPair.get(pairKey(userA, userB)));
+            loadGeneration = generation;
+        }
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        return conversationRepository.findConversationBetweenUserIds(userA, userB)
+                .map(conversation -> putIfUnchanged(conversation, loadGeneration));
+    }
+
+    public Optional<ConversationMeta> findById(Long conversationId) {
+        ConversationMeta cached;
+        long loadGeneration;
+        synchronized (this) {
+            cached = fresh(byId.get(conversationId));
+            loadGeneration = generation;
+        }
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        return conversationRepository.findById(conversationId)
+                .map(conversation -> putIfUnchanged(conversation, loadGeneration));
+    }
+
+    /**
+     * Cached entry if it is still within the TTL, never touches the database.
+     * Empty on a miss or once the entry expired, so block state read through
+     * here is no older than a lookup would give.
+     */
+    public synchronized Optional<ConversationMeta> peek(Long conversationId) {
+        return Optional.ofNullable(fresh(byId.get(conversationId)));
+    }
+
+    public ConversationMeta put(Conversation conversation) {
+        ConversationMeta meta = toMeta(conversation);
+        synchronized (this) {
+            store(meta);
+        }
+        return meta;
+    }
+
+    /**
+     * Drops the pair here and on every other node, after commit when called
+     * inside a transaction.
+     */
+    public void evict(Long userA, Long userB) {
+        String pairKey = pairKey(userA, userB);
+        evictPairLocally(pairKey);
+        broadcastAfterCommit(pairKey, () -> evictPairLocally(pairKey));
+    }
+
+    /**
+     * Drops every conversation of the user here and on every other node.
+     */
+    public void evictUser(Long userId) {
+        evictUserLocally(userId);
+        broadcastAfterCommit(USER_PREFIX + userId, () -> evictUserLocally(userId));
+    }
+
+    public synchronized void clear() {
+        byPair.clear();
+        byId.clear();
+        generation++;
+        log.debug("Conversation cache cleared");
+    }
+
+    @Override
+    public void onMessage(org.springframework.data.redis.connection.Message message, byte[] pattern) {
+        Object value = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (!(value instanceof String key)) {
+            return;
+        }
+        if (key.startsWith(USER_PREFIX)) {
+            evictUserLocally(Long.valueOf(key.substring(USER_PREFIX.length())));
+        } else {
+            evictPairLocally(key);
+        }
+    }
+
+    // ==================== PRIVATE HELPER METHODS ====================
+
+    private ConversationMeta putIfUnchanged(Conversation conversation, long loadGeneration) {
+        ConversationMeta meta = toMeta(conversation);
+        synchronized (this) {
+            // Something was evicted while we read, what we have may predate it
+            if (generation == loadGeneration) {
+                store(meta);
+            }
+        }
+        return meta;
+    }
+
+    private void store(ConversationMeta meta) {
+        byPair.put(pairKey(meta.getUser1Id(), meta.getUser2Id()), meta);
+        byId.put(meta.getId(), meta);
+    }
+
+    private static ConversationMeta toMeta(Conversation conversation) {
+        return ConversationMeta.builder()
+                .id(conversation.getId())
+                .user1Id(conversation.getUser1().getId())
+                .user2Id(conversation.getUser2().getId())
+                .blocked(Boolean.TRUE.equals(conversation.getBlocked()))
+                .blockedBy(conversation.getBlockedBy())
+                .loadedAt(System.currentTimeMillis())
+                .build();
+    }
+
+    private synchronized void evictPairLocally(String pairKey) {
+        ConversationMeta removed = byPair.remove(pairKey);
+        if (removed != null) {
+            byId.remove(removed.getId());
+        }
+        generation++;
+    }
+
+    private synchronized void evictUserLocally(Long userId) {
+        byPair.values().removeIf(meta -> meta.hasParticipant(userId));
+        byId.values().removeIf(meta -> meta.hasParticipant(userId));
+        generation++;
+    }
+
+    // Evicts again once the change is visible, so a reload in between can't keep the old state
+    private void broadcastAfterCommit(String key, Runnable evictAgain) {
+        Runnable broadcast = () -> {
+            evictAgain.run();
+            try {
+                redisTemplate.convertAndSend(INVALIDATION_CHANNEL, key);
+            } catch (Exception e) {
+                log.warn("Could not broadcast conversation cache eviction {}: {}", key, e.getMessage());
+            }
+        };
+        AfterCommit.run(broadcast);
+    }
+
+    private ConversationMeta fresh(ConversationMeta meta) {
+        if (meta == null || System.currentTimeMillis() - meta.getLoadedAt() > ttlMillis) {
+            return null;
+        }
+        return meta;
+    }
+
+    private static String pairKey(Long userA, Long userB) {
+        return userA < userB ? userA + ":" + userB : userB + ":" + userA;
+    }
+}
@@ -0,0 +1,99 @@
+package com.punarmilan.backend.service;
+
+import com.punarmilan.backend.dto.ConversationDeltaDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects conversation list changes per user and pushes them as one compact
+ * frame per tick on {@code /queue/conversation-deltas}. During an active chat
+ * every message used to push a full conversation row to both users, most of
+ * them superseded within milliseconds. Now all changes to a row within a
+ * tick merge into one delta.
+ */
+@Service
+public class ConversationDeltaAggregator {
+
+    public static final String DESTINATION = "/queue/conversation-deltas";
+
+    private final RealtimeDispatcher realtimeDispatcher;
+    private final Counter recordedCounter;
+    private final Counter framesCounter;
+
+    // userId -> conversationId -> merged delta, inner maps are only touched inside compute/remove
+    private final Map<Long, Map<Long, ConversationDeltaDto>> pending = new ConcurrentHashMap<>();
+
+    public ConversationDeltaAggregator(RealtimeDispatcher realtimeDispatcher, MeterRegistry meterRegistry) {
+        this.realtimeDispatcher = realtimeDispatcher;
+        this.recordedCounter = Counter.builder("realtime.delta.recorded")
+                .description("Conversation list changes recorded")
+                .register(meterRegistry);
+        this.framesCounter = Counter.builder("realtime.delta.frames")
+                .description("Delta frames pushed")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Records a change, after commit when called inside a transaction.
+     */
+    public void record(Long userId, ConversationDeltaDto delta) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            merge(userId, delta);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                merge(userId, delta);
+            }
+        });
+    }
+
+    /**
+     * Pushes one frame per user with everything recorded since the last tick.
+     * Runs every 250 ms by default.
+     */
+    @Scheduled(fixedDelayString = "${app.chat.delta.flush-ms:250}")
+    public void flush() {
+        for (Long userId : new ArrayList<>(pending.keySet())) {
+            Map<Long, ConversationDeltaDto> deltas = pending.remove(userId);
+            if (deltas == null || deltas.isEmpty()) {
+                continue;
+            }
+            realtimeDispatcher.send(userId.toString(), DESTINATION, List.copyOf(deltas.values()), "deltas:" + userId);
+            framesCounter.increment();
+        }
+    }
+
+    // ==================== PRIVATE HELPER METHODS ====================
+
+    private void merge(Long userId, ConversationDeltaDto delta) {
+        recordedCounter.increment();
+        pending.compute(userId, (key, deltas) -> {
+            Map<Long, ConversationDeltaDto> merged = deltas != null ? deltas : new HashMap<>();
+            merged.merge(delta.getConversationId(), delta, ConversationDeltaAggregator::combine);
+            return merged;
+        });
+    }
+
+    // Fields set on the newer delta win, the rest carry over
+    private static ConversationDeltaDto combine(ConversationDeltaDto older, ConversationDeltaDto newer) {
+        return ConversationDeltaDto.builder()
+                .conversationId(older.getConversationId())
+                .lastMessage(newer.getLastMessage() != null ? newer.getLastMessage() : older.getLastMessage())
+                .lastMessageTime(newer.getLastMessageTime() != null ? newer.getLastMessageTime() : older.getLastMessageTime())
+                .lastMessageBy(newer.getLastMessageBy() != null ? newer.getLastMessageBy() : older.getLastMessageBy())
+                .unreadCount(newer.getUnreadCount() != null ? newer.getUnreadCount() : older.getUnreadCount())
+                .build();
+    }
+}
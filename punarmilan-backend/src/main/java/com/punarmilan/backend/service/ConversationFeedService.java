@@ -0,0 +1,146 @@
+package com.punarmilan.backend.service;
+
+import com.punarmilan.backend.dto.ConversationDeltaDto;
+import com.punarmilan.backend.dto.ConversationDto;
+import com.punarmilan.backend.dto.MessageDto;
+import com.punarmilan.backend.repository.ConversationRepository.InboxEntry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Keeps every client's view of its conversations current: message frames,
+ * full or merged conversation rows, receipt watermarks and typing signals,
+ * together with the cached inbox rows those views are rendered from.
+ * Frames of one conversation go out after commit and in order.
+ */
+@Service
+public class ConversationFeedService {
+
+    private final RealtimeDispatcher realtimeDispatcher;
+    private final ConversationDeltaAggregator conversationDeltaAggregator;
+    private final InboxService inboxService;
+    private final ChatActivityService chatActivityService;
+    private final boolean legacyRows;
+
+    public ConversationFeedService(RealtimeDispatcher realtimeDispatcher,
+            ConversationDeltaAggregator conversationDeltaAggregator,
+            InboxService inboxService,
+            ChatActivityService chatActivityService,
+            @Value("${app.chat.delta.legacy-rows:false}") boolean legacyRows) {
+        this.realtimeDispatcher = realtimeDispatcher;
+        this.conversationDeltaAggregator = conversationDeltaAggregator;
+        this.inboxService = inboxService;
+        this.chatActivityService = chatActivityService;
+        this.legacyRows = legacyRows;
+    }
+
+    public void pushMessage(Long recipientId, Long conversationId, MessageDto message) {
+        realtimeDispatcher.send(recipientId.toString(), "/queue/messages", message, conversationKey(conversationId));
+    }
+
+    /**
+     * Updates both participants' rows after a message. A new row needs names
+     * and photos, so it goes out in full; existing rows only change preview
+     * and unread count, merged per tick. Full rows for existing conversations
+     * are only sent when legacy-rows is switched on for clients that have not
+     * moved to /queue/conversation-deltas.
+     */
+    public void conversationUpdated(Long conversationId, boolean created, Long senderId,
+            ConversationDto senderRow, Long receiverId, ConversationDto receiverRow) {
+        if (created) {
+            pushRow(senderId, conversationId, senderRow);
+            pushRow(receiverId, conversationId, receiverRow);
+        } else {
+            conversationDeltaAggregator.record(senderId, toDelta(senderRow));
+            conversationDeltaAggregator.record(receiverId, toDelta(receiverRow));
+            if (legacyRows) {
+                pushRow(senderId, conversationId, senderRow);
+                pushRow(receiverId, conversationId, receiverRow);
+            }
+        }
+
+        // The same rows keep both inboxes current
+        inboxService.record(senderId, senderRow, created);
+        inboxService.record(receiverId, receiverRow, created);
+    }
+
+    /**
+     * Sends a read or delivery watermark. Watermarks only move forward, so the
+     * newest queued one replaces any older one still waiting.
+     */
+    public void pushWatermark(Long recipientId, String destination, Long conversationId, Long readerId,
+            Map<String, Object> receipt) {
+        // Both inbox rows carry these watermarks
+        inboxService.evictRow(conversationId, recipientId, readerId);
+
+        realtimeDispatcher.send(
+                recipientId.toString(),
+                destination,
+                receipt,
+                conversationKey(conversationId),
+                recipientId + ":" + destination + ":" + conversationId);
+    }
+
+    /**
+     * The user's other devices clear the badge too.
+     */
+    public void unreadCleared(Long userId, Long conversationId) {
+        conversationDeltaAggregator.record(userId, ConversationDeltaDto.builder()
+                .conversationId(conversationId)
+                .unreadCount(0)
+                .build());
+    }
+
+    public boolean publishActivity(Long userId, boolean hidden, Long conversationId,
+            ChatActivityService.Activity activity, boolean active) {
+        return chatActivityService.publish(userId, hidden, conversationId, activity, active);
+    }
+
+    /**
+     * A page of the user's inbox, or null when the cached inbox is unavailable.
+     */
+    public Page<ConversationDto> inboxPage(Long userId, Pageable pageable, Supplier<List<InboxEntry>> entries,
+            Function<List<Long>, Map<Long, ConversationDto>> rows) {
+        return inboxService.getPage(userId, pageable, entries, rows);
+    }
+
+    public void conversationRemoved(Long userId, Long conversationId) {
+        inboxService.remove(userId, conversationId);
+    }
+
+    public void inboxChanged(Long userId) {
+        inboxService.invalidate(userId);
+    }
+
+    // ==================== PRIVATE HELPER METHODS ====================
+
+    private void pushRow(Long userId, Long conversationId, ConversationDto row) {
+        realtimeDispatcher.send(
+                userId.toString(),
+                "/queue/conversations",
+                row,
+                conversationKey(conversationId),
+                userId + ":/queue/conversations:" + conversationId);
+    }
+
+    private static ConversationDeltaDto toDelta(ConversationDto conversation) {
+        return ConversationDeltaDto.builder()
+                .conversationId(conversation.getId())
+                .lastMessage(conversation.getLastMessage())
+                .lastMessageTime(conversation.getLastMessageTime())
+                .lastMessageBy(conversation.getLastMessageBy())
+                .unreadCount(conversation.getUnreadCount())
+                .build();
+    }
+
+    private static String conversationKey(Long conversationId) {
+        return "conversation:" + conversationId;
+    }
+}
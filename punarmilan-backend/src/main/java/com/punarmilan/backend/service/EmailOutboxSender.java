@@ -0,0 +1,303 @@
+package com.punarmilan.backend.service;
+
+import com.punarmilan.backend.entity.OutboxEmail;
+import com.punarmilan.backend.repository.OutboxEmailRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.internet.MimeMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drains the email outbox on a pool of its own, so a digest run can no longer
+ * take the threads chat notifications need.
+ *
+ * Every poll claims a batch of due rows with a token, holds back what is over
+ * its recipient domain's rate, and splits the rest into one slice per
+ * connection. A slice is sent with a single send call, i.e. one SMTP
+ * conversation for many messages, and the failures come back per message.
+ * Failed messages are retried with exponential backoff and go DEAD after the
+ * last attempt, or at once when the server rejected the address. A claim
+ * lapses after the lease, so rows of a sender that died are sent again.
+ *
+ * Rate limits are per node; with several nodes a domain sees up to that
+ * many times its configured rate.
+ */
+@Slf4j
+@Service
+public class EmailOutboxSender {
+
+    private final OutboxEmailRepository outboxRepository;
+    private final JavaMailSender mailSender;
+    private final Executor executor;
+    private final String fromEmail;
+    private final int batchSize;
+    private final int connections;
+    private final int maxAttempts;
+    private final Duration lease;
+    private final Duration backoff;
+    private final Duration maxBackoff;
+    private final double defaultRate;
+    private final Map<String, Double> domainRates;
+
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final AtomicInteger slicesInFlight = new AtomicInteger();
+    private final Counter sentCounter;
+    private final Counter retriedCounter;
+    private final Counter deadCounter;
+    private final Counter deferredCounter;
+
+    public EmailOutboxSender(OutboxEmailRepository outboxRepository,
+            JavaMailSender mailSender,
+            @Qualifier("mailExecutor") Executor executor,
+            MeterRegistry meterRegistry,
+            @Value("${spring.mail.username:noreply@punarmilan.com}") String fromEmail,
+            @Value("${app.mail.outbox.batch-size:200}") int batchSize,
+            @Value("${app.mail.outbox.connections:4}") int connections,
+            @Value("${app.mail.outbox.max-attempts:8}") int maxAttempts,
+            @Value("${app.mail.outbox.lease-seconds:300}") long leaseSeconds,
+            @Value("${app.mail.outbox.backoff-seconds:30}") long backoffSeconds,
+            @Value("${app.mail.outbox.max-backoff-seconds:3600}") long maxBackoffSeconds,
+            @Value("${app.mail.outbox.domain-rate-per-second:10}") double defaultRate,
+            @Value("${app.mail.outbox.domain-rates:}") String domainRates) {
+        this.outboxRepository = outboxRepository;
+        this.mailSender = mailSender;
+        this.executor = executor;
+        this.fromEmail = fromEmail;
+        this.batchSize = Math.max(1, batchSize);
+        this.connections = Math.max(1, connections);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.lease = Duration.ofSeconds(leaseSeconds);
+        this.backoff = Duration.ofSeconds(backoffSeconds);
+        this.maxBackoff = Duration.ofSeconds(maxBackoffSeconds);
+        this.defaultRate = defaultRate;
+        this.domainRates = parseRates(domainRates);
+        this.sentCounter = counter(meterRegistry, "sent");
+        this.retriedCounter = counter(meterRegistry, "retried");
+        this.deadCounter = counter(meterRegistry, "dead");
+        this.deferredCounter = counter(meterRegistry, "deferred");
+    }
+
+    /**
+     * Claims the next batch of due emails and hands it to the sender pool,
+     * unless the previous batch is still going out. Runs every second by default.
+     */
+    @Scheduled(fixedDelayString = "${app.mail.outbox.poll-ms:1000}")
+    public void drain() {
+        if (slicesInFlight.get() > 0) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> due = outboxRepository.findDue(now, PageRequest.of(0, batchSize));
+        if (due.isEmpty()) {
+            return;
+        }
+        String token = UUID.randomUUID().toString();
+        if (outboxRepository.claim(due, token, now, now.plus(lease)) == 0) {
+            return;
+        }
+
+        List<OutboxEmail> permitted = new ArrayList<>();
+        List<Long> deferred = new ArrayList<>();
+        for (OutboxEmail email : outboxRepository.findByClaimToken(token)) {
+            if (bucket(email.getDomain()).tryAcquire()) {
+                permitted.add(email);
+            } else {
+                deferred.add(email.getId());
+            }
+        }
+        if (!deferred.isEmpty()) {
+            outboxRepository.release(deferred, token, now.plusSeconds(1));
+            deferredCounter.increment(deferred.size());
+        }
+
+        for (List<OutboxEmail> slice : slices(permitted)) {
+            slicesInFlight.incrementAndGet();
+            try {
+                executor.execute(() -> {
+                    try {
+                        send(slice, token);
+                    } finally {
+                        slicesInFlight.decrementAndGet();
+                    }
+                });
+            } catch (RuntimeException e) {
+                // Pool saturated, the claim lapses and the rows are picked up again
+                slicesInFlight.decrementAndGet();
+                log.warn("Mail sender pool rejected {} emails: {}", slice.size(), e.getMessage());
+            }
+        }
+    }
+
+    // ==================== PRIVATE HELPER METHODS ====================
+
+    private void send(List<OutboxEmail> slice, String token) {
+        Map<MimeMessage, OutboxEmail> messages = new LinkedHashMap<>();
+        for (OutboxEmail email : slice) {
+            try {
+                messages.put(toMessage(email), email);
+            } catch (MessagingException e) {
+                // A malformed address won't get better by waiting
+                dead(email, token, e);
+            }
+        }
+        if (messages.isEmpty()) {
+            return;
+        }
+
+        Map<Object, Exception> failures = Map.of();
+        try {
+            mailSender.send(messages.keySet().toArray(MimeMessage[]::new));
+        } catch (MailSendException e) {
+            failures = e.getFailedMessages();
+        } catch (MailException e) {
+            // Nothing went out, e.g. the login was refused
+            failures = new HashMap<>();
+            for (MimeMessage message : messages.keySet()) {
+                failures.put(message, e);
+            }
+        }
+
+        List<Long> sent = new ArrayList<>();
+        for (Map.Entry<MimeMessage, OutboxEmail> entry : messages.entrySet()) {
+            Exception failure = failures.get(entry.getKey());
+            if (failure == null) {
+                sent.add(entry.getValue().getId());
+            } else if (isPermanent(failure) || entry.getValue().getAttempts() + 1 >= maxAttempts) {
+                dead(entry.getValue(), token, failure);
+            } else {
+                retryLater(entry.getValue(), token, failure);
+            }
+        }
+        if (!sent.isEmpty()) {
+            outboxRepository.markSent(sent, token, LocalDateTime.now());
+            sentCounter.increment(sent.size());
+        }
+    }
+
+    private MimeMessage toMessage(OutboxEmail email) throws MessagingException {
+        MimeMessage message = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(message,
+                MimeMessageHelper.MULTIPART_MODE_MIXED_RELATED,
+                StandardCharsets.UTF_8.name());
+        helper.setTo(email.getRecipient());
+        helper.setSubject(email.getSubject());
+        helper.setText(email.getBody(), true);
+        helper.setFrom(fromEmail);
+        return message;
+    }
+
+    private void retryLater(OutboxEmail email, String token, Exception failure) {
+        // 30s, 1m, 2m, 4m... with some jitter so a recovered server isn't hit all at once
+        long delay = Math.min(maxBackoff.toMillis(), backoff.toMillis() << Math.min(email.getAttempts(), 20));
+        delay += ThreadLocalRandom.current().nextLong(delay / 5 + 1);
+        outboxRepository.retryLater(email.getId(), token, LocalDateTime.now().plusNanos(delay * 1_000_000),
+                describe(failure));
+        retriedCounter.increment();
+        log.warn("Email {} to {} failed (attempt {}), retrying in {} s: {}", email.getId(), email.getRecipient(),
+                email.getAttempts() + 1, delay / 1000, failure.getMessage());
+    }
+
+    private void dead(OutboxEmail email, String token, Exception failure) {
+        outboxRepository.markDead(email.getId(), token, describe(failure));
+        deadCounter.increment();
+        log.error("Email {} to {} given up after {} attempts: {}", email.getId(), email.getRecipient(),
+                email.getAttempts() + 1, failure.getMessage());
+    }
+
+    // The server refused the recipient, e.g. 550 no such user
+    private static boolean isPermanent(Exception failure) {
+        return failure instanceof SendFailedException sendFailed
+                && sendFailed.getInvalidAddresses() != null
+                && sendFailed.getInvalidAddresses().length > 0;
+    }
+
+    private static String describe(Exception failure) {
+        String message = failure.getClass().getSimpleName() + ": " + failure.getMessage();
+        return message.length() > 1000 ? message.substring(0, 1000) : message;
+    }
+
+    private List<List<OutboxEmail>> slices(List<OutboxEmail> emails) {
+        List<List<OutboxEmail>> slices = new ArrayList<>();
+        int size = (emails.size() + connections - 1) / connections;
+        for (int from = 0; from < emails.size(); from += size) {
+            slices.add(emails.subList(from, Math.min(from + size, emails.size())));
+        }
+        return slices;
+    }
+
+    private TokenBucket bucket(String domain) {
+        return buckets.computeIfAbsent(domain, d -> new TokenBucket(domainRates.getOrDefault(d, defaultRate)));
+    }
+
+    // "gmail.com=20,yahoo.com=5"
+    private static Map<String, Double> parseRates(String rates) {
+        Map<String, Double> parsed = new HashMap<>();
+        if (rates == null || rates.isBlank()) {
+            return parsed;
+        }
+        for (String entry : rates.split(",")) {
+            String[] parts = entry.trim().split("=");
+            if (parts.length == 2) {
+                parsed.put(parts[0].trim().toLowerCase(), Double.parseDouble(parts[1].trim()));
+            }
+        }
+        return parsed;
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("email.outbox").tag("result", result).register(meterRegistry);
+    }
+
+    /**
+     * Allows ratePerSecond sends per second with bursts of up to one second's worth.
+     */
+    private static final class TokenBucket {
+        private final double ratePerSecond;
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+
+        private TokenBucket(double ratePerSecond) {
+            this.ratePerSecond = ratePerSecond;
+            this.tokens = Math.max(1, ratePerSecond);
+        }
+
+        synchronized boolean tryAcquire() {
+            if (ratePerSecond <= 0) {
+                return true;
+            }
+            long now = System.nanoTime();
+            tokens = Math.min(Math.max(1, ratePerSecond), tokens + (now - refilledAt) / 1e9 * ratePerSecond);
+            refilledAt = now;
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+    }
+}
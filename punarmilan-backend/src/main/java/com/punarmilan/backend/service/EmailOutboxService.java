@@ -0,0 +1,137 @@
+package com.punarmilan.backend.service;
+
+import com.punarmilan.backend.dto.OutboxEmailDto;
+import com.punarmilan.backend.entity.OutboxEmail;
+import com.punarmilan.backend.exception.BadRequestException;
+import com.punarmilan.backend.exception.ResourceNotFoundException;
+import com.punarmilan.backend.repository.OutboxEmailRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Writes rendered emails to the outbox and lets admins deal with the ones
+ * that could not be delivered. Sending is EmailOutboxSender's job.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class EmailOutboxService {
+
+    private static final String INSERT_SQL = "INSERT INTO email_outbox (kind, recipient, domain, subject, body, "
+            + "status, priority, attempts, next_attempt_at, created_at) VALUES (?, ?, ?, ?, ?, 'PENDING', "
+            + OutboxEmail.PRIORITY_BULK + ", 0, ?, ?)";
+
+    // The user is waiting on these to sign up or get back in
+    private static final Set<String> ACCOUNT_KINDS = Set.of("email-verification", "password-reset");
+
+    private final OutboxEmailRepository outboxRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * One recipient of a bulk send and their personalised body.
+     */
+    public record QueuedEmail(String recipient, String html) {
+    }
+
+    /**
+     * Queues an email in the caller's transaction, it is only sent if that
+     * transaction commits. Account mail is sent ahead of everything else.
+     */
+    @Transactional
+    public void enqueue(String kind, String recipient, String subject, String html) {
+        if (recipient == null || !recipient.contains("@")) {
+            throw new BadRequestException("Invalid email recipient: " + recipient);
+        }
+        outboxRepository.save(OutboxEmail.builder()
+                .kind(kind)
+                .recipient(recipient)
+                .domain(domainOf(recipient))
+                .subject(subject)
+                .body(html)
+                .priority(ACCOUNT_KINDS.contains(kind) ? OutboxEmail.PRIORITY_ACCOUNT : OutboxEmail.PRIORITY_NORMAL)
+                .build());
+    }
+
+    /**
+     * Queues a bulk send with one subject as a single JDBC batch, skipping
+     * invalid addresses. Bulk mail goes out after everything else that is due.
+     * Returns how many were queued.
+     */
+    @Transactional
+    public int enqueueAll(String kind, String subject, List<QueuedEmail> emails) {
+        List<QueuedEmail> valid = emails.stream()
+                .filter(email -> email.recipient() != null && email.recipient().contains("@"))
+                .toList();
+        if (valid.isEmpty()) {
+            return 0;
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate(INSERT_SQL, valid, valid.size(), (ps, email) -> {
+            ps.setString(1, kind);
+            ps.setString(2, email.recipient());
+            ps.setString(3, domainOf(email.recipient()));
+            ps.setString(4, subject);
+            ps.setString(5, email.html());
+            ps.setTimestamp(6, now);
+            ps.setTimestamp(7, now);
+        });
+        return valid.size();
+    }
+
+    @Transactional(readOnly = true)
+    public List<OutboxEmailDto> getDeadLetters() {
+        return outboxRepository.findTop50ByStatusOrderByIdDesc(OutboxEmail.Status.DEAD).stream()
+                .map(this::toDto)
+                .toList();
+    }
+
+    /**
+     * Gives a dead email a fresh set of attempts.
+     */
+    @Transactional
+    public OutboxEmailDto requeue(Long id) {
+        OutboxEmail email = outboxRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Outbox email not found with id: " + id));
+        LocalDateTime now = LocalDateTime.now();
+        if (outboxRepository.requeue(id, now) == 0) {
+            throw new BadRequestException("Only dead emails can be requeued, this one is " + email.getStatus());
+        }
+        log.info("Outbox email {} to {} requeued", id, email.getRecipient());
+
+        OutboxEmailDto dto = toDto(email);
+        dto.setStatus(OutboxEmail.Status.PENDING.name());
+        dto.setAttempts(0);
+        dto.setNextAttemptAt(now);
+        return dto;
+    }
+
+    // ==================== PRIVATE HELPER METHODS ====================
+
+    private static String domainOf(String recipient) {
+        return recipient.substring(recipient.lastIndexOf('@') + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private OutboxEmailDto toDto(OutboxEmail email) {
+        return OutboxEmailDto.builder()
+                .id(email.getId())
+                .kind(email.getKind())
+                .recipient(email.getRecipient())
+                .subject(email.getSubject())
+                .status(email.getStatus().name())
+                .attempts(email.getAttempts())
+                .lastError(email.getLastError())
+                .createdAt(email.getCreatedAt())
+                .nextAttemptAt(email.getNextAttemptAt())
+                .sentAt(email.getSentAt())
+                .build();
+    }
+}
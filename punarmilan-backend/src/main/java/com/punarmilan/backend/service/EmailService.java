@@ -3,28 +3,34 @@ package com.punarmilan.backend.service;
 import com.punarmilan.backend.entity.PaymentTransaction;
 import com.punarmilan.backend.entity.PremiumSubscription;
 import com.punarmilan.backend.entity.User;
-import jakarta.mail.MessagingException;
-import jakarta.mail.internet.MimeMessage;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.mail.javamail.MimeMessageHelper;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.thymeleaf.TemplateEngine;
 import org.thymeleaf.context.Context;
 
-import java.nio.charset.StandardCharsets;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+/**
+ * Renders the transactional emails. Rendered mails go to the outbox in the
+ * caller's transaction and EmailOutboxSender delivers them, so none of these
+ * methods talks to the mail server or blocks on it.
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class EmailService {
 
-        private final JavaMailSender mailSender;
+        private static final String MATCH_DIGEST_SUBJECT = "New Matches Found for You - Punar Milan";
+        private static final String VISITORS_DIGEST_SUBJECT = "People viewed your profile recently";
+
+        private final EmailOutboxService emailOutboxService;
+        private final BulkEmailRenderer bulkEmailRenderer;
         private final TemplateEngine templateEngine;
         private final com.punarmilan.backend.repository.ProfileRepository profileRepository;
 
@@ -34,17 +40,8 @@ public class EmailService {
         @org.springframework.beans.factory.annotation.Value("${app.base-url:http://localhost:8080}")
         private String baseUrl;
 
-        @org.springframework.beans.factory.annotation.Value("${spring.mail.username:noreply@punarmilan.com}")
-        private String fromEmail;
-
-        @Async
         public void sendPaymentSuccessEmail(User user, PaymentTransaction transaction) {
                 try {
-                        MimeMessage message = mailSender.createMimeMessage();
-                        MimeMessageHelper helper = new MimeMessageHelper(message,
-                                        MimeMessageHelper.MULTIPART_MODE_MIXED_RELATED,
-                                        StandardCharsets.UTF_8.name());
-
                         Context context = new Context();
                         context.setVariable("user", user);
                         context.setVariable("transaction", transaction);
@@ -61,26 +58,16 @@ public class EmailService {
 
                         String html = templateEngine.process("email/payment-success", context);
 
-                        helper.setTo(user.getEmail());
-                        helper.setSubject("Payment Successful - Premium Subscription Activated");
-                        helper.setText(html, true);
-                        helper.setFrom(fromEmail);
-
-                        mailSender.send(message);
-                        log.info("Payment success email sent to: {}", user.getEmail());
-                } catch (MessagingException e) {
-                        log.error("Failed to send payment success email: ", e);
+                        emailOutboxService.enqueue("payment-success", user.getEmail(),
+                                        "Payment Successful - Premium Subscription Activated", html);
+                        log.info("Payment success email queued for: {}", user.getEmail());
+                } catch (RuntimeException e) {
+                        log.error("Failed to queue payment success email: ", e);
                 }
         }
 
-        @Async
         public void sendSubscriptionExpiryEmail(User user, PremiumSubscription subscription) {
                 try {
-                        MimeMessage message = mailSender.createMimeMessage();
-                        MimeMessageHelper helper = new MimeMessageHelper(message,
-                                        MimeMessageHelper.MULTIPART_MODE_MIXED_RELATED,
-                                        StandardCharsets.UTF_8.name());
-
                         Context context = new Context();
                         context.setVariable("user", user);
                         context.setVariable("subscription", subscription);
@@ -101,26 +88,16 @@ public class EmailService {
 
                         String html = templateEngine.process("email/subscription-expiry", context);
 
-                        helper.setTo(user.getEmail());
-                        helper.setSubject("Your Premium Subscription is Expiring Soon");
-                        helper.setText(html, true);
-                        helper.setFrom(fromEmail);
-
-                        mailSender.send(message);
-                        log.info("Subscription expiry email sent to: {}", user.getEmail());
-                } catch (MessagingException e) {
-                        log.error("Failed to send expiry email: ", e);
+                        emailOutboxService.enqueue("subscription-expiry", user.getEmail(),
+                                        "Your Premium Subscription is Expiring Soon", html);
+                        log.info("Subscription expiry email queued for: {}", user.getEmail());
+                } catch (RuntimeException e) {
+                        log.error("Failed to queue expiry email: ", e);
                 }
         }
 
-        @Async
         public void sendSubscriptionExpiredEmail(User user, PremiumSubscription subscription) {
                 try {
-                        MimeMessage message = mailSender.createMimeMessage();
-                        MimeMessageHelper helper = new MimeMessageHelper(message,
-                                        MimeMessageHelper.MULTIPART_MODE_MIXED_RELATED,
-                                        StandardCharsets.UTF_8.name());
-
                         Context context = new Context();
                         context.setVariable("user", user);
                         context.setVariable("subscription", subscription);
@@ -136,26 +113,16 @@ public class EmailService {
 
                         String html = templateEngine.process("email/subscription-expired", context);
 
-                        helper.setTo(user.getEmail());
-                        helper.setSubject("Your Premium Subscription Has Expired");
-                        helper.setText(html, true);
-                        helper.setFrom(fromEmail);
-
-                        mailSender.send(message);
-                        log.info("Subscription expired email sent to: {}", user.getEmail());
-                } catch (MessagingException e) {
-                        log.error("Failed to send expired email: ", e);
+                        emailOutboxService.enqueue("subscription-expired", user.getEmail(),
+                                        "Your Premium Subscription Has Expired", html);
+                        log.info("Subscription expired email queued for: {}", user.getEmail());
+                } catch (RuntimeException e) {
+                        log.error("Failed to queue expired email: ", e);
                 }
         }
 
-        @Async
         public void sendWelcomeEmail(User user) {
                 try {
-                        MimeMessage message = mailSender.createMimeMessage();
-                        MimeMessageHelper helper = new MimeMessageHelper(message,
-                                        MimeMessageHelper.MULTIPART_MODE_MIXED_RELATED,
-                                        StandardCharsets.UTF_8.name());
-
                         Context context = new Context();
                         context.setVariable("user", user);
                         context.setVariable("frontendUrl", frontendUrl);
@@ -175,26 +142,16 @@ public class EmailService {
 
                         String html = templateEngine.process("email/welcome-email", context);
 
-                        helper.setTo(user.getEmail());
-                        helper.setSubject("Welcome to Punar Milan!");
-                        helper.setText(html, true);
-                        helper.setFrom(fromEmail);
-
-                        mailSender.send(message);
-                        log.info("Welcome email sent to: {}", user.getEmail());
-                } catch (MessagingException e) {
-                        log.error("Failed to send welcome email: ", e);
+                        emailOutboxService.enqueue("welcome-email", user.getEmail(),
+                                        "Welcome to Punar Milan!", html);
+                        log.info("Welcome email queued for: {}", user.getEmail());
+                } catch (RuntimeException e) {
+                        log.error("Failed to queue welcome email: ", e);
                 }
         }
 
-        @Async
         public void sendVerificationEmail(String email, String token) {
                 try {
-                        MimeMessage message = mailSender.createMimeMessage();
-                        MimeMessageHelper helper = new MimeMessageHelper(message,
-                                        MimeMessageHelper.MULTIPART_MODE_MIXED_RELATED,
-                                        StandardCharsets.UTF_8.name());
-
                         Context context = new Context();
                         context.setVariable("email", email);
                         context.setVariable("token", token);
@@ -210,26 +167,16 @@ public class EmailService {
 
                         String html = templateEngine.process("email/email-verification", context);
 
-                        helper.setTo(email);
-                        helper.setSubject("Verify Your Email Address");
-                        helper.setText(html, true);
-                        helper.setFrom(fromEmail);
-
-                        mailSender.send(message);
-                        log.info("Verification email sent to: {}", email);
-                } catch (MessagingException e) {
-                        log.error("Failed to send verification email: ", e);
+                        emailOutboxService.enqueue("email-verification", email,
+                                        "Verify Your Email Address", html);
+                        log.info("Verification email queued for: {}", email);
+                } catch (RuntimeException e) {
+                        log.error("Failed to queue verification email: ", e);
                 }
         }
 
-        @Async
         public void sendEmailUpdateVerificationEmail(String email, String token) {
                 try {
-                        MimeMessage message = mailSender.createMimeMessage();
-                        MimeMessageHelper helper = new MimeMessageHelper(message,
-                                        MimeMessageHelper.MULTIPART_MODE_MIXED_RELATED,
-                                        StandardCharsets.UTF_8.name());
-
                         Context context = new Context();
                         context.setVariable("email", email);
                         context.setVariable("token", token);
@@ -246,26 +193,16 @@ public class EmailService {
                                                                                                    // same template or
                                                                                                    // create a new one
 
-                        helper.setTo(email);
-                        helper.setSubject("Verify Your New Email Address");
-                        helper.setText(html, true);
-                        helper.setFrom(fromEmail);
-
-                        mailSender.send(message);
-                        log.info("Email update verification email sent to: {}", email);
-                } catch (MessagingException e) {
-                        log.error("Failed to send email update verification email: ", e);
+                        emailOutboxService.enqueue("email-verification", email,
+                                        "Verify Your New Email Address", html);
+                        log.info("Email update verification email queued for: {}", email);
+                } catch (RuntimeException e) {
+                        log.error("Failed to queue email update verification email: ", e);
                 }
         }
 
-        @Async
         public void sendPasswordResetEmail(User user, String token) {
                 try {
-                        MimeMessage message = mailSender.createMimeMessage();
-                        MimeMessageHelper helper = new MimeMessageHelper(message,
-                                        MimeMessageHelper.MULTIPART_MODE_MIXED_RELATED,
-                                        StandardCharsets.UTF_8.name());
-
                         Context context = new Context();
                         context.setVariable("user", user);
                         context.setVariable("token", token);
@@ -281,26 +218,16 @@ public class EmailService {
 
                         String html = templateEngine.process("email/password-reset", context);
 
-                        helper.setTo(user.getEmail());
-                        helper.setSubject("Reset Your Password");
-                        helper.setText(html, true);
-                        helper.setFrom(fromEmail);
-
-                        mailSender.send(message);
-                        log.info("Password reset email sent to: {}", user.getEmail());
-                } catch (MessagingException e) {
-                        log.error("Failed to send password reset email: ", e);
+                        emailOutboxService.enqueue("password-reset", user.getEmail(),
+                                        "Reset Your Password", html);
+                        log.info("Password reset email queued for: {}", user.getEmail());
+                } catch (RuntimeException e) {
+                        log.error("Failed to queue password reset email: ", e);
                 }
         }
 
-        @Async
         public void sendConnectionRequestEmail(User sender, User receiver) {
                 try {
-                        MimeMessage message = mailSender.createMimeMessage();
-                        MimeMessageHelper helper = new MimeMessageHelper(message,
-                                        MimeMessageHelper.MULTIPART_MODE_MIXED_RELATED,
-                                        StandardCharsets.UTF_8.name());
-
                         Context context = new Context();
                         context.setVariable("frontendUrl", frontendUrl);
 
@@ -348,27 +275,17 @@ public class EmailService {
 
                         String html = templateEngine.process("email/connection-request", context);
 
-                        helper.setTo(receiver.getEmail());
-                        helper.setSubject("New Connection Request from " + senderFullName);
-                        helper.setText(html, true);
-                        helper.setFrom(fromEmail);
-
-                        mailSender.send(message);
-                        log.info("Connection request email sent to: {}", receiver.getEmail());
-                } catch (MessagingException e) {
-                        log.error("Failed to send connection request email: ", e);
+                        emailOutboxService.enqueue("connection-request", receiver.getEmail(),
+                                        "New Connection Request from " + senderFullName, html);
+                        log.info("Connection request email queued for: {}", receiver.getEmail());
+                } catch (RuntimeException e) {
+                        log.error("Failed to queue connection request email: ", e);
                 }
         }
 
-        @Async
         public void sendMessageNotificationEmail(User sender, User receiver,
                         com.punarmilan.backend.entity.Message messageEntity) {
                 try {
-                        MimeMessage message = mailSender.createMimeMessage();
-                        MimeMessageHelper helper = new MimeMessageHelper(message,
-                                        MimeMessageHelper.MULTIPART_MODE_MIXED_RELATED,
-                                        StandardCharsets.UTF_8.name());
-
                         Context context = new Context();
                         context.setVariable("frontendUrl", frontendUrl);
                         context.setVariable("message", messageEntity);
@@ -424,26 +341,16 @@ public class EmailService {
 
                         String html = templateEngine.process("email/message-notification", context);
 
-                        helper.setTo(receiver.getEmail());
-                        helper.setSubject("New Message from " + senderFullName);
-                        helper.setText(html, true);
-                        helper.setFrom(fromEmail);
-
-                        mailSender.send(message);
-                        log.info("Message notification email sent to: {}", receiver.getEmail());
-                } catch (MessagingException e) {
-                        log.error("Failed to send message notification email: ", e);
+                        emailOutboxService.enqueue("message-notification", receiver.getEmail(),
+                                        "New Message from " + senderFullName, html);
+                        log.info("Message notification email queued for: {}", receiver.getEmail());
+                } catch (RuntimeException e) {
+                        log.error("Failed to queue message notification email: ", e);
                 }
         }
 
-        @Async
         public void sendVerificationStatusEmail(User user, boolean approved, String reason) {
                 try {
-                        MimeMessage message = mailSender.createMimeMessage();
-                        MimeMessageHelper helper = new MimeMessageHelper(message,
-                                        MimeMessageHelper.MULTIPART_MODE_MIXED_RELATED,
-                                        StandardCharsets.UTF_8.name());
-
                         Context context = new Context();
                         context.setVariable("user", user);
                         context.setVariable("approved", approved);
@@ -459,24 +366,16 @@ public class EmailService {
                         String html = templateEngine.process("email/verification-status", context);
 
                         String statusStr = approved ? "Verified" : "Update Required";
-                        helper.setTo(user.getEmail());
-                        helper.setSubject("Profile Verification Status: " + statusStr);
-                        helper.setText(html, true);
-                        helper.setFrom(fromEmail);
-
-                        mailSender.send(message);
-                        log.info("Verification status email sent to: {}", user.getEmail());
-                } catch (MessagingException e) {
-                        log.error("Failed to send verification status email: ", e);
+                        emailOutboxService.enqueue("verification-status", user.getEmail(),
+                                        "Profile Verification Status: " + statusStr, html);
+                        log.info("Verification status email queued for: {}", user.getEmail());
+                } catch (RuntimeException e) {
+                        log.error("Failed to queue verification status email: ", e);
                 }
         }
 
-        @Async
         public void sendShortlistEmail(User sender, User receiver) {
                 try {
-                        MimeMessage message = mailSender.createMimeMessage();
-                        MimeMessageHelper helper = new MimeMessageHelper(message, true, StandardCharsets.UTF_8.name());
-
                         Context context = new Context();
                         context.setVariable("frontendUrl", frontendUrl);
 
@@ -490,85 +389,173 @@ public class EmailService {
 
                         String html = templateEngine.process("email/shortlist-alert", context);
 
-                        helper.setTo(receiver.getEmail());
-                        helper.setSubject(senderName + " shortlisted your profile!");
-                        helper.setText(html, true);
-                        helper.setFrom(fromEmail);
-
-                        mailSender.send(message);
-                } catch (MessagingException e) {
-                        log.error("Failed to send shortlist email", e);
+                        emailOutboxService.enqueue("shortlist-alert", receiver.getEmail(),
+                                        senderName + " shortlisted your profile!", html);
+                } catch (RuntimeException e) {
+                        log.error("Failed to queue shortlist email", e);
                 }
         }
 
-        @Async
-        public void sendMatchDigestEmail(User user, java.util.List<com.punarmilan.backend.entity.Profile> matches) {
+        /**
+         * One email for a rollup of shortlists, e.g. "Asha, Rahul and 3 others",
+         * linking to the first of them.
+         */
+        public void sendShortlistRollupEmail(User receiver, Long firstSenderId, String senderNames) {
                 try {
-                        MimeMessage message = mailSender.createMimeMessage();
-                        MimeMessageHelper helper = new MimeMessageHelper(message, true, StandardCharsets.UTF_8.name());
-
                         Context context = new Context();
                         context.setVariable("frontendUrl", frontendUrl);
-                        context.setVariable("matches", matches);
-                        context.setVariable("user", user);
+                        context.setVariable("senderName", senderNames);
+                        context.setVariable("several", true);
+                        context.setVariable("profileUrl", frontendUrl + "/profile/" + firstSenderId);
 
-                        String html = templateEngine.process("email/match-mail", context);
-
-                        helper.setTo(user.getEmail());
-                        helper.setSubject("New Matches Found for You - Punar Milan");
-                        helper.setText(html, true);
-                        helper.setFrom(fromEmail);
+                        String html = templateEngine.process("email/shortlist-alert", context);
 
-                        mailSender.send(message);
-                } catch (MessagingException e) {
-                        log.error("Failed to send match digest email", e);
+                        emailOutboxService.enqueue("shortlist-alert", receiver.getEmail(),
+                                        senderNames + " shortlisted your profile!", html);
+                } catch (RuntimeException e) {
+                        log.error("Failed to queue shortlist rollup email", e);
                 }
         }
 
-        @Async
-        public void sendVisitorsDigestEmail(User user, java.util.List<com.punarmilan.backend.entity.Profile> visitors) {
+        public void sendMatchDigestEmail(User user, java.util.List<com.punarmilan.backend.entity.Profile> matches) {
                 try {
-                        MimeMessage message = mailSender.createMimeMessage();
-                        MimeMessageHelper helper = new MimeMessageHelper(message, true, StandardCharsets.UTF_8.name());
-
-                        Context context = new Context();
-                        context.setVariable("frontendUrl", frontendUrl);
-                        context.setVariable("visitors", visitors);
-                        context.setVariable("user", user);
+                        emailOutboxService.enqueue("match-mail", user.getEmail(), MATCH_DIGEST_SUBJECT,
+                                        renderMatchDigest(user, user.getEmail().split("@")[0], matches));
+                } catch (RuntimeException e) {
+                        log.error("Failed to queue match digest email", e);
+                }
+        }
 
-                        String html = templateEngine.process("email/recent-visitors", context);
+        /**
+         * Queues the match digests of a chunk of users as one outbox batch,
+         * skipping users without matches. Returns how many were queued.
+         */
+        public int sendMatchDigestEmails(List<User> users, Map<Long, String> firstNames,
+                        Map<Long, List<com.punarmilan.backend.entity.Profile>> matches) {
+                List<EmailOutboxService.QueuedEmail> emails = new ArrayList<>();
+                for (User user : users) {
+                        List<com.punarmilan.backend.entity.Profile> userMatches = matches.get(user.getId());
+                        if (userMatches == null || userMatches.isEmpty()) {
+                                continue;
+                        }
+                        try {
+                                emails.add(new EmailOutboxService.QueuedEmail(user.getEmail(),
+                                                renderMatchDigest(user, firstNames.get(user.getId()), userMatches)));
+                        } catch (RuntimeException e) {
+                                log.error("Failed to render match digest for {}: {}", user.getEmail(), e.getMessage());
+                        }
+                }
+                return emailOutboxService.enqueueAll("match-mail", MATCH_DIGEST_SUBJECT, emails);
+        }
 
-                        helper.setTo(user.getEmail());
-                        helper.setSubject("People viewed your profile recently");
-                        helper.setText(html, true);
-                        helper.setFrom(fromEmail);
+        public void sendVisitorsDigestEmail(User user, java.util.List<com.punarmilan.backend.entity.Profile> visitors) {
+                try {
+                        emailOutboxService.enqueue("recent-visitors", user.getEmail(), VISITORS_DIGEST_SUBJECT,
+                                        renderVisitorsDigest(user, user.getEmail().split("@")[0], visitors));
+                } catch (RuntimeException e) {
+                        log.error("Failed to queue visitors email", e);
+                }
+        }
 
-                        mailSender.send(message);
-                } catch (MessagingException e) {
-                        log.error("Failed to send visitors email", e);
+        /**
+         * Queues the visitor digests of a chunk of users as one outbox batch,
+         * skipping users nobody visited. Returns how many were queued.
+         */
+        public int sendVisitorsDigestEmails(List<User> users, Map<Long, String> firstNames,
+                        Map<Long, List<com.punarmilan.backend.entity.Profile>> visitors) {
+                List<EmailOutboxService.QueuedEmail> emails = new ArrayList<>();
+                for (User user : users) {
+                        List<com.punarmilan.backend.entity.Profile> userVisitors = visitors.get(user.getId());
+                        if (userVisitors == null || userVisitors.isEmpty()) {
+                                continue;
+                        }
+                        try {
+                                emails.add(new EmailOutboxService.QueuedEmail(user.getEmail(),
+                                                renderVisitorsDigest(user, firstNames.get(user.getId()), userVisitors)));
+                        } catch (RuntimeException e) {
+                                log.error("Failed to render visitors digest for {}: {}", user.getEmail(), e.getMessage());
+                        }
                 }
+                return emailOutboxService.enqueueAll("recent-visitors", VISITORS_DIGEST_SUBJECT, emails);
         }
 
-        @Async
         public void sendProfileBlasterEmail(User targetUser, com.punarmilan.backend.entity.Profile profile) {
+                deliverProfileBlasterEmail(targetUser, profile);
+        }
+
+        /**
+         * Like sendProfileBlasterEmail, but tells mass senders whether the
+         * email could be queued. Returns false on failure.
+         */
+        public boolean deliverProfileBlasterEmail(User targetUser, com.punarmilan.backend.entity.Profile profile) {
+                return deliverProfileBlasterEmails(profile, List.of(targetUser)) == 1;
+        }
+
+        /**
+         * Queues the blast for a chunk of recipients. The profile is rendered
+         * once per profile version and every recipient only gets their name
+         * filled in, see BulkEmailRenderer. Returns how many were queued.
+         */
+        public int deliverProfileBlasterEmails(com.punarmilan.backend.entity.Profile profile, List<User> recipients) {
                 try {
-                        MimeMessage message = mailSender.createMimeMessage();
-                        MimeMessageHelper helper = new MimeMessageHelper(message, true, StandardCharsets.UTF_8.name());
+                        BulkEmailRenderer.Prepared body = bulkEmailRenderer.prepare(
+                                        "profile-blaster:" + profile.getId() + ":" + profile.getUpdatedAt(),
+                                        "email/profile-blaster",
+                                        () -> Map.of("frontendUrl", frontendUrl, "profile", profile),
+                                        "firstName");
+
+                        Map<Long, String> names = firstNames(recipients);
+                        List<EmailOutboxService.QueuedEmail> emails = new ArrayList<>(recipients.size());
+                        for (User recipient : recipients) {
+                                emails.add(new EmailOutboxService.QueuedEmail(recipient.getEmail(),
+                                                body.render(names.get(recipient.getId()))));
+                        }
+                        return emailOutboxService.enqueueAll("profile-blaster",
+                                        "Featured Profile of the Day: " + profile.getFullName(), emails);
+                } catch (RuntimeException e) {
+                        log.error("Failed to queue blaster emails for {} recipients: {}", recipients.size(),
+                                        e.getMessage());
+                        return 0;
+                }
+        }
 
-                        Context context = new Context();
-                        context.setVariable("frontendUrl", frontendUrl);
-                        context.setVariable("profile", profile);
+        /**
+         * First names of many users from one profile query, falling back to the
+         * part of the email before the @ for users without a profile name.
+         */
+        public Map<Long, String> firstNames(Collection<User> users) {
+                Map<Long, String> names = new HashMap<>();
+                users.forEach(user -> names.put(user.getId(), user.getEmail().split("@")[0]));
+                if (!users.isEmpty()) {
+                        for (com.punarmilan.backend.entity.Profile profile : profileRepository
+                                        .findAllByUserIn(new ArrayList<>(users))) {
+                                if (profile.getFullName() != null && !profile.getFullName().isBlank()) {
+                                        names.put(profile.getUser().getId(), profile.getFullName().trim().split(" ")[0]);
+                                }
+                        }
+                }
+                return names;
+        }
 
-                        String html = templateEngine.process("email/profile-blaster", context);
+        // ==================== PRIVATE HELPER METHODS ====================
 
-                        helper.setTo(targetUser.getEmail());
-                        helper.setSubject("Featured Profile of the Day: " + profile.getFullName());
-                        helper.setText(html, true);
-                        helper.setFrom(fromEmail);
+        private String renderMatchDigest(User user, String firstName,
+                        List<com.punarmilan.backend.entity.Profile> matches) {
+                Context context = new Context();
+                context.setVariable("frontendUrl", frontendUrl);
+                context.setVariable("matches", matches);
+                context.setVariable("user", user);
+                context.setVariable("firstName", firstName);
+                return templateEngine.process("email/match-mail", context);
+        }
 
-                        mailSender.send(message);
-                } catch (MessagingException e) {
-                        log.error("Failed to send blaster email", e);
-                }
+        private String renderVisitorsDigest(User user, String firstName,
+                        List<com.punarmilan.backend.entity.Profile> visitors) {
+                Context context = new Context();
+                context.setVariable("frontendUrl", frontendUrl);
+                context.setVariable("visitors", visitors);
+                context.setVariable("user", user);
+                context.setVariable("firstName", firstName);
+                return templateEngine.process("email/recent-visitors", context);
         }
-}
\ No newline at end of file
+}
@@ -0,0 +1,380 @@
+package com.punarmilan.backend.service;
+
+import com.punarmilan.backend.dto.FanoutJobDto;
+import com.punarmilan.backend.entity.FanoutJob;
+import com.punarmilan.backend.entity.FanoutJob.Kind;
+import com.punarmilan.backend.entity.FanoutJob.Status;
+import com.punarmilan.backend.entity.Notification.NotificationType;
+import com.punarmilan.backend.entity.Profile;
+import com.punarmilan.backend.entity.User;
+import com.punarmilan.backend.exception.BadRequestException;
+import com.punarmilan.backend.exception.ResourceNotFoundException;
+import com.punarmilan.backend.repository.FanoutJobRepository;
+import com.punarmilan.backend.repository.ProfileRepository;
+import com.punarmilan.backend.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Mass notification campaigns, run in the background instead of on the
+ * admin's request thread.
+ *
+ * A job walks its recipients in user id order, one chunk at a time. Each chunk
+ * is written to {@code notifications} as one JDBC batch, then its emails are
+ * queued in the outbox (optionally at a fixed rate), then the cursor is saved. A job whose node dies is
+ * picked up again from its last saved chunk once its heartbeat goes stale.
+ * The chunk in flight is redone, its notifications fold into the rows already
+ * written because the job keeps one time bucket, but its emails may go out twice.
+ */
+@Slf4j
+@Service
+public class FanoutService {
+
+    // Same statement as NotificationRepository.upsert, as a batch
+    private static final String UPSERT_SQL = "INSERT INTO notifications (user_id, type, title, message, " +
+            "related_id, related_type, is_read, is_seen, created_at, time_bucket) " +
+            "VALUES (?, ?, ?, ?, ?, ?, false, false, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE title = VALUES(title), message = VALUES(message), " +
+            "is_read = false, is_seen = false, created_at = VALUES(created_at), id = LAST_INSERT_ID(id)";
+    private static final long BUCKET_SECONDS = 300;
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final FanoutJobRepository jobRepository;
+    private final UserRepository userRepository;
+    private final ProfileRepository profileRepository;
+    private final EmailService emailService;
+    private final NotificationCounterService notificationCounterService;
+    private final WebSocketNotificationService webSocketNotificationService;
+    private final PresenceService presenceService;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Executor executor;
+    private final String nodeId;
+    private final int chunkSize;
+    private final int emailsPerSecond;
+    private final Duration staleAfter;
+
+    private final Counter notifiedCounter;
+    private final Counter emailedCounter;
+    private final Counter failedCounter;
+
+    private record Chunk(List<User> recipients, int scanned, int missing, Long cursor) {
+    }
+
+    public FanoutService(FanoutJobRepository jobRepository,
+            UserRepository userRepository,
+            ProfileRepository profileRepository,
+            EmailService emailService,
+            NotificationCounterService notificationCounterService,
+            WebSocketNotificationService webSocketNotificationService,
+            PresenceService presenceService,
+            JdbcTemplate jdbcTemplate,
+            TransactionTemplate transactionTemplate,
+            @Qualifier("fanoutExecutor") Executor executor,
+            MeterRegistry meterRegistry,
+            NodeIdentity nodeIdentity,
+            @Value("${app.fanout.chunk-size:500}") int chunkSize,
+            @Value("${app.fanout.emails-per-second:20}") int emailsPerSecond,
+            @Value("${app.fanout.stale-after-seconds:300}") long staleAfterSeconds) {
+        this.jobRepository = jobRepository;
+        this.userRepository = userRepository;
+        this.profileRepository = profileRepository;
+        this.emailService = emailService;
+        this.notificationCounterService = notificationCounterService;
+        this.webSocketNotificationService = webSocketNotificationService;
+        this.presenceService = presenceService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.executor = executor;
+        this.nodeId = nodeIdentity.getNodeId();
+        this.chunkSize = Math.max(1, chunkSize);
+        this.emailsPerSecond = emailsPerSecond;
+        this.staleAfter = Duration.ofSeconds(staleAfterSeconds);
+        this.notifiedCounter = Counter.builder("fanout.notifications").register(meterRegistry);
+        this.emailedCounter = Counter.builder("fanout.emails").register(meterRegistry);
+        this.failedCounter = Counter.builder("fanout.failed").register(meterRegistry);
+    }
+
+    /**
+     * Queues a blast of the profile to every active user but its owner, with
+     * a notification and an email each.
+     */
+    public FanoutJobDto startProfileBlast(Profile profile, Long profileUserId, String createdBy) {
+        return toDto(submit(FanoutJob.builder()
+                .kind(Kind.PROFILE_BLAST)
+                .title("Featured Profile: " + profile.getFullName())
+                .message("Check out this featured profile that matches your interests!")
+                .relatedId(profile.getId())
+                .relatedType("PROFILE")
+                .excludeUserId(profileUserId)
+                .sendEmail(true)
+                .totalRecipients(userRepository.countByActiveTrue())
+                .createdBy(createdBy)
+                .build()));
+    }
+
+    /**
+     * Queues a notification to the given users. Unknown ids are counted as
+     * failed and skipped.
+     */
+    public FanoutJobDto startBulkNotification(Collection<Long> userIds, String title, String message, String createdBy) {
+        List<Long> audience = userIds.stream().filter(Objects::nonNull).distinct().sorted().toList();
+        if (audience.isEmpty()) {
+            throw new BadRequestException("No recipients given");
+        }
+        return toDto(submit(FanoutJob.builder()
+                .kind(Kind.BULK_NOTIFICATION)
+                .title(title)
+                .message(message)
+                .relatedType("ADMIN_NOTIFICATION")
+                .recipientIds(audience.stream().map(String::valueOf).collect(Collectors.joining(",")))
+                .sendEmail(false)
+                .totalRecipients((long) audience.size())
+                .createdBy(createdBy)
+                .build()));
+    }
+
+    public FanoutJobDto getJob(Long jobId) {
+        return toDto(findJob(jobId));
+    }
+
+    public List<FanoutJobDto> getRecentJobs() {
+        return jobRepository.findTop20ByOrderByIdDesc().stream().map(this::toDto).toList();
+    }
+
+    /**
+     * Stops a job after the chunk it is working on. It can be resumed later.
+     */
+    public FanoutJobDto cancel(Long jobId) {
+        findJob(jobId);
+        if (jobRepository.cancel(jobId, LocalDateTime.now()) == 0) {
+            throw new BadRequestException("Only pending or running jobs can be cancelled");
+        }
+        return getJob(jobId);
+    }
+
+    /**
+     * Puts a failed or cancelled job back to work from its saved cursor.
+     */
+    public FanoutJobDto resume(Long jobId) {
+        findJob(jobId);
+        if (jobRepository.reopen(jobId) == 0) {
+            throw new BadRequestException("Only failed or cancelled jobs can be resumed");
+        }
+        dispatch(jobId);
+        return getJob(jobId);
+    }
+
+    /**
+     * Picks up jobs nobody is working on, i.e. queued while the pool was full
+     * or left behind by a node that stopped. Runs every minute.
+     */
+    @Scheduled(fixedDelayString = "${app.fanout.resume-check-ms:60000}")
+    public void resumeStale() {
+        List<Long> jobIds = jobRepository.findResumable(LocalDateTime.now().minus(staleAfter));
+        if (!jobIds.isEmpty()) {
+            log.info("Resuming {} fan-out jobs", jobIds.size());
+            jobIds.forEach(this::dispatch);
+        }
+    }
+
+    // ==================== PRIVATE HELPER METHODS ====================
+
+    private FanoutJob submit(FanoutJob job) {
+        job.setStatus(Status.PENDING);
+        job.setTimeBucket(LocalDateTime.now().toEpochSecond(ZoneOffset.UTC) / BUCKET_SECONDS);
+        FanoutJob saved = jobRepository.save(job);
+        if (saved.getRelatedId() == null) {
+            // The job itself is what the notifications relate to, which also keeps a redone chunk from duplicating them
+            saved.setRelatedId(saved.getId());
+            saved = jobRepository.save(saved);
+        }
+        Long jobId = saved.getId();
+        // The worker must find the row, so hand it over once the caller has committed
+        AfterCommit.run(() -> dispatch(jobId));
+        log.info("Fan-out job {} ({}) queued for {} recipients", jobId, saved.getKind(), saved.getTotalRecipients());
+        return saved;
+    }
+
+    private void dispatch(Long jobId) {
+        try {
+            executor.execute(() -> run(jobId));
+        } catch (TaskRejectedException e) {
+            log.warn("Fan-out pool is full, job {} waits for the next resume check", jobId);
+        }
+    }
+
+    private void run(Long jobId) {
+        LocalDateTime now = LocalDateTime.now();
+        if (jobRepository.claim(jobId, nodeId, now, now.minus(staleAfter)) == 0) {
+            return;
+        }
+        FanoutJob job = jobRepository.findById(jobId).orElse(null);
+        if (job == null) {
+            return;
+        }
+        log.info("Fan-out job {} running from user {}", jobId, job.getLastUserId());
+
+        try {
+            Profile profile = job.isSendEmail() && job.getKind() == Kind.PROFILE_BLAST
+                    ? profileRepository.findById(job.getRelatedId())
+                            .orElseThrow(() -> new ResourceNotFoundException("Profile not found"))
+                    : null;
+            List<Long> audience = job.getKind() == Kind.BULK_NOTIFICATION ? parseIds(job.getRecipientIds()) : null;
+            long intervalNanos = emailsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / emailsPerSecond : 0;
+            long nextSendAt = System.nanoTime();
+            long cursor = job.getLastUserId();
+
+            while (true) {
+                Chunk chunk = nextChunk(job, audience, cursor);
+                if (chunk.scanned() == 0) {
+                    break;
+                }
+
+                List<User> recipients = chunk.recipients();
+                writeNotifications(job, recipients);
+                notifiedCounter.increment(recipients.size());
+
+                int emailed = 0;
+                int failed = chunk.missing();
+                if (profile != null && !recipients.isEmpty()) {
+                    if (intervalNanos > 0) {
+                        // Paced per chunk now that a chunk is queued in one go
+                        long wait = nextSendAt - System.nanoTime();
+                        if (wait > 0) {
+                            TimeUnit.NANOSECONDS.sleep(wait);
+                        }
+                        nextSendAt = Math.max(nextSendAt, System.nanoTime()) + intervalNanos * recipients.size();
+                    }
+                    emailed = emailService.deliverProfileBlasterEmails(profile, recipients);
+                    failed += recipients.size() - emailed;
+                }
+                emailedCounter.increment(emailed);
+                failedCounter.increment(failed);
+
+                if (jobRepository.recordProgress(jobId, nodeId, chunk.cursor(), chunk.scanned(),
+                        recipients.size(), emailed, failed, LocalDateTime.now()) == 0) {
+                    log.info("Fan-out job {} stopped at user {}, it was cancelled or taken over", jobId, chunk.cursor());
+                    return;
+                }
+                cursor = chunk.cursor();
+            }
+
+            jobRepository.finish(jobId, nodeId, Status.COMPLETED, null, LocalDateTime.now());
+            log.info("Fan-out job {} completed", jobId);
+        } catch (InterruptedException e) {
+            // Left RUNNING, another node or the next start picks it up once the heartbeat is stale
+            Thread.currentThread().interrupt();
+            log.warn("Fan-out job {} interrupted, it resumes from its last saved chunk", jobId);
+        } catch (Exception e) {
+            log.error("Fan-out job {} failed", jobId, e);
+            String error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            jobRepository.finish(jobId, nodeId, Status.FAILED,
+                    error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error,
+                    LocalDateTime.now());
+        }
+    }
+
+    private Chunk nextChunk(FanoutJob job, List<Long> audience, long cursor) {
+        if (audience == null) {
+            List<User> users = userRepository.findActiveAfter(cursor, PageRequest.of(0, chunkSize));
+            if (users.isEmpty()) {
+                return new Chunk(List.of(), 0, 0, cursor);
+            }
+            Long last = users.get(users.size() - 1).getId();
+            List<User> recipients = users.stream()
+                    .filter(user -> !user.getId().equals(job.getExcludeUserId()))
+                    .toList();
+            return new Chunk(recipients, users.size(), 0, last);
+        }
+
+        List<Long> ids = audience.stream().filter(id -> id > cursor).limit(chunkSize).toList();
+        if (ids.isEmpty()) {
+            return new Chunk(List.of(), 0, 0, cursor);
+        }
+        List<User> users = userRepository.findByIdsOrdered(ids);
+        return new Chunk(users, ids.size(), ids.size() - users.size(), ids.get(ids.size() - 1));
+    }
+
+    private void writeNotifications(FanoutJob job, List<User> recipients) {
+        if (recipients.isEmpty()) {
+            return;
+        }
+        Timestamp createdAt = Timestamp.valueOf(LocalDateTime.now());
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(UPSERT_SQL, recipients,
+                recipients.size(), (ps, user) -> {
+                    ps.setLong(1, user.getId());
+                    ps.setString(2, NotificationType.SYSTEM_ALERT.name());
+                    ps.setString(3, job.getTitle());
+                    ps.setString(4, job.getMessage());
+                    ps.setObject(5, job.getRelatedId());
+                    ps.setString(6, job.getRelatedType());
+                    ps.setTimestamp(7, createdAt);
+                    ps.setLong(8, job.getTimeBucket());
+                }));
+        // Rewritten batches report no per-row insert/update split, so reseed rather than adjust
+        List<Long> userIds = recipients.stream().map(User::getId).toList();
+        notificationCounterService.invalidate(userIds);
+
+        // Batch rows have no ids to push, online recipients are told to sync instead
+        List<Long> online = presenceService.areOnline(userIds).entrySet().stream()
+                .filter(Map.Entry::getValue)
+                .map(Map.Entry::getKey)
+                .toList();
+        webSocketNotificationService.requestSync(online);
+    }
+
+    private FanoutJob findJob(Long jobId) {
+        return jobRepository.findById(jobId)
+                .orElseThrow(() -> new ResourceNotFoundException("Fan-out job not found with id: " + jobId));
+    }
+
+    private static List<Long> parseIds(String recipientIds) {
+        if (recipientIds == null || recipientIds.isBlank()) {
+            return List.of();
+        }
+        return Arrays.stream(recipientIds.split(",")).map(Long::valueOf).toList();
+    }
+
+    private FanoutJobDto toDto(FanoutJob job) {
+        return FanoutJobDto.builder()
+                .jobId(job.getId())
+                .kind(job.getKind().name())
+                .status(job.getStatus().name())
+                .title(job.getTitle())
+                .totalRecipients(job.getTotalRecipients())
+                .processed(job.getProcessed())
+                .notified(job.getNotified())
+                .emailed(job.getEmailed())
+                .failed(job.getFailed())
+                .lastUserId(job.getLastUserId())
+                .error(job.getError())
+                .createdBy(job.getCreatedBy())
+                .createdAt(job.getCreatedAt())
+                .heartbeatAt(job.getHeartbeatAt())
+                .finishedAt(job.getFinishedAt())
+                .build();
+    }
+}
@@ -1,37 +1,68 @@
 package com.punarmilan.backend.service;
 
+import com.punarmilan.backend.entity.StoredFile;
+import com.punarmilan.backend.exception.BadRequestException;
 import com.punarmilan.backend.exception.FileStorageException;
+import com.punarmilan.backend.repository.StoredFileRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
-import java.util.UUID;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Optional;
 
 @Slf4j
 @Service
 public class FileStorageService {
 
-    private final Path fileStorageLocation;
+    private static final String UPLOADS_SEGMENT = "/uploads/";
+    private static final int SNIFF_BYTES = 12;
+    private static final int BUFFER_SIZE = 64 * 1024;
 
-    public FileStorageService(@Value("${file.upload-dir:./uploads}") String uploadDir) {
-        try {
-            // Get absolute path and normalize
-            this.fileStorageLocation = Paths.get(uploadDir).toAbsolutePath().normalize();
+    private final Path stagingLocation;
+    private final StorageBackend storageBackend;
+    private final StoredFileRepository storedFileRepository;
+    private final TransactionTemplate separateTransaction;
+    private final long maxFileSize;
 
-            // Create directory if it doesn't exist
-            Files.createDirectories(this.fileStorageLocation);
+    public FileStorageService(@Value("${file.upload-dir:./uploads}") String uploadDir,
+            @Value("${file.max-size-bytes:10485760}") long maxFileSize,
+            StorageBackend storageBackend,
+            StoredFileRepository storedFileRepository,
+            PlatformTransactionManager transactionManager) {
+        this.storageBackend = storageBackend;
+        this.storedFileRepository = storedFileRepository;
+        this.separateTransaction = new TransactionTemplate(transactionManager);
+        this.separateTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.maxFileSize = maxFileSize;
+        try {
+            // Uploads are streamed here first, then handed to the backend
+            this.stagingLocation = Paths.get(uploadDir).toAbsolutePath().normalize().resolve(".staging");
+            Files.createDirectories(this.stagingLocation);
 
-            log.info("✅ File upload directory initialized at: {}",
-                    this.fileStorageLocation.toString());
-            log.info("✅ Directory exists: {}", Files.exists(this.fileStorageLocation));
-            log.info("✅ Directory writable: {}", Files.isWritable(this.fileStorageLocation));
+            log.info("✅ File staging directory initialized at: {}", this.stagingLocation);
+            log.info("✅ Storage backend: {}", storageBackend.getClass().getSimpleName());
 
         } catch (Exception ex) {
             log.error("❌ Could not create upload directory: {}", ex.getMessage());
@@ -39,44 +70,148 @@ public class FileStorageService {
         }
     }
 
+    /**
+     * Stores an image or PDF (ID proofs) and returns its public URL.
+     */
+    @Transactional
     public String storeFile(MultipartFile file) {
-        try {
-            // Validate file
-            if (file == null || file.isEmpty()) {
-                throw new FileStorageException("File is empty");
+        return store(file, false);
+    }
+
+    /**
+     * Stores an image only, anything else is rejected before it is written.
+     */
+    @Transactional
+    public String storeImage(MultipartFile file) {
+        return store(file, true);
+    }
+
+    /**
+     * Adds a reference to an already stored file, for when its URL is copied
+     * into another field. External URLs and unknown files are ignored.
+     */
+    @Transactional
+    public void addReference(String fileUrl) {
+        keyOf(fileUrl).ifPresent(key -> storedFileRepository.incrementReference(key, LocalDateTime.now()));
+    }
+
+    /**
+     * Drops one reference to a stored file. The blob itself is removed later by
+     * {@link #purgeIfUnreferenced(String)} once nothing points at it.
+     */
+    @Transactional
+    public void releaseFile(String fileUrl) {
+        keyOf(fileUrl).ifPresent(key -> {
+            int updated = storedFileRepository.releaseReference(key, LocalDateTime.now());
+            if (updated > 0) {
+                log.debug("Released reference to {}", key);
             }
+        });
+    }
+
+    /**
+     * Deletes the blob if it still has no references. The row lock makes a
+     * concurrent upload of the same content wait until the blob is gone, so it
+     * always writes a fresh copy afterwards.
+     */
+    @Transactional
+    public boolean purgeIfUnreferenced(String key) {
+        Optional<StoredFile> stored = storedFileRepository.findByKeyForUpdate(key);
+        if (stored.isEmpty() || stored.get().getRefCount() > 0) {
+            return false;
+        }
+        storageBackend.delete(key);
+        storedFileRepository.delete(stored.get());
+        log.info("🗑️ Purged unreferenced file {}", key);
+        return true;
+    }
+
+    public StorageBackend getStorageBackend() {
+        return storageBackend;
+    }
+
+    /**
+     * Storage key (file name) of an uploaded file URL, empty for external URLs.
+     */
+    public Optional<String> keyOf(String fileUrl) {
+        if (fileUrl == null || fileUrl.isEmpty()) {
+            return Optional.empty();
+        }
+        int idx = fileUrl.indexOf(UPLOADS_SEGMENT);
+        if (idx < 0) {
+            return Optional.empty();
+        }
+        String key = fileUrl.substring(idx + UPLOADS_SEGMENT.length());
+        if (key.isEmpty() || key.contains("/") || key.contains("..")) {
+            return Optional.empty();
+        }
+        return Optional.of(key);
+    }
 
-            String originalFileName = file.getOriginalFilename();
-            if (originalFileName == null || originalFileName.isEmpty()) {
-                throw new FileStorageException("File name is empty");
+    // Optional helper method to delete files
+    public boolean deleteFile(String fileName) {
+        try {
+            if (fileName == null || fileName.isEmpty()) {
+                return false;
             }
 
-            log.info("📁 Uploading file: {} ({} bytes, type: {})",
-                    originalFileName, file.getSize(), file.getContentType());
+            // Extract filename from URL
+            String simpleFileName = fileName.substring(fileName.lastIndexOf('/') + 1);
+            boolean deleted = storageBackend.delete(simpleFileName);
+            log.info("🗑️ File {}: {}", simpleFileName, deleted ? "deleted" : "not found");
+            return deleted;
+        } catch (Exception ex) {
+            log.error("Error deleting file: {}", ex.getMessage());
+            return false;
+        }
+    }
+
+    // ==================== PRIVATE HELPER METHODS ====================
+
+    private String store(MultipartFile file, boolean imagesOnly) {
+        // Validate file
+        if (file == null || file.isEmpty()) {
+            throw new BadRequestException("File is empty");
+        }
 
-            // Get file extension
-            String fileExtension = getFileExtension(originalFileName);
+        // Reject on the declared size before reading anything
+        if (file.getSize() > maxFileSize) {
+            throw new BadRequestException("File size must be less than " + (maxFileSize / (1024 * 1024)) + "MB");
+        }
 
-            // Generate unique filename
-            String uniqueFileName = UUID.randomUUID().toString() + fileExtension;
+        log.info("📁 Uploading file: {} ({} bytes, type: {})",
+                file.getOriginalFilename(), file.getSize(), file.getContentType());
 
-            // Resolve target location
-            Path targetLocation = this.fileStorageLocation.resolve(uniqueFileName);
-            log.info("📁 Target location: {}", targetLocation.toString());
+        Path staged = null;
+        try (InputStream in = file.getInputStream()) {
+            // The real type comes from the magic bytes, not the name or header
+            byte[] header = in.readNBytes(SNIFF_BYTES);
+            FileKind kind = FileKind.sniff(header);
+            if (kind == null || (imagesOnly && !kind.isImage())) {
+                throw new BadRequestException(imagesOnly
+                        ? "Only JPEG, PNG, GIF, WEBP and BMP images are allowed"
+                        : "Only image and PDF files are allowed");
+            }
 
-            // Copy file to target location
-            Files.copy(file.getInputStream(), targetLocation, StandardCopyOption.REPLACE_EXISTING);
+            staged = Files.createTempFile(stagingLocation, "upload-", ".tmp");
+            MessageDigest digest = newDigest();
+            long size = streamToFile(header, in, staged, digest);
 
-            // Verify file was saved
-            long fileSize = Files.size(targetLocation);
-            log.info("✅ File saved successfully: {} ({} bytes)", uniqueFileName, fileSize);
+            // Content addressed key, identical uploads share one blob
+            String key = HexFormat.of().formatHex(digest.digest()) + kind.getExtension();
+
+            // Reference first, the row lock serialises us against a purge of the same key
+            storedFileRepository.addReference(key, kind.getContentType(), size, LocalDateTime.now());
+            deleteOnRollback(key);
+            storageBackend.put(key, staged, kind.getContentType());
+            log.info("✅ File saved successfully: {} ({} bytes)", key, size);
 
             // Build URL
             String baseUrl = ServletUriComponentsBuilder.fromCurrentContextPath()
                     .build()
                     .toUriString();
 
-            String fullUrl = baseUrl + "/uploads/" + uniqueFileName;
+            String fullUrl = baseUrl + UPLOADS_SEGMENT + key;
             log.info("🔗 Generated URL: {}", fullUrl);
 
             return fullUrl;
@@ -84,46 +219,142 @@ public class FileStorageService {
         } catch (IOException ex) {
             log.error("❌ Error storing file: {}", ex.getMessage());
             throw new FileStorageException("Could not store file: " + ex.getMessage(), ex);
+        } finally {
+            deleteQuietly(staged);
+        }
+    }
+
+    // The reference row goes away with a rollback, the blob would stay behind unreferenced and unlisted
+    private void deleteOnRollback(String key) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
         }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) {
+                    deleteIfOrphaned(key);
+                }
+            }
+        });
     }
 
-    private String getFileExtension(String fileName) {
-        if (fileName == null) {
-            return ".jpg";
+    private void deleteIfOrphaned(String key) {
+        try {
+            separateTransaction.executeWithoutResult(tx -> {
+                // Another upload of the same bytes may have committed a reference meanwhile
+                if (storedFileRepository.findByKeyForUpdate(key).isEmpty()) {
+                    storageBackend.delete(key);
+                    log.info("🗑️ Deleted {} after its upload rolled back", key);
+                }
+            });
+        } catch (RuntimeException e) {
+            log.warn("Could not clean up {} after rollback: {}", key, e.getMessage());
         }
+    }
 
-        int lastDotIndex = fileName.lastIndexOf(".");
-        if (lastDotIndex > 0) {
-            String ext = fileName.substring(lastDotIndex).toLowerCase();
-            // Ensure valid image and document extensions
-            if (ext.equals(".jpg") || ext.equals(".jpeg") || ext.equals(".png") ||
-                    ext.equals(".gif") || ext.equals(".bmp") || ext.equals(".pdf")) {
-                return ext;
+    private long streamToFile(byte[] header, InputStream in, Path target, MessageDigest digest) throws IOException {
+        long total = header.length;
+        digest.update(header);
+
+        try (ReadableByteChannel source = Channels.newChannel(in);
+                FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+            while (headerBuffer.hasRemaining()) {
+                out.write(headerBuffer);
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            int read;
+            while ((read = source.read(buffer)) != -1) {
+                total += read;
+                // The declared size can lie, enforce the limit on what actually arrives
+                if (total > maxFileSize) {
+                    throw new BadRequestException(
+                            "File size must be less than " + (maxFileSize / (1024 * 1024)) + "MB");
+                }
+                buffer.flip();
+                digest.update(buffer.duplicate());
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                buffer.clear();
             }
         }
-        return ".jpg";
+        return total;
     }
 
-    // Optional helper method to delete files
-    public boolean deleteFile(String fileName) {
+    private void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
         try {
-            if (fileName == null || fileName.isEmpty()) {
-                return false;
-            }
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete staging file {}: {}", path, e.getMessage());
+        }
+    }
 
-            // Extract filename from URL
-            String simpleFileName = fileName.substring(fileName.lastIndexOf('/') + 1);
-            Path filePath = this.fileStorageLocation.resolve(simpleFileName);
+    private MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new FileStorageException("SHA-256 not available", e);
+        }
+    }
+
+    enum FileKind {
+        JPEG(".jpg", "image/jpeg", true),
+        PNG(".png", "image/png", true),
+        GIF(".gif", "image/gif", true),
+        WEBP(".webp", "image/webp", true),
+        BMP(".bmp", "image/bmp", true),
+        PDF(".pdf", "application/pdf", false);
+
+        private final String extension;
+        private final String contentType;
+        private final boolean image;
+
+        FileKind(String extension, String contentType, boolean image) {
+            this.extension = extension;
+            this.contentType = contentType;
+            this.image = image;
+        }
+
+        String getExtension() {
+            return extension;
+        }
+
+        String getContentType() {
+            return contentType;
+        }
+
+        boolean isImage() {
+            return image;
+        }
 
-            if (Files.exists(filePath)) {
-                boolean deleted = Files.deleteIfExists(filePath);
-                log.info("🗑️ File {}: {}", simpleFileName, deleted ? "deleted" : "not found");
-                return deleted;
+        static FileKind sniff(byte[] h) {
+            if (h.length >= 3 && (h[0] & 0xFF) == 0xFF && (h[1] & 0xFF) == 0xD8 && (h[2] & 0xFF) == 0xFF) {
+                return JPEG;
             }
-            return false;
-        } catch (Exception ex) {
-            log.error("Error deleting file: {}", ex.getMessage());
-            return false;
+            if (h.length >= 8 && (h[0] & 0xFF) == 0x89 && h[1] == 'P' && h[2] == 'N' && h[3] == 'G') {
+                return PNG;
+            }
+            if (h.length >= 4 && h[0] == 'G' && h[1] == 'I' && h[2] == 'F' && h[3] == '8') {
+                return GIF;
+            }
+            if (h.length >= 12 && h[0] == 'R' && h[1] == 'I' && h[2] == 'F' && h[3] == 'F'
+                    && h[8] == 'W' && h[9] == 'E' && h[10] == 'B' && h[11] == 'P') {
+                return WEBP;
+            }
+            if (h.length >= 2 && h[0] == 'B' && h[1] == 'M') {
+                return BMP;
+            }
+            if (h.length >= 4 && h[0] == '%' && h[1] == 'P' && h[2] == 'D' && h[3] == 'F') {
+                return PDF;
+            }
+            return null;
         }
     }
-}
\ No newline at end of file
+}
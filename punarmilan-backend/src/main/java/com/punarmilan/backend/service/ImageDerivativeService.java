@@ -0,0 +1,369 @@
+package com.punarmilan.backend.service;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Produces resized and blurred variants of uploaded photos so feeds don't
+ * have to download full resolution originals.
+ *
+ * Variants are keyed by the stem of the original file name, which is the
+ * content hash for new uploads, so a variant URL never changes content and
+ * can be cached forever. Blurred previews are keyed by an HMAC of the stem
+ * so the original cannot be guessed from the preview URL.
+ *
+ * Originals are read through the {@link StorageBackend}; derivatives are a
+ * rebuildable cache and always live on local disk under the upload dir.
+ * Which derivative files exist is remembered in memory, so rendering a feed
+ * doesn't stat the disk for every photo. A file that exists stays known until
+ * its original is purged; a missing one is looked up again after a few
+ * seconds, as generation runs in the background.
+ */
+@Slf4j
+@Service
+public class ImageDerivativeService {
+
+    public static final String VARIANTS_DIR = "variants";
+    public static final String BLURRED_DIR = "blurred";
+
+    private static final String UPLOADS_SEGMENT = "/uploads/";
+    private static final int BLUR_SAMPLE_SIZE = 24;
+    private static final int BLUR_OUTPUT_SIZE = 320;
+    private static final long PRESENT = Long.MAX_VALUE;
+
+    @Getter
+    public enum ImageVariant {
+        ORIGINAL(0),
+        THUMB(160),
+        CARD(480);
+
+        private final int maxSize;
+
+        ImageVariant(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        String suffix() {
+            return name().toLowerCase();
+        }
+    }
+
+    private final StorageBackend storageBackend;
+    private final Path uploadRoot;
+    private final Path variantsDir;
+    private final Path blurredDir;
+    private final byte[] blurKey;
+    private final long missingRecheckNanos;
+
+    // File name -> PRESENT, or when a missing file is due for another look; guarded by itself
+    private final LinkedHashMap<String, Long> existing;
+
+    public ImageDerivativeService(@Value("${file.upload-dir:./uploads}") String uploadDir,
+            @Value("${file.blur-key}") String blurKey,
+            @Value("${file.derivatives.known-files:100000}") int knownFiles,
+            @Value("${file.derivatives.missing-recheck-seconds:5}") long missingRecheckSeconds,
+            StorageBackend storageBackend) {
+        if (blurKey == null || blurKey.isBlank()) {
+            throw new IllegalStateException("file.blur-key must be set");
+        }
+        this.storageBackend = storageBackend;
+        this.uploadRoot = Paths.get(uploadDir).toAbsolutePath().normalize();
+        this.variantsDir = uploadRoot.resolve(VARIANTS_DIR);
+        this.blurredDir = uploadRoot.resolve(BLURRED_DIR);
+        this.blurKey = blurKey.getBytes(StandardCharsets.UTF_8);
+        this.missingRecheckNanos = TimeUnit.SECONDS.toNanos(missingRecheckSeconds);
+        this.existing = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > knownFiles;
+            }
+        };
+
+        try {
+            Files.createDirectories(variantsDir);
+            Files.createDirectories(blurredDir);
+        } catch (IOException e) {
+            log.error("Could not create image variant directories: {}", e.getMessage());
+        }
+
+        log.info("Image derivatives stored under {}", uploadRoot);
+    }
+
+    /**
+     * Generates all variants for a stored photo. Runs on the image executor so
+     * the upload request returns as soon as the original is on disk.
+     */
+    @Async("imageExecutor")
+    public void generateDerivatives(String originalUrl) {
+        Optional<String> key = keyOf(originalUrl);
+        if (key.isEmpty() || !storageBackend.exists(key.get())) {
+            log.warn("Skipping derivatives, original not found for {}", originalUrl);
+            return;
+        }
+
+        String stem = stemOf(key.get());
+        long start = System.currentTimeMillis();
+
+        try {
+            BufferedImage source;
+            try (InputStream in = storageBackend.openStream(key.get())) {
+                source = ImageIO.read(in);
+            }
+            if (source == null) {
+                log.warn("Skipping derivatives, {} is not a readable image", originalUrl);
+                return;
+            }
+            BufferedImage rgb = toRgb(source);
+
+            for (ImageVariant variant : ImageVariant.values()) {
+                if (variant == ImageVariant.ORIGINAL) {
+                    continue;
+                }
+                String fileName = variantFileName(stem, variant);
+                writeAtomically(resize(rgb, variant.getMaxSize()), variantsDir.resolve(fileName));
+                remember(fileName, PRESENT);
+            }
+
+            String blurredName = blurKeyOf(stem) + ".jpg";
+            writeAtomically(blur(rgb), blurredDir.resolve(blurredName));
+            remember(blurredName, PRESENT);
+
+            log.info("Image derivatives generated for {} in {} ms", stem, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("Failed to generate derivatives for {}: {}", originalUrl, e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the URL of the requested variant, or the original URL when the
+     * variant has not been generated (yet) or the photo is not a local upload.
+     */
+    public String resolve(String originalUrl, ImageVariant variant) {
+        if (variant == ImageVariant.ORIGINAL) {
+            return originalUrl;
+        }
+        Optional<String> key = keyOf(originalUrl);
+        if (key.isEmpty()) {
+            return originalUrl;
+        }
+        String fileName = variantFileName(stemOf(key.get()), variant);
+        if (!exists(variantsDir, fileName)) {
+            return originalUrl;
+        }
+        return siblingUrl(originalUrl, VARIANTS_DIR + "/" + fileName);
+    }
+
+    /**
+     * Per-photo blurred preview, empty when none has been generated.
+     */
+    public Optional<String> resolveBlurred(String originalUrl) {
+        Optional<String> key = keyOf(originalUrl);
+        if (key.isEmpty()) {
+            return Optional.empty();
+        }
+        String fileName = blurKeyOf(stemOf(key.get())) + ".jpg";
+        if (!exists(blurredDir, fileName)) {
+            return Optional.empty();
+        }
+        return Optional.of(siblingUrl(originalUrl, BLURRED_DIR + "/" + fileName));
+    }
+
+    /**
+     * Removes every variant of a storage key, called when the original is purged.
+     */
+    public void deleteDerivatives(String key) {
+        String stem = stemOf(key);
+        try {
+            for (ImageVariant variant : ImageVariant.values()) {
+                if (variant == ImageVariant.ORIGINAL) {
+                    continue;
+                }
+                String fileName = variantFileName(stem, variant);
+                forget(fileName);
+                Files.deleteIfExists(variantsDir.resolve(fileName));
+            }
+            String blurredName = blurKeyOf(stem) + ".jpg";
+            forget(blurredName);
+            Files.deleteIfExists(blurredDir.resolve(blurredName));
+        } catch (IOException e) {
+            log.warn("Could not delete derivatives for {}: {}", stem, e.getMessage());
+        }
+    }
+
+    // ==================== PRIVATE HELPER METHODS ====================
+
+    private boolean exists(Path dir, String fileName) {
+        long now = System.nanoTime();
+        Long known;
+        synchronized (existing) {
+            known = existing.get(fileName);
+        }
+        if (known != null && (known == PRESENT || now - known < 0)) {
+            return known == PRESENT;
+        }
+        boolean present = Files.exists(dir.resolve(fileName));
+        remember(fileName, present ? PRESENT : now + missingRecheckNanos);
+        return present;
+    }
+
+    private void remember(String fileName, long state) {
+        synchronized (existing) {
+            existing.put(fileName, state);
+        }
+    }
+
+    private void forget(String fileName) {
+        synchronized (existing) {
+            existing.remove(fileName);
+        }
+    }
+
+    private Optional<String> keyOf(String url) {
+        if (url == null || url.isEmpty()) {
+            return Optional.empty();
+        }
+        int idx = url.indexOf(UPLOADS_SEGMENT);
+        if (idx < 0) {
+            return Optional.empty();
+        }
+        String relative = url.substring(idx + UPLOADS_SEGMENT.length());
+        if (relative.isEmpty() || relative.contains("/") || relative.contains("..")) {
+            return Optional.empty();
+        }
+        return Optional.of(relative);
+    }
+
+    private String siblingUrl(String originalUrl, String relativePath) {
+        int idx = originalUrl.indexOf(UPLOADS_SEGMENT);
+        return originalUrl.substring(0, idx + UPLOADS_SEGMENT.length()) + relativePath;
+    }
+
+    private String variantFileName(String stem, ImageVariant variant) {
+        return stem + "_" + variant.suffix() + ".jpg";
+    }
+
+    private String stemOf(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot > 0 ? fileName.substring(0, dot) : fileName;
+    }
+
+    private String blurKeyOf(String stem) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(blurKey, "HmacSHA256"));
+            byte[] digest = mac.doFinal(stem.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (Exception e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
+
+    private BufferedImage toRgb(BufferedImage source) {
+        if (source.getType() == BufferedImage.TYPE_INT_RGB) {
+            return source;
+        }
+        BufferedImage rgb = new BufferedImage(source.getWidth(), source.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = rgb.createGraphics();
+        g.setColor(java.awt.Color.WHITE);
+        g.fillRect(0, 0, rgb.getWidth(), rgb.getHeight());
+        g.drawImage(source, 0, 0, null);
+        g.dispose();
+        return rgb;
+    }
+
+    private BufferedImage resize(BufferedImage source, int maxSize) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        if (width <= maxSize && height <= maxSize) {
+            return source;
+        }
+
+        double scale = (double) maxSize / Math.max(width, height);
+        int targetWidth = Math.max(1, (int) Math.round(width * scale));
+        int targetHeight = Math.max(1, (int) Math.round(height * scale));
+
+        // Halve repeatedly first, a single bilinear pass from a large photo aliases badly
+        BufferedImage current = source;
+        while (current.getWidth() / 2 >= targetWidth && current.getHeight() / 2 >= targetHeight) {
+            current = draw(current, current.getWidth() / 2, current.getHeight() / 2);
+        }
+        return draw(current, targetWidth, targetHeight);
+    }
+
+    private BufferedImage blur(BufferedImage source) {
+        // Downsampling to a handful of pixels and scaling back up discards all detail
+        BufferedImage tiny = resize(source, BLUR_SAMPLE_SIZE);
+        double scale = (double) BLUR_OUTPUT_SIZE / Math.max(tiny.getWidth(), tiny.getHeight());
+        return draw(tiny, Math.max(1, (int) Math.round(tiny.getWidth() * scale)),
+                Math.max(1, (int) Math.round(tiny.getHeight() * scale)));
+    }
+
+    private BufferedImage draw(BufferedImage source, int width, int height) {
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = target.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.drawImage(source, 0, 0, width, height, null);
+        g.dispose();
+        return target;
+    }
+
+    private void writeAtomically(BufferedImage image, Path target) throws IOException {
+        if (Files.exists(target)) {
+            return; // Content addressed, an existing file is already correct
+        }
+
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpg");
+        if (!writers.hasNext()) {
+            throw new IOException("No image writer for jpg");
+        }
+        ImageWriter writer = writers.next();
+
+        Path temp = Files.createTempFile(target.getParent(), ".derivative-", ".tmp");
+        try {
+            try (ImageOutputStream out = ImageIO.createImageOutputStream(temp.toFile())) {
+                writer.setOutput(out);
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                if (param.canWriteCompressed()) {
+                    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                    if (param.getCompressionTypes() != null && param.getCompressionType() == null) {
+                        param.setCompressionType(param.getCompressionTypes()[0]);
+                    }
+                    param.setCompressionQuality(0.8f);
+                }
+                writer.write(null, new IIOImage(image, null, null), param);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            writer.dispose();
+            Files.deleteIfExists(temp);
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package com.punarmilan.backend.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.punarmilan.backend.dto.ConversationDto;
+import com.punarmilan.backend.repository.ConversationRepository.InboxEntry;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Denormalized conversation list per user.
+ *
+ * {@code inbox:{userId}} is a sorted set of conversation ids scored by last
+ * activity, and {@code inbox-rows:{userId}} holds a compact snapshot per
+ * conversation. The marker field {@code _built} in the rows hash says the
+ * index is complete. Without it the index is rebuilt from one query. A page is
+ * served from one index read and one row read. Rows that are missing, because
+ * a watermark moved or a block changed, are loaded from the database and
+ * written back.
+ *
+ * A bump that commits while the index is being rebuilt would be missing from
+ * it, so updates that find no marker bump {@code inbox-version:{userId}}
+ * instead, and the rebuild only sets the marker if the version is still the
+ * one it saw before loading.
+ *
+ * Rows hold the conversation only. The other party's name and photo depend on
+ * their profile and on who liked whom, so the caller resolves them per page.
+ */
+@Slf4j
+@Service
+public class InboxService {
+
+    private static final String INDEX_PREFIX = "inbox:";
+    private static final String ROWS_PREFIX = "inbox-rows:";
+    private static final String VERSION_PREFIX = "inbox-version:";
+    private static final String BUILT_FIELD = "_built";
+
+    // 0 when the inbox isn't built, or when an existing conversation was removed from it by a delete.
+    // Not built also bumps the version, a rebuild running right now must not mark itself complete
+    private static final RedisScript<Long> RECORD_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('HEXISTS', KEYS[2], '" + BUILT_FIELD + "') == 0 then "
+                    + "redis.call('INCR', KEYS[3]) redis.call('EXPIRE', KEYS[3], ARGV[5]) return 0 end "
+                    + "if ARGV[4] ~= '1' and not redis.call('ZSCORE', KEYS[1], ARGV[1]) then return 0 end "
+                    + "redis.call('ZADD', KEYS[1], ARGV[2], ARGV[1]) "
+                    + "if ARGV[3] == '' then redis.call('HDEL', KEYS[2], ARGV[1]) "
+                    + "else redis.call('HSET', KEYS[2], ARGV[1], ARGV[3]) end "
+                    + "return 1",
+            Long.class);
+
+    // Sets the marker, on fresh rows, only if nothing bumped the version since the rebuild started
+    private static final RedisScript<Long> MARK_BUILT_SCRIPT = new DefaultRedisScript<>(
+            "if (redis.call('GET', KEYS[2]) or '') ~= ARGV[1] then return 0 end "
+                    + "redis.call('DEL', KEYS[1]) "
+                    + "redis.call('HSET', KEYS[1], '" + BUILT_FIELD + "', ARGV[2]) "
+                    + "redis.call('EXPIRE', KEYS[1], ARGV[3]) "
+                    + "return 1",
+            Long.class);
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class InboxRow {
+        private Long id;
+        private Long user1Id;
+        private String user1Name;
+        private Long user2Id;
+        private String user2Name;
+        private Long otherUserId;
+        private String otherUserName;
+        private String lastMessage;
+        private Long lastMessageAt;
+        private Long lastMessageBy;
+        private Integer unreadCount;
+        private Boolean blocked;
+        private Long blockedBy;
+        private Long lastReadMessageId;
+        private Long otherLastReadMessageId;
+        private Long otherLastDeliveredMessageId;
+        private Long updatedAt;
+    }
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    // Index members are plain ids, matching what the record script writes
+    private final StringRedisTemplate stringRedisTemplate;
+    private final Duration ttl;
+    private final StringRedisSerializer stringSerializer = new StringRedisSerializer();
+    private final GenericToStringSerializer<Long> longSerializer = new GenericToStringSerializer<>(Long.class);
+
+    public InboxService(RedisTemplate<String, Object> redisTemplate,
+            StringRedisTemplate stringRedisTemplate,
+            @Value("${app.chat.inbox.ttl-hours:24}") long ttlHours) {
+        this.redisTemplate = redisTemplate;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.ttl = Duration.ofHours(ttlHours);
+    }
+
+    /**
+     * One page of the user's inbox, newest first, without the other party's
+     * photo. Returns null when Redis is unavailable, or when the index changed
+     * while it was being rebuilt, so the caller can fall back to the database.
+     */
+    public Page<ConversationDto> getPage(Long userId, Pageable pageable,
+            Supplier<List<InboxEntry>> indexLoader,
+            Function<List<Long>, Map<Long, ConversationDto>> rowLoader) {
+        String indexKey = INDEX_PREFIX + userId;
+        String rowsKey = ROWS_PREFIX + userId;
+        try {
+            if (!Boolean.TRUE.equals(redisTemplate.opsForHash().hasKey(rowsKey, BUILT_FIELD))
+                    && !rebuild(userId, indexLoader)) {
+                log.debug("Inbox of user {} changed while rebuilding, serving this page from MySQL", userId);
+                return null;
+            }
+
+            long start = pageable.getOffset();
+            long end = start + pageable.getPageSize() - 1;
+            List<Object> head = stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Object execute(RedisOperations operations) throws DataAccessException {
+                    operations.opsForZSet().reverseRange(indexKey, start, end);
+                    operations.opsForZSet().zCard(indexKey);
+                    return null;
+                }
+            });
+            List<Long> ids = new ArrayList<>();
+            if (head.get(0) instanceof Set<?> members) {
+                members.forEach(member -> ids.add(Long.valueOf(member.toString())));
+            }
+            long total = head.get(1) instanceof Number n ? n.longValue() : 0;
+            if (ids.isEmpty()) {
+                return new PageImpl<>(List.of(), pageable, total);
+            }
+
+            List<Object> cached = redisTemplate.opsForHash().multiGet(rowsKey,
+                    ids.stream().map(id -> (Object) id.toString()).toList());
+
+            Map<Long, InboxRow> rows = new HashMap<>();
+            List<Long> missing = new ArrayList<>();
+            for (int i = 0; i < ids.size(); i++) {
+                if (cached != null && cached.get(i) instanceof InboxRow row) {
+                    rows.put(ids.get(i), row);
+                } else {
+                    missing.add(ids.get(i));
+                }
+            }
+
+            if (!missing.isEmpty()) {
+                Map<Long, ConversationDto> loaded = rowLoader.apply(missing);
+                Map<String, InboxRow> writeBack = new HashMap<>();
+                for (Long id : missing) {
+                    ConversationDto dto = loaded.get(id);
+                    if (dto == null) {
+                        // Gone or deleted for this user since the index was built
+                        stringRedisTemplate.opsForZSet().remove(indexKey, id.toString());
+                        continue;
+                    }
+                    InboxRow row = toRow(dto);
+                    rows.put(id, row);
+                    writeBack.put(id.toString(), row);
+                }
+                if (!writeBack.isEmpty()) {
+                    redisTemplate.opsForHash().putAll(rowsKey, writeBack);
+                }
+            }
+
+            List<ConversationDto> content = ids.stream()
+                    .filter(rows::containsKey)
+                    .map(id -> toDto(rows.get(id)))
+                    .toList();
+            return new PageImpl<>(content, pageable, total);
+        } catch (Exception e) {
+            log.warn("Inbox read failed for user {}, falling back to MySQL: {}", userId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Moves the conversation to the top of the user's inbox with a fresh row,
+     * after the surrounding transaction commits. Watermarks are carried over
+     * from the previous row. Without one the row is dropped and reloaded on
+     * the next read.
+     */
+    public void record(Long userId, ConversationDto conversation, boolean created) {
+        afterCommit(() -> {
+            String rowsKey = ROWS_PREFIX + userId;
+            String member = conversation.getId().toString();
+            Object previous = redisTemplate.opsForHash().get(rowsKey, member);
+
+            String encoded = "";
+            if (created || previous instanceof InboxRow) {
+                InboxRow row = toRow(conversation);
+                if (previous instanceof InboxRow old) {
+                    row.setLastReadMessageId(old.getLastReadMessageId());
+                    row.setOtherLastReadMessageId(old.getOtherLastReadMessageId());
+                    row.setOtherLastDeliveredMessageId(old.getOtherLastDeliveredMessageId());
+                }
+                encoded = encode(row);
+            }
+
+            long score = toMillis(conversation.getLastMessageTime());
+            redisTemplate.execute(RECORD_SCRIPT, stringSerializer, longSerializer,
+                    List.of(INDEX_PREFIX + userId, rowsKey, VERSION_PREFIX + userId),
+                    member, Long.toString(score), encoded, created ? "1" : "0", Long.toString(ttl.toSeconds()));
+        });
+    }
+
+    /**
+     * Drops cached rows so they are reloaded, e.g. after a watermark or block change.
+     */
+    public void evictRow(Long conversationId, Long... userIds) {
+        afterCommit(() -> {
+            for (Long userId : userIds) {
+                redisTemplate.opsForHash().delete(ROWS_PREFIX + userId, conversationId.toString());
+            }
+        });
+    }
+
+    /**
+     * Takes the conversation out of the user's inbox, e.g. after they deleted it.
+     */
+    public void remove(Long userId, Long conversationId) {
+        afterCommit(() -> {
+            stringRedisTemplate.opsForZSet().remove(INDEX_PREFIX + userId, conversationId.toString());
+            redisTemplate.opsForHash().delete(ROWS_PREFIX + userId, conversationId.toString());
+        });
+    }
+
+    public void invalidate(Long userId) {
+        afterCommit(() -> {
+            stringRedisTemplate.opsForValue().increment(VERSION_PREFIX + userId);
+            stringRedisTemplate.expire(VERSION_PREFIX + userId, ttl);
+            redisTemplate.delete(List.of(INDEX_PREFIX + userId, ROWS_PREFIX + userId));
+        });
+    }
+
+    // ==================== PRIVATE HELPER METHODS ====================
+
+    // False when something changed the inbox while it was loading, the marker is then left unset
+    private boolean rebuild(Long userId, Supplier<List<InboxEntry>> indexLoader) {
+        String indexKey = INDEX_PREFIX + userId;
+        String rowsKey = ROWS_PREFIX + userId;
+        String versionKey = VERSION_PREFIX + userId;
+        String version = stringRedisTemplate.opsForValue().get(versionKey);
+        List<InboxEntry> entries = indexLoader.get();
+        stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                operations.delete(indexKey);
+                for (InboxEntry entry : entries) {
+                    operations.opsForZSet().add(indexKey, entry.getId().toString(), toMillis(entry.getSortTime()));
+                }
+                operations.expire(indexKey, ttl);
+                return null;
+            }
+        });
+        // The marker goes in last, a reader that sees it also sees the index
+        Long marked = redisTemplate.execute(MARK_BUILT_SCRIPT, stringSerializer, longSerializer,
+                List.of(rowsKey, versionKey),
+                version == null ? "" : version, Long.toString(System.currentTimeMillis()),
+                Long.toString(ttl.toSeconds()));
+        log.debug("Rebuilt inbox for user {} with {} conversations", userId, entries.size());
+        return marked != null && marked == 1L;
+    }
+
+    private void afterCommit(Runnable action) {
+        AfterCommit.run(() -> {
+            try {
+                action.run();
+            } catch (Exception e) {
+                // A stale row self-heals when the inbox expires
+                log.warn("Inbox update failed: {}", e.getMessage());
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private String encode(InboxRow row) {
+        byte[] bytes = ((RedisSerializer<Object>) redisTemplate.getHashValueSerializer()).serialize(row);
+        return bytes == null ? "" : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static InboxRow toRow(ConversationDto dto) {
+        return InboxRow.builder()
+                .id(dto.getId())
+                .user1Id(dto.getUser1Id())
+                .user1Name(dto.getUser1Name())
+                .user2Id(dto.getUser2Id())
+                .user2Name(dto.getUser2Name())
+                .otherUserId(dto.getOtherUserId())
+                .otherUserName(dto.getOtherUserName())
+                .lastMessage(dto.getLastMessage())
+                .lastMessageAt(dto.getLastMessageTime() != null ? toMillis(dto.getLastMessageTime()) : null)
+                .lastMessageBy(dto.getLastMessageBy())
+                .unreadCount(dto.getUnreadCount())
+                .blocked(dto.getBlocked())
+                .blockedBy(dto.getBlockedBy())
+                .lastReadMessageId(dto.getLastReadMessageId())
+                .otherLastReadMessageId(dto.getOtherLastReadMessageId())
+                .otherLastDeliveredMessageId(dto.getOtherLastDeliveredMessageId())
+                .updatedAt(dto.getUpdatedAt() != null ? toMillis(dto.getUpdatedAt()) : null)
+                .build();
+    }
+
+    private static ConversationDto toDto(InboxRow row) {
+        return ConversationDto.builder()
+                .id(row.getId())
+                .user1Id(row.getUser1Id())
+                .user1Name(row.getUser1Name())
+                .user2Id(row.getUser2Id())
+                .user2Name(row.getUser2Name())
+                .otherUserId(row.getOtherUserId())
+                .otherUserName(row.getOtherUserName())
+                .lastMessage(row.getLastMessage())
+                .lastMessageTime(fromMillis(row.getLastMessageAt()))
+                .lastMessageBy(row.getLastMessageBy())
+                .unreadCount(row.getUnreadCount())
+                .blocked(row.getBlocked())
+                .blockedBy(row.getBlockedBy())
+                .lastReadMessageId(row.getLastReadMessageId())
+                .otherLastReadMessageId(row.getOtherLastReadMessageId())
+                .otherLastDeliveredMessageId(row.getOtherLastDeliveredMessageId())
+                .updatedAt(fromMillis(row.getUpdatedAt()))
+                .build();
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time == null ? 0L : time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static LocalDateTime fromMillis(Long millis) {
+        return millis == null ? null : LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+}
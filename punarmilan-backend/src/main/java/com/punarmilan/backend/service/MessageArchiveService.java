@@ -0,0 +1,418 @@
+package com.punarmilan.backend.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.luben.zstd.Zstd;
+import com.punarmilan.backend.dto.MessageArchiveStatsDto;
+import com.punarmilan.backend.entity.Conversation;
+import com.punarmilan.backend.entity.Message;
+import com.punarmilan.backend.entity.MessageArchiveBlock;
+import com.punarmilan.backend.entity.User;
+import com.punarmilan.backend.repository.ConversationRepository;
+import com.punarmilan.backend.repository.MessageArchiveBlockRepository;
+import com.punarmilan.backend.repository.MessageArchiveBlockRepository.ArchiveTotals;
+import com.punarmilan.backend.repository.MessageArchiveBlockRepository.BlockSpan;
+import com.punarmilan.backend.repository.MessageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Cold tier for chat history. Messages older than the retention window move
+ * out of {@code messages} into per-conversation zstd blocks, so the hot table
+ * and its indexes only hold recent traffic.
+ *
+ * Only the oldest consecutive run of a conversation is ever archived, which
+ * keeps every archived id below every hot id. History reads rely on that to
+ * continue from one tier into the other with the same message id cursors,
+ * and offset pages to continue with the archive once past the hot rows.
+ * Search hits and read or delivery receipts look ids up here when the hot
+ * table no longer has them.
+ */
+@Slf4j
+@Service
+public class MessageArchiveService {
+
+    private static final int CONVERSATION_PAGE = 100;
+    private static final int BLOCK_PAGE = 20;
+    private static final TypeReference<List<ArchivedMessage>> BLOCK_TYPE = new TypeReference<>() {
+    };
+
+    private final MessageRepository messageRepository;
+    private final MessageArchiveBlockRepository blockRepository;
+    private final ConversationRepository conversationRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final int afterDays;
+    private final int blockSize;
+    private final int zstdLevel;
+
+    private final Counter archivedCounter;
+    private final Counter rawBytesCounter;
+    private final Counter compressedBytesCounter;
+
+    /**
+     * What a block stores per message. Sender and receiver are ids only, the
+     * users come from the conversation when a block is read back.
+     */
+    public record ArchivedMessage(Long id, Long senderId, Long receiverId, String content,
+            Message.MessageType messageType, String fileUrl, String fileName, Long fileSize,
+            boolean read, boolean delivered, boolean deletedBySender, boolean deletedByReceiver,
+            Long repliedToMessageId, LocalDateTime createdAt) {
+    }
+
+    /**
+     * The decoded messages of one block and the conversation they belong to.
+     */
+    public record ArchivedBlock(Conversation conversation, List<ArchivedMessage> messages) {
+    }
+
+    public MessageArchiveService(MessageRepository messageRepository,
+            MessageArchiveBlockRepository blockRepository,
+            ConversationRepository conversationRepository,
+            TransactionTemplate transactionTemplate,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${app.chat.archive.enabled:true}") boolean enabled,
+            @Value("${app.chat.archive.after-days:180}") int afterDays,
+            @Value("${app.chat.archive.block-size:500}") int blockSize,
+            @Value("${app.chat.archive.zstd-level:9}") int zstdLevel) {
+        this.messageRepository = messageRepository;
+        this.blockRepository = blockRepository;
+        this.conversationRepository = conversationRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.afterDays = afterDays;
+        this.blockSize = Math.max(1, blockSize);
+        this.zstdLevel = zstdLevel;
+        this.archivedCounter = Counter.builder("chat.archive.messages").register(meterRegistry);
+        this.rawBytesCounter = Counter.builder("chat.archive.bytes.raw").register(meterRegistry);
+        this.compressedBytesCounter = Counter.builder("chat.archive.bytes.compressed").register(meterRegistry);
+    }
+
+    /**
+     * Moves messages past the retention window into the archive.
+     * Runs nightly at 03:30 by default.
+     */
+    @Scheduled(cron = "${app.chat.archive.cron:0 30 3 * * *}")
+    public void archiveOldMessages() {
+        if (enabled) {
+            archive();
+        }
+    }
+
+    /**
+     * Archives every conversation's old messages, one block per transaction.
+     * Returns how many messages left the hot table.
+     */
+    public int archive() {
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(afterDays);
+        long afterConversationId = 0;
+        int archived = 0;
+        int blocks = 0;
+        List<Long> conversationIds;
+        do {
+            conversationIds = messageRepository.findConversationIdsWithMessagesBefore(cutoff, afterConversationId,
+                    PageRequest.of(0, CONVERSATION_PAGE));
+            for (Long conversationId : conversationIds) {
+                try {
+                    int moved;
+                    while ((moved = archiveBlock(conversationId, cutoff)) > 0) {
+                        archived += moved;
+                        blocks++;
+                    }
+                } catch (Exception e) {
+                    log.error("Archiving conversation {} failed, continuing with the next", conversationId, e);
+                }
+                afterConversationId = conversationId;
+            }
+        } while (conversationIds.size() == CONVERSATION_PAGE);
+
+        if (archived > 0) {
+            ArchiveTotals totals = blockRepository.summarize();
+            log.info("Archived {} messages older than {} days into {} blocks, archive holds {} messages in {} of {} raw bytes",
+                    archived, afterDays, blocks, totals.getMessages(), totals.getCompressedBytes(), totals.getRawBytes());
+        }
+        return archived;
+    }
+
+    /**
+     * Archived messages with ids below the cursor, newest first, as detached
+     * entities that can go through the same mapping as hot ones.
+     */
+    public List<Message> findBefore(Conversation conversation, long before, int limit) {
+        List<Message> result = new ArrayList<>();
+        long cursor = before;
+        while (result.size() < limit) {
+            List<MessageArchiveBlock> blocks = blockRepository.findBlocksBefore(conversation.getId(), cursor,
+                    PageRequest.of(0, 1));
+            if (blocks.isEmpty()) {
+                break;
+            }
+            List<ArchivedMessage> messages = decode(blocks.get(0));
+            for (int i = messages.size() - 1; i >= 0 && result.size() < limit; i--) {
+                if (messages.get(i).id() < cursor) {
+                    result.add(toMessage(messages.get(i), conversation));
+                }
+            }
+            cursor = blocks.get(0).getFirstMessageId();
+        }
+        return result;
+    }
+
+    /**
+     * Archived messages with ids above the cursor, oldest first.
+     */
+    public List<Message> findAfter(Conversation conversation, long after, int limit) {
+        List<Message> result = new ArrayList<>();
+        long cursor = after;
+        while (result.size() < limit) {
+            List<MessageArchiveBlock> blocks = blockRepository.findBlocksAfter(conversation.getId(), cursor,
+                    PageRequest.of(0, 1));
+            if (blocks.isEmpty()) {
+                break;
+            }
+            for (ArchivedMessage message : decode(blocks.get(0))) {
+                if (message.id() > cursor && result.size() < limit) {
+                    result.add(toMessage(message, conversation));
+                }
+            }
+            cursor = blocks.get(0).getLastMessageId();
+        }
+        return result;
+    }
+
+    /**
+     * How many messages of the conversation are archived.
+     */
+    public long countMessages(Long conversationId) {
+        return blockRepository.findSpans(conversationId).stream().mapToLong(BlockSpan::getMessageCount).sum();
+    }
+
+    /**
+     * Archived messages newest first, skipping the first offset of them. Only
+     * the blocks the page falls in are read, the ones before it are skipped by
+     * their message count.
+     */
+    public List<Message> findPage(Conversation conversation, long offset, int limit) {
+        List<Message> result = new ArrayList<>();
+        long skip = offset;
+        for (BlockSpan span : blockRepository.findSpans(conversation.getId())) {
+            if (result.size() >= limit) {
+                break;
+            }
+            if (skip >= span.getMessageCount()) {
+                skip -= span.getMessageCount();
+                continue;
+            }
+            List<ArchivedMessage> messages = blockRepository.findById(span.getId()).map(this::decode)
+                    .orElse(List.of());
+            for (int i = messages.size() - 1 - (int) skip; i >= 0 && result.size() < limit; i--) {
+                result.add(toMessage(messages.get(i), conversation));
+            }
+            skip = 0;
+        }
+        return result;
+    }
+
+    /**
+     * Archived messages of one conversation by id, decoding each block touched
+     * once. Ids that are not archived are left out.
+     */
+    public Map<Long, ArchivedMessage> findByIds(Long conversationId, Collection<Long> messageIds) {
+        Map<Long, ArchivedMessage> found = new HashMap<>();
+        for (Long messageId : messageIds) {
+            if (found.containsKey(messageId)) {
+                continue;
+            }
+            for (MessageArchiveBlock block : blockRepository.findBlockContaining(conversationId, messageId)) {
+                decode(block).forEach(message -> found.put(message.id(), message));
+            }
+        }
+        found.keySet().retainAll(messageIds);
+        return found;
+    }
+
+    /**
+     * An archived message of one of the user's conversations, by id alone.
+     */
+    public Optional<Message> findForUser(Long userId, Long messageId) {
+        for (MessageArchiveBlock block : blockRepository.findUserBlocksContaining(userId, messageId)) {
+            for (ArchivedMessage message : decode(block)) {
+                if (message.id().equals(messageId)) {
+                    return conversationRepository.findById(block.getConversationId())
+                            .map(conversation -> toMessage(message, conversation));
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Hands every block over decoded, in block id order, a page of blocks at a
+     * time. With a user only blocks of the conversations they still have.
+     */
+    public void forEachBlock(Long userId, Consumer<ArchivedBlock> consumer) {
+        long afterId = 0;
+        List<MessageArchiveBlock> page;
+        do {
+            page = userId != null
+                    ? blockRepository.findUserBlocksAfterId(userId, afterId, PageRequest.of(0, BLOCK_PAGE))
+                    : blockRepository.findBlocksAfterId(afterId, PageRequest.of(0, BLOCK_PAGE));
+            if (page.isEmpty()) {
+                break;
+            }
+            Map<Long, Conversation> conversations = conversationRepository.findAllById(page.stream()
+                    .map(MessageArchiveBlock::getConversationId)
+                    .collect(Collectors.toSet())).stream()
+                    .collect(Collectors.toMap(Conversation::getId, Function.identity()));
+            for (MessageArchiveBlock block : page) {
+                Conversation conversation = conversations.get(block.getConversationId());
+                if (conversation != null) {
+                    consumer.accept(new ArchivedBlock(conversation, decode(block)));
+                }
+            }
+            afterId = page.get(page.size() - 1).getId();
+        } while (page.size() == BLOCK_PAGE);
+    }
+
+    public void deleteConversation(Long conversationId) {
+        blockRepository.deleteByConversationId(conversationId);
+    }
+
+    // Must run before the user's conversations are deleted, the blocks are found through them
+    public void deleteForUser(Long userId) {
+        blockRepository.deleteByConversationsOfUser(userId);
+    }
+
+    public void deleteAll() {
+        blockRepository.deleteAllInBatch();
+    }
+
+    public MessageArchiveStatsDto getStats() {
+        ArchiveTotals totals = blockRepository.summarize();
+        return MessageArchiveStatsDto.builder()
+                .hotMessages(messageRepository.count())
+                .archivedMessages(totals.getMessages())
+                .archiveBlocks(totals.getBlocks())
+                .rawBytes(totals.getRawBytes())
+                .compressedBytes(totals.getCompressedBytes())
+                .savedBytes(totals.getRawBytes() - totals.getCompressedBytes())
+                .compressionRatio(totals.getCompressedBytes() > 0
+                        ? Math.round(totals.getRawBytes() * 100.0 / totals.getCompressedBytes()) / 100.0
+                        : 0)
+                .build();
+    }
+
+    // ==================== PRIVATE HELPER METHODS ====================
+
+    // Block insert and hot delete commit together. A concurrent run that already moved
+    // some of the rows deletes fewer than it read, and rolls back instead of duplicating them.
+    private int archiveBlock(Long conversationId, LocalDateTime cutoff) {
+        Integer moved = transactionTemplate.execute(status -> {
+            List<Message> oldest = messageRepository.findAfter(conversationId, 0L, PageRequest.of(0, blockSize));
+            List<ArchivedMessage> run = new ArrayList<>();
+            for (Message message : oldest) {
+                if (!message.getCreatedAt().isBefore(cutoff)) {
+                    break;
+                }
+                run.add(toArchived(message));
+            }
+            if (run.isEmpty()) {
+                return 0;
+            }
+
+            byte[] raw = encode(run);
+            byte[] compressed = Zstd.compress(raw, zstdLevel);
+            blockRepository.save(MessageArchiveBlock.builder()
+                    .conversationId(conversationId)
+                    .firstMessageId(run.get(0).id())
+                    .lastMessageId(run.get(run.size() - 1).id())
+                    .messageCount(run.size())
+                    .rawBytes(raw.length)
+                    .compressedBytes(compressed.length)
+                    .payload(compressed)
+                    .build());
+
+            List<Long> ids = run.stream().map(ArchivedMessage::id).toList();
+            if (messageRepository.deleteByIds(ids) != ids.size()) {
+                status.setRollbackOnly();
+                return 0;
+            }
+            conversationRepository.recordArchived(conversationId, ids.get(ids.size() - 1));
+
+            archivedCounter.increment(run.size());
+            rawBytesCounter.increment(raw.length);
+            compressedBytesCounter.increment(compressed.length);
+            return run.size();
+        });
+        return moved != null ? moved : 0;
+    }
+
+    private byte[] encode(List<ArchivedMessage> messages) {
+        try {
+            return objectMapper.writeValueAsBytes(messages);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not serialize archive block", e);
+        }
+    }
+
+    private List<ArchivedMessage> decode(MessageArchiveBlock block) {
+        try {
+            return objectMapper.readValue(Zstd.decompress(block.getPayload(), block.getRawBytes()), BLOCK_TYPE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read archive block " + block.getId(), e);
+        }
+    }
+
+    private static ArchivedMessage toArchived(Message message) {
+        return new ArchivedMessage(message.getId(), message.getSender().getId(), message.getReceiver().getId(),
+                message.getContent(), message.getMessageType(), message.getFileUrl(), message.getFileName(),
+                message.getFileSize(), message.isRead(), message.isDelivered(), message.isDeletedBySender(),
+                message.isDeletedByReceiver(), message.getRepliedToMessageId(), message.getCreatedAt());
+    }
+
+    private static Message toMessage(ArchivedMessage archived, Conversation conversation) {
+        return Message.builder()
+                .id(archived.id())
+                .conversation(conversation)
+                .sender(participant(conversation, archived.senderId()))
+                .receiver(participant(conversation, archived.receiverId()))
+                .content(archived.content())
+                .messageType(archived.messageType())
+                .fileUrl(archived.fileUrl())
+                .fileName(archived.fileName())
+                .fileSize(archived.fileSize())
+                .read(archived.read())
+                .delivered(archived.delivered())
+                .deletedBySender(archived.deletedBySender())
+                .deletedByReceiver(archived.deletedByReceiver())
+                .repliedToMessageId(archived.repliedToMessageId())
+                .createdAt(archived.createdAt())
+                .build();
+    }
+
+    private static User participant(Conversation conversation, Long userId) {
+        return conversation.getUser1().getId().equals(userId) ? conversation.getUser1() : conversation.getUser2();
+    }
+}
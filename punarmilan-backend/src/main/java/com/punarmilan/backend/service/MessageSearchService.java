@@ -0,0 +1,416 @@
+package com.punarmilan.backend.service;
+
+import com.punarmilan.backend.dto.MessageSearchResultDto;
+import com.punarmilan.backend.entity.Conversation;
+import com.punarmilan.backend.entity.MessageSearchTerm;
+import com.punarmilan.backend.exception.BadRequestException;
+import com.punarmilan.backend.repository.MessageRepository;
+import com.punarmilan.backend.repository.MessageRepository.IndexSource;
+import com.punarmilan.backend.repository.MessageRepository.SearchSource;
+import com.punarmilan.backend.repository.MessageSearchTermRepository;
+import com.punarmilan.backend.service.MessageArchiveService.ArchivedMessage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Per-user full-text search over chat history, backed by an inverted index in
+ * {@code message_search_terms} rather than LIKE scans over {@code messages}.
+ *
+ * Queries are words, "quoted phrases" and word* prefixes, all of which must
+ * match. The last bare word is also treated as a prefix so results update
+ * while typing. Hits are ordered newest first and paged with a message id
+ * cursor. A prefix is expanded to the user's matching words first, at most
+ * MAX_PREFIX_TERMS of them, and each word is then read newest first off the
+ * index like an exact term. Postings outlive archiving, so hits that have
+ * left the messages table are read back from their archive blocks, and a
+ * rebuild posts archived messages again from the same blocks.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MessageSearchService {
+
+    private static final Pattern SPLIT = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern QUERY_PART = Pattern.compile("\"([^\"]*)\"|(\\S+)");
+    private static final int MIN_TERM_LENGTH = 2;
+    private static final int MAX_TERM_LENGTH = 64;
+    private static final int MAX_QUERY_TERMS = 8;
+    private static final int CANDIDATES_PER_TERM = 500;
+    private static final int MAX_PREFIX_TERMS = 20;
+    private static final int MAX_ROUNDS = 10;
+    private static final int REBUILD_CHUNK = 500;
+    private static final int SNIPPET_LENGTH = 120;
+
+    private final MessageSearchTermRepository searchTermRepository;
+    private final MessageRepository messageRepository;
+    private final MessageArchiveService messageArchiveService;
+
+    private record QueryTerm(String text, boolean prefix) {
+    }
+
+    private record ArchivedSource(Long conversationId, ArchivedMessage message) implements SearchSource {
+
+        @Override
+        public Long getId() {
+            return message.id();
+        }
+
+        @Override
+        public Long getConversationId() {
+            return conversationId;
+        }
+
+        @Override
+        public Long getSenderId() {
+            return message.senderId();
+        }
+
+        @Override
+        public Long getReceiverId() {
+            return message.receiverId();
+        }
+
+        @Override
+        public String getContent() {
+            return message.content();
+        }
+
+        @Override
+        public String getFileName() {
+            return message.fileName();
+        }
+
+        @Override
+        public LocalDateTime getCreatedAt() {
+            return message.createdAt();
+        }
+    }
+
+    // Ids newest first, complete down to floor (0 when nothing was cut off)
+    private record Candidates(List<Long> ids, long floor) {
+    }
+
+    /**
+     * Adds the message to the sender's and the receiver's index.
+     */
+    public void index(Long messageId, Long conversationId, Long senderId, Long receiverId,
+            String content, String fileName) {
+        Set<String> terms = tokenize(content, fileName);
+        if (terms.isEmpty()) {
+            return;
+        }
+        List<MessageSearchTerm> postings = new ArrayList<>();
+        for (Long userId : new HashSet<>(List.of(senderId, receiverId))) {
+            terms.forEach(term -> postings.add(MessageSearchTerm.builder()
+                    .userId(userId)
+                    .term(term)
+                    .messageId(messageId)
+                    .conversationId(conversationId)
+                    .build()));
+        }
+        searchTermRepository.saveAll(postings);
+    }
+
+    /**
+     * Removes a conversation from one user's index, e.g. after they deleted it.
+     */
+    public void removeConversation(Long userId, Long conversationId) {
+        searchTermRepository.deleteByUserAndConversation(userId, conversationId);
+    }
+
+    public List<MessageSearchResultDto> search(Long userId, String query, Long before, int limit) {
+        List<QueryTerm> terms = new ArrayList<>();
+        List<String> phrases = new ArrayList<>();
+        parse(query, terms, phrases);
+        if (terms.isEmpty()) {
+            throw new BadRequestException("Search needs at least one word of " + MIN_TERM_LENGTH + " or more letters");
+        }
+        int size = Math.max(1, Math.min(limit, 50));
+
+        List<MessageSearchResultDto> results = new ArrayList<>();
+        long cursor = before != null ? before : Long.MAX_VALUE;
+        for (int round = 0; round < MAX_ROUNDS && results.size() < size && cursor > 0; round++) {
+            // Candidates are only complete down to the oldest id of any list that hit its cap
+            long floor = 0;
+            Set<Long> candidates = null;
+            for (QueryTerm term : terms) {
+                Candidates found = term.prefix()
+                        ? prefixCandidates(userId, term.text(), cursor)
+                        : termCandidates(userId, term.text(), cursor);
+                floor = Math.max(floor, found.floor());
+                if (candidates == null) {
+                    candidates = new LinkedHashSet<>(found.ids());
+                } else {
+                    candidates.retainAll(new HashSet<>(found.ids()));
+                }
+                if (candidates.isEmpty() && floor == 0) {
+                    break;
+                }
+            }
+
+            long roundFloor = floor;
+            List<Long> page = candidates == null ? List.of() : candidates.stream()
+                    .filter(id -> id >= roundFloor)
+                    .sorted(Comparator.reverseOrder())
+                    .toList();
+
+            if (!page.isEmpty()) {
+                Map<Long, SearchSource> sources = messageRepository.findSearchSources(page).stream()
+                        .collect(Collectors.toMap(SearchSource::getId, Function.identity()));
+                if (sources.size() < page.size()) {
+                    sources.putAll(archivedSources(userId, page.stream()
+                            .filter(id -> !sources.containsKey(id))
+                            .toList()));
+                }
+                for (Long id : page) {
+                    SearchSource source = sources.get(id);
+                    if (source == null || !matchesPhrases(source, phrases)) {
+                        continue;
+                    }
+                    results.add(toResult(source, userId, terms));
+                    if (results.size() == size) {
+                        break;
+                    }
+                }
+            }
+            cursor = roundFloor;
+        }
+        return results;
+    }
+
+    /**
+     * Re-indexes from MySQL in primary key order, one chunk at a time, for one
+     * user or everyone when userId is null, then the archive block by block.
+     * A full rebuild replaces postings chunk by chunk, so searches keep
+     * working throughout.
+     */
+    @Async
+    public void rebuild(Long userId) {
+        log.info("Rebuilding chat search index for {}", userId != null ? "user " + userId : "all users");
+        if (userId != null) {
+            searchTermRepository.deleteByUser(userId);
+        }
+
+        long afterId = 0;
+        long indexed = 0;
+        List<IndexSource> chunk;
+        do {
+            chunk = userId != null
+                    ? messageRepository.findSearchSourcesForUserAfter(userId, afterId, PageRequest.of(0, REBUILD_CHUNK))
+                    : messageRepository.findSearchSourcesAfter(afterId, PageRequest.of(0, REBUILD_CHUNK));
+            if (chunk.isEmpty()) {
+                break;
+            }
+
+            List<MessageSearchTerm> postings = new ArrayList<>();
+            for (IndexSource source : chunk) {
+                Set<Long> owners = userId != null ? Set.of(userId)
+                        : owners(source.getSenderId(), source.getSenderDeleted(),
+                                source.getReceiverId(), source.getReceiverDeleted());
+                post(postings, owners, source.getId(), source.getConversationId(),
+                        tokenize(source.getContent(), source.getFileName()));
+            }
+            if (userId == null) {
+                searchTermRepository.deleteByMessageIds(chunk.stream().map(SearchSource::getId).toList());
+            }
+            searchTermRepository.saveAll(postings);
+
+            afterId = chunk.get(chunk.size() - 1).getId();
+            indexed += chunk.size();
+        } while (chunk.size() == REBUILD_CHUNK);
+
+        indexed += reindexArchive(userId);
+        log.info("Chat search index rebuilt, {} messages indexed", indexed);
+    }
+
+    // ==================== PRIVATE HELPER METHODS ====================
+
+    private Candidates termCandidates(Long userId, String term, long before) {
+        List<Long> ids = searchTermRepository.findMessageIds(userId, term, before,
+                PageRequest.of(0, CANDIDATES_PER_TERM));
+        return new Candidates(ids, ids.size() == CANDIDATES_PER_TERM ? ids.get(ids.size() - 1) : 0);
+    }
+
+    // Each expansion is an ordered index range; merged they are complete down to the highest cut-off
+    private Candidates prefixCandidates(Long userId, String prefix, long before) {
+        long floor = 0;
+        Set<Long> merged = new HashSet<>();
+        for (String term : searchTermRepository.findTermsByPrefix(userId, prefix + "%",
+                PageRequest.of(0, MAX_PREFIX_TERMS))) {
+            Candidates found = termCandidates(userId, term, before);
+            merged.addAll(found.ids());
+            floor = Math.max(floor, found.floor());
+        }
+        long complete = floor;
+        List<Long> ids = merged.stream()
+                .filter(id -> id >= complete)
+                .sorted(Comparator.reverseOrder())
+                .toList();
+        if (ids.size() > CANDIDATES_PER_TERM) {
+            ids = ids.subList(0, CANDIDATES_PER_TERM);
+            floor = ids.get(ids.size() - 1);
+        }
+        return new Candidates(ids, floor);
+    }
+
+    // Hits no longer in the messages table, decoded per conversation from the archive
+    private Map<Long, SearchSource> archivedSources(Long userId, List<Long> messageIds) {
+        Map<Long, List<Long>> byConversation = new HashMap<>();
+        for (Object[] row : searchTermRepository.findConversationIds(userId, messageIds)) {
+            byConversation.computeIfAbsent((Long) row[1], id -> new ArrayList<>()).add((Long) row[0]);
+        }
+        Map<Long, SearchSource> sources = new HashMap<>();
+        byConversation.forEach((conversationId, ids) -> messageArchiveService.findByIds(conversationId, ids)
+                .forEach((id, message) -> sources.put(id, new ArchivedSource(conversationId, message))));
+        return sources;
+    }
+
+    // Archived messages have no rows to walk, their blocks are decoded and posted the same way
+    private long reindexArchive(Long userId) {
+        long[] indexed = { 0 };
+        messageArchiveService.forEachBlock(userId, block -> {
+            Conversation conversation = block.conversation();
+            List<MessageSearchTerm> postings = new ArrayList<>();
+            for (ArchivedMessage message : block.messages()) {
+                Set<Long> owners = userId != null ? Set.of(userId)
+                        : owners(message.senderId(), conversation.isDeletedBy(message.senderId()),
+                                message.receiverId(), conversation.isDeletedBy(message.receiverId()));
+                post(postings, owners, message.id(), conversation.getId(),
+                        tokenize(message.content(), message.fileName()));
+            }
+            if (userId == null) {
+                searchTermRepository.deleteByMessageIds(block.messages().stream().map(ArchivedMessage::id).toList());
+            }
+            searchTermRepository.saveAll(postings);
+            indexed[0] += block.messages().size();
+        });
+        return indexed[0];
+    }
+
+    private static void post(List<MessageSearchTerm> postings, Set<Long> owners, Long messageId,
+            Long conversationId, Set<String> terms) {
+        for (Long owner : owners) {
+            terms.forEach(term -> postings.add(MessageSearchTerm.builder()
+                    .userId(owner)
+                    .term(term)
+                    .messageId(messageId)
+                    .conversationId(conversationId)
+                    .build()));
+        }
+    }
+
+    // Sender and receiver, minus whoever deleted the conversation
+    private static Set<Long> owners(Long senderId, Boolean senderDeleted, Long receiverId, Boolean receiverDeleted) {
+        Set<Long> owners = new HashSet<>();
+        if (!Boolean.TRUE.equals(senderDeleted)) {
+            owners.add(senderId);
+        }
+        if (!Boolean.TRUE.equals(receiverDeleted)) {
+            owners.add(receiverId);
+        }
+        return owners;
+    }
+
+    private static Set<String> tokenize(String... texts) {
+        Set<String> terms = new LinkedHashSet<>();
+        for (String text : texts) {
+            if (text == null) {
+                continue;
+            }
+            for (String token : SPLIT.split(text.toLowerCase(Locale.ROOT))) {
+                if (token.length() >= MIN_TERM_LENGTH) {
+                    terms.add(token.length() > MAX_TERM_LENGTH ? token.substring(0, MAX_TERM_LENGTH) : token);
+                }
+            }
+        }
+        return terms;
+    }
+
+    private static void parse(String query, List<QueryTerm> terms, List<String> phrases) {
+        if (query == null) {
+            return;
+        }
+        Matcher matcher = QUERY_PART.matcher(query.trim());
+        String lastBare = null;
+        while (matcher.find() && terms.size() < MAX_QUERY_TERMS) {
+            if (matcher.group(1) != null) {
+                Set<String> words = tokenize(matcher.group(1));
+                words.forEach(word -> terms.add(new QueryTerm(word, false)));
+                if (words.size() > 1) {
+                    phrases.add(String.join(" ", SPLIT.split(matcher.group(1).toLowerCase(Locale.ROOT).trim())));
+                }
+                lastBare = null;
+                continue;
+            }
+            String part = matcher.group(2);
+            boolean prefix = part.endsWith("*");
+            for (String word : tokenize(part)) {
+                terms.add(new QueryTerm(word, prefix));
+                lastBare = word;
+            }
+        }
+        // Search as you type, the word being typed matches as a prefix
+        if (lastBare != null && !query.endsWith(" ")) {
+            for (int i = terms.size() - 1; i >= 0; i--) {
+                if (terms.get(i).text().equals(lastBare)) {
+                    terms.set(i, new QueryTerm(lastBare, true));
+                    break;
+                }
+            }
+        }
+    }
+
+    private static boolean matchesPhrases(SearchSource source, List<String> phrases) {
+        if (phrases.isEmpty()) {
+            return true;
+        }
+        String normalized = " " + String.join(" ", SPLIT.split(
+                (source.getContent() != null ? source.getContent() : "").toLowerCase(Locale.ROOT))) + " ";
+        return phrases.stream().allMatch(phrase -> normalized.contains(" " + phrase + " "));
+    }
+
+    private static MessageSearchResultDto toResult(SearchSource source, Long userId, List<QueryTerm> terms) {
+        return MessageSearchResultDto.builder()
+                .messageId(source.getId())
+                .conversationId(source.getConversationId())
+                .senderId(source.getSenderId())
+                .otherUserId(source.getSenderId().equals(userId) ? source.getReceiverId() : source.getSenderId())
+                .snippet(snippet(source.getContent() != null ? source.getContent() : source.getFileName(), terms))
+                .createdAt(source.getCreatedAt())
+                .build();
+    }
+
+    // Window of text around the first query word found
+    private static String snippet(String text, List<QueryTerm> terms) {
+        if (text == null || text.length() <= SNIPPET_LENGTH) {
+            return text;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int hit = terms.stream()
+                .mapToInt(term -> lower.indexOf(term.text()))
+                .filter(index -> index >= 0)
+                .min()
+                .orElse(0);
+        int start = Math.max(0, hit - SNIPPET_LENGTH / 3);
+        int end = Math.min(text.length(), start + SNIPPET_LENGTH);
+        return (start > 0 ? "…" : "") + text.substring(start, end) + (end < text.length() ? "…" : "");
+    }
+}
@@ -2,6 +2,8 @@ package com.punarmilan.backend.service;
 
 import com.punarmilan.backend.dto.ConversationDto;
 import com.punarmilan.backend.dto.MessageDto;
+import com.punarmilan.backend.dto.MessageSearchResultDto;
+import com.punarmilan.backend.dto.MessageWindowDto;
 import com.punarmilan.backend.dto.SendMessageDto;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -22,6 +24,12 @@ public interface MessagingService {
     // Get messages in a conversation
     Page<MessageDto> getMessages(Long conversationId, Pageable pageable);
     
+    // Keyset history: latest page, or before/after/around a message id
+    MessageWindowDto getMessageHistory(Long conversationId, Long before, Long after, Long around, int limit);
+
+    // Full-text search over the current user's chats, newest first, before is a message id cursor
+    List<MessageSearchResultDto> searchMessages(String query, Long before, int limit);
+
     // Mark conversation as read
     void markConversationAsRead(Long conversationId);
     
@@ -43,6 +51,9 @@ public interface MessagingService {
     // Send typing indicator
     void sendTypingIndicator(Long conversationId, boolean isTyping);
     
-    // Send read receipt
+    // Send read receipt, marks everything up to the message as read
     void sendReadReceipt(Long messageId);
+
+    // Send delivery receipt, marks everything up to the message as delivered
+    void sendDeliveryReceipt(Long messageId);
 }
\ No newline at end of file
@@ -0,0 +1,26 @@
+package com.punarmilan.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+/**
+ * The id this node goes by in Redis: its presence fields, its WebSocket
+ * cluster registration and the fanout jobs it claims. Taken from
+ * app.websocket.cluster.node-id, or generated once per process when blank,
+ * so every service on a node agrees on it.
+ */
+@Component
+public class NodeIdentity {
+
+    private final String nodeId;
+
+    public NodeIdentity(@Value("${app.websocket.cluster.node-id:}") String nodeId) {
+        this.nodeId = nodeId == null || nodeId.isBlank() ? UUID.randomUUID().toString().substring(0, 8) : nodeId;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+}
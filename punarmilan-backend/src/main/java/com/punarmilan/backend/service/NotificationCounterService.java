@@ -0,0 +1,274 @@
+package com.punarmilan.backend.service;
+
+import com.punarmilan.backend.entity.Notification.NotificationType;
+import com.punarmilan.backend.repository.NotificationRepository;
+import com.punarmilan.backend.repository.NotificationRepository.TypeCount;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unread and unseen notification counts per user, so the stats the frontend
+ * polls are one hash read instead of a COUNT per type.
+ *
+ * Each user has a hash {@code notif-counts:{userId}} with an unread count per
+ * type plus the unseen total; the unread total is their sum. Missing hashes
+ * are seeded from one GROUP BY on the (user_id, is_read, type) index, and the
+ * TTL makes every hash rebuild from MySQL once a day, which reconciles any
+ * drift. Changes are applied after commit.
+ *
+ * A change that finds no hash bumps {@code notif-counts-version:{userId}}
+ * instead. Seeding reads that version before the GROUP BY and only stores
+ * its result if the version is unchanged, so a seed that raced a change is
+ * dropped rather than kept for a day.
+ */
+@Slf4j
+@Service
+public class NotificationCounterService {
+
+    private static final String KEY_PREFIX = "notif-counts:";
+    private static final String VERSION_PREFIX = "notif-counts-version:";
+    private static final String UNREAD_PREFIX = "unread:";
+    private static final String UNSEEN_FIELD = "unseen";
+
+    // KEYS are the hash and the version, ARGV[1] the TTL. A missing hash returns -1 and
+    // bumps the version, so a seed loaded before this change is not stored
+    private static final String IF_MISSING = "if redis.call('EXISTS', KEYS[1]) == 0 then "
+            + "redis.call('INCR', KEYS[2]) redis.call('EXPIRE', KEYS[2], ARGV[1]) return -1 end ";
+
+    // Field and delta pairs from ARGV[2], each clamped at zero on its own; no total is stored that could disagree
+    private static final RedisScript<Long> ADJUST_SCRIPT = new DefaultRedisScript<>(
+            IF_MISSING
+                    + "for i = 2, #ARGV, 2 do "
+                    + "if redis.call('HINCRBY', KEYS[1], ARGV[i], ARGV[i + 1]) < 0 then "
+                    + "redis.call('HSET', KEYS[1], ARGV[i], 0) end "
+                    + "end "
+                    + "return 1",
+            Long.class);
+
+    private static final RedisScript<Long> RESET_UNREAD_SCRIPT = new DefaultRedisScript<>(
+            IF_MISSING
+                    + "for _, field in ipairs(redis.call('HKEYS', KEYS[1])) do "
+                    + "if string.sub(field, 1, " + UNREAD_PREFIX.length() + ") == '" + UNREAD_PREFIX + "' then "
+                    + "redis.call('HDEL', KEYS[1], field) end "
+                    + "end "
+                    + "return 1",
+            Long.class);
+
+    private static final RedisScript<Long> RESET_UNSEEN_SCRIPT = new DefaultRedisScript<>(
+            IF_MISSING
+                    + "redis.call('HSET', KEYS[1], '" + UNSEEN_FIELD + "', 0) "
+                    + "return 1",
+            Long.class);
+
+    private static final RedisScript<Long> INVALIDATE_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('DEL', KEYS[1]) "
+                    + "redis.call('INCR', KEYS[2]) redis.call('EXPIRE', KEYS[2], ARGV[1]) "
+                    + "return 1",
+            Long.class);
+
+    private static final RedisScript<Long> VERSION_SCRIPT = new DefaultRedisScript<>(
+            "return tonumber(redis.call('GET', KEYS[2]) or '0')",
+            Long.class);
+
+    // Replaces the hash and sets its TTL in one step, unless the version moved past ARGV[2]
+    private static final RedisScript<Long> STORE_SCRIPT = new DefaultRedisScript<>(
+            "if tonumber(redis.call('GET', KEYS[2]) or '0') ~= tonumber(ARGV[2]) then return 0 end "
+                    + "redis.call('DEL', KEYS[1]) "
+                    + "for i = 3, #ARGV, 2 do redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1]) end "
+                    + "redis.call('EXPIRE', KEYS[1], ARGV[1]) "
+                    + "return 1",
+            Long.class);
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final NotificationRepository notificationRepository;
+    private final Duration ttl;
+    private final StringRedisSerializer stringSerializer = new StringRedisSerializer();
+    private final GenericToStringSerializer<Long> longSerializer = new GenericToStringSerializer<>(Long.class);
+
+    /**
+     * Snapshot of one user's counters.
+     */
+    public record Counts(Map<NotificationType, Long> unreadByType, long unread, long unseen) {
+
+        public long unread(NotificationType type) {
+            return unreadByType.getOrDefault(type, 0L);
+        }
+    }
+
+    public NotificationCounterService(RedisTemplate<String, Object> redisTemplate,
+            NotificationRepository notificationRepository,
+            @Value("${app.notification.counters.ttl-hours:24}") long ttlHours) {
+        this.redisTemplate = redisTemplate;
+        this.notificationRepository = notificationRepository;
+        this.ttl = Duration.ofHours(ttlHours);
+    }
+
+    /**
+     * Current counts, from Redis when possible and from the GROUP BY otherwise.
+     */
+    public Counts get(Long userId) {
+        String key = KEY_PREFIX + userId;
+        try {
+            Map<Object, Object> fields = redisTemplate.opsForHash().entries(key);
+            if (fields.isEmpty()) {
+                Long version = run(VERSION_SCRIPT, userId);
+                Counts counts = load(userId);
+                store(userId, version != null ? version : 0, counts);
+                return counts;
+            }
+            return fromFields(fields);
+        } catch (Exception e) {
+            log.warn("Redis unavailable, notification stats for user {} come from MySQL: {}", userId, e.getMessage());
+            return load(userId);
+        }
+    }
+
+    /**
+     * A notification became unread and/or unseen, e.g. it was created.
+     */
+    public void added(Long userId, NotificationType type, boolean unread, boolean unseen) {
+        adjust(userId, type, unread ? 1 : 0, unseen ? 1 : 0);
+    }
+
+    /**
+     * A batch of new unread and unseen notifications for one user, in one call.
+     */
+    public void added(Long userId, Map<NotificationType, Integer> countsByType) {
+        int total = countsByType.values().stream().mapToInt(Integer::intValue).sum();
+        if (total == 0) {
+            return;
+        }
+        List<String> args = new ArrayList<>();
+        countsByType.forEach((type, count) -> args.addAll(List.of(UNREAD_PREFIX + type.name(), count.toString())));
+        args.addAll(List.of(UNSEEN_FIELD, Integer.toString(total)));
+        afterCommit(() -> run(ADJUST_SCRIPT, userId, args.toArray(String[]::new)));
+    }
+
+    /**
+     * A notification stopped counting, e.g. it was read or deleted.
+     */
+    public void removed(Long userId, NotificationType type, boolean wasUnread, boolean wasUnseen) {
+        adjust(userId, type, wasUnread ? -1 : 0, wasUnseen ? -1 : 0);
+    }
+
+    public void allRead(Long userId) {
+        afterCommit(() -> run(RESET_UNREAD_SCRIPT, userId));
+    }
+
+    public void allSeen(Long userId) {
+        afterCommit(() -> run(RESET_UNSEEN_SCRIPT, userId));
+    }
+
+    /**
+     * Drops the user's counters after a bulk delete, the next read reseeds them.
+     */
+    public void invalidate(Long userId) {
+        afterCommit(() -> run(INVALIDATE_SCRIPT, userId));
+    }
+
+    public void invalidate(Collection<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        List<Long> ids = List.copyOf(userIds);
+        afterCommit(() -> ids.forEach(userId -> run(INVALIDATE_SCRIPT, userId)));
+    }
+
+    public void invalidateAll() {
+        afterCommit(() -> {
+            try (Cursor<String> keys = redisTemplate.scan(ScanOptions.scanOptions()
+                    .match(KEY_PREFIX + "*").count(500).build())) {
+                keys.forEachRemaining(redisTemplate::delete);
+            }
+        });
+    }
+
+    // ==================== PRIVATE HELPER METHODS ====================
+
+    private void adjust(Long userId, NotificationType type, int unreadDelta, int unseenDelta) {
+        if (unreadDelta == 0 && unseenDelta == 0) {
+            return;
+        }
+        List<String> args = new ArrayList<>();
+        if (unreadDelta != 0) {
+            args.addAll(List.of(UNREAD_PREFIX + type.name(), Integer.toString(unreadDelta)));
+        }
+        if (unseenDelta != 0) {
+            args.addAll(List.of(UNSEEN_FIELD, Integer.toString(unseenDelta)));
+        }
+        afterCommit(() -> run(ADJUST_SCRIPT, userId, args.toArray(String[]::new)));
+    }
+
+    private Long run(RedisScript<Long> script, Long userId, String... args) {
+        Object[] argv = new Object[args.length + 1];
+        argv[0] = Long.toString(ttl.toSeconds());
+        System.arraycopy(args, 0, argv, 1, args.length);
+        return redisTemplate.execute(script, stringSerializer, longSerializer,
+                List.of(KEY_PREFIX + userId, VERSION_PREFIX + userId), argv);
+    }
+
+    private Counts load(Long userId) {
+        Map<NotificationType, Long> byType = new EnumMap<>(NotificationType.class);
+        long unread = 0;
+        for (TypeCount row : notificationRepository.countUnreadByType(userId)) {
+            byType.put(row.getNotificationType(), row.getTotal());
+            unread += row.getTotal();
+        }
+        return new Counts(byType, unread, notificationRepository.countUnseen(userId));
+    }
+
+    private void store(Long userId, long version, Counts counts) {
+        List<String> args = new ArrayList<>(List.of(Long.toString(version)));
+        counts.unreadByType().forEach((type, count) -> args.addAll(List.of(UNREAD_PREFIX + type.name(),
+                count.toString())));
+        args.addAll(List.of(UNSEEN_FIELD, Long.toString(counts.unseen())));
+        run(STORE_SCRIPT, userId, args.toArray(String[]::new));
+    }
+
+    private static Counts fromFields(Map<Object, Object> fields) {
+        Map<NotificationType, Long> byType = new EnumMap<>(NotificationType.class);
+        long unread = 0;
+        long unseen = 0;
+        for (Map.Entry<Object, Object> entry : fields.entrySet()) {
+            String field = entry.getKey().toString();
+            long value = entry.getValue() instanceof Number n ? n.longValue() : Long.parseLong(entry.getValue().toString());
+            if (field.equals(UNSEEN_FIELD)) {
+                unseen = value;
+            } else if (field.startsWith(UNREAD_PREFIX)) {
+                try {
+                    byType.put(NotificationType.valueOf(field.substring(UNREAD_PREFIX.length())), value);
+                    unread += value;
+                } catch (IllegalArgumentException ignored) {
+                    // A type that no longer exists
+                }
+            }
+        }
+        return new Counts(byType, unread, unseen);
+    }
+
+    private void afterCommit(Runnable action) {
+        AfterCommit.run(() -> {
+            try {
+                action.run();
+            } catch (Exception e) {
+                // Drift is corrected when the hash expires and is reseeded
+                log.warn("Notification counter update failed: {}", e.getMessage());
+            }
+        });
+    }
+}
@@ -0,0 +1,165 @@
+package com.punarmilan.backend.service;
+
+import com.punarmilan.backend.entity.NotificationPreference;
+import com.punarmilan.backend.repository.NotificationPreferenceRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded cache of notification preferences for the event listener, which
+ * needs them for every like, message and view.
+ *
+ * Saving preferences evicts the user here and, over Redis pub/sub, on every
+ * other node. The TTL only bounds how long a lost invalidation can linger.
+ * A load that raced with an eviction is not cached, so a stale read can't
+ * outlive the change that evicted it.
+ */
+@Slf4j
+@Service
+public class NotificationPreferenceCache implements MessageListener {
+
+    public static final String INVALIDATION_CHANNEL = "notif-prefs:invalidate";
+
+    /**
+     * Immutable copy of a user's switches, safe to share between threads.
+     */
+    public record Preferences(boolean emailAlerts, boolean webNotifications, boolean matchMail,
+            boolean visitorAlerts, boolean messageAlerts, boolean shortlistAlerts) {
+
+        // Users who never saved preferences get everything
+        public static final Preferences DEFAULTS = new Preferences(true, true, true, true, true, true);
+
+        /**
+         * Whether an event of this type should also go out as an email.
+         */
+        public boolean wantsEmail(String type) {
+            if (!emailAlerts)
+                return false;
+
+            return switch (type) {
+                case "MATCH_FOUND" -> matchMail;
+                case "PROFILE_VIEW" -> visitorAlerts;
+                case "SHORTLISTED" -> shortlistAlerts;
+                case "MESSAGE_RECEIVED" -> messageAlerts;
+                default -> false;
+            };
+        }
+
+        static Preferences of(NotificationPreference prefs) {
+            return new Preferences(prefs.isEmailAlerts(), prefs.isWebNotifications(), prefs.isMatchMail(),
+                    prefs.isVisitorAlerts(), prefs.isMessageAlerts(), prefs.isShortlistAlerts());
+        }
+    }
+
+    private record Entry(Preferences preferences, long loadedAt) {
+    }
+
+    private final NotificationPreferenceRepository preferenceRepository;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final long ttlMillis;
+
+    // Iterates least recently read first, which is what removeEldestEntry evicts; guarded by this
+    private final LinkedHashMap<Long, Entry> entries;
+    private long generation;
+
+    public NotificationPreferenceCache(NotificationPreferenceRepository preferenceRepository,
+            RedisTemplate<String, Object> redisTemplate,
+            @Value("${app.notification.preferences.cache-max-size:50000}") int maxSize,
+            @Value("${app.notification.preferences.cache-ttl-seconds:600}") long ttlSeconds) {
+        this.preferenceRepository = preferenceRepository;
+        this.redisTemplate = redisTemplate;
+        this.ttlMillis = ttlSeconds * 1000;
+        this.entries = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public Preferences get(Long userId) {
+        return getAll(List.of(userId)).get(userId);
+    }
+
+    /**
+     * Preferences for every given user, with one query for all the misses.
+     */
+    public Map<Long, Preferences> getAll(Collection<Long> userIds) {
+        Map<Long, Preferences> result = new HashMap<>();
+        List<Long> misses = new ArrayList<>();
+        long loadGeneration;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            for (Long userId : userIds) {
+                Entry entry = entries.get(userId);
+                if (entry != null && now - entry.loadedAt() < ttlMillis) {
+                    result.put(userId, entry.preferences());
+                } else if (!result.containsKey(userId)) {
+                    misses.add(userId);
+                }
+            }
+            loadGeneration = generation;
+        }
+        if (misses.isEmpty()) {
+            return result;
+        }
+
+        Map<Long, Preferences> loaded = new HashMap<>();
+        misses.forEach(userId -> loaded.put(userId, Preferences.DEFAULTS));
+        for (NotificationPreference prefs : preferenceRepository.findByUserIds(misses)) {
+            loaded.put(prefs.getUser().getId(), Preferences.of(prefs));
+        }
+        result.putAll(loaded);
+
+        synchronized (this) {
+            // Something was evicted while we read, what we have may predate it
+            if (generation == loadGeneration) {
+                long now = System.currentTimeMillis();
+                loaded.forEach((userId, prefs) -> entries.put(userId, new Entry(prefs, now)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Drops the user here and on every other node, after commit when called
+     * inside a transaction.
+     */
+    public void evict(Long userId) {
+        evictLocally(userId);
+        Runnable broadcast = () -> {
+            evictLocally(userId);
+            try {
+                redisTemplate.convertAndSend(INVALIDATION_CHANNEL, userId);
+            } catch (Exception e) {
+                log.warn("Could not broadcast preference change of user {}: {}", userId, e.getMessage());
+            }
+        };
+        AfterCommit.run(broadcast);
+    }
+
+    @Override
+    public void onMessage(org.springframework.data.redis.connection.Message message, byte[] pattern) {
+        Object value = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (value instanceof Number userId) {
+            evictLocally(userId.longValue());
+        }
+    }
+
+    // ==================== PRIVATE HELPER METHODS ====================
+
+    private synchronized void evictLocally(Long userId) {
+        entries.remove(userId);
+        generation++;
+    }
+}
@@ -0,0 +1,384 @@
+package com.punarmilan.backend.service;
+
+import com.punarmilan.backend.entity.Profile;
+import com.punarmilan.backend.entity.User;
+import com.punarmilan.backend.repository.ProfileRepository;
+import com.punarmilan.backend.repository.UserRepository;
+import com.punarmilan.backend.service.NotificationPreferenceCache.Preferences;
+import com.punarmilan.backend.service.NotificationService.NewNotification;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Folds profile views and shortlists into one notification per recipient and
+ * window ("12 people viewed your profile") instead of a row, and for
+ * shortlists an email, per event.
+ *
+ * Events are counted per recipient, type and actor in memory and spilled to
+ * Redis every few seconds, so a restart loses at most one spill interval.
+ * Redis keeps a hash of actor counts per open window and a sorted set of
+ * windows by closing time. The node that finds a window due takes it off
+ * both in one script, so every window is emitted exactly once across nodes.
+ * If its notifications then fail to insert, the claimed windows are spilled
+ * back as due and no mail goes out, so the next check emits them again.
+ * While Redis is down windows stay in memory and are emitted from there.
+ *
+ * A rollup is an ordinary notification: unread until read, and one unit in
+ * the unread badge of its type.
+ */
+@Slf4j
+@Service
+public class NotificationRollupService {
+
+    public static final Set<String> TYPES = Set.of("PROFILE_VIEW", "SHORTLISTED");
+
+    private static final String WINDOW_PREFIX = "notif-rollup:";
+    private static final String DUE_KEY = "notif-rollup:due";
+
+    // ARGV: closing time, ttl, then actor/count pairs. NX keeps the closing time of the first spill
+    private static final RedisScript<Long> SPILL_SCRIPT = new DefaultRedisScript<>(
+            "for i = 3, #ARGV, 2 do redis.call('HINCRBY', KEYS[1], ARGV[i], ARGV[i + 1]) end "
+                    + "redis.call('EXPIRE', KEYS[1], ARGV[2]) "
+                    + "redis.call('ZADD', KEYS[2], 'NX', ARGV[1], KEYS[1]) "
+                    + "return 1",
+            Long.class);
+
+    // Takes up to ARGV[2] windows closed by ARGV[1], each returned as {key, actor, count, actor, count...}
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> CLAIM_SCRIPT = new DefaultRedisScript<>(
+            "local due = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2]) "
+                    + "local out = {} "
+                    + "for _, key in ipairs(due) do "
+                    + "redis.call('ZREM', KEYS[1], key) "
+                    + "local window = redis.call('HGETALL', key) "
+                    + "redis.call('DEL', key) "
+                    + "table.insert(window, 1, key) "
+                    + "table.insert(out, window) "
+                    + "end "
+                    + "return out",
+            List.class);
+
+    private record WindowKey(Long recipientId, String type) {
+    }
+
+    private record Rollup(Long recipientId, String type, Map<Long, Long> actors) {
+    }
+
+    private static final class Window {
+        private final long closesAt;
+        private final Map<Long, Long> actors = new LinkedHashMap<>();
+
+        private Window(long closesAt) {
+            this.closesAt = closesAt;
+        }
+    }
+
+    private final NotificationService notificationService;
+    private final NotificationPreferenceCache preferenceCache;
+    private final EmailService emailService;
+    private final UserRepository userRepository;
+    private final ProfileRepository profileRepository;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final boolean enabled;
+    private final long windowMillis;
+    private final int topActors;
+    private final int maxBuffered;
+    private final int emitBatchSize;
+    private final StringRedisSerializer stringSerializer = new StringRedisSerializer();
+    private final GenericToStringSerializer<Long> longSerializer = new GenericToStringSerializer<>(Long.class);
+    private final Counter eventsCounter;
+    private final Counter emittedCounter;
+
+    // Swapped out whole on every spill; guarded by this
+    private Map<WindowKey, Window> buffer = new HashMap<>();
+    private int buffered;
+
+    public NotificationRollupService(NotificationService notificationService,
+            NotificationPreferenceCache preferenceCache,
+            EmailService emailService,
+            UserRepository userRepository,
+            ProfileRepository profileRepository,
+            RedisTemplate<String, Object> redisTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${app.notification.rollup.enabled:true}") boolean enabled,
+            @Value("${app.notification.rollup.window-seconds:900}") long windowSeconds,
+            @Value("${app.notification.rollup.top-actors:3}") int topActors,
+            @Value("${app.notification.rollup.max-buffered:10000}") int maxBuffered,
+            @Value("${app.notification.rollup.emit-batch-size:200}") int emitBatchSize) {
+        this.notificationService = notificationService;
+        this.preferenceCache = preferenceCache;
+        this.emailService = emailService;
+        this.userRepository = userRepository;
+        this.profileRepository = profileRepository;
+        this.redisTemplate = redisTemplate;
+        this.enabled = enabled;
+        this.windowMillis = windowSeconds * 1000;
+        this.topActors = Math.max(1, topActors);
+        this.maxBuffered = Math.max(1, maxBuffered);
+        this.emitBatchSize = Math.max(1, emitBatchSize);
+        this.eventsCounter = Counter.builder("notification.rollup.events").register(meterRegistry);
+        this.emittedCounter = Counter.builder("notification.rollup.emitted").register(meterRegistry);
+    }
+
+    public boolean handles(String type) {
+        return enabled && TYPES.contains(type);
+    }
+
+    /**
+     * Counts one event towards the recipient's open window for this type.
+     */
+    public void record(Long recipientId, Long actorId, String type) {
+        boolean full;
+        synchronized (this) {
+            buffer.computeIfAbsent(new WindowKey(recipientId, type),
+                    key -> new Window(System.currentTimeMillis() + windowMillis))
+                    .actors.merge(actorId, 1L, Long::sum);
+            full = ++buffered >= maxBuffered;
+        }
+        eventsCounter.increment();
+        if (full) {
+            spill();
+        }
+    }
+
+    /**
+     * Moves the in-memory counts to Redis. Runs every 2 seconds by default.
+     */
+    @Scheduled(fixedDelayString = "${app.notification.rollup.spill-ms:2000}")
+    public void spill() {
+        Map<WindowKey, Window> pending;
+        synchronized (this) {
+            if (buffer.isEmpty()) {
+                return;
+            }
+            pending = buffer;
+            buffer = new HashMap<>();
+            buffered = 0;
+        }
+
+        long now = System.currentTimeMillis();
+        List<Rollup> overdue = new ArrayList<>();
+        int failed = 0;
+        for (Map.Entry<WindowKey, Window> entry : pending.entrySet()) {
+            WindowKey key = entry.getKey();
+            Window window = entry.getValue();
+            try {
+                spill(key, window);
+            } catch (Exception e) {
+                failed++;
+                // Redis is down: hold the window here and close it ourselves when it is due
+                if (window.closesAt <= now) {
+                    overdue.add(new Rollup(key.recipientId(), key.type(), window.actors));
+                } else {
+                    keep(key, window);
+                }
+            }
+        }
+        if (failed > 0) {
+            log.warn("Could not spill {} notification rollup windows to Redis, keeping them in memory", failed);
+        }
+        emit(overdue);
+    }
+
+    /**
+     * Emits every window whose time is up. Runs every 15 seconds by default.
+     */
+    @Scheduled(fixedDelayString = "${app.notification.rollup.emit-check-ms:15000}")
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public void emitDue() {
+        List<?> claimed;
+        do {
+            try {
+                claimed = redisTemplate.execute(CLAIM_SCRIPT, stringSerializer, (RedisSerializer) stringSerializer,
+                        List.of(DUE_KEY), Long.toString(System.currentTimeMillis()), Integer.toString(emitBatchSize));
+            } catch (Exception e) {
+                log.warn("Could not claim due notification rollups: {}", e.getMessage());
+                return;
+            }
+            if (claimed == null || claimed.isEmpty()) {
+                return;
+            }
+            List<Rollup> rollups = new ArrayList<>();
+            for (Object window : claimed) {
+                Rollup rollup = parse((List<Object>) window);
+                if (rollup != null) {
+                    rollups.add(rollup);
+                }
+            }
+            if (!emit(rollups)) {
+                return;
+            }
+        } while (claimed.size() == emitBatchSize);
+    }
+
+    @PreDestroy
+    public void flush() {
+        // Hand open windows to Redis so another node can close them
+        spill();
+    }
+
+    // ==================== PRIVATE HELPER METHODS ====================
+
+    private void spill(WindowKey key, Window window) {
+        List<String> args = new ArrayList<>();
+        args.add(Long.toString(window.closesAt));
+        args.add(Long.toString(windowMillis / 1000 * 2 + 3600));
+        window.actors.forEach((actorId, count) -> {
+            args.add(actorId.toString());
+            args.add(count.toString());
+        });
+        redisTemplate.execute(SPILL_SCRIPT, stringSerializer, longSerializer,
+                List.of(WINDOW_PREFIX + key.type() + ":" + key.recipientId(), DUE_KEY), args.toArray());
+    }
+
+    private synchronized void keep(WindowKey key, Window window) {
+        Window newer = buffer.put(key, window);
+        if (newer != null) {
+            newer.actors.forEach((actorId, count) -> window.actors.merge(actorId, count, Long::sum));
+        }
+    }
+
+    private Rollup parse(List<Object> window) {
+        String key = window.get(0).toString();
+        String[] parts = key.substring(WINDOW_PREFIX.length()).split(":");
+        if (parts.length != 2 || window.size() < 3) {
+            return null;
+        }
+        Map<Long, Long> actors = new LinkedHashMap<>();
+        for (int i = 1; i + 1 < window.size(); i += 2) {
+            actors.put(Long.valueOf(window.get(i).toString()), Long.valueOf(window.get(i + 1).toString()));
+        }
+        return new Rollup(Long.valueOf(parts[1]), parts[0], actors);
+    }
+
+    // False when the insert failed and the rollups went back to be emitted again
+    private boolean emit(List<Rollup> rollups) {
+        if (rollups.isEmpty()) {
+            return true;
+        }
+
+        // Recipients and the actors we name, for all rollups at once
+        List<List<Long>> tops = new ArrayList<>();
+        Set<Long> userIds = new HashSet<>();
+        for (Rollup rollup : rollups) {
+            List<Long> top = rollup.actors().entrySet().stream()
+                    .sorted(Map.Entry.<Long, Long>comparingByValue(Comparator.reverseOrder()))
+                    .limit(topActors)
+                    .map(Map.Entry::getKey)
+                    .toList();
+            tops.add(top);
+            userIds.add(rollup.recipientId());
+            userIds.addAll(top);
+        }
+        Map<Long, User> users = userRepository.findAllById(userIds).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+        Map<Long, String> names = new HashMap<>();
+        users.values().forEach(user -> names.put(user.getId(), user.getEmail().split("@")[0]));
+        for (Profile profile : profileRepository.findAllByUserIn(new ArrayList<>(users.values()))) {
+            if (profile.getFullName() != null) {
+                names.put(profile.getUser().getId(), profile.getFullName());
+            }
+        }
+        Map<Long, Preferences> preferences = preferenceCache.getAll(
+                rollups.stream().map(Rollup::recipientId).collect(Collectors.toSet()));
+
+        List<NewNotification> notifications = new ArrayList<>();
+        List<Runnable> mails = new ArrayList<>();
+        for (int i = 0; i < rollups.size(); i++) {
+            Rollup rollup = rollups.get(i);
+            User recipient = users.get(rollup.recipientId());
+            List<Long> named = tops.get(i).stream().filter(names::containsKey).toList();
+            if (recipient == null || named.isEmpty()) {
+                continue;
+            }
+            int people = rollup.actors().size();
+            String who = describe(named.stream().map(names::get).toList(), people);
+            String verb = "SHORTLISTED".equals(rollup.type()) ? "liked" : "viewed";
+            Preferences prefs = preferences.getOrDefault(rollup.recipientId(), Preferences.DEFAULTS);
+
+            if (prefs.webNotifications()) {
+                if (people == 1) {
+                    notifications.add(new NewNotification(recipient.getId(), rollup.type(),
+                            "SHORTLISTED".equals(rollup.type()) ? "Profile Shortlisted" : "Profile Viewed",
+                            who + " " + verb + " your profile", named.get(0), "USER"));
+                } else {
+                    notifications.add(new NewNotification(recipient.getId(), rollup.type(),
+                            people + " people " + verb + " your profile",
+                            who + " " + verb + " your profile", null, "ROLLUP"));
+                }
+            }
+            if ("SHORTLISTED".equals(rollup.type()) && prefs.wantsEmail(rollup.type())) {
+                if (people == 1) {
+                    User actor = users.get(named.get(0));
+                    mails.add(() -> emailService.sendShortlistEmail(actor, recipient));
+                } else {
+                    Long topActorId = named.get(0);
+                    mails.add(() -> emailService.sendShortlistRollupEmail(recipient, topActorId, who));
+                }
+            }
+        }
+
+        if (!notifications.isEmpty()) {
+            try {
+                notificationService.createNotifications(notifications);
+            } catch (Exception e) {
+                log.error("Could not insert {} notification rollups, queueing them again", rollups.size(), e);
+                requeue(rollups);
+                return false;
+            }
+        }
+        // Only once the rows are in, a retried window must not mail twice
+        mails.forEach(Runnable::run);
+        emittedCounter.increment(rollups.size());
+        log.debug("Emitted {} notification rollups", rollups.size());
+        return true;
+    }
+
+    private void requeue(List<Rollup> rollups) {
+        long now = System.currentTimeMillis();
+        for (Rollup rollup : rollups) {
+            WindowKey key = new WindowKey(rollup.recipientId(), rollup.type());
+            Window window = new Window(now);
+            window.actors.putAll(rollup.actors());
+            try {
+                spill(key, window);
+            } catch (Exception e) {
+                keep(key, window);
+            }
+        }
+    }
+
+    // "Asha", "Asha and Rahul", "Asha, Rahul, Priya and 9 others"
+    private static String describe(List<String> names, int people) {
+        int others = people - names.size();
+        if (others > 0) {
+            return String.join(", ", names) + " and " + others + (others == 1 ? " other" : " others");
+        }
+        if (names.size() == 1) {
+            return names.get(0);
+        }
+        return String.join(", ", names.subList(0, names.size() - 1)) + " and " + names.get(names.size() - 1);
+    }
+}
@@ -2,10 +2,12 @@ package com.punarmilan.backend.service;
 
 import com.punarmilan.backend.dto.NotificationDto;
 import com.punarmilan.backend.dto.NotificationStatsDto;
+import com.punarmilan.backend.dto.NotificationSyncDto;
 import com.punarmilan.backend.entity.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 public interface NotificationService {
@@ -23,9 +25,19 @@ public interface NotificationService {
 
     NotificationStatsDto getNotificationStats();
 
+    // Catch-up for a reconnecting client, see NotificationPushDto for the live frames
+    NotificationSyncDto sync(LocalDateTime since, Long afterId, int limit);
+
     void createNotification(Long userId, String type, String title,
             String message, Long relatedId, String relatedType);
 
+    record NewNotification(Long userId, String type, String title, String message,
+            Long relatedId, String relatedType) {
+    }
+
+    // Grouped insert for a batch of events, same rules as createNotification per row
+    void createNotifications(List<NewNotification> notifications);
+
     void cleanupOldNotifications();
 
     void cleanupOldNotifications(int daysToKeep);
@@ -1,13 +1,23 @@
 package com.punarmilan.backend.service;
 
 import com.punarmilan.backend.dto.PhotoDto;
+import com.punarmilan.backend.entity.Profile;
 import com.punarmilan.backend.entity.User;
+import com.punarmilan.backend.service.ImageDerivativeService.ImageVariant;
 
 public interface PhotoVisibilityService {
     PhotoDto getProfilePhoto(User viewer, User owner);
 
     PhotoDto getAlbumPhoto(User viewer, User owner, String photoUrl);
 
+    // Same as above but url points at a resized variant, for feeds and lists
+    PhotoDto getProfilePhoto(User viewer, User owner, ImageVariant variant);
+
+    PhotoDto getAlbumPhoto(User viewer, User owner, String photoUrl, ImageVariant variant);
+
+    // For callers that already loaded the owner's profile and like state, runs no queries
+    PhotoDto getProfilePhoto(User viewer, Profile ownerProfile, boolean likedByOwner, ImageVariant variant);
+
     // Core logic methods requested by user
     boolean canViewProfilePhoto(User viewer, User owner);
 
@@ -0,0 +1,284 @@
+package com.punarmilan.backend.service;
+
+import com.punarmilan.backend.config.WebSocketAuthInterceptor;
+import com.punarmilan.backend.repository.MatchRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.security.Principal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Who is online, driven by STOMP sessions rather than last login.
+ *
+ * Every node keeps its own session counts locally and mirrors them into
+ * {@code presence:{userId}}, a hash of node id to session count whose TTL is
+ * refreshed by the heartbeat. A node that dies stops refreshing, so its users
+ * drop offline within one TTL. Lookups are answered from a short local cache
+ * and one pipelined round trip for the misses.
+ */
+@Slf4j
+@Service
+public class PresenceService {
+
+    private static final String KEY_PREFIX = "presence:";
+    private static final String DESTINATION = "/queue/online-status";
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final MatchRepository matchRepository;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final String nodeId;
+    private final Duration ttl;
+    private final long cacheMillis;
+    private final long pushIntervalMillis;
+
+    // userId -> sessions on this node, hidden users are never added
+    private final Map<Long, Integer> localSessions = new ConcurrentHashMap<>();
+    private final Map<String, Long> sessionUsers = new ConcurrentHashMap<>();
+
+    private final Map<Long, CachedStatus> statusCache = new ConcurrentHashMap<>();
+
+    // Transitions waiting for the next push, and the last state each user's matches saw
+    private final Map<Long, Boolean> pendingChanges = new ConcurrentHashMap<>();
+    private final Map<Long, PushedStatus> lastPushed = new ConcurrentHashMap<>();
+
+    private record CachedStatus(boolean online, long checkedAt) {
+    }
+
+    private record PushedStatus(boolean online, long pushedAt) {
+    }
+
+    public PresenceService(RedisTemplate<String, Object> redisTemplate,
+            MatchRepository matchRepository,
+            SimpMessagingTemplate messagingTemplate,
+            NodeIdentity nodeIdentity,
+            @Value("${app.presence.ttl-seconds:90}") long ttlSeconds,
+            @Value("${app.presence.cache-ms:5000}") long cacheMillis,
+            @Value("${app.presence.push-interval-ms:30000}") long pushIntervalMillis) {
+        this.redisTemplate = redisTemplate;
+        this.matchRepository = matchRepository;
+        this.messagingTemplate = messagingTemplate;
+        this.nodeId = nodeIdentity.getNodeId();
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+        this.cacheMillis = cacheMillis;
+        this.pushIntervalMillis = pushIntervalMillis;
+    }
+
+    @EventListener
+    public void onConnected(SessionConnectedEvent event) {
+        Principal user = event.getUser();
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+        Long userId = parseUserId(user);
+        if (userId == null || sessionId == null || isHidden(event.getMessage().getHeaders())
+                || sessionUsers.putIfAbsent(sessionId, userId) != null) {
+            return;
+        }
+        int count = localSessions.merge(userId, 1, Integer::sum);
+        publish(userId, count);
+        if (count == 1) {
+            markChanged(userId, true);
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        Long userId = sessionUsers.remove(event.getSessionId());
+        if (userId == null) {
+            return;
+        }
+        Integer remaining = localSessions.computeIfPresent(userId, (key, count) -> count > 1 ? count - 1 : null);
+        publish(userId, remaining == null ? 0 : remaining);
+        if (remaining == null) {
+            markChanged(userId, false);
+        }
+    }
+
+    public boolean isOnline(Long userId) {
+        return areOnline(List.of(userId)).getOrDefault(userId, false);
+    }
+
+    /**
+     * Online state for a page of users in at most one Redis round trip. Users
+     * connected to this node need no lookup at all. Anything Redis can't answer
+     * is reported offline.
+     */
+    public Map<Long, Boolean> areOnline(Collection<Long> userIds) {
+        Map<Long, Boolean> result = new HashMap<>();
+        List<Long> misses = new ArrayList<>();
+        long now = System.currentTimeMillis();
+
+        for (Long userId : userIds) {
+            if (userId == null || result.containsKey(userId)) {
+                continue;
+            }
+            if (localSessions.containsKey(userId)) {
+                result.put(userId, true);
+                continue;
+            }
+            CachedStatus cached = statusCache.get(userId);
+            if (cached != null && now - cached.checkedAt() < cacheMillis) {
+                result.put(userId, cached.online());
+            } else {
+                misses.add(userId);
+            }
+        }
+        if (misses.isEmpty()) {
+            return result;
+        }
+
+        try {
+            List<Object> sizes = redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Object execute(RedisOperations operations) throws DataAccessException {
+                    misses.forEach(userId -> operations.opsForHash().size(KEY_PREFIX + userId));
+                    return null;
+                }
+            });
+            for (int i = 0; i < misses.size(); i++) {
+                boolean online = sizes.get(i) instanceof Number n && n.longValue() > 0;
+                result.put(misses.get(i), online);
+                statusCache.put(misses.get(i), new CachedStatus(online, now));
+            }
+        } catch (Exception e) {
+            log.warn("Presence lookup failed, reporting {} users offline: {}", misses.size(), e.getMessage());
+            misses.forEach(userId -> result.put(userId, false));
+        }
+        return result;
+    }
+
+    /**
+     * Re-asserts this node's sessions so their keys outlive the TTL and heal
+     * after a Redis restart. Runs every 30 seconds by default.
+     */
+    @Scheduled(fixedDelayString = "${app.presence.heartbeat-ms:30000}")
+    public void heartbeat() {
+        if (localSessions.isEmpty()) {
+            return;
+        }
+        try {
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Object execute(RedisOperations operations) throws DataAccessException {
+                    localSessions.forEach((userId, count) -> {
+                        String key = KEY_PREFIX + userId;
+                        operations.opsForHash().put(key, nodeId, count);
+                        operations.expire(key, ttl.toSeconds(), TimeUnit.SECONDS);
+                    });
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            log.warn("Presence heartbeat failed: {}", e.getMessage());
+        }
+        long cutoff = System.currentTimeMillis() - cacheMillis;
+        statusCache.values().removeIf(status -> status.checkedAt() < cutoff);
+    }
+
+    /**
+     * Tells each changed user's matches about the new state. A user is pushed
+     * at most once per interval, so reconnects and page reloads in between
+     * collapse into nothing. Runs every 5 seconds.
+     */
+    @Scheduled(fixedDelay = 5000)
+    public void pushChanges() {
+        long now = System.currentTimeMillis();
+        for (Long userId : new ArrayList<>(pendingChanges.keySet())) {
+            PushedStatus last = lastPushed.get(userId);
+            if (last != null && now - last.pushedAt() < pushIntervalMillis) {
+                continue;
+            }
+            Boolean online = pendingChanges.remove(userId);
+            if (online == null || (last != null && last.online() == online)) {
+                continue;
+            }
+            lastPushed.put(userId, new PushedStatus(online, now));
+
+            try {
+                Map<String, Object> frame = Map.of(
+                        "userId", userId,
+                        "online", online,
+                        "timestamp", now);
+                for (Long matchId : matchRepository.findMatchedUserIds(userId)) {
+                    messagingTemplate.convertAndSendToUser(matchId.toString(), DESTINATION, frame);
+                }
+            } catch (Exception e) {
+                log.warn("Could not push presence of user {}: {}", userId, e.getMessage());
+            }
+        }
+        lastPushed.values().removeIf(status -> now - status.pushedAt() > pushIntervalMillis * 10);
+    }
+
+    @PreDestroy
+    public void deregister() {
+        try {
+            localSessions.keySet().forEach(userId -> redisTemplate.opsForHash().delete(KEY_PREFIX + userId, nodeId));
+        } catch (Exception e) {
+            log.warn("Could not clear presence for node {}: {}", nodeId, e.getMessage());
+        }
+    }
+
+    // ==================== PRIVATE HELPER METHODS ====================
+
+    private void publish(Long userId, int count) {
+        String key = KEY_PREFIX + userId;
+        statusCache.remove(userId);
+        try {
+            if (count > 0) {
+                redisTemplate.opsForHash().put(key, nodeId, count);
+                redisTemplate.expire(key, ttl);
+            } else {
+                redisTemplate.opsForHash().delete(key, nodeId);
+            }
+        } catch (Exception e) {
+            // The next heartbeat re-publishes
+            log.warn("Could not update presence for user {}: {}", userId, e.getMessage());
+        }
+    }
+
+    private void markChanged(Long userId, boolean online) {
+        pendingChanges.put(userId, online);
+    }
+
+    private static Long parseUserId(Principal user) {
+        if (user == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(user.getName());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Session attributes live on the CONNECT message wrapped by the CONNECT_ACK
+    private static boolean isHidden(MessageHeaders headers) {
+        Map<String, Object> attributes = SimpMessageHeaderAccessor.getSessionAttributes(headers);
+        if (attributes == null && headers.get(SimpMessageHeaderAccessor.CONNECT_MESSAGE_HEADER) instanceof Message<?> connect) {
+            attributes = SimpMessageHeaderAccessor.getSessionAttributes(connect.getHeaders());
+        }
+        return attributes != null && Boolean.TRUE.equals(attributes.get(WebSocketAuthInterceptor.SESSION_HIDDEN));
+    }
+}
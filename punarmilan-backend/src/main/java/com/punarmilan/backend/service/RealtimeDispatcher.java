@@ -0,0 +1,209 @@
+package com.punarmilan.backend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outbox for WebSocket pushes. Frames queued inside a transaction are held
+ * until it commits and dropped if it rolls back, so the broker never sees
+ * data that was not saved and slow sends never hold a connection open.
+ *
+ * Frames are released once the transaction has completed, so sends made by
+ * after-commit callbacks and AFTER_COMMIT event listeners of the same
+ * transaction still go out with it. Past that point there is nothing left to
+ * wait for and a send is queued right away.
+ *
+ * Committed frames are drained in batches by a fixed set of workers. Frames
+ * with the same ordering key (a conversation) always go to the same worker, so
+ * they are delivered in commit order. Within a batch, frames sharing a coalesce
+ * key replace each other and only the latest is sent. Each worker's queue is
+ * bounded; when a worker falls that far behind, new frames wait briefly and
+ * are then dropped and counted rather than piling up in memory.
+ */
+@Slf4j
+@Service
+public class RealtimeDispatcher {
+
+    public record Frame(String user, String destination, Object payload, String orderingKey,
+            String coalesceKey, long committedAt) {
+    }
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final MeterRegistry meterRegistry;
+    private final long offerTimeoutMillis;
+    private final List<BlockingQueue<List<Frame>>> shards = new ArrayList<>();
+    private final List<BatchDrainer<List<Frame>>> workers = new ArrayList<>();
+
+    private Timer lagTimer;
+    private Counter coalescedCounter;
+    private Counter droppedCounter;
+
+    public RealtimeDispatcher(SimpMessagingTemplate messagingTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${app.realtime.dispatch.workers:2}") int workerCount,
+            @Value("${app.realtime.dispatch.batch-size:200}") int batchSize,
+            @Value("${app.realtime.dispatch.queue-capacity:10000}") int queueCapacity,
+            @Value("${app.realtime.dispatch.offer-timeout-ms:50}") long offerTimeoutMillis) {
+        this.messagingTemplate = messagingTemplate;
+        this.meterRegistry = meterRegistry;
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        // Batches are counted in frames, a transaction's frames still go into one batch together
+        for (int i = 0; i < Math.max(1, workerCount); i++) {
+            BlockingQueue<List<Frame>> shard = new LinkedBlockingQueue<>(Math.max(1, queueCapacity));
+            shards.add(shard);
+            workers.add(new BatchDrainer<>("realtime-dispatch-" + i, shard, batchSize, 0, List::size,
+                    this::dispatchAll));
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        lagTimer = Timer.builder("realtime.dispatch.lag")
+                .description("Commit to broker hand-off")
+                .register(meterRegistry);
+        coalescedCounter = Counter.builder("realtime.dispatch.coalesced").register(meterRegistry);
+        droppedCounter = Counter.builder("realtime.dispatch.dropped")
+                .description("Frames dropped because a worker queue stayed full")
+                .register(meterRegistry);
+        Gauge.builder("realtime.dispatch.queued", shards, queues -> queues.stream().mapToInt(BlockingQueue::size).sum())
+                .description("Committed transactions waiting to be pushed")
+                .register(meterRegistry);
+
+        workers.forEach(BatchDrainer::start);
+    }
+
+    /**
+     * Queues a frame that is never coalesced, e.g. a chat message.
+     */
+    public void send(String user, String destination, Object payload, String orderingKey) {
+        send(user, destination, payload, orderingKey, null);
+    }
+
+    /**
+     * Queues a frame. A later frame with the same coalesce key that is still
+     * waiting in the same batch replaces this one.
+     */
+    public void send(String user, String destination, Object payload, String orderingKey, String coalesceKey) {
+        Frame frame = new Frame(user, destination, payload, orderingKey, coalesceKey, 0L);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            release(List.of(frame));
+            return;
+        }
+        pendingFrames().add(frame);
+    }
+
+    @PreDestroy
+    public void stop() {
+        // Frames of transactions that already committed are still pushed before the broker goes away
+        workers.forEach(BatchDrainer::stop);
+    }
+
+    // ==================== PRIVATE HELPER METHODS ====================
+
+    @SuppressWarnings("unchecked")
+    private List<Frame> pendingFrames() {
+        List<Frame> pending = (List<Frame>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            List<Frame> frames = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(this, frames);
+            // Released after completion rather than after commit: the transaction manager collects
+            // the synchronizations again for that phase, so one registered by another synchronization's
+            // afterCommit still runs, and frames added there are not left behind
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(RealtimeDispatcher.this);
+                    if (status == STATUS_COMMITTED) {
+                        release(frames);
+                    } else if (!frames.isEmpty()) {
+                        log.debug("Dropped {} realtime frames from a rolled back transaction", frames.size());
+                    }
+                }
+            });
+            pending = frames;
+        }
+        return pending;
+    }
+
+    // A transaction's frames enter each shard as one unit, so a batch never splits them
+    private void release(List<Frame> frames) {
+        long now = System.nanoTime();
+        Map<BlockingQueue<List<Frame>>, List<Frame>> byShard = new LinkedHashMap<>();
+        for (Frame frame : frames) {
+            Frame committed = new Frame(frame.user(), frame.destination(), frame.payload(),
+                    frame.orderingKey(), frame.coalesceKey(), now);
+            byShard.computeIfAbsent(shardFor(frame.orderingKey()), shard -> new ArrayList<>()).add(committed);
+        }
+        byShard.forEach(this::enqueue);
+    }
+
+    private void enqueue(BlockingQueue<List<Frame>> shard, List<Frame> frames) {
+        boolean queued;
+        try {
+            queued = shard.offer(frames, offerTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queued = false;
+        }
+        if (!queued) {
+            droppedCounter.increment(frames.size());
+            log.warn("Realtime dispatch queue full, dropped {} frames for {}", frames.size(),
+                    frames.get(0).orderingKey());
+        }
+    }
+
+    private BlockingQueue<List<Frame>> shardFor(String orderingKey) {
+        int hash = orderingKey == null ? 0 : orderingKey.hashCode();
+        return shards.get(Math.floorMod(hash, shards.size()));
+    }
+
+    private void dispatchAll(List<List<Frame>> transactions) {
+        List<Frame> batch = new ArrayList<>();
+        transactions.forEach(batch::addAll);
+        dispatch(batch);
+    }
+
+    private void dispatch(List<Frame> batch) {
+        // Last index per coalesce key, earlier frames with that key are superseded
+        Map<String, Integer> latest = new HashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            String key = batch.get(i).coalesceKey();
+            if (key != null) {
+                latest.put(key, i);
+            }
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            Frame frame = batch.get(i);
+            if (frame.coalesceKey() != null && latest.get(frame.coalesceKey()) != i) {
+                coalescedCounter.increment();
+                continue;
+            }
+            try {
+                messagingTemplate.convertAndSendToUser(frame.user(), frame.destination(), frame.payload());
+            } catch (Exception e) {
+                log.warn("Could not push {} to user {}: {}", frame.destination(), frame.user(), e.getMessage());
+            }
+            lagTimer.record(System.nanoTime() - frame.committedAt(), TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.punarmilan.backend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Expires old rows of the append-mostly tables: notifications, profile view
+ * history, audit logs and the email outbox.
+ *
+ * These tables carry foreign keys and unique keys without the timestamp, which
+ * MySQL does not allow on partitioned tables, so expiry is a walk over the
+ * primary key instead. The expired id range is read from the timestamp index
+ * once, then deleted in windows of at most batch-size ids, each in its own
+ * short autocommit statement with a pause in between. Locks are held for one
+ * window only and replicas never see one huge delete.
+ *
+ * Timestamps are not strictly in id order (re-views and coalesced
+ * notifications move them forward), so every window re-checks the cutoff.
+ * Callers' transactions are suspended, a window must commit on its own.
+ */
+@Slf4j
+@Service
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class RetentionService {
+
+    private record Policy(String table, String timeColumn) {
+    }
+
+    private static final Policy NOTIFICATIONS = new Policy("notifications", "created_at");
+    private static final Policy VIEW_HISTORY = new Policy("user_view_history", "viewed_at");
+    private static final Policy AUDIT_LOGS = new Policy("audit_logs", "created_at");
+    private static final Policy EMAIL_OUTBOX = new Policy("email_outbox", "created_at");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NotificationCounterService notificationCounterService;
+    private final MeterRegistry meterRegistry;
+    private final int notificationDays;
+    private final int viewHistoryDays;
+    private final int auditLogDays;
+    private final int emailOutboxDays;
+    private final int batchSize;
+    private final long pauseMillis;
+
+    private final Map<String, Counter> deletedCounters = new ConcurrentHashMap<>();
+
+    public RetentionService(JdbcTemplate jdbcTemplate,
+            NotificationCounterService notificationCounterService,
+            MeterRegistry meterRegistry,
+            @Value("${app.retention.notifications-days:30}") int notificationDays,
+            @Value("${app.retention.view-history-days:180}") int viewHistoryDays,
+            @Value("${app.retention.audit-log-days:30}") int auditLogDays,
+            @Value("${app.retention.email-outbox-days:14}") int emailOutboxDays,
+            @Value("${app.retention.batch-size:5000}") int batchSize,
+            @Value("${app.retention.pause-ms:100}") long pauseMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.notificationCounterService = notificationCounterService;
+        this.meterRegistry = meterRegistry;
+        this.notificationDays = notificationDays;
+        this.viewHistoryDays = viewHistoryDays;
+        this.auditLogDays = auditLogDays;
+        this.emailOutboxDays = emailOutboxDays;
+        this.batchSize = Math.max(1, batchSize);
+        this.pauseMillis = pauseMillis;
+    }
+
+    /**
+     * Applies every retention policy. Runs daily at 2 AM by default.
+     */
+    @Scheduled(cron = "${app.retention.cron:0 0 2 * * *}")
+    public void expireAll() {
+        purgeNotifications(notificationDays);
+        purgeViewHistory(viewHistoryDays);
+        purgeAuditLogs(auditLogDays);
+        purgeEmailOutbox(emailOutboxDays);
+    }
+
+    public long purgeNotifications(int daysToKeep) {
+        return purge(NOTIFICATIONS, daysToKeep);
+    }
+
+    public long purgeViewHistory(int daysToKeep) {
+        return purge(VIEW_HISTORY, daysToKeep);
+    }
+
+    public long purgeAuditLogs(int daysToKeep) {
+        return purge(AUDIT_LOGS, daysToKeep);
+    }
+
+    // Long past the last retry, so only sent and dead emails are this old
+    public long purgeEmailOutbox(int daysToKeep) {
+        return purge(EMAIL_OUTBOX, daysToKeep);
+    }
+
+    // ==================== PRIVATE HELPER METHODS ====================
+
+    private long purge(Policy policy, int daysToKeep) {
+        Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minusDays(daysToKeep));
+        Map<String, Object> range = jdbcTemplate.queryForMap(
+                "SELECT MIN(id) AS low, MAX(id) AS high FROM " + policy.table()
+                        + " WHERE " + policy.timeColumn() + " < ?", cutoff);
+        if (range.get("low") == null) {
+            return 0;
+        }
+        long low = ((Number) range.get("low")).longValue();
+        long high = ((Number) range.get("high")).longValue();
+
+        long deleted = 0;
+        int windows = 0;
+        long started = System.currentTimeMillis();
+        for (long from = low; from <= high; from += batchSize) {
+            long to = Math.min(from + batchSize, high + 1);
+            List<Long> affectedUsers = policy == NOTIFICATIONS ? counterOwners(from, to, cutoff) : List.of();
+            deleted += jdbcTemplate.update("DELETE FROM " + policy.table() + " WHERE id >= ? AND id < ? AND "
+                    + policy.timeColumn() + " < ?", from, to, cutoff);
+            notificationCounterService.invalidate(affectedUsers);
+            windows++;
+            if (!pause()) {
+                log.warn("Retention of {} interrupted after {} rows", policy.table(), deleted);
+                break;
+            }
+        }
+
+        deletedCounter(policy.table()).increment(deleted);
+        log.info("Retention removed {} rows from {} older than {} days in {} batches ({} ms)",
+                deleted, policy.table(), daysToKeep, windows, System.currentTimeMillis() - started);
+        return deleted;
+    }
+
+    // Only unread or unseen rows feed the counters, read ones can go without a trace
+    private List<Long> counterOwners(long from, long to, Timestamp cutoff) {
+        return jdbcTemplate.queryForList("SELECT DISTINCT user_id FROM notifications "
+                + "WHERE id >= ? AND id < ? AND created_at < ? AND (is_read = false OR is_seen = false)",
+                Long.class, from, to, cutoff);
+    }
+
+    private boolean pause() {
+        if (pauseMillis <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(pauseMillis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private Counter deletedCounter(String table) {
+        return deletedCounters.computeIfAbsent(table, name -> Counter.builder("retention.deleted")
+                .tag("table", name)
+                .register(meterRegistry));
+    }
+}
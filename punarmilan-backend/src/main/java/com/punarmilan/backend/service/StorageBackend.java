@@ -0,0 +1,33 @@
+package com.punarmilan.backend.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+
+/**
+ * Blob store behind {@link FileStorageService}. Keys are flat, content
+ * addressed file names such as {@code <sha256>.jpg}. The local filesystem
+ * implementation is the default; an S3 compatible store can be plugged in by
+ * providing another bean and setting {@code file.storage.backend}.
+ */
+public interface StorageBackend {
+
+    // Moves a fully written staging file into the store under key
+    void put(String key, Path stagedFile, String contentType) throws IOException;
+
+    boolean exists(String key);
+
+    // Size in bytes, or -1 when the key does not exist
+    long contentLength(String key);
+
+    // Epoch millis of the last write, or 0 when unknown
+    long lastModified(String key);
+
+    InputStream openStream(String key) throws IOException;
+
+    // Copies count bytes starting at position into target, zero-copy where the backend allows it
+    long transferTo(String key, long position, long count, WritableByteChannel target) throws IOException;
+
+    boolean delete(String key);
+}
@@ -0,0 +1,433 @@
+package com.punarmilan.backend.service;
+
+import com.punarmilan.backend.repository.ConversationRepository;
+import com.punarmilan.backend.repository.MatchRepository;
+import com.punarmilan.backend.repository.MessageRepository;
+import com.punarmilan.backend.service.ConversationCache.ConversationMeta;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+/**
+ * Chat unread counters kept in Redis so sending a message never takes a row
+ * lock on the conversation or match just to bump a counter.
+ *
+ * Each user has a hash {@code unread:{userId}} of conversation id to count
+ * plus a {@code _total} field for the badge. Changed conversations are queued
+ * in {@code unread-dirty} and flushed to the Conversation and Match columns
+ * every few seconds; a reconciliation job rebuilds the hashes from unread
+ * messages. Every method returns null/false when Redis is unavailable so the
+ * caller can fall back to the database columns.
+ *
+ * Seeding only ever creates a missing hash, so a seed that lost a race can't
+ * overwrite counts already bumped on top of the winner's. Every change stamps
+ * {@code _changed}; reconciliation leaves recently changed users alone, since
+ * their messages may not be committed yet, and only writes its corrections if
+ * the stamp is still the one it compared against.
+ */
+@Slf4j
+@Service
+public class UnreadCounterService {
+
+    private static final String KEY_PREFIX = "unread:";
+    private static final String DIRTY_KEY = "unread-dirty";
+    private static final String TOTAL_FIELD = "_total";
+    private static final String CHANGED_FIELD = "_changed";
+    // Fields that are not conversation ids start with this
+    private static final String META_PREFIX = "_";
+    private static final int FLUSH_BATCH = 500;
+
+    // -1 when the hash is missing, the caller seeds it from MySQL and retries
+    private static final RedisScript<Long> INCREMENT_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return -1 end "
+                    + "local n = redis.call('HINCRBY', KEYS[1], ARGV[1], 1) "
+                    + "redis.call('HINCRBY', KEYS[1], '" + TOTAL_FIELD + "', 1) "
+                    + "redis.call('HSET', KEYS[1], '" + CHANGED_FIELD + "', ARGV[2]) "
+                    + "redis.call('SADD', KEYS[2], ARGV[1]) "
+                    + "return n",
+            Long.class);
+
+    private static final RedisScript<Long> RESET_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return -1 end "
+                    + "local n = tonumber(redis.call('HGET', KEYS[1], ARGV[1]) or '0') "
+                    + "if n ~= 0 then "
+                    + "redis.call('HDEL', KEYS[1], ARGV[1]) "
+                    + "redis.call('HINCRBY', KEYS[1], '" + TOTAL_FIELD + "', -n) "
+                    + "end "
+                    + "redis.call('HSET', KEYS[1], '" + CHANGED_FIELD + "', ARGV[2]) "
+                    + "redis.call('SADD', KEYS[2], ARGV[1]) "
+                    + "return n",
+            Long.class);
+
+    // Creates the hash only if it is still missing. ARGV[1] = '1' queues the seeded conversations
+    // for a flush, the rest are conversation id and count pairs. Returns 1 when it seeded.
+    private static final RedisScript<Long> SEED_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 1 then return 0 end "
+                    + "local total = 0 "
+                    + "for i = 2, #ARGV, 2 do "
+                    + "redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1]) "
+                    + "total = total + tonumber(ARGV[i + 1]) "
+                    + "if ARGV[1] == '1' then redis.call('SADD', KEYS[2], ARGV[i]) end "
+                    + "end "
+                    + "redis.call('HSET', KEYS[1], '" + TOTAL_FIELD + "', total) "
+                    + "return 1",
+            Long.class);
+
+    // Applies corrections only if _changed still equals ARGV[1] ('' for never changed),
+    // the rest are conversation id and count pairs, 0 deletes. Returns -1 when the
+    // user moved on since the snapshot, otherwise the number of fields written.
+    private static final RedisScript<Long> RECONCILE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return -1 end "
+                    + "if (redis.call('HGET', KEYS[1], '" + CHANGED_FIELD + "') or '') ~= ARGV[1] then return -1 end "
+                    + "for i = 2, #ARGV, 2 do "
+                    + "if ARGV[i + 1] == '0' then redis.call('HDEL', KEYS[1], ARGV[i]) "
+                    + "else redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1]) end "
+                    + "redis.call('SADD', KEYS[2], ARGV[i]) "
+                    + "end "
+                    + "local vals = redis.call('HGETALL', KEYS[1]) "
+                    + "local total = 0 "
+                    + "for i = 1, #vals, 2 do "
+                    + "if string.sub(vals[i], 1, 1) ~= '" + META_PREFIX + "' then "
+                    + "total = total + tonumber(vals[i + 1]) end "
+                    + "end "
+                    + "redis.call('HSET', KEYS[1], '" + TOTAL_FIELD + "', total) "
+                    + "return (#ARGV - 1) / 2",
+            Long.class);
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final ConversationRepository conversationRepository;
+    private final MatchRepository matchRepository;
+    private final MessageRepository messageRepository;
+    private final ConversationCache conversationCache;
+    private final int reconcileBatch;
+    private final long reconcileGraceMillis;
+    private final StringRedisSerializer stringSerializer = new StringRedisSerializer();
+    private final GenericToStringSerializer<Long> longSerializer = new GenericToStringSerializer<>(Long.class);
+
+    public UnreadCounterService(RedisTemplate<String, Object> redisTemplate,
+            ConversationRepository conversationRepository,
+            MatchRepository matchRepository,
+            MessageRepository messageRepository,
+            ConversationCache conversationCache,
+            @Value("${app.chat.unread.reconcile-batch:500}") int reconcileBatch,
+            @Value("${app.chat.unread.reconcile-grace-seconds:60}") long reconcileGraceSeconds) {
+        this.redisTemplate = redisTemplate;
+        this.conversationRepository = conversationRepository;
+        this.matchRepository = matchRepository;
+        this.messageRepository = messageRepository;
+        this.conversationCache = conversationCache;
+        this.reconcileBatch = Math.max(1, reconcileBatch);
+        this.reconcileGraceMillis = reconcileGraceSeconds * 1000;
+    }
+
+    /**
+     * Adds one unread message for the receiver and returns the new count for
+     * that conversation.
+     */
+    public Integer increment(Long receiverId, Long conversationId) {
+        try {
+            Long count = runSeeded(INCREMENT_SCRIPT, receiverId, conversationId);
+            return count != null ? count.intValue() : null;
+        } catch (Exception e) {
+            log.warn("Redis unavailable, unread counter for user {} falls back to MySQL: {}",
+                    receiverId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Clears the user's unread count for a conversation.
+     */
+    public boolean reset(Long userId, Long conversationId) {
+        try {
+            return runSeeded(RESET_SCRIPT, userId, conversationId) != null;
+        } catch (Exception e) {
+            log.warn("Redis unavailable, could not reset unread counter for user {}: {}", userId, e.getMessage());
+            return false;
+        }
+    }
+
+    public Integer get(Long userId, Long conversationId) {
+        try {
+            String key = seededKey(userId);
+            Object value = redisTemplate.opsForHash().get(key, conversationId.toString());
+            return value != null ? toInt(value) : 0;
+        } catch (Exception e) {
+            log.warn("Redis unavailable, could not read unread counter for user {}: {}", userId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Unread count per conversation, conversations without unread messages are absent.
+     */
+    public Map<Long, Integer> getAll(Long userId) {
+        try {
+            Map<Object, Object> entries = redisTemplate.opsForHash().entries(seededKey(userId));
+            Map<Long, Integer> counts = new HashMap<>();
+            entries.forEach((field, value) -> {
+                if (!field.toString().startsWith(META_PREFIX)) {
+                    counts.put(Long.valueOf(field.toString()), toInt(value));
+                }
+            });
+            return counts;
+        } catch (Exception e) {
+            log.warn("Redis unavailable, could not read unread counters for user {}: {}", userId, e.getMessage());
+            return null;
+        }
+    }
+
+    public Long getTotal(Long userId) {
+        try {
+            Object total = redisTemplate.opsForHash().get(seededKey(userId), TOTAL_FIELD);
+            return total != null ? (long) toInt(total) : 0L;
+        } catch (Exception e) {
+            log.warn("Redis unavailable, could not read unread total for user {}: {}", userId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes the counters of changed conversations to the Conversation and
+     * Match columns. Runs every 5 seconds by default.
+     */
+    @Scheduled(fixedDelayString = "${app.chat.unread.flush-ms:5000}")
+    public void flushDirty() {
+        List<Object> ids;
+        do {
+            try {
+                ids = redisTemplate.opsForSet().pop(DIRTY_KEY, FLUSH_BATCH);
+            } catch (Exception e) {
+                log.debug("Skipping unread counter flush, Redis unavailable: {}", e.getMessage());
+                return;
+            }
+            if (ids == null || ids.isEmpty()) {
+                return;
+            }
+            for (Object id : ids) {
+                flushConversation(Long.valueOf(id.toString()));
+            }
+            log.debug("Flushed unread counters for {} conversations", ids.size());
+        } while (ids.size() == FLUSH_BATCH);
+    }
+
+    /**
+     * Rebuilds the Redis counters from unread messages and queues every
+     * corrected conversation for the next flush, one page of users at a time:
+     * first the users that have counters, then users without counters whose
+     * flushed columns still show unread. Unread means past the read watermark,
+     * so the second walk starts from the columns rather than from messages. Users changed within the grace period
+     * are skipped, they are reconciled on the next run.
+     * Runs every hour at quarter to.
+     */
+    @Scheduled(cron = "0 45 * * * *")
+    public void reconcile() {
+        int users = 0;
+        int corrected = 0;
+        try {
+            List<Long> page = new ArrayList<>(reconcileBatch);
+            try (Cursor<String> keys = redisTemplate.scan(ScanOptions.scanOptions()
+                    .match(KEY_PREFIX + "*").count(reconcileBatch).build())) {
+                while (keys.hasNext()) {
+                    page.add(Long.valueOf(keys.next().substring(KEY_PREFIX.length())));
+                    if (page.size() == reconcileBatch || !keys.hasNext()) {
+                        users += page.size();
+                        corrected += reconcileSeeded(page);
+                        page.clear();
+                    }
+                }
+            }
+
+            // A user on both sides of a conversation is seeded by the first walk, the script skips it after that
+            corrected += seedWalk(conversationRepository::findUser1WithUnreadAfter);
+            corrected += seedWalk(conversationRepository::findUser2WithUnreadAfter);
+            log.info("Unread counter reconciliation checked {} users, corrected {} counters", users, corrected);
+        } catch (Exception e) {
+            log.warn("Unread counter reconciliation failed: {}", e.getMessage());
+        }
+    }
+
+    // ==================== PRIVATE HELPER METHODS ====================
+
+    private Long runSeeded(RedisScript<Long> script, Long userId, Long conversationId) {
+        List<String> keys = List.of(KEY_PREFIX + userId, DIRTY_KEY);
+        String now = Long.toString(System.currentTimeMillis());
+        Long result = redisTemplate.execute(script, stringSerializer, longSerializer, keys,
+                conversationId.toString(), now);
+        if (result != null && result < 0) {
+            seed(userId);
+            result = redisTemplate.execute(script, stringSerializer, longSerializer, keys,
+                    conversationId.toString(), now);
+        }
+        return result;
+    }
+
+    private String seededKey(Long userId) {
+        String key = KEY_PREFIX + userId;
+        if (!Boolean.TRUE.equals(redisTemplate.hasKey(key))) {
+            seed(userId);
+        }
+        return key;
+    }
+
+    // Loads the user's counters from the last flushed column values, unless another caller got there first
+    private void seed(Long userId) {
+        List<String> args = new ArrayList<>();
+        args.add("0");
+        for (ConversationRepository.ConversationUnread row : conversationRepository.findUnreadCountsForUser(userId)) {
+            args.add(row.getId().toString());
+            args.add(row.getUnreadCount().toString());
+        }
+        redisTemplate.execute(SEED_SCRIPT, stringSerializer, longSerializer,
+                List.of(KEY_PREFIX + userId, DIRTY_KEY), args.toArray());
+    }
+
+    private void flushConversation(Long conversationId) {
+        try {
+            Optional<ConversationMeta> found = conversationCache.findById(conversationId);
+            if (found.isEmpty()) {
+                return;
+            }
+            ConversationMeta meta = found.get();
+            int user1Count = storedCount(meta.getUser1Id(), conversationId);
+            int user2Count = storedCount(meta.getUser2Id(), conversationId);
+            conversationRepository.updateUnreadCounts(conversationId, user1Count, user2Count);
+            matchRepository.updateUnreadCounts(meta.getUser1Id(), user1Count, meta.getUser2Id(), user2Count);
+        } catch (Exception e) {
+            log.warn("Could not flush unread counters for conversation {}: {}", conversationId, e.getMessage());
+            try {
+                redisTemplate.opsForSet().add(DIRTY_KEY, conversationId.toString());
+            } catch (Exception ignored) {
+                // Reconciliation picks it up
+            }
+        }
+    }
+
+    // -1 leaves the column untouched, the user's hash was evicted and will be re-seeded
+    private int storedCount(Long userId, Long conversationId) {
+        String key = KEY_PREFIX + userId;
+        if (!Boolean.TRUE.equals(redisTemplate.hasKey(key))) {
+            return -1;
+        }
+        Object value = redisTemplate.opsForHash().get(key, conversationId.toString());
+        return value != null ? toInt(value) : 0;
+    }
+
+    // Compares one page of seeded users against their unread messages, returns the corrected field count
+    private int reconcileSeeded(List<Long> userIds) {
+        // Users changed within the grace period may still have uncommitted messages, they wait for the next run
+        long cutoff = System.currentTimeMillis() - reconcileGraceMillis;
+        Map<Long, Map<Object, Object>> snapshots = new HashMap<>();
+        for (Long userId : userIds) {
+            Map<Object, Object> current = redisTemplate.opsForHash().entries(KEY_PREFIX + userId);
+            Object changed = current.get(CHANGED_FIELD);
+            if (!current.isEmpty() && (changed == null || toLong(changed) < cutoff)) {
+                snapshots.put(userId, current);
+            }
+        }
+        if (snapshots.isEmpty()) {
+            return 0;
+        }
+
+        Map<Long, Map<String, Integer>> expected = countUnread(snapshots.keySet());
+        int corrected = 0;
+        for (Map.Entry<Long, Map<Object, Object>> snapshot : snapshots.entrySet()) {
+            corrected += reconcileUser(snapshot.getKey(), snapshot.getValue(),
+                    expected.getOrDefault(snapshot.getKey(), Map.of()));
+        }
+        return corrected;
+    }
+
+    private int reconcileUser(Long userId, Map<Object, Object> current, Map<String, Integer> expected) {
+        Set<String> fields = new HashSet<>(expected.keySet());
+        current.keySet().forEach(field -> fields.add(field.toString()));
+        fields.removeIf(field -> field.startsWith(META_PREFIX));
+
+        List<String> args = new ArrayList<>();
+        Object changed = current.get(CHANGED_FIELD);
+        args.add(changed != null ? changed.toString() : "");
+        for (String field : fields) {
+            int want = expected.getOrDefault(field, 0);
+            Object have = current.get(field);
+            if ((have != null && toInt(have) == want) || (have == null && want == 0)) {
+                continue;
+            }
+            args.add(field);
+            args.add(Integer.toString(want));
+        }
+        if (args.size() == 1) {
+            return 0;
+        }
+
+        Long written = redisTemplate.execute(RECONCILE_SCRIPT, stringSerializer, longSerializer,
+                List.of(KEY_PREFIX + userId, DIRTY_KEY), args.toArray());
+        return written != null && written > 0 ? written.intValue() : 0;
+    }
+
+    // Seeds users that have unread messages but no counters yet, queuing their columns for a flush
+    private int seedWalk(BiFunction<Long, Pageable, List<Long>> page) {
+        int seeded = 0;
+        long after = 0;
+        List<Long> users;
+        while (!(users = page.apply(after, PageRequest.of(0, reconcileBatch))).isEmpty()) {
+            seeded += seedFromMessages(users);
+            after = users.get(users.size() - 1);
+        }
+        return seeded;
+    }
+
+    private int seedFromMessages(List<Long> userIds) {
+        int seeded = 0;
+        for (Map.Entry<Long, Map<String, Integer>> user : countUnread(userIds).entrySet()) {
+            List<String> args = new ArrayList<>();
+            args.add("1");
+            user.getValue().forEach((conversationId, count) -> {
+                args.add(conversationId);
+                args.add(count.toString());
+            });
+            Long result = redisTemplate.execute(SEED_SCRIPT, stringSerializer, longSerializer,
+                    List.of(KEY_PREFIX + user.getKey(), DIRTY_KEY), args.toArray());
+            if (result != null && result > 0) {
+                seeded += user.getValue().size();
+            }
+        }
+        return seeded;
+    }
+
+    private Map<Long, Map<String, Integer>> countUnread(Collection<Long> userIds) {
+        Map<Long, Map<String, Integer>> counts = new HashMap<>();
+        for (Object[] row : messageRepository.countUnreadByConversationForReceivers(userIds)) {
+            counts.computeIfAbsent((Long) row[0], user -> new HashMap<>())
+                    .put(row[1].toString(), ((Number) row[2]).intValue());
+        }
+        return counts;
+    }
+
+    private static long toLong(Object value) {
+        return value instanceof Number n ? n.longValue() : Long.parseLong(value.toString());
+    }
+
+    private static int toInt(Object value) {
+        return value instanceof Number n ? n.intValue() : Integer.parseInt(value.toString());
+    }
+}
@@ -1,26 +1,125 @@
 package com.punarmilan.backend.service;
 
 import com.punarmilan.backend.dto.NotificationDto;
+import com.punarmilan.backend.dto.NotificationPushDto;
 import com.punarmilan.backend.dto.PaymentResponseDto;
+import com.punarmilan.backend.entity.Notification.NotificationType;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pushes notification changes to /user/queue/notifications/v2 so clients keep
+ * their list and badges current without polling. Frames go through the
+ * RealtimeDispatcher, so they leave only once the change has committed and in
+ * commit order per user.
+ *
+ * /user/queue/notifications keeps its old payload, a bare NotificationDto for
+ * payment and subscription messages, for clients that predate the frames.
+ */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class WebSocketNotificationService {
 
-    private final SimpMessagingTemplate messagingTemplate;
+    private static final String DESTINATION = "/queue/notifications/v2";
+    private static final String LEGACY_DESTINATION = "/queue/notifications";
+
+    private final RealtimeDispatcher realtimeDispatcher;
 
     public void sendNotificationToUser(Long userId, NotificationDto notification) {
-        String destination = "/user/" + userId + "/queue/notifications";
-        messagingTemplate.convertAndSend(destination, notification);
+        realtimeDispatcher.send(userId.toString(), LEGACY_DESTINATION, notification, orderingKey(userId));
+        push(userId, NotificationPushDto.builder()
+                .event(NotificationPushDto.CREATED)
+                .notification(notification)
+                .build());
         log.info("Real-time notification sent to user {}: {}", userId, notification.getTitle());
     }
 
+    public void created(Long userId, NotificationDto notification) {
+        push(userId, NotificationPushDto.builder()
+                .event(NotificationPushDto.CREATED)
+                .notificationId(notification.getId())
+                .notification(notification)
+                .type(notification.getType())
+                .unreadDelta(1)
+                .unseenDelta(1)
+                .build());
+    }
+
+    /**
+     * A repeat folded into an existing row. Whether the row had been read or
+     * seen isn't known, so the frame moves it to the top without deltas and a
+     * SYNC follows for the counts.
+     */
+    public void updated(Long userId, NotificationDto notification) {
+        push(userId, NotificationPushDto.builder()
+                .event(NotificationPushDto.UPDATED)
+                .notificationId(notification.getId())
+                .notification(notification)
+                .type(notification.getType())
+                .build());
+        requestSync(List.of(userId));
+    }
+
+    public void read(Long userId, Long notificationId, NotificationType type) {
+        push(userId, NotificationPushDto.builder()
+                .event(NotificationPushDto.READ)
+                .notificationId(notificationId)
+                .type(type.name())
+                .unreadDelta(-1)
+                .build());
+    }
+
+    public void deleted(Long userId, Long notificationId, NotificationType type, boolean wasUnread, boolean wasUnseen) {
+        push(userId, NotificationPushDto.builder()
+                .event(NotificationPushDto.DELETED)
+                .notificationId(notificationId)
+                .type(type.name())
+                .unreadDelta(wasUnread ? -1 : 0)
+                .unseenDelta(wasUnseen ? -1 : 0)
+                .build());
+    }
+
+    public void allRead(Long userId) {
+        push(userId, NotificationPushDto.builder()
+                .event(NotificationPushDto.ALL_READ)
+                .unread(0L)
+                .unreadByType(Map.of())
+                .build());
+    }
+
+    public void allSeen(Long userId) {
+        push(userId, NotificationPushDto.builder()
+                .event(NotificationPushDto.ALL_SEEN)
+                .unseen(0L)
+                .build());
+    }
+
+    public void cleared(Long userId) {
+        push(userId, NotificationPushDto.builder()
+                .event(NotificationPushDto.CLEARED)
+                .unread(0L)
+                .unseen(0L)
+                .unreadByType(Map.of())
+                .build());
+    }
+
+    /**
+     * Asks clients to catch up through the sync endpoint, for batches written
+     * without per-row ids such as fan-out jobs.
+     */
+    public void requestSync(Collection<Long> userIds) {
+        NotificationPushDto frame = NotificationPushDto.builder().event(NotificationPushDto.SYNC).build();
+        userIds.forEach(userId -> realtimeDispatcher.send(userId.toString(), DESTINATION, frame,
+                orderingKey(userId), "notification-sync:" + userId));
+    }
+
     public void sendPaymentNotification(Long userId, PaymentResponseDto payment) {
         NotificationDto notification = NotificationDto.builder()
                 .type("PAYMENT_SUCCESS")
@@ -29,7 +128,7 @@ public class WebSocketNotificationService {
                 .relatedId(payment.getSubscriptionId())
                 .relatedType("PAYMENT")
                 .build();
-        
+
         sendNotificationToUser(userId, notification);
     }
 
@@ -41,7 +140,17 @@ public class WebSocketNotificationService {
                 .relatedId(subscriptionId)
                 .relatedType("SUBSCRIPTION")
                 .build();
-        
+
         sendNotificationToUser(userId, notification);
     }
-}
\ No newline at end of file
+
+    // ==================== PRIVATE HELPER METHODS ====================
+
+    private void push(Long userId, NotificationPushDto frame) {
+        realtimeDispatcher.send(userId.toString(), DESTINATION, frame, orderingKey(userId));
+    }
+
+    private static String orderingKey(Long userId) {
+        return "notifications:" + userId;
+    }
+}
@@ -6,13 +6,14 @@ import com.punarmilan.backend.exception.ResourceNotFoundException;
 import com.punarmilan.backend.repository.*;
 import com.punarmilan.backend.service.AdminService;
 import com.punarmilan.backend.service.EmailService;
+import com.punarmilan.backend.service.FanoutService;
 import com.punarmilan.backend.service.NotificationService;
+import com.punarmilan.backend.service.RetentionService;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -38,6 +39,8 @@ public class AdminServiceImpl implements AdminService {
     private final AuditLogRepository auditLogRepository;
     private final NotificationService notificationService;
     private final EmailService emailService;
+    private final FanoutService fanoutService;
+    private final RetentionService retentionService;
     private final HttpServletRequest httpServletRequest;
 
     @Override
@@ -399,43 +402,25 @@ public class AdminServiceImpl implements AdminService {
                 .collect(Collectors.toList());
     }
 
+    // Audit logs only, as it always was. The other policies run on RetentionService's own schedule
     @Override
-    @Scheduled(cron = "0 0 3 * * *") // Run daily at 3 AM
     public void cleanupOldData() {
         cleanupOldData(30); // Default to 30 days
     }
 
     @Override
     public void cleanupOldData(int days) {
-        LocalDateTime cutoffDate = LocalDateTime.now().minusDays(days);
-
-        // Cleanup old audit logs
-        List<AuditLog> oldLogs = auditLogRepository.findAll().stream()
-                .filter(log -> log.getCreatedAt().isBefore(cutoffDate))
-                .collect(Collectors.toList());
-
-        auditLogRepository.deleteAll(oldLogs);
-        log.info("Cleaned up {} old audit logs", oldLogs.size());
+        long deleted = retentionService.purgeAuditLogs(days);
+        log.info("Cleaned up {} old audit logs", deleted);
     }
 
     @Override
-    public void sendBulkNotification(List<Long> userIds, String title, String message) {
-        for (Long userId : userIds) {
-            try {
-                notificationService.createNotification(
-                        userId,
-                        "SYSTEM_ALERT",
-                        title,
-                        message,
-                        null,
-                        "ADMIN_NOTIFICATION");
-            } catch (Exception e) {
-                log.error("Failed to send notification to user {}: {}", userId, e.getMessage());
-            }
-        }
+    public FanoutJobDto sendBulkNotification(List<Long> userIds, String title, String message) {
+        FanoutJobDto job = fanoutService.startBulkNotification(userIds, title, message, currentAdminEmail());
 
-        logAdminAction("BULK_NOTIFICATION_SENT", "SYSTEM", null,
-                "Bulk notification sent to " + userIds.size() + " users");
+        logAdminAction("BULK_NOTIFICATION_SENT", "SYSTEM", job.getJobId(),
+                "Bulk notification queued for " + job.getTotalRecipients() + " users as fan-out job " + job.getJobId());
+        return job;
     }
 
     @Override
@@ -448,8 +433,12 @@ public class AdminServiceImpl implements AdminService {
     }
 
     // Helper Methods
+    private String currentAdminEmail() {
+        return SecurityContextHolder.getContext().getAuthentication().getName();
+    }
+
     private void logAdminAction(String action, String entityType, Long entityId, String description) {
-        String email = SecurityContextHolder.getContext().getAuthentication().getName();
+        String email = currentAdminEmail();
         String ipAddress = httpServletRequest.getRemoteAddr();
         String userAgent = httpServletRequest.getHeader("User-Agent");
 
@@ -897,25 +886,14 @@ public class AdminServiceImpl implements AdminService {
     }
 
     @Override
-    public void blastProfile(Long profileUserId) {
+    public FanoutJobDto blastProfile(Long profileUserId) {
         Profile profile = profileRepository.findByUserId(profileUserId)
                 .orElseThrow(() -> new ResourceNotFoundException("Profile not found"));
 
-        List<User> participants = userRepository.findByActiveTrue();
-
-        for (User user : participants) {
-            if (!user.getId().equals(profileUserId)) {
-                emailService.sendProfileBlasterEmail(user, profile);
-                notificationService.createNotification(
-                        user.getId(),
-                        "SYSTEM_ALERT",
-                        "Featured Profile: " + profile.getFullName(),
-                        "Check out this featured profile that matches your interests!",
-                        profile.getId(),
-                        "PROFILE");
-            }
-        }
+        FanoutJobDto job = fanoutService.startProfileBlast(profile, profileUserId, currentAdminEmail());
 
-        logAdminAction("PROFILE_BLAST", "USER_PROFILE", profileUserId, "Blasted profile to all active users");
+        logAdminAction("PROFILE_BLAST", "USER_PROFILE", profileUserId,
+                "Blast to all active users queued as fan-out job " + job.getJobId());
+        return job;
     }
-}
\ No newline at end of file
+}
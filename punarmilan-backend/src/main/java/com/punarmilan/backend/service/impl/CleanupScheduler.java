@@ -1,12 +1,17 @@
 package com.punarmilan.backend.service.impl;
 
 import com.punarmilan.backend.repository.MatchRepository;
+import com.punarmilan.backend.repository.StoredFileRepository;
+import com.punarmilan.backend.service.FileStorageService;
+import com.punarmilan.backend.service.ImageDerivativeService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 @Service
 @RequiredArgsConstructor
@@ -14,6 +19,9 @@ import java.time.LocalDateTime;
 public class CleanupScheduler {
 
     private final MatchRepository matchRepository;
+    private final StoredFileRepository storedFileRepository;
+    private final FileStorageService fileStorageService;
+    private final ImageDerivativeService imageDerivativeService;
 
     /**
      * Mark matches as EXPIRED if they have passed their expiration date.
@@ -27,4 +35,29 @@ public class CleanupScheduler {
             log.info("Successfully expired {} matches", count);
         }
     }
+
+    /**
+     * Delete uploaded files that no profile references any more.
+     * Files are kept for an hour after the last release in case of a re-upload.
+     * Runs every hour at half past.
+     */
+    @Scheduled(cron = "0 30 * * * *")
+    public void purgeUnreferencedFiles() {
+        LocalDateTime cutoff = LocalDateTime.now().minusHours(1);
+        int purged = 0;
+        List<String> keys;
+        do {
+            keys = storedFileRepository.findUnreferencedKeys(cutoff, PageRequest.of(0, 100));
+            for (String key : keys) {
+                if (fileStorageService.purgeIfUnreferenced(key)) {
+                    imageDerivativeService.deleteDerivatives(key);
+                    purged++;
+                }
+            }
+        } while (keys.size() == 100);
+
+        if (purged > 0) {
+            log.info("Purged {} unreferenced files", purged);
+        }
+    }
 }
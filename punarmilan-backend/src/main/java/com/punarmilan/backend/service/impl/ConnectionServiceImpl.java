@@ -15,6 +15,7 @@ import com.punarmilan.backend.repository.UserRepository;
 import com.punarmilan.backend.service.ConnectionService;
 import com.punarmilan.backend.service.EmailService;
 import com.punarmilan.backend.service.NotificationService;
+import com.punarmilan.backend.service.ImageDerivativeService.ImageVariant;
 import com.punarmilan.backend.service.PhotoVisibilityService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -294,7 +295,7 @@ public class ConnectionServiceImpl implements ConnectionService {
                             .gender(profile.getGender())
                             .age(profile.getAge())
                             .city(profile.getCity())
-                            .profilePhotoUrl(photoVisibilityService.getProfilePhoto(currentUser, blockedUser))
+                            .profilePhotoUrl(photoVisibilityService.getProfilePhoto(currentUser, blockedUser, ImageVariant.THUMB))
                             .isVerified(profile.isVerified())
                             .build();
                 })
@@ -587,12 +588,12 @@ public class ConnectionServiceImpl implements ConnectionService {
                         .gender(senderProfile.getGender())
                         .age(senderProfile.getAge())
                         .city(senderProfile.getCity())
-                        .profilePhotoUrl(photoVisibilityService.getProfilePhoto(currentUser, request.getSender()))
+                        .profilePhotoUrl(photoVisibilityService.getProfilePhoto(currentUser, request.getSender(), ImageVariant.THUMB))
                         .isVerified(senderProfile.isVerified())
                         .occupation(senderProfile.getOccupation())
                         .education(senderProfile.getEducationLevel())
                         .build())
-                .senderProfilePhoto(photoVisibilityService.getProfilePhoto(currentUser, request.getSender()))
+                .senderProfilePhoto(photoVisibilityService.getProfilePhoto(currentUser, request.getSender(), ImageVariant.THUMB))
                 .receiver(ConnectionResponseDto.ReceiverInfo.builder()
                         .id(request.getReceiver().getId())
                         .email(request.getReceiver().getEmail())
@@ -600,12 +601,12 @@ public class ConnectionServiceImpl implements ConnectionService {
                         .gender(receiverProfile.getGender())
                         .age(receiverProfile.getAge())
                         .city(receiverProfile.getCity())
-                        .profilePhotoUrl(photoVisibilityService.getProfilePhoto(currentUser, request.getReceiver()))
+                        .profilePhotoUrl(photoVisibilityService.getProfilePhoto(currentUser, request.getReceiver(), ImageVariant.THUMB))
                         .isVerified(receiverProfile.isVerified())
                         .occupation(receiverProfile.getOccupation())
                         .education(receiverProfile.getEducationLevel())
                         .build())
-                .receiverProfilePhoto(photoVisibilityService.getProfilePhoto(currentUser, request.getReceiver()))
+                .receiverProfilePhoto(photoVisibilityService.getProfilePhoto(currentUser, request.getReceiver(), ImageVariant.THUMB))
                 .status(request.getStatus().name())
                 .message(request.getMessage())
                 .read(request.isRead())
@@ -0,0 +1,107 @@
+package com.punarmilan.backend.service.impl;
+
+import com.punarmilan.backend.exception.FileStorageException;
+import com.punarmilan.backend.service.StorageBackend;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "file.storage.backend", havingValue = "local", matchIfMissing = true)
+public class LocalStorageBackend implements StorageBackend {
+
+    private final Path root;
+
+    public LocalStorageBackend(@Value("${file.upload-dir:./uploads}") String uploadDir) {
+        this.root = Paths.get(uploadDir).toAbsolutePath().normalize();
+        try {
+            Files.createDirectories(root);
+        } catch (IOException e) {
+            throw new FileStorageException("Could not create upload directory", e);
+        }
+    }
+
+    @Override
+    public void put(String key, Path stagedFile, String contentType) throws IOException {
+        Path target = resolve(key);
+        if (Files.exists(target)) {
+            // Same key means same bytes, keep the existing copy
+            Files.deleteIfExists(stagedFile);
+            return;
+        }
+        Files.move(stagedFile, target, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return Files.exists(resolve(key));
+    }
+
+    @Override
+    public long contentLength(String key) {
+        try {
+            return Files.size(resolve(key));
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public long lastModified(String key) {
+        try {
+            return Files.getLastModifiedTime(resolve(key)).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public InputStream openStream(String key) throws IOException {
+        return Files.newInputStream(resolve(key));
+    }
+
+    @Override
+    public long transferTo(String key, long position, long count, WritableByteChannel target) throws IOException {
+        try (FileChannel channel = FileChannel.open(resolve(key), StandardOpenOption.READ)) {
+            long transferred = 0;
+            while (transferred < count) {
+                long n = channel.transferTo(position + transferred, count - transferred, target);
+                if (n <= 0) {
+                    break;
+                }
+                transferred += n;
+            }
+            return transferred;
+        }
+    }
+
+    @Override
+    public boolean delete(String key) {
+        try {
+            return Files.deleteIfExists(resolve(key));
+        } catch (IOException e) {
+            log.warn("Could not delete {}: {}", key, e.getMessage());
+            return false;
+        }
+    }
+
+    private Path resolve(String key) {
+        Path path = root.resolve(key).normalize();
+        if (!path.getParent().equals(root)) {
+            throw new FileStorageException("Invalid storage key: " + key);
+        }
+        return path;
+    }
+}
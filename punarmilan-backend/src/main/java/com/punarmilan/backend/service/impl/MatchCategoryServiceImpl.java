@@ -10,7 +10,9 @@ import com.punarmilan.backend.exception.BadRequestException;
 import com.punarmilan.backend.exception.ResourceNotFoundException;
 import com.punarmilan.backend.repository.*;
 import com.punarmilan.backend.service.MatchCategoryService;
+import com.punarmilan.backend.service.ImageDerivativeService.ImageVariant;
 import com.punarmilan.backend.service.PhotoVisibilityService;
+import com.punarmilan.backend.service.PresenceService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.ApplicationEventPublisher;
@@ -38,6 +40,7 @@ public class MatchCategoryServiceImpl implements MatchCategoryService {
     private final UserViewHistoryRepository viewHistoryRepository;
     private final ApplicationEventPublisher eventPublisher;
     private final PhotoVisibilityService photoVisibilityService;
+    private final PresenceService presenceService;
     private final ConnectionRequestRepository connectionRepository;
 
     // Pre-defined category slugs
@@ -145,8 +148,9 @@ public class MatchCategoryServiceImpl implements MatchCategoryService {
         List<User> paginatedUsers = filteredUsers.subList(start, end);
 
         // Convert to DTOs
+        Map<Long, Boolean> online = presenceOf(paginatedUsers);
         List<MatchResponseDTO> matchDTOs = paginatedUsers.stream()
-                .map(user -> mapToMatchResponseDTO(user, currentUser, "new"))
+                .map(user -> mapToMatchResponseDTO(user, currentUser, "new", online))
                 .collect(Collectors.toList());
 
         // Get count (for display)
@@ -202,8 +206,9 @@ public class MatchCategoryServiceImpl implements MatchCategoryService {
         List<User> paginatedUsers = filteredUsers.subList(start, end);
 
         // Convert to DTOs
+        Map<Long, Boolean> online = presenceOf(paginatedUsers);
         List<MatchResponseDTO> matchDTOs = paginatedUsers.stream()
-                .map(user -> mapToMatchResponseDTO(user, currentUser, "today"))
+                .map(user -> mapToMatchResponseDTO(user, currentUser, "today", online))
                 .collect(Collectors.toList());
 
         // Get today's match count
@@ -242,8 +247,9 @@ public class MatchCategoryServiceImpl implements MatchCategoryService {
         // Fetches profiles of opposite gender from the database
         Page<Profile> targetProfiles = profileRepository.findByGenderIgnoreCase(targetGender, pageable);
 
+        Map<Long, Boolean> online = presenceOf(targetProfiles.getContent().stream().map(Profile::getUser).toList());
         List<MatchResponseDTO> matches = targetProfiles.getContent().stream()
-                .map(p -> mapToMatchResponseDTO(p.getUser(), currentUser, "my"))
+                .map(p -> mapToMatchResponseDTO(p.getUser(), currentUser, "my", online))
                 .collect(Collectors.toList());
 
         return MatchResponseDTO.MatchListResponse.builder()
@@ -291,8 +297,9 @@ public class MatchCategoryServiceImpl implements MatchCategoryService {
         List<User> paginatedUsers = nearUsers.subList(start, end);
 
         // Convert to DTOs
+        Map<Long, Boolean> online = presenceOf(paginatedUsers);
         List<MatchResponseDTO> matchDTOs = paginatedUsers.stream()
-                .map(user -> mapToMatchResponseDTO(user, currentUser, "near"))
+                .map(user -> mapToMatchResponseDTO(user, currentUser, "near", online))
                 .collect(Collectors.toList());
 
         return MatchResponseDTO.MatchListResponse.builder()
@@ -343,8 +350,9 @@ public class MatchCategoryServiceImpl implements MatchCategoryService {
         List<User> paginatedUsers = moreUsers.subList(start, end);
 
         // Convert to DTOs
+        Map<Long, Boolean> online = presenceOf(paginatedUsers);
         List<MatchResponseDTO> matchDTOs = paginatedUsers.stream()
-                .map(user -> mapToMatchResponseDTO(user, currentUser, "more"))
+                .map(user -> mapToMatchResponseDTO(user, currentUser, "more", online))
                 .collect(Collectors.toList());
 
         return MatchResponseDTO.MatchListResponse.builder()
@@ -378,8 +386,9 @@ public class MatchCategoryServiceImpl implements MatchCategoryService {
         List<User> paginatedUsers = filteredUsers.subList(start, end);
 
         // Convert to DTOs
+        Map<Long, Boolean> online = presenceOf(paginatedUsers);
         List<MatchResponseDTO> matchDTOs = paginatedUsers.stream()
-                .map(user -> mapToMatchResponseDTO(user, currentUser, "search"))
+                .map(user -> mapToMatchResponseDTO(user, currentUser, "search", online))
                 .collect(Collectors.toList());
 
         return MatchResponseDTO.MatchListResponse.builder()
@@ -600,7 +609,7 @@ public class MatchCategoryServiceImpl implements MatchCategoryService {
         List<User> allUsers = userRepository.findByActiveTrue();
         String preferredGender = getPreferredGender(currentProfile.getGender());
 
-        List<MatchResponseDTO> suggestions = allUsers.stream()
+        List<User> suggestedUsers = allUsers.stream()
                 .filter(user -> !user.getId().equals(currentUser.getId()))
                 .filter(user -> {
                     Profile userProfile = profileRepository.findByUser(user).orElse(null);
@@ -622,15 +631,19 @@ public class MatchCategoryServiceImpl implements MatchCategoryService {
                     int score2 = calculateCompatibilityScore(currentProfile, p2);
                     return Integer.compare(score2, score1); // Descending
                 })
-                .map(user -> mapToMatchResponseDTO(user, currentUser, "suggestions"))
                 .collect(Collectors.toList());
 
-        // Apply pagination
+        // Apply pagination, then look up presence and map only the page
         int start = (int) pageable.getOffset();
-        int end = Math.min((start + pageable.getPageSize()), suggestions.size());
-        List<MatchResponseDTO> paginatedList = suggestions.subList(start, end);
+        int end = Math.min((start + pageable.getPageSize()), suggestedUsers.size());
+        List<User> paginatedUsers = suggestedUsers.subList(start, end);
+
+        Map<Long, Boolean> online = presenceOf(paginatedUsers);
+        List<MatchResponseDTO> paginatedList = paginatedUsers.stream()
+                .map(user -> mapToMatchResponseDTO(user, currentUser, "suggestions", online))
+                .collect(Collectors.toList());
 
-        return new PageImpl<>(paginatedList, pageable, suggestions.size());
+        return new PageImpl<>(paginatedList, pageable, suggestedUsers.size());
     }
 
     @Override
@@ -640,7 +653,8 @@ public class MatchCategoryServiceImpl implements MatchCategoryService {
         // FIXED: Use the correct method
         Page<User> viewedUsers = viewHistoryRepository.findRecentlyViewedUsers(currentUser, pageable);
 
-        return viewedUsers.map(user -> mapToMatchResponseDTO(user, currentUser, "viewed"));
+        Map<Long, Boolean> online = presenceOf(viewedUsers.getContent());
+        return viewedUsers.map(user -> mapToMatchResponseDTO(user, currentUser, "viewed", online));
     }
 
     @Override
@@ -659,10 +673,13 @@ public class MatchCategoryServiceImpl implements MatchCategoryService {
                 .filter(match -> !match.isMatched()) // Not yet matched (pending mutual like)
                 .collect(Collectors.toList());
 
+        Map<Long, Boolean> online = presenceOf(mutualMatches.stream()
+                .map(match -> match.getOtherUser(currentUser.getId()))
+                .toList());
         List<MatchResponseDTO> mutualLikes = mutualMatches.stream()
                 .map(match -> {
                     User otherUser = match.getOtherUser(currentUser.getId());
-                    return mapToMatchResponseDTO(otherUser, currentUser, "mutual");
+                    return mapToMatchResponseDTO(otherUser, currentUser, "mutual", online);
                 })
                 .collect(Collectors.toList());
 
@@ -685,8 +702,9 @@ public class MatchCategoryServiceImpl implements MatchCategoryService {
                 twentyFourHoursAgo,
                 pageable);
 
+        Map<Long, Boolean> online = presenceOf(newProfiles.getContent().stream().map(Profile::getUser).toList());
         List<MatchResponseDTO> matches = newProfiles.getContent().stream()
-                .map(p -> mapToMatchResponseDTO(p.getUser(), currentUser, "new-registrations"))
+                .map(p -> mapToMatchResponseDTO(p.getUser(), currentUser, "new-registrations", online))
                 .collect(Collectors.toList());
 
         return MatchResponseDTO.MatchListResponse.builder()
@@ -785,7 +803,7 @@ public class MatchCategoryServiceImpl implements MatchCategoryService {
                 .orElseThrow(() -> new ResourceNotFoundException("User not found"));
     }
 
-    private String getPreferredGender(String currentGender) {
+    static String getPreferredGender(String currentGender) {
         if ("Male".equalsIgnoreCase(currentGender)) {
             return "Female";
         } else if ("Female".equalsIgnoreCase(currentGender)) {
@@ -844,7 +862,7 @@ public class MatchCategoryServiceImpl implements MatchCategoryService {
         String preferredGender = filterDTO.getPreferredGender() != null ? filterDTO.getPreferredGender()
                 : getPreferredGender(currentProfile.getGender());
 
-        return allUsers.stream()
+        List<User> filtered = allUsers.stream()
                 .filter(user -> !user.getId().equals(currentUser.getId()))
                 .filter(user -> {
                     Profile userProfile = profileRepository.findByUser(user).orElse(null);
@@ -927,7 +945,14 @@ public class MatchCategoryServiceImpl implements MatchCategoryService {
 
                     return true;
                 })
-                .collect(Collectors.toList());
+                .collect(Collectors.toCollection(ArrayList::new));
+
+        // Online filter, one bulk presence lookup for everything that is left
+        if (filterDTO.isOnlyOnline()) {
+            Map<Long, Boolean> online = presenceOf(filtered);
+            filtered.removeIf(user -> !online.getOrDefault(user.getId(), false));
+        }
+        return filtered;
     }
 
     private List<User> applySorting(List<User> users, String sortBy, String sortOrder) {
@@ -981,7 +1006,13 @@ public class MatchCategoryServiceImpl implements MatchCategoryService {
                 .collect(Collectors.toList());
     }
 
-    private MatchResponseDTO mapToMatchResponseDTO(User user, User currentUser, String category) {
+    // One presence lookup per page instead of one per card
+    private Map<Long, Boolean> presenceOf(List<User> users) {
+        return presenceService.areOnline(users.stream().map(User::getId).toList());
+    }
+
+    private MatchResponseDTO mapToMatchResponseDTO(User user, User currentUser, String category,
+            Map<Long, Boolean> online) {
         Profile userProfile = profileRepository.findByUser(user).orElse(new Profile());
         Profile currentProfile = profileRepository.findByUser(currentUser).orElse(new Profile());
 
@@ -993,9 +1024,8 @@ public class MatchCategoryServiceImpl implements MatchCategoryService {
         Optional<Match> matchRecord = matchRepository.findMatchBetweenUsers(currentUser, user);
         LocalDateTime matchedAt = matchRecord.map(Match::getMatchedAt).orElse(null);
 
-        // Calculate online status (simplified)
-        boolean isOnline = user.getLastLogin() != null &&
-                user.getLastLogin().isAfter(LocalDateTime.now().minusMinutes(5));
+        // Online means an open WebSocket session, see PresenceService
+        boolean isOnline = online.getOrDefault(user.getId(), false);
 
         // Calculate distance (simplified - same city = 0km)
         Double distanceKm = null;
@@ -1024,7 +1054,7 @@ public class MatchCategoryServiceImpl implements MatchCategoryService {
                         .gender(userProfile.getGender())
                         .age(userProfile.getAge())
                         .city(userProfile.getCity())
-                        .profilePhotoUrl(photoVisibilityService.getProfilePhoto(currentUser, user))
+                        .profilePhotoUrl(photoVisibilityService.getProfilePhoto(currentUser, user, ImageVariant.THUMB))
                         .isVerified(userProfile.isVerified())
                         .occupation(userProfile.getOccupation())
                         .education(userProfile.getEducationLevel())
@@ -1038,9 +1068,9 @@ public class MatchCategoryServiceImpl implements MatchCategoryService {
                         .compatibilityPercentage(calculateCompatibilityPercentage(currentProfile, userProfile))
                         .build())
 
-                .primaryPhoto(photoVisibilityService.getProfilePhoto(currentUser, user))
+                .primaryPhoto(photoVisibilityService.getProfilePhoto(currentUser, user, ImageVariant.CARD))
                 .photos(userProfile.getAllPhotos() != null ? userProfile.getAllPhotos().stream()
-                        .map(url -> photoVisibilityService.getAlbumPhoto(currentUser, user, url))
+                        .map(url -> photoVisibilityService.getAlbumPhoto(currentUser, user, url, ImageVariant.CARD))
                         .collect(Collectors.toList()) : Collections.emptyList())
 
                 .age(userProfile.getAge())
@@ -1117,7 +1147,7 @@ public class MatchCategoryServiceImpl implements MatchCategoryService {
         }
     }
 
-    private Integer calculateCompatibilityScore(Profile profile1, Profile profile2) {
+    static Integer calculateCompatibilityScore(Profile profile1, Profile profile2) {
         int score = 0;
 
         // Age compatibility (±5 years = 30 points, ±10 years = 15 points)
@@ -10,6 +10,7 @@ import com.punarmilan.backend.repository.PartnerPreferenceRepository;
 import com.punarmilan.backend.repository.ProfileRepository;
 import com.punarmilan.backend.repository.UserRepository;
 import com.punarmilan.backend.service.MatchService;
+import com.punarmilan.backend.service.ImageDerivativeService.ImageVariant;
 import com.punarmilan.backend.service.PhotoVisibilityService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -168,7 +169,7 @@ public class MatchServiceImpl implements MatchService {
                         .age(p.getAge())
                         .city(p.getCity())
                         .isPremium(Boolean.TRUE.equals(p.getUser().getPremium()))
-                        .profilePhotoUrl(photoVisibilityService.getProfilePhoto(viewer, p.getUser()))
+                        .profilePhotoUrl(photoVisibilityService.getProfilePhoto(viewer, p.getUser(), ImageVariant.CARD))
                         .build())
                 .age(p.getAge())
                 .city(p.getCity())
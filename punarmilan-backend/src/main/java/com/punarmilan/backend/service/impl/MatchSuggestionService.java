@@ -0,0 +1,238 @@
+package com.punarmilan.backend.service.impl;
+
+import com.punarmilan.backend.entity.MatchSuggestion;
+import com.punarmilan.backend.entity.Profile;
+import com.punarmilan.backend.entity.User;
+import com.punarmilan.backend.repository.MatchRepository;
+import com.punarmilan.backend.repository.MatchSuggestionRepository;
+import com.punarmilan.backend.repository.ProfileRepository;
+import com.punarmilan.backend.repository.UserRepository;
+import com.punarmilan.backend.repository.UserViewHistoryRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps every active user's top matches in match_suggestions, so digests
+ * read them for a whole chunk of users at once instead of scoring everyone
+ * per recipient.
+ *
+ * A refresh loads the candidate pool once, the most recently updated complete
+ * profiles up to candidate-pool, and walks active users in keyset chunks. Per
+ * chunk there is one query each for the users' profiles, the profiles they
+ * already opened and the pairs they liked or are matched in. Candidates of the
+ * preferred gender are then scored in memory with the score the suggestions
+ * page uses, and the chunk's rows are replaced with a delete and a batch insert.
+ */
+@Slf4j
+@Service
+public class MatchSuggestionService {
+
+    private static final String INSERT_SQL = "INSERT INTO match_suggestions " +
+            "(user_id, candidate_id, rank_no, score, computed_at) VALUES (?, ?, ?, ?, ?)";
+
+    private final UserRepository userRepository;
+    private final ProfileRepository profileRepository;
+    private final MatchRepository matchRepository;
+    private final UserViewHistoryRepository viewHistoryRepository;
+    private final MatchSuggestionRepository suggestionRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+    private final int candidatePool;
+    private final int top;
+
+    /**
+     * A precomputed match with its compatibility score.
+     */
+    public record Suggestion(Profile profile, int score) {
+    }
+
+    private record Scored(Profile candidate, int score) {
+    }
+
+    public MatchSuggestionService(UserRepository userRepository,
+            ProfileRepository profileRepository,
+            MatchRepository matchRepository,
+            UserViewHistoryRepository viewHistoryRepository,
+            MatchSuggestionRepository suggestionRepository,
+            JdbcTemplate jdbcTemplate,
+            TransactionTemplate transactionTemplate,
+            @Value("${app.digest.chunk-size:500}") int chunkSize,
+            @Value("${app.digest.suggestions.candidate-pool:5000}") int candidatePool,
+            @Value("${app.digest.suggestions.top:10}") int top) {
+        this.userRepository = userRepository;
+        this.profileRepository = profileRepository;
+        this.matchRepository = matchRepository;
+        this.viewHistoryRepository = viewHistoryRepository;
+        this.suggestionRepository = suggestionRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.candidatePool = Math.max(1, candidatePool);
+        this.top = Math.max(1, top);
+    }
+
+    /**
+     * Recomputes the top matches of every active user, ahead of the morning
+     * digests. Runs daily at 7:00 by default.
+     */
+    @Scheduled(cron = "${app.digest.suggestions.cron:0 0 7 * * *}")
+    public void refresh() {
+        long started = System.currentTimeMillis();
+        List<Profile> pool = profileRepository.findSuggestionCandidates(PageRequest.of(0, candidatePool));
+        Map<String, List<Profile>> poolByGender = pool.stream()
+                .filter(profile -> profile.getGender() != null)
+                .collect(Collectors.groupingBy(profile -> profile.getGender().toLowerCase(Locale.ROOT)));
+
+        long cursor = 0;
+        int users = 0;
+        while (true) {
+            List<User> chunk = userRepository.findActiveAfter(cursor, PageRequest.of(0, chunkSize));
+            if (chunk.isEmpty()) {
+                break;
+            }
+            try {
+                refreshChunk(chunk, pool, poolByGender);
+                users += chunk.size();
+            } catch (RuntimeException e) {
+                // The chunk keeps yesterday's suggestions
+                log.error("Refreshing match suggestions after user {} failed", cursor, e);
+            }
+            cursor = chunk.get(chunk.size() - 1).getId();
+        }
+        log.info("Refreshed match suggestions of {} users from {} candidates in {} ms", users, pool.size(),
+                System.currentTimeMillis() - started);
+    }
+
+    /**
+     * The precomputed matches of each user, best first and at most limit each,
+     * still active. Users without suggestions are left out. Two queries for the
+     * whole collection.
+     */
+    public Map<Long, List<Suggestion>> topMatches(Collection<Long> userIds, int limit) {
+        if (userIds.isEmpty()) {
+            return Map.of();
+        }
+        List<MatchSuggestion> rows = suggestionRepository.findTopForUsers(userIds, limit);
+        if (rows.isEmpty()) {
+            return Map.of();
+        }
+        Map<Long, Profile> profiles = profilesByUserId(rows.stream()
+                .map(MatchSuggestion::getCandidateId)
+                .collect(Collectors.toSet()));
+
+        Map<Long, List<Suggestion>> matches = new LinkedHashMap<>();
+        for (MatchSuggestion row : rows) {
+            Profile profile = profiles.get(row.getCandidateId());
+            if (profile != null && profile.getUser().isActive() && !profile.getUser().isHidden()) {
+                matches.computeIfAbsent(row.getUserId(), id -> new ArrayList<>())
+                        .add(new Suggestion(profile, row.getScore()));
+            }
+        }
+        return matches;
+    }
+
+    // ==================== PRIVATE HELPER METHODS ====================
+
+    private void refreshChunk(List<User> chunk, List<Profile> pool, Map<String, List<Profile>> poolByGender) {
+        List<Long> ids = chunk.stream().map(User::getId).toList();
+        Map<Long, Profile> profiles = profilesByUserId(ids);
+
+        Map<Long, Set<Long>> seen = new HashMap<>();
+        addPairs(seen, viewHistoryRepository.findViewedPairs(ids));
+        addPairs(seen, matchRepository.findLikedOrMatchedByUser1(ids));
+        addPairs(seen, matchRepository.findLikedOrMatchedByUser2(ids));
+
+        LocalDateTime now = LocalDateTime.now();
+        List<MatchSuggestion> rows = new ArrayList<>();
+        for (Long userId : ids) {
+            Profile profile = profiles.get(userId);
+            if (profile == null) {
+                continue;
+            }
+            String preferred = MatchCategoryServiceImpl.getPreferredGender(profile.getGender());
+            List<Profile> candidates = preferred == null
+                    ? pool
+                    : poolByGender.getOrDefault(preferred.toLowerCase(Locale.ROOT), List.of());
+            rows.addAll(rank(userId, profile, candidates, seen.getOrDefault(userId, Set.of()), now));
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            suggestionRepository.deleteForUsers(ids);
+            if (!rows.isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERT_SQL, rows, rows.size(), (ps, row) -> {
+                    ps.setLong(1, row.getUserId());
+                    ps.setLong(2, row.getCandidateId());
+                    ps.setInt(3, row.getRank());
+                    ps.setInt(4, row.getScore());
+                    ps.setTimestamp(5, Timestamp.valueOf(row.getComputedAt()));
+                });
+            }
+        });
+    }
+
+    // Best `top` candidates by score, kept in a min-heap so a pool of thousands stays cheap
+    private List<MatchSuggestion> rank(Long userId, Profile profile, List<Profile> candidates, Set<Long> seen,
+            LocalDateTime now) {
+        PriorityQueue<Scored> best = new PriorityQueue<>(top + 1, Comparator.comparingInt(Scored::score));
+        for (Profile candidate : candidates) {
+            Long candidateId = candidate.getUser().getId();
+            if (candidateId.equals(userId) || seen.contains(candidateId)) {
+                continue;
+            }
+            int score = MatchCategoryServiceImpl.calculateCompatibilityScore(profile, candidate);
+            if (best.size() < top) {
+                best.add(new Scored(candidate, score));
+            } else if (score > best.peek().score()) {
+                best.poll();
+                best.add(new Scored(candidate, score));
+            }
+        }
+
+        List<Scored> ordered = new ArrayList<>(best);
+        ordered.sort(Comparator.comparingInt(Scored::score).reversed());
+        List<MatchSuggestion> rows = new ArrayList<>(ordered.size());
+        for (int i = 0; i < ordered.size(); i++) {
+            rows.add(MatchSuggestion.builder()
+                    .userId(userId)
+                    .candidateId(ordered.get(i).candidate().getUser().getId())
+                    .rank(i + 1)
+                    .score(ordered.get(i).score())
+                    .computedAt(now)
+                    .build());
+        }
+        return rows;
+    }
+
+    private Map<Long, Profile> profilesByUserId(Collection<Long> userIds) {
+        return profileRepository.findAllByUserIdIn(userIds).stream()
+                .collect(Collectors.toMap(profile -> profile.getUser().getId(), Function.identity(), (a, b) -> a));
+    }
+
+    private static void addPairs(Map<Long, Set<Long>> pairs, List<Object[]> rows) {
+        for (Object[] row : rows) {
+            pairs.computeIfAbsent((Long) row[0], id -> new HashSet<>()).add((Long) row[1]);
+        }
+    }
+}
@@ -3,32 +3,54 @@ package com.punarmilan.backend.service.impl;
 import com.punarmilan.backend.dto.ConversationDto;
 
 import com.punarmilan.backend.dto.MessageDto;
+import com.punarmilan.backend.dto.MessageSearchResultDto;
+import com.punarmilan.backend.dto.MessageWindowDto;
+import com.punarmilan.backend.dto.PhotoDto;
 import com.punarmilan.backend.dto.SendMessageDto;
 import com.punarmilan.backend.entity.Conversation;
+import com.punarmilan.backend.entity.Match;
 import com.punarmilan.backend.entity.Message;
+import com.punarmilan.backend.entity.Profile;
 import com.punarmilan.backend.entity.User;
 import com.punarmilan.backend.exception.BadRequestException;
+import com.punarmilan.backend.event.MessageSentEvent;
 import com.punarmilan.backend.exception.ResourceNotFoundException;
 import com.punarmilan.backend.repository.ConversationRepository;
 import com.punarmilan.backend.repository.MatchRepository;
 import com.punarmilan.backend.repository.MessageRepository;
+import com.punarmilan.backend.repository.ProfileRepository;
 import com.punarmilan.backend.repository.UserRepository;
+import com.punarmilan.backend.service.ChatActivityService;
+import com.punarmilan.backend.service.ConversationCache;
+import com.punarmilan.backend.service.ConversationCache.ConversationMeta;
+import com.punarmilan.backend.service.ConversationFeedService;
+import com.punarmilan.backend.service.MessageArchiveService;
+import com.punarmilan.backend.service.MessageSearchService;
 import com.punarmilan.backend.service.MessagingService;
+import com.punarmilan.backend.service.ImageDerivativeService.ImageVariant;
 import com.punarmilan.backend.service.PhotoVisibilityService;
+import com.punarmilan.backend.service.UnreadCounterService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -41,9 +63,19 @@ public class MessagingServiceImpl implements MessagingService {
     private final ConversationRepository conversationRepository;
     private final UserRepository userRepository;
     private final MatchRepository matchRepository;
-    private final SimpMessagingTemplate messagingTemplate;
     private final ApplicationEventPublisher eventPublisher;
     private final PhotoVisibilityService photoVisibilityService;
+    private final ProfileRepository profileRepository;
+    private final ConversationCache conversationCache;
+    private final UnreadCounterService unreadCounterService;
+    private final MessageSearchService messageSearchService;
+    private final MessageArchiveService messageArchiveService;
+    private final ConversationFeedService conversationFeedService;
+
+    // Column lengths of Conversation.lastMessage and Match.lastMessage
+    private static final int CONVERSATION_PREVIEW_LENGTH = 255;
+    private static final int MATCH_PREVIEW_LENGTH = 1000;
+    private static final int MAX_HISTORY_LIMIT = 100;
 
     @Override
     public MessageDto sendMessage(SendMessageDto sendMessageDto) {
@@ -52,25 +84,34 @@ public class MessagingServiceImpl implements MessagingService {
                 .orElseThrow(() -> new ResourceNotFoundException(
                         "Receiver not found with id: " + sendMessageDto.getReceiverId()));
 
+        // Participants and block state come from the cache, no lookup on a hit
+        ConversationMeta conversation = conversationCache
+                .findBetween(currentUser.getId(), receiver.getId())
+                .orElse(null);
+
         // Check if users can message each other
-        validateMessagingPermission(currentUser, receiver);
+        validateMessagingPermission(conversation, currentUser, receiver);
 
         // Check if sender is hidden
         if (currentUser.isHidden()) {
             throw new BadRequestException("You cannot send messages while your profile is hidden. Unhide it first.");
         }
 
-        // Get or create conversation
-        Conversation conversation = getOrCreateConversation(currentUser, receiver);
+        // First message between the two, create the conversation
+        boolean created = conversation == null;
+        if (created) {
+            conversation = conversationCache.put(createNewConversation(currentUser, receiver));
+        }
 
         // Determine message type safely
         Message.MessageType messageType = parseMessageType(sendMessageDto.getMessageType());
+        LocalDateTime now = LocalDateTime.now();
 
-        // Create message object
+        // Create message object, the conversation is only referenced by id
         Message message = Message.builder()
                 .sender(currentUser)
                 .receiver(receiver)
-                .conversation(conversation)
+                .conversation(conversationRepository.getReferenceById(conversation.getId()))
                 .content(sendMessageDto.getContent())
                 .messageType(messageType)
                 .fileUrl(sendMessageDto.getFileUrl())
@@ -79,24 +120,40 @@ public class MessagingServiceImpl implements MessagingService {
                 .repliedToMessageId(sendMessageDto.getRepliedToMessageId())
                 .read(false)
                 .delivered(false)
-                .createdAt(LocalDateTime.now())
+                .createdAt(now)
                 .build();
 
         // Save and get the managed entity
         final Message savedMessage = messageRepository.save(message);
-
-        // Update conversation metadata
-        updateConversation(conversation, savedMessage);
-
-        // Sync with Match if it exists to keep unread counts consistent across UI
-        // We use currentUser and receiver which are already managed and have IDs
-        matchRepository.findMatchBetweenUsers(currentUser, receiver).ifPresent(match -> {
-            match.updateLastMessage(savedMessage.getContent(), currentUser.getId());
-            matchRepository.save(match);
-        });
+        eventPublisher.publishEvent(new MessageSentEvent(this, savedMessage.getId(), conversation.getId(),
+                currentUser.getId(), receiver.getId(), savedMessage.getContent(), savedMessage.getFileName()));
+
+        // Unread counts live in Redis, the columns only get bumped here when Redis is down
+        Integer receiverUnread = unreadCounterService.increment(receiver.getId(), conversation.getId());
+        Integer senderUnread = receiverUnread != null
+                ? unreadCounterService.get(currentUser.getId(), conversation.getId())
+                : null;
+        int unreadIncrement = receiverUnread != null ? 0 : 1;
+
+        // Conversation and Match metadata are bumped in place, no load/modify/save round trips
+        boolean receiverIsUser1 = conversation.isUser1(receiver.getId());
+        conversationRepository.recordMessage(conversation.getId(),
+                truncate(savedMessage.getContent(), CONVERSATION_PREVIEW_LENGTH), now, currentUser.getId(),
+                receiverIsUser1 ? unreadIncrement : 0, receiverIsUser1 ? 0 : unreadIncrement);
+        matchRepository.recordMessage(currentUser.getId(), receiver.getId(),
+                truncate(savedMessage.getContent(), MATCH_PREVIEW_LENGTH), now, unreadIncrement);
+
+        if (receiverUnread == null || senderUnread == null) {
+            ConversationRepository.UnreadCounts unread = conversationRepository
+                    .findUnreadCounts(conversation.getId())
+                    .orElseThrow(() -> new ResourceNotFoundException("Conversation not found"));
+            receiverUnread = receiverIsUser1 ? unread.getUnreadCountUser1() : unread.getUnreadCountUser2();
+            senderUnread = receiverIsUser1 ? unread.getUnreadCountUser2() : unread.getUnreadCountUser1();
+        }
 
         // Asynchronous WebSocket notification
-        sendWebSocketNotification(savedMessage, conversation);
+        MessageDto senderView = sendWebSocketNotification(savedMessage, conversation, created, currentUser, receiver,
+                senderUnread, receiverUnread);
 
         // Push notification
         sendPushNotification(currentUser, receiver, savedMessage);
@@ -104,7 +161,7 @@ public class MessagingServiceImpl implements MessagingService {
         log.info("Message sent from {} to {}: type={}",
                 currentUser.getEmail(), receiver.getEmail(), messageType);
 
-        return mapToMessageDto(savedMessage, currentUser.getId());
+        return senderView;
     }
 
     private Message.MessageType parseMessageType(String typeStr) {
@@ -129,16 +186,31 @@ public class MessagingServiceImpl implements MessagingService {
                 .findConversationBetweenUsers(currentUser, otherUser)
                 .orElseThrow(() -> new ResourceNotFoundException("Conversation not found"));
 
-        return mapToConversationDto(conversation, currentUser.getId());
+        return mapToConversationDto(conversation, currentUser.getId(),
+                unreadCounterService.getAll(currentUser.getId()));
     }
 
     @Override
     public Page<ConversationDto> getConversations(Pageable pageable) {
         User currentUser = getCurrentUser();
+        Map<Long, Integer> unread = unreadCounterService.getAll(currentUser.getId());
+
+        // Served from the Redis inbox, MySQL is only read for rows that aren't cached yet
+        Page<ConversationDto> inbox = conversationFeedService.inboxPage(currentUser.getId(), pageable,
+                () -> conversationRepository.findInboxEntries(currentUser.getId()),
+                ids -> loadInboxRows(ids, currentUser.getId()));
+        if (inbox != null) {
+            if (unread != null) {
+                inbox.forEach(dto -> dto.setUnreadCount(unread.getOrDefault(dto.getId(), 0)));
+            }
+            resolveOtherParties(inbox.getContent(), currentUser);
+            return inbox;
+        }
+
         Page<Conversation> conversations = conversationRepository
                 .findConversationsForUser(currentUser, pageable);
 
-        return conversations.map(conv -> mapToConversationDto(conv, currentUser.getId()));
+        return conversations.map(conv -> mapToConversationDto(conv, currentUser.getId(), unread));
     }
 
     @Override
@@ -152,17 +224,115 @@ public class MessagingServiceImpl implements MessagingService {
                 !conversation.getUser2().getId().equals(currentUser.getId())) {
             throw new ResourceNotFoundException("You are not part of this conversation");
         }
+        conversationCache.put(conversation);
 
         // Mark messages as read
-        markMessagesAsRead(conversation, currentUser);
+        long myLastRead = markMessagesAsRead(conversation, currentUser);
 
         // Reset unread count
         resetUnreadCount(conversation, currentUser);
 
         Page<Message> messages = messageRepository
                 .findByConversationOrderByCreatedAtDesc(conversation, pageable);
+        if (conversation.getArchivedThroughMessageId() != null) {
+            messages = continueIntoArchive(conversation, messages, pageable);
+        }
+
+        Long otherUserId = getOtherUserInConversation(conversation, currentUser).getId();
+        return messages.map(msg -> applyReadState(mapToMessageDto(msg, currentUser.getId()), msg,
+                currentUser.getId(), myLastRead, conversation, otherUserId));
+    }
+
+    @Override
+    public MessageWindowDto getMessageHistory(Long conversationId, Long before, Long after, Long around, int limit) {
+        int cursors = (before != null ? 1 : 0) + (after != null ? 1 : 0) + (around != null ? 1 : 0);
+        if (cursors > 1) {
+            throw new BadRequestException("Use only one of before, after or around");
+        }
+        int size = Math.max(1, Math.min(limit, MAX_HISTORY_LIMIT));
+
+        User currentUser = getCurrentUser();
+        Conversation conversation = conversationRepository.findById(conversationId)
+                .orElseThrow(() -> new ResourceNotFoundException("Conversation not found with id: " + conversationId));
+
+        // Verify user is part of conversation
+        if (!conversation.getUser1().getId().equals(currentUser.getId()) &&
+                !conversation.getUser2().getId().equals(currentUser.getId())) {
+            throw new ResourceNotFoundException("You are not part of this conversation");
+        }
+        conversationCache.put(conversation);
+
+        // Each read fetches at most one row past the window to tell whether more exist
+        List<Message> messages;
+        boolean hasOlder;
+        boolean hasNewer;
+        if (before != null) {
+            messages = olderThan(conversation, before, size + 1);
+            hasOlder = trimTo(messages, size);
+            hasNewer = true;
+        } else if (after != null) {
+            messages = newerThan(conversation, after, size + 1);
+            hasNewer = trimTo(messages, size);
+            hasOlder = true;
+            Collections.reverse(messages);
+        } else if (around != null) {
+            int newerCount = size / 2;
+            List<Message> older = olderThan(conversation, around + 1, size - newerCount + 1);
+            if (older.isEmpty() || !older.get(0).getId().equals(around)) {
+                throw new ResourceNotFoundException("Message not found in this conversation: " + around);
+            }
+            List<Message> newer = newerThan(conversation, around, newerCount + 1);
+            hasOlder = trimTo(older, size - newerCount);
+            hasNewer = trimTo(newer, newerCount);
+            Collections.reverse(newer);
+            messages = newer;
+            messages.addAll(older);
+        } else {
+            messages = olderThan(conversation, Long.MAX_VALUE, size + 1);
+            hasOlder = trimTo(messages, size);
+            hasNewer = false;
+        }
+
+        // Seeing the newest messages marks the conversation as read
+        long myLastRead = conversation.getLastReadMessageId(currentUser.getId());
+        if (!hasNewer && before == null) {
+            myLastRead = markMessagesAsRead(conversation, currentUser);
+            resetUnreadCount(conversation, currentUser);
+        }
+
+        // Photos are resolved once for the page, not per message
+        User otherUser = getOtherUserInConversation(conversation, currentUser);
+        Map<Long, Profile> profiles = profileRepository.findAllByUserIn(List.of(currentUser, otherUser)).stream()
+                .collect(Collectors.toMap(profile -> profile.getUser().getId(), profile -> profile));
+        boolean otherLikedMe = matchRepository.findMatchBetweenUserIds(currentUser.getId(), otherUser.getId())
+                .map(match -> match.hasUserLiked(otherUser.getId()))
+                .orElse(false);
+        PhotoDto myPhoto = photoFor(currentUser, profiles.get(currentUser.getId()), true);
+        PhotoDto otherPhoto = photoFor(currentUser, profiles.get(otherUser.getId()), otherLikedMe);
+
+        long lastRead = myLastRead;
+        List<MessageDto> dtos = messages.stream()
+                .map(msg -> {
+                    boolean mine = msg.getSender().getId().equals(currentUser.getId());
+                    MessageDto dto = buildMessageDto(msg, currentUser.getId(),
+                            mine ? myPhoto : otherPhoto, mine ? otherPhoto : myPhoto);
+                    return applyReadState(dto, msg, currentUser.getId(), lastRead, conversation, otherUser.getId());
+                })
+                .collect(Collectors.toList());
+
+        return MessageWindowDto.builder()
+                .messages(dtos)
+                .hasOlder(hasOlder)
+                .hasNewer(hasNewer)
+                .oldestId(messages.isEmpty() ? null : messages.get(messages.size() - 1).getId())
+                .newestId(messages.isEmpty() ? null : messages.get(0).getId())
+                .build();
+    }
 
-        return messages.map(msg -> mapToMessageDto(msg, currentUser.getId()));
+    @Override
+    @Transactional(readOnly = true)
+    public List<MessageSearchResultDto> searchMessages(String query, Long before, int limit) {
+        return messageSearchService.search(getCurrentUser().getId(), query, before, limit);
     }
 
     @Override
@@ -180,13 +350,6 @@ public class MessagingServiceImpl implements MessagingService {
         markMessagesAsRead(conversation, currentUser);
         resetUnreadCount(conversation, currentUser);
 
-        // Sync with Match
-        User otherUser = getOtherUserInConversation(conversation, currentUser);
-        matchRepository.findMatchBetweenUsers(currentUser, otherUser).ifPresent(match -> {
-            match.resetUnreadCount(currentUser.getId());
-            matchRepository.save(match);
-        });
-
         log.info("Conversation {} marked as read by user {}", conversationId, currentUser.getEmail());
     }
 
@@ -204,9 +367,14 @@ public class MessagingServiceImpl implements MessagingService {
             throw new ResourceNotFoundException("You are not part of this conversation");
         }
 
+        conversationFeedService.conversationRemoved(currentUser.getId(), conversationId);
+        messageSearchService.removeConversation(currentUser.getId(), conversationId);
+
         // If both users deleted, delete the conversation
         if (conversation.getUser1Deleted() && conversation.getUser2Deleted()) {
             conversationRepository.delete(conversation);
+            messageArchiveService.deleteConversation(conversationId);
+            conversationCache.evict(conversation.getUser1().getId(), conversation.getUser2().getId());
             log.info("Conversation {} deleted completely", conversationId);
         } else {
             conversationRepository.save(conversation);
@@ -243,6 +411,9 @@ public class MessagingServiceImpl implements MessagingService {
         }
 
         conversationRepository.save(conversation);
+        conversationCache.evict(currentUser.getId(), otherUser.getId());
+        conversationFeedService.inboxChanged(currentUser.getId());
+        conversationFeedService.inboxChanged(otherUser.getId());
         log.info("User {} {} by {}", otherUser.getEmail(),
                 block ? "blocked" : "unblocked", currentUser.getEmail());
     }
@@ -261,63 +432,63 @@ public class MessagingServiceImpl implements MessagingService {
     @Override
     public long getUnreadMessageCount() {
         User currentUser = getCurrentUser();
-        return messageRepository.countUnreadMessages(currentUser);
+        Long total = unreadCounterService.getTotal(currentUser.getId());
+        return total != null ? total : messageRepository.countUnreadMessages(currentUser);
     }
 
     @Override
     public List<ConversationDto> getUnreadConversations() {
         User currentUser = getCurrentUser();
-        List<Conversation> conversations = conversationRepository
-                .findUnreadConversations(currentUser);
+        Map<Long, Integer> unreadCounts = unreadCounterService.getAll(currentUser.getId());
+        if (unreadCounts == null) {
+            return conversationRepository.findUnreadConversations(currentUser).stream()
+                    .map(conv -> mapToConversationDto(conv, currentUser.getId()))
+                    .collect(Collectors.toList());
+        }
+
+        // The counters name the unread conversations, the columns may lag behind a flush
+        List<Long> unreadIds = unreadCounts.entrySet().stream()
+                .filter(entry -> entry.getValue() > 0)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
 
-        return conversations.stream()
-                .map(conv -> mapToConversationDto(conv, currentUser.getId()))
+        return conversationRepository.findAllById(unreadIds).stream()
+                .filter(conv -> !isDeletedFor(conv, currentUser.getId()))
+                .sorted(Comparator.comparing(Conversation::getUpdatedAt,
+                        Comparator.nullsLast(Comparator.reverseOrder())))
+                .map(conv -> mapToConversationDto(conv, currentUser.getId(), unreadCounts))
                 .collect(Collectors.toList());
     }
 
     @Override
     public void sendTypingIndicator(Long conversationId, boolean isTyping) {
+        // Kept for HTTP clients, STOMP clients use /app/chat.typing which skips the user lookup
         User currentUser = getCurrentUser();
-        Conversation conversation = conversationRepository.findById(conversationId)
-                .orElseThrow(() -> new ResourceNotFoundException("Conversation not found with id: " + conversationId));
-
-        User receiver = getOtherUserInConversation(conversation, currentUser);
-
-        // Check if hidden
-        if (currentUser.isHidden()) {
-            return; // Don't send typing indicator if hidden
-        }
-
-        // Send typing indicator via WebSocket
-        Map<String, Object> typingData = new HashMap<>();
-        typingData.put("conversationId", conversationId);
-        typingData.put("userId", currentUser.getId());
-        typingData.put("isTyping", isTyping);
-        typingData.put("timestamp", LocalDateTime.now().toString());
-
-        messagingTemplate.convertAndSendToUser(
-                receiver.getId().toString(),
-                "/queue/typing",
-                typingData);
+        conversationFeedService.publishActivity(currentUser.getId(), currentUser.isHidden(), conversationId,
+                ChatActivityService.Activity.TYPING, isTyping);
     }
 
     @Override
     public void sendReadReceipt(Long messageId) {
-        Message message = messageRepository.findById(messageId)
-                .orElseThrow(() -> new ResourceNotFoundException("Message not found with id: " + messageId));
+        User currentUser = getCurrentUser();
+        Message message = getReceivedMessage(messageId, currentUser);
 
-        message.setRead(true);
-        messageRepository.save(message);
+        // Everything up to this message is read, one watermark write instead of a row per message
+        Long conversationId = message.getConversation().getId();
+        conversationRepository.advanceReadWatermark(conversationId, currentUser.getId(), messageId);
+        sendWatermark(message.getSender().getId(), "/queue/read-receipt", conversationId,
+                currentUser.getId(), "lastReadMessageId", messageId);
+    }
 
-        // Send read receipt via WebSocket
-        Map<String, Object> receiptData = new HashMap<>();
-        receiptData.put("messageId", messageId);
-        receiptData.put("readAt", LocalDateTime.now().toString());
+    @Override
+    public void sendDeliveryReceipt(Long messageId) {
+        User currentUser = getCurrentUser();
+        Message message = getReceivedMessage(messageId, currentUser);
 
-        messagingTemplate.convertAndSendToUser(
-                message.getSender().getId().toString(),
-                "/queue/read-receipt",
-                receiptData);
+        Long conversationId = message.getConversation().getId();
+        conversationRepository.advanceDeliveredWatermark(conversationId, currentUser.getId(), messageId);
+        sendWatermark(message.getSender().getId(), "/queue/delivery-receipt", conversationId,
+                currentUser.getId(), "lastDeliveredMessageId", messageId);
     }
 
     // ==================== PRIVATE HELPER METHODS ====================
@@ -328,19 +499,15 @@ public class MessagingServiceImpl implements MessagingService {
                 .orElseThrow(() -> new ResourceNotFoundException("User not found with email: " + email));
     }
 
-    private void validateMessagingPermission(User sender, User receiver) {
+    private void validateMessagingPermission(ConversationMeta existingConv, User sender, User receiver) {
         // Check if receiver blocked sender
-        Conversation existingConv = conversationRepository
-                .findConversationBetweenUsers(sender, receiver)
-                .orElse(null);
-
-        if (existingConv != null && existingConv.getBlocked() &&
+        if (existingConv != null && existingConv.isBlocked() &&
                 existingConv.getBlockedBy() != null && existingConv.getBlockedBy().equals(receiver.getId())) {
             throw new BadRequestException("You cannot message this user - you have been blocked");
         }
 
         // Check if sender blocked receiver
-        if (existingConv != null && existingConv.getBlocked() &&
+        if (existingConv != null && existingConv.isBlocked() &&
                 existingConv.getBlockedBy() != null && existingConv.getBlockedBy().equals(sender.getId())) {
             throw new BadRequestException("You have blocked this user. Unblock them to send messages.");
         }
@@ -349,12 +516,6 @@ public class MessagingServiceImpl implements MessagingService {
         // e.g., check if both users are verified, premium features, etc.
     }
 
-    private Conversation getOrCreateConversation(User user1, User user2) {
-        return conversationRepository
-                .findConversationBetweenUsers(user1, user2)
-                .orElseGet(() -> createNewConversation(user1, user2));
-    }
-
     private Conversation createNewConversation(User user1, User user2) {
         Conversation conversation = Conversation.builder()
                 .user1(user1)
@@ -366,41 +527,130 @@ public class MessagingServiceImpl implements MessagingService {
         return conversationRepository.save(conversation);
     }
 
-    private void updateConversation(Conversation conversation, Message message) {
-        conversation.setLastMessage(message.getContent());
-        conversation.setLastMessageTime(message.getCreatedAt());
-        conversation.setLastMessageBy(message.getSender().getId());
-
-        // Update unread count for receiver
-        if (conversation.getUser1().getId().equals(message.getReceiver().getId())) {
-            conversation.setUnreadCountUser1(conversation.getUnreadCountUser1() + 1);
-        } else {
-            conversation.setUnreadCountUser2(conversation.getUnreadCountUser2() + 1);
+    /**
+     * Moves the user's read watermark to the newest message and tells the other
+     * participant with a single receipt frame. Returns the new watermark.
+     */
+    private long markMessagesAsRead(Conversation conversation, User user) {
+        long lastRead = conversation.getLastReadMessageId(user.getId());
+        Long latestId = messageRepository.findLatestMessageId(conversation.getId());
+        if (latestId == null || latestId <= lastRead) {
+            return lastRead;
         }
 
-        conversation.setUpdatedAt(LocalDateTime.now());
-        conversationRepository.save(conversation);
+        conversationRepository.advanceReadWatermark(conversation.getId(), user.getId(), latestId);
+        sendWatermark(getOtherUserInConversation(conversation, user).getId(), "/queue/read-receipt",
+                conversation.getId(), user.getId(), "lastReadMessageId", latestId);
+        return latestId;
     }
 
-    private void markMessagesAsRead(Conversation conversation, User user) {
-        List<Message> unreadMessages = messageRepository
-                .findByReceiverAndConversationAndReadFalse(user, conversation);
+    // Read flags come from the watermark of whoever received the message
+    private MessageDto applyReadState(MessageDto dto, Message message, Long currentUserId, long myLastRead,
+            Conversation conversation, Long otherUserId) {
+        boolean mine = message.getSender().getId().equals(currentUserId);
+        long watermark = mine ? conversation.getLastReadMessageId(otherUserId) : myLastRead;
+        dto.setRead(message.isRead() || message.getId() <= watermark);
+        if (mine) {
+            dto.setDelivered(dto.isDelivered()
+                    || message.getId() <= conversation.getLastDeliveredMessageId(otherUserId));
+        }
+        return dto;
+    }
 
-        for (Message message : unreadMessages) {
-            message.setRead(true);
+    // Drops the look-ahead row, returns whether there was one
+    private static boolean trimTo(List<Message> messages, int size) {
+        if (messages.size() <= size) {
+            return false;
         }
+        messages.subList(size, messages.size()).clear();
+        return true;
+    }
 
-        messageRepository.saveAll(unreadMessages);
+    // Receipts can trail far behind, so ids that were archived since are looked up in the archive
+    private Message getReceivedMessage(Long messageId, User receiver) {
+        Message message = messageRepository.findById(messageId)
+                .or(() -> messageArchiveService.findForUser(receiver.getId(), messageId))
+                .orElseThrow(() -> new ResourceNotFoundException("Message not found with id: " + messageId));
+        if (!message.getReceiver().getId().equals(receiver.getId())) {
+            throw new BadRequestException("Receipts can only be sent for messages you received");
+        }
+        return message;
+    }
+
+    private void sendWatermark(Long recipientId, String destination, Long conversationId, Long readerId,
+            String watermarkField, Long messageId) {
+        Map<String, Object> receiptData = new HashMap<>();
+        receiptData.put("conversationId", conversationId);
+        receiptData.put("readerId", readerId);
+        receiptData.put(watermarkField, messageId);
+        // Older clients only know the per message receipt
+        receiptData.put("messageId", messageId);
+        receiptData.put("readAt", LocalDateTime.now().toString());
+
+        conversationFeedService.pushWatermark(recipientId, destination, conversationId, readerId, receiptData);
     }
 
     private void resetUnreadCount(Conversation conversation, User user) {
-        if (conversation.getUser1().getId().equals(user.getId())) {
-            conversation.setUnreadCountUser1(0);
-        } else {
-            conversation.setUnreadCountUser2(0);
+        conversationFeedService.unreadCleared(user.getId(), conversation.getId());
+
+        // The counter flush writes both the Conversation and Match columns
+        if (unreadCounterService.reset(user.getId(), conversation.getId())) {
+            return;
         }
-        conversation.setUpdatedAt(LocalDateTime.now());
-        conversationRepository.save(conversation);
+
+        // Column updates, saving the loaded entity would overwrite the read watermarks
+        boolean isUser1 = conversation.getUser1().getId().equals(user.getId());
+        conversationRepository.updateUnreadCounts(conversation.getId(), isUser1 ? 0 : -1, isUser1 ? -1 : 0);
+
+        // Sync with Match
+        User otherUser = getOtherUserInConversation(conversation, user);
+        matchRepository.updateUnreadCounts(user.getId(), 0, otherUser.getId(), -1);
+    }
+
+    private Map<Long, ConversationDto> loadInboxRows(List<Long> conversationIds, Long userId) {
+        return conversationRepository.findAllById(conversationIds).stream()
+                .filter(conv -> conv.getUser1().getId().equals(userId) || conv.getUser2().getId().equals(userId))
+                .filter(conv -> !isDeletedFor(conv, userId))
+                .collect(Collectors.toMap(Conversation::getId, conv -> mapToConversationDto(conv, userId)));
+    }
+
+    /**
+     * Fills in the other party's name and photo on cached inbox rows. Both can
+     * change at any time (profile edits, photo privacy, likes), so they are
+     * read fresh for the page: one profile query and one like query.
+     */
+    private void resolveOtherParties(List<ConversationDto> rows, User currentUser) {
+        Set<Long> otherIds = rows.stream()
+                .map(ConversationDto::getOtherUserId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        if (otherIds.isEmpty()) {
+            return;
+        }
+        Map<Long, Profile> profiles = profileRepository.findAllByUserIdIn(otherIds).stream()
+                .collect(Collectors.toMap(profile -> profile.getUser().getId(), profile -> profile, (a, b) -> a));
+        Set<Long> likedMe = new HashSet<>(matchRepository.findLikersAmong(currentUser.getId(), otherIds));
+
+        for (ConversationDto row : rows) {
+            Profile profile = profiles.get(row.getOtherUserId());
+            if (profile == null) {
+                continue;
+            }
+            String name = profile.getUser().getEmail();
+            row.setOtherUserName(name);
+            if (row.getOtherUserId().equals(row.getUser1Id())) {
+                row.setUser1Name(name);
+            } else {
+                row.setUser2Name(name);
+            }
+            row.setOtherUserPhotoUrl(photoFor(currentUser, profile, likedMe.contains(row.getOtherUserId())));
+        }
+    }
+
+    private boolean isDeletedFor(Conversation conversation, Long userId) {
+        return conversation.getUser1().getId().equals(userId)
+                ? Boolean.TRUE.equals(conversation.getUser1Deleted())
+                : Boolean.TRUE.equals(conversation.getUser2Deleted());
     }
 
     private User getOtherUserInConversation(Conversation conversation, User currentUser) {
@@ -411,29 +661,76 @@ public class MessagingServiceImpl implements MessagingService {
         }
     }
 
-    private void sendWebSocketNotification(Message message, Conversation conversation) {
-        User receiver = message.getReceiver();
+    /**
+     * Pushes the message and conversation updates to both users and returns the
+     * sender's view of the message. Photos for all payloads come from one
+     * profile query and one match query.
+     */
+    private MessageDto sendWebSocketNotification(Message message, ConversationMeta conversation, boolean created,
+            User sender, User receiver, int senderUnread, int receiverUnread) {
+        Map<Long, Profile> profiles = profileRepository.findAllByUserIn(List.of(sender, receiver)).stream()
+                .collect(Collectors.toMap(profile -> profile.getUser().getId(), profile -> profile));
+        Match match = matchRepository.findMatchBetweenUserIds(sender.getId(), receiver.getId()).orElse(null);
+        boolean senderLikedReceiver = match != null && match.hasUserLiked(sender.getId());
+        boolean receiverLikedSender = match != null && match.hasUserLiked(receiver.getId());
+
+        PhotoDto senderOwnPhoto = photoFor(sender, profiles.get(sender.getId()), true);
+        PhotoDto receiverOwnPhoto = photoFor(receiver, profiles.get(receiver.getId()), true);
+        PhotoDto senderPhotoForReceiver = photoFor(receiver, profiles.get(sender.getId()), senderLikedReceiver);
+        PhotoDto receiverPhotoForSender = photoFor(sender, profiles.get(receiver.getId()), receiverLikedSender);
 
         // Send message to receiver
-        MessageDto messageDto = mapToMessageDto(message, receiver.getId());
-        messagingTemplate.convertAndSendToUser(
-                receiver.getId().toString(),
-                "/queue/messages",
-                messageDto);
+        conversationFeedService.pushMessage(receiver.getId(), conversation.getId(),
+                buildMessageDto(message, receiver.getId(), senderPhotoForReceiver, receiverOwnPhoto));
+
+        ConversationDto senderConversation = buildConversationDto(conversation, message, sender, receiver,
+                sender.getId(), receiverPhotoForSender, senderUnread);
+        ConversationDto receiverConversation = buildConversationDto(conversation, message, sender, receiver,
+                receiver.getId(), senderPhotoForReceiver, receiverUnread);
+
+        conversationFeedService.conversationUpdated(conversation.getId(), created,
+                sender.getId(), senderConversation, receiver.getId(), receiverConversation);
+
+        return buildMessageDto(message, sender.getId(), senderOwnPhoto, receiverPhotoForSender);
+    }
 
-        // Send conversation update to both users
-        ConversationDto conversationDtoForSender = mapToConversationDto(conversation, message.getSender().getId());
-        ConversationDto conversationDtoForReceiver = mapToConversationDto(conversation, receiver.getId());
+    private PhotoDto photoFor(User viewer, Profile ownerProfile, boolean likedByOwner) {
+        if (ownerProfile == null) {
+            return null;
+        }
+        return photoVisibilityService.getProfilePhoto(viewer, ownerProfile, likedByOwner, ImageVariant.THUMB);
+    }
 
-        messagingTemplate.convertAndSendToUser(
-                message.getSender().getId().toString(),
-                "/queue/conversations",
-                conversationDtoForSender);
+    private ConversationDto buildConversationDto(ConversationMeta conversation, Message message, User sender,
+            User receiver, Long currentUserId, PhotoDto otherUserPhoto, int unreadCount) {
+        User user1 = conversation.isUser1(sender.getId()) ? sender : receiver;
+        User user2 = user1 == sender ? receiver : sender;
+        User otherUser = currentUserId.equals(sender.getId()) ? receiver : sender;
 
-        messagingTemplate.convertAndSendToUser(
-                receiver.getId().toString(),
-                "/queue/conversations",
-                conversationDtoForReceiver);
+        return ConversationDto.builder()
+                .id(conversation.getId())
+                .user1Id(user1.getId())
+                .user1Name(user1.getEmail())
+                .user2Id(user2.getId())
+                .user2Name(user2.getEmail())
+                .otherUserId(otherUser.getId())
+                .otherUserName(otherUser.getEmail())
+                .otherUserPhotoUrl(otherUserPhoto)
+                .lastMessage(truncate(message.getContent(), CONVERSATION_PREVIEW_LENGTH))
+                .lastMessageTime(message.getCreatedAt())
+                .lastMessageBy(sender.getId())
+                .unreadCount(unreadCount)
+                .blocked(conversation.isBlocked())
+                .blockedBy(conversation.getBlockedBy())
+                .updatedAt(message.getCreatedAt())
+                .build();
+    }
+
+    private static String truncate(String value, int maxLength) {
+        if (value == null || value.length() <= maxLength) {
+            return value;
+        }
+        return value.substring(0, maxLength);
     }
 
     private void sendPushNotification(User sender, User receiver, Message message) {
@@ -453,14 +750,59 @@ public class MessagingServiceImpl implements MessagingService {
     private MessageDto mapToMessageDto(Message message, Long currentUserId) {
         User currentUser = userRepository.findById(currentUserId).orElse(null);
 
+        return buildMessageDto(message, currentUserId,
+                photoVisibilityService.getProfilePhoto(currentUser, message.getSender(), ImageVariant.THUMB),
+                photoVisibilityService.getProfilePhoto(currentUser, message.getReceiver(), ImageVariant.THUMB));
+    }
+
+    // Newest first below the cursor, continuing into the archive once the hot table runs out
+    private List<Message> olderThan(Conversation conversation, long before, int count) {
+        List<Message> messages = new ArrayList<>(
+                messageRepository.findBefore(conversation.getId(), before, PageRequest.of(0, count)));
+        if (messages.size() < count && conversation.getArchivedThroughMessageId() != null) {
+            long cursor = messages.isEmpty() ? before : messages.get(messages.size() - 1).getId();
+            messages.addAll(messageArchiveService.findBefore(conversation, cursor, count - messages.size()));
+        }
+        return messages;
+    }
+
+    // Oldest first above the cursor, starting in the archive when the cursor points into it
+    private List<Message> newerThan(Conversation conversation, long after, int count) {
+        List<Message> messages = new ArrayList<>();
+        Long archivedThrough = conversation.getArchivedThroughMessageId();
+        if (archivedThrough != null && after < archivedThrough) {
+            messages.addAll(messageArchiveService.findAfter(conversation, after, count));
+        }
+        if (messages.size() < count) {
+            long cursor = messages.isEmpty() ? after : messages.get(messages.size() - 1).getId();
+            messages.addAll(messageRepository.findAfter(conversation.getId(), cursor,
+                    PageRequest.of(0, count - messages.size())));
+        }
+        return messages;
+    }
+
+    // Archived messages are all older than hot ones, an offset page past the hot rows goes on in the archive
+    private Page<Message> continueIntoArchive(Conversation conversation, Page<Message> hot, Pageable pageable) {
+        long archived = messageArchiveService.countMessages(conversation.getId());
+        List<Message> messages = new ArrayList<>(hot.getContent());
+        int missing = pageable.getPageSize() - messages.size();
+        if (missing > 0 && archived > 0) {
+            long archiveOffset = Math.max(0, pageable.getOffset() - hot.getTotalElements());
+            messages.addAll(messageArchiveService.findPage(conversation, archiveOffset, missing));
+        }
+        return new PageImpl<>(messages, pageable, hot.getTotalElements() + archived);
+    }
+
+    private MessageDto buildMessageDto(Message message, Long currentUserId, PhotoDto senderPhoto,
+            PhotoDto receiverPhoto) {
         return MessageDto.builder()
                 .id(message.getId())
                 .senderId(message.getSender().getId())
                 .senderName(message.getSender().getEmail())
-                .senderPhotoUrl(photoVisibilityService.getProfilePhoto(currentUser, message.getSender()))
+                .senderPhotoUrl(senderPhoto)
                 .receiverId(message.getReceiver().getId())
                 .receiverName(message.getReceiver().getEmail())
-                .receiverPhotoUrl(photoVisibilityService.getProfilePhoto(currentUser, message.getReceiver()))
+                .receiverPhotoUrl(receiverPhoto)
                 .conversationId(message.getConversation().getId())
                 .content(message.getContent())
                 .messageType(message.getMessageType().name())
@@ -475,6 +817,16 @@ public class MessagingServiceImpl implements MessagingService {
                 .build();
     }
 
+    private ConversationDto mapToConversationDto(Conversation conversation, Long currentUserId,
+            Map<Long, Integer> unreadCounts) {
+        ConversationDto dto = mapToConversationDto(conversation, currentUserId);
+        // Counters are ahead of the columns until the next flush
+        if (unreadCounts != null) {
+            dto.setUnreadCount(unreadCounts.getOrDefault(conversation.getId(), 0));
+        }
+        return dto;
+    }
+
     private ConversationDto mapToConversationDto(Conversation conversation, Long currentUserId) {
         // Find the other user without doing a redundant database lookup
         User otherUser;
@@ -499,13 +851,18 @@ public class MessagingServiceImpl implements MessagingService {
                 .user2Name(conversation.getUser2().getEmail())
                 .otherUserId(otherUser != null ? otherUser.getId() : null)
                 .otherUserName(otherUserName)
-                .otherUserPhotoUrl(photoVisibilityService.getProfilePhoto(currentUser, otherUser))
+                .otherUserPhotoUrl(photoVisibilityService.getProfilePhoto(currentUser, otherUser, ImageVariant.THUMB))
                 .lastMessage(conversation.getLastMessage())
                 .lastMessageTime(conversation.getLastMessageTime())
                 .lastMessageBy(conversation.getLastMessageBy())
                 .unreadCount(unreadCount)
                 .blocked(conversation.getBlocked())
                 .blockedBy(conversation.getBlockedBy())
+                .lastReadMessageId(conversation.getLastReadMessageId(currentUserId))
+                .otherLastReadMessageId(otherUser != null ? conversation.getLastReadMessageId(otherUser.getId()) : null)
+                .otherLastDeliveredMessageId(otherUser != null
+                        ? conversation.getLastDeliveredMessageId(otherUser.getId())
+                        : null)
                 .updatedAt(conversation.getUpdatedAt())
                 .build();
     }
@@ -2,173 +2,160 @@ package com.punarmilan.backend.service.impl;
 
 import com.punarmilan.backend.entity.Profile;
 import com.punarmilan.backend.entity.User;
-import com.punarmilan.backend.entity.UserViewHistory;
 import com.punarmilan.backend.repository.ProfileRepository;
 import com.punarmilan.backend.repository.UserRepository;
 import com.punarmilan.backend.repository.UserViewHistoryRepository;
 import com.punarmilan.backend.service.EmailService;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
+/**
+ * Daily and weekly digest emails, built for a chunk of active users at a
+ * time. Per chunk there is one query each for the recipients' first names,
+ * their precomputed matches (see MatchSuggestionService) and who viewed them
+ * since the last run, and each kind of digest goes to the outbox as one batch.
+ */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class NotificationScheduler {
 
+    private static final int DIGEST_SIZE = 5;
+    private static final int PREMIUM_MIN_SCORE = 70;
+
     private final UserRepository userRepository;
     private final ProfileRepository profileRepository;
     private final UserViewHistoryRepository viewHistoryRepository;
     private final EmailService emailService;
-    private final MatchCategoryServiceImpl matchService;
-    private final java.util.concurrent.Executor taskExecutor;
+    private final MatchSuggestionService matchSuggestionService;
+    private final int chunkSize;
+
+    public NotificationScheduler(UserRepository userRepository,
+            ProfileRepository profileRepository,
+            UserViewHistoryRepository viewHistoryRepository,
+            EmailService emailService,
+            MatchSuggestionService matchSuggestionService,
+            @Value("${app.digest.chunk-size:500}") int chunkSize) {
+        this.userRepository = userRepository;
+        this.profileRepository = profileRepository;
+        this.viewHistoryRepository = viewHistoryRepository;
+        this.emailService = emailService;
+        this.matchSuggestionService = matchSuggestionService;
+        this.chunkSize = Math.max(1, chunkSize);
+    }
 
     /**
      * Daily at 9:00 AM - Send Match Mail & Recent Visitors
      */
     @Scheduled(cron = "0 0 9 * * *")
     public void sendDailyDigests() {
-        log.info("Starting Daily Digest Job with Parallel Batching...");
-        int pageSize = 100;
-        int pageNumber = 0;
-        org.springframework.data.domain.Page<User> userPage;
-
-        do {
-            userPage = userRepository.findAll(org.springframework.data.domain.PageRequest.of(pageNumber, pageSize));
-            List<User> users = userPage.getContent().stream()
-                    .filter(User::isActive)
-                    .collect(Collectors.toList());
-
-            List<java.util.concurrent.CompletableFuture<Void>> futures = users.stream()
-                    .map(user -> java.util.concurrent.CompletableFuture.runAsync(() -> {
-                        try {
-                            sendRecentVisitorsDigest(user);
-                            sendNewMatchMail(user);
-                        } catch (Exception e) {
-                            log.error("Error in daily digest for user: {}", user.getEmail(), e);
-                        }
-                    }, taskExecutor))
-                    .collect(Collectors.toList());
-
-            // Wait for this batch to finish before moving to next to avoid overwhelming the
-            // DB
-            java.util.concurrent.CompletableFuture.allOf(futures.toArray(new java.util.concurrent.CompletableFuture[0]))
-                    .join();
-
-            pageNumber++;
-            log.info("Processed batch {} of daily digests", pageNumber);
-        } while (userPage.hasNext());
-
-        log.info("Daily Digest Job completed.");
+        log.info("Starting Daily Digest Job...");
+        LocalDateTime since = LocalDateTime.now().minusDays(1);
+        int visitorMails = 0;
+        int matchMails = 0;
+        long cursor = 0;
+
+        List<User> users;
+        while (!(users = userRepository.findActiveAfter(cursor, PageRequest.of(0, chunkSize))).isEmpty()) {
+            try {
+                List<Long> ids = users.stream().map(User::getId).toList();
+                Map<Long, String> firstNames = emailService.firstNames(users);
+                visitorMails += emailService.sendVisitorsDigestEmails(users, firstNames, recentVisitors(ids, since));
+                matchMails += emailService.sendMatchDigestEmails(users, firstNames, topMatches(ids));
+            } catch (Exception e) {
+                log.error("Error in daily digest for users after {}", cursor, e);
+            }
+            cursor = users.get(users.size() - 1).getId();
+        }
+
+        log.info("Daily Digest Job completed: {} visitor and {} match emails queued.", visitorMails, matchMails);
     }
 
     /**
-     * Weekly on Sunday at 10:00 AM - Send Premium Match Mail & Similar Profiles
+     * Weekly on Sunday at 10:00 AM - Send Premium Match Mail
      */
     @Scheduled(cron = "0 0 10 * * SUN")
     public void sendWeeklyDigests() {
-        log.info("Starting Weekly Digest Job with Parallel Batching...");
-        int pageSize = 100;
-        int pageNumber = 0;
-        org.springframework.data.domain.Page<User> userPage;
-
-        do {
-            userPage = userRepository.findAll(org.springframework.data.domain.PageRequest.of(pageNumber, pageSize));
-            List<User> users = userPage.getContent().stream()
-                    .filter(User::isActive)
-                    .collect(Collectors.toList());
-
-            List<java.util.concurrent.CompletableFuture<Void>> futures = users.stream()
-                    .map(user -> java.util.concurrent.CompletableFuture.runAsync(() -> {
-                        try {
-                            if (user.getPremium()) {
-                                sendPremiumMatchMail(user);
-                            }
-                            sendSimilarProfilesMail(user);
-                        } catch (Exception e) {
-                            log.error("Error in weekly digest for user: {}", user.getEmail(), e);
-                        }
-                    }, taskExecutor))
-                    .collect(Collectors.toList());
-
-            java.util.concurrent.CompletableFuture.allOf(futures.toArray(new java.util.concurrent.CompletableFuture[0]))
-                    .join();
-
-            pageNumber++;
-            log.info("Processed batch {} of weekly digests", pageNumber);
-        } while (userPage.hasNext());
-
-        log.info("Weekly Digest Job completed.");
-    }
-
-    private void sendRecentVisitorsDigest(User user) {
-        LocalDateTime yesterday = LocalDateTime.now().minusDays(1);
-        List<UserViewHistory> recentViews = viewHistoryRepository
-                .findByViewedUser(user, org.springframework.data.domain.Pageable.unpaged())
-                .getContent().stream()
-                .filter(v -> v.getViewedAt().isAfter(yesterday))
-                .collect(Collectors.toList());
-
-        if (!recentViews.isEmpty()) {
-            List<Profile> visitorProfiles = recentViews.stream()
-                    .map(v -> profileRepository.findByUser(v.getViewer()).orElse(null))
-                    .filter(java.util.Objects::nonNull)
-                    .distinct()
-                    .limit(5)
-                    .collect(Collectors.toList());
-
-            emailService.sendVisitorsDigestEmail(user, visitorProfiles);
+        log.info("Starting Weekly Digest Job...");
+        int premiumMails = 0;
+        long cursor = 0;
+
+        List<User> users;
+        while (!(users = userRepository.findActiveAfter(cursor, PageRequest.of(0, chunkSize))).isEmpty()) {
+            try {
+                List<User> premium = users.stream()
+                        .filter(user -> Boolean.TRUE.equals(user.getPremium()))
+                        .toList();
+                if (!premium.isEmpty()) {
+                    premiumMails += emailService.sendMatchDigestEmails(premium, emailService.firstNames(premium),
+                            premiumMatches(premium.stream().map(User::getId).toList()));
+                }
+            } catch (Exception e) {
+                log.error("Error in weekly digest for users after {}", cursor, e);
+            }
+            cursor = users.get(users.size() - 1).getId();
         }
-    }
 
-    private void sendNewMatchMail(User user) {
-        // Use existing match suggestions logic
-        try {
-            List<com.punarmilan.backend.dto.MatchResponseDTO> suggestions = matchService.getMatchSuggestions(
-                    org.springframework.data.domain.PageRequest.of(0, 5)).getContent();
+        log.info("Weekly Digest Job completed: {} premium match emails queued.", premiumMails);
+    }
 
-            if (!suggestions.isEmpty()) {
-                List<Profile> matchProfiles = suggestions.stream()
-                        .map(s -> profileRepository.findByUserId(s.getUserId()).orElse(null))
-                        .filter(java.util.Objects::nonNull)
-                        .collect(Collectors.toList());
+    // ==================== PRIVATE HELPER METHODS ====================
 
-                emailService.sendMatchDigestEmail(user, matchProfiles);
+    // Up to DIGEST_SIZE distinct viewers per user since the cutoff, latest first
+    private Map<Long, List<Profile>> recentVisitors(Collection<Long> userIds, LocalDateTime since) {
+        Map<Long, List<Long>> viewerIds = new LinkedHashMap<>();
+        for (Object[] row : viewHistoryRepository.findViewersSince(userIds, since)) {
+            List<Long> viewers = viewerIds.computeIfAbsent((Long) row[0], id -> new ArrayList<>());
+            if (viewers.size() < DIGEST_SIZE) {
+                viewers.add((Long) row[1]);
             }
-        } catch (Exception e) {
-            log.error("Error sending match mail for user: {}", user.getEmail(), e);
         }
+        if (viewerIds.isEmpty()) {
+            return Map.of();
+        }
+
+        Map<Long, Profile> profiles = profileRepository.findAllByUserIdIn(viewerIds.values().stream()
+                        .flatMap(List::stream)
+                        .collect(Collectors.toSet())).stream()
+                .collect(Collectors.toMap(profile -> profile.getUser().getId(), Function.identity(), (a, b) -> a));
+
+        Map<Long, List<Profile>> visitors = new HashMap<>();
+        viewerIds.forEach((userId, viewers) -> visitors.put(userId, viewers.stream()
+                .map(profiles::get)
+                .filter(Objects::nonNull)
+                .toList()));
+        return visitors;
     }
 
-    private void sendPremiumMatchMail(User user) {
-        // Specialized premium logic: High compatibility + Verified profiles
-        try {
-            List<com.punarmilan.backend.dto.MatchResponseDTO> suggestions = matchService.getMatchSuggestions(
-                    org.springframework.data.domain.PageRequest.of(0, 10)).getContent();
-
-            List<Profile> premiumMatches = suggestions.stream()
-                    .filter(s -> s.getUser().isVerified() && s.getUser().getCompatibilityScore() > 70)
-                    .map(s -> profileRepository.findByUserId(s.getUserId()).orElse(null))
-                    .filter(java.util.Objects::nonNull)
-                    .limit(5)
-                    .collect(Collectors.toList());
-
-            if (!premiumMatches.isEmpty()) {
-                // Reuse digest or Create specialized premium mail
-                emailService.sendMatchDigestEmail(user, premiumMatches);
-            }
-        } catch (Exception e) {
-            log.error("Error sending premium match mail", e);
-        }
+    private Map<Long, List<Profile>> topMatches(Collection<Long> userIds) {
+        Map<Long, List<Profile>> matches = new HashMap<>();
+        matchSuggestionService.topMatches(userIds, DIGEST_SIZE).forEach((userId, suggestions) -> matches.put(userId,
+                suggestions.stream().map(MatchSuggestionService.Suggestion::profile).toList()));
+        return matches;
     }
 
-    private void sendSimilarProfilesMail(User user) {
-        // Implementation for similar profiles based on common traits
-        // For now, reuse suggestions with different title
+    // Specialized premium logic: High compatibility + Verified profiles
+    private Map<Long, List<Profile>> premiumMatches(Collection<Long> userIds) {
+        Map<Long, List<Profile>> matches = new HashMap<>();
+        matchSuggestionService.topMatches(userIds, Integer.MAX_VALUE).forEach((userId, suggestions) -> matches.put(
+                userId, suggestions.stream()
+                        .filter(s -> s.profile().isVerified() && s.score() > PREMIUM_MIN_SCORE)
+                        .map(MatchSuggestionService.Suggestion::profile)
+                        .limit(DIGEST_SIZE)
+                        .toList()));
+        return matches;
     }
 }
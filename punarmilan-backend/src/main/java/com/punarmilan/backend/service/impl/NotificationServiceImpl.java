@@ -1,11 +1,27 @@
 package com.punarmilan.backend.service.impl;
 
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -14,11 +30,20 @@ import org.springframework.transaction.annotation.Transactional;
 
 import com.punarmilan.backend.dto.NotificationDto;
 import com.punarmilan.backend.dto.NotificationStatsDto;
+import com.punarmilan.backend.dto.NotificationSyncDto;
 import com.punarmilan.backend.entity.Notification;
 import com.punarmilan.backend.entity.User;
+import com.punarmilan.backend.event.NotificationEvent;
 import com.punarmilan.backend.exception.ResourceNotFoundException;
 import com.punarmilan.backend.repository.*;
+import com.punarmilan.backend.service.ConversationCache;
+import com.punarmilan.backend.service.MessageArchiveService;
+import com.punarmilan.backend.service.NotificationCounterService;
+import com.punarmilan.backend.service.NotificationCounterService.Counts;
+import com.punarmilan.backend.service.NotificationPreferenceCache;
 import com.punarmilan.backend.service.NotificationService;
+import com.punarmilan.backend.service.RetentionService;
+import com.punarmilan.backend.service.WebSocketNotificationService;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -32,11 +57,34 @@ import lombok.extern.slf4j.Slf4j;
 public class NotificationServiceImpl implements NotificationService {
 
     private final ConversationRepository conversationRepository;
+    private final ConversationCache conversationCache;
 
     private final NotificationRepository notificationRepository;
     private final UserRepository userRepository;
     private final NotificationPreferenceRepository preferenceRepository;
     private final MessageRepository messageRepository;
+    private final MessageSearchTermRepository messageSearchTermRepository;
+    private final MessageArchiveService messageArchiveService;
+    private final NotificationCounterService notificationCounterService;
+    private final RetentionService retentionService;
+    private final WebSocketNotificationService webSocketNotificationService;
+    private final NotificationPreferenceCache notificationPreferenceCache;
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private static final long DUPLICATE_WINDOW_SECONDS = 300;
+    private static final String INSERT_SQL = "INSERT INTO notifications (user_id, type, title, message, "
+            + "related_type, is_read, is_seen, created_at) VALUES (?, ?, ?, ?, ?, false, false, ?)";
+    // Inserts, or folds into the row with the same user/type/related id in this time bucket.
+    // The generated key is the row's id either way, through LAST_INSERT_ID(id) on a bump
+    private static final String UPSERT_SQL = "INSERT INTO notifications (user_id, type, title, message, "
+            + "related_id, related_type, is_read, is_seen, created_at, time_bucket) "
+            + "VALUES (?, ?, ?, ?, ?, ?, false, false, ?, ?) "
+            + "ON DUPLICATE KEY UPDATE title = VALUES(title), message = VALUES(message), "
+            + "is_read = false, is_seen = false, created_at = VALUES(created_at), id = LAST_INSERT_ID(id)";
+
+    private record Upserted(Long id, int affected) {
+    }
 
     private boolean hasRun = false;
 
@@ -73,6 +121,10 @@ public class NotificationServiceImpl implements NotificationService {
             throw new ResourceNotFoundException("You don't have permission to access this notification");
         }
 
+        if (!notification.isRead()) {
+            notificationCounterService.removed(currentUser.getId(), notification.getType(), true, false);
+            webSocketNotificationService.read(currentUser.getId(), notificationId, notification.getType());
+        }
         notification.setRead(true);
         notificationRepository.save(notification);
         log.info("Notification {} marked as read by user {}", notificationId, currentUser.getEmail());
@@ -82,6 +134,8 @@ public class NotificationServiceImpl implements NotificationService {
     public void markAllAsRead() {
         User currentUser = getCurrentUser();
         int updated = notificationRepository.markAllAsRead(currentUser);
+        notificationCounterService.allRead(currentUser.getId());
+        webSocketNotificationService.allRead(currentUser.getId());
         log.info("Marked {} notifications as read for user: {}", updated, currentUser.getEmail());
     }
 
@@ -89,6 +143,8 @@ public class NotificationServiceImpl implements NotificationService {
     public void markAllAsSeen() {
         User currentUser = getCurrentUser();
         int updated = notificationRepository.markAllAsSeen(currentUser);
+        notificationCounterService.allSeen(currentUser.getId());
+        webSocketNotificationService.allSeen(currentUser.getId());
         log.info("Marked {} notifications as seen for user: {}", updated, currentUser.getEmail());
     }
 
@@ -96,36 +152,47 @@ public class NotificationServiceImpl implements NotificationService {
     public NotificationStatsDto getNotificationStats() {
         User currentUser = getCurrentUser();
 
-        long totalUnread = notificationRepository.countByUserAndReadFalse(currentUser);
-        long totalUnseen = notificationRepository.countByUserAndSeenFalse(currentUser);
-
-        long connectionRequests = notificationRepository.countByUserAndTypeAndReadFalse(
-                currentUser, Notification.NotificationType.CONNECTION_REQUEST);
+        // One hash read, or one GROUP BY when the counters are cold
+        Counts counts = notificationCounterService.get(currentUser.getId());
 
-        long profileViews = notificationRepository.countByUserAndTypeAndReadFalse(
-                currentUser, Notification.NotificationType.PROFILE_VIEW);
-
-        long newMatches = notificationRepository.countByUserAndTypeAndReadFalse(
-                currentUser, Notification.NotificationType.NEW_MATCH);
+        return toStats(counts);
+    }
 
-        // Multi-type count (simplified here but could be multiple calls or a custom
-        // query)
-        long verificationUpdates = notificationRepository.countByUserAndTypeAndReadFalse(
-                currentUser, Notification.NotificationType.VERIFICATION_APPROVED) +
-                notificationRepository.countByUserAndTypeAndReadFalse(
-                        currentUser, Notification.NotificationType.VERIFICATION_REJECTED);
+    @Override
+    public NotificationSyncDto sync(LocalDateTime since, Long afterId, int limit) {
+        User currentUser = getCurrentUser();
+        int size = Math.max(1, Math.min(limit, 100));
+
+        // A bump keeps the row's id but moves its createdAt, so the cursor is (createdAt, id).
+        // One extra row tells whether the gap is bigger than a page
+        List<Notification> newer = notificationRepository.findChangedSince(currentUser.getId(),
+                since != null ? since : LocalDateTime.of(1970, 1, 1, 0, 0), afterId != null ? afterId : 0L,
+                PageRequest.of(0, size + 1));
+        boolean hasMore = newer.size() > size;
+        List<NotificationDto> notifications = newer.stream()
+                .limit(size)
+                .map(this::mapToDto)
+                .collect(Collectors.toList());
 
-        long systemAlerts = notificationRepository.countByUserAndTypeAndReadFalse(
-                currentUser, Notification.NotificationType.SYSTEM_ALERT);
+        return NotificationSyncDto.builder()
+                .notifications(notifications)
+                .hasMore(hasMore)
+                .lastCreatedAt(notifications.isEmpty() ? since : notifications.get(0).getCreatedAt())
+                .lastId(notifications.isEmpty() ? afterId : notifications.get(0).getId())
+                .stats(toStats(notificationCounterService.get(currentUser.getId())))
+                .build();
+    }
 
+    private NotificationStatsDto toStats(Counts counts) {
         return NotificationStatsDto.builder()
-                .totalUnread(totalUnread)
-                .totalUnseen(totalUnseen)
-                .connectionRequests(connectionRequests)
-                .profileViews(profileViews)
-                .newMatches(newMatches)
-                .verificationUpdates(verificationUpdates)
-                .systemAlerts(systemAlerts)
+                .totalUnread(counts.unread())
+                .totalUnseen(counts.unseen())
+                .connectionRequests(counts.unread(Notification.NotificationType.CONNECTION_REQUEST))
+                .profileViews(counts.unread(Notification.NotificationType.PROFILE_VIEW))
+                .newMatches(counts.unread(Notification.NotificationType.NEW_MATCH))
+                .verificationUpdates(counts.unread(Notification.NotificationType.VERIFICATION_APPROVED)
+                        + counts.unread(Notification.NotificationType.VERIFICATION_REJECTED))
+                .systemAlerts(counts.unread(Notification.NotificationType.SYSTEM_ALERT))
                 .build();
     }
 
@@ -143,49 +210,105 @@ public class NotificationServiceImpl implements NotificationService {
             throw new IllegalArgumentException("Invalid notification type: " + type);
         }
 
-        // Check for duplicate notifications (same type and relatedId within last 5
-        // minutes)
-        if (relatedId != null) {
-            LocalDateTime fiveMinutesAgo = LocalDateTime.now().minusMinutes(5);
-            List<Notification> similarRecentNotifications = notificationRepository
-                    .findSimilarNotifications(user, notificationType, relatedId)
-                    .stream()
-                    .filter(n -> n.getCreatedAt().isAfter(fiveMinutesAgo))
-                    .collect(Collectors.toList());
-
-            if (!similarRecentNotifications.isEmpty()) {
-                // Update the most recent similar notification instead of creating new one
-                Notification existing = similarRecentNotifications.get(0);
-                existing.setTitle(title);
-                existing.setMessage(message);
-                existing.setRead(false);
-                existing.setSeen(false);
-                existing.setCreatedAt(LocalDateTime.now());
-                notificationRepository.save(existing);
-                log.debug("Updated existing notification for user {}: {}", userId, title);
-                return;
-            }
-        }
-
-        Notification notification = Notification.builder()
-                .user(user)
-                .type(notificationType)
+        // Duplicates (same type and relatedId in the same 5 minute bucket) are folded into the
+        // existing row by the unique key, in the one statement
+        // At the column's precision, the pushed createdAt is a sync cursor
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        Long timeBucket = relatedId != null ? now.toEpochSecond(ZoneOffset.UTC) / DUPLICATE_WINDOW_SECONDS : null;
+        Upserted upserted = upsert(userId, notificationType, title, message, relatedId, relatedType, now, timeBucket);
+        NotificationDto pushed = NotificationDto.builder()
+                .id(upserted.id())
+                .type(notificationType.name())
                 .title(title)
                 .message(message)
                 .relatedId(relatedId)
                 .relatedType(relatedType)
-                .read(false)
-                .seen(false)
-                .createdAt(LocalDateTime.now())
+                .createdAt(now)
                 .build();
 
-        notificationRepository.save(notification);
-        log.info("Notification created for user {} ({}): {}",
-                user.getEmail(), notificationType, title);
+        // A bump always moves created_at, so it reports 2 affected rows and an insert 1
+        if (upserted.affected() < 2) {
+            notificationCounterService.added(userId, notificationType, true, true);
+            webSocketNotificationService.created(userId, pushed);
+            log.info("Notification created for user {} ({}): {}",
+                    user.getEmail(), notificationType, title);
+        } else {
+            // The flags the bump cleared weren't read, the next stats read reseeds from MySQL
+            notificationCounterService.invalidate(userId);
+            webSocketNotificationService.updated(userId, pushed);
+            log.debug("Updated existing notification for user {}: {}", userId, title);
+        }
+    }
+
+    @Override
+    public void createNotifications(List<NewNotification> notifications) {
+        List<NewNotification> rows = new ArrayList<>();
+        List<Notification.NotificationType> types = new ArrayList<>();
+        for (NewNotification notification : notifications) {
+            Notification.NotificationType notificationType;
+            try {
+                notificationType = Notification.NotificationType.valueOf(notification.type().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                log.error("Invalid notification type: {}", notification.type());
+                continue;
+            }
+            if (notification.relatedId() != null) {
+                // Coalescing needs the upsert, one row at a time
+                createNotification(notification.userId(), notificationType.name(), notification.title(),
+                        notification.message(), notification.relatedId(), notification.relatedType());
+            } else {
+                rows.add(notification);
+                types.add(notificationType);
+            }
+        }
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        // Without a related id nothing coalesces, so a plain multi-row insert with generated keys will do
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        Timestamp createdAt = Timestamp.valueOf(now);
+        KeyHolder keys = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(connection -> connection.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        NewNotification row = rows.get(i);
+                        ps.setLong(1, row.userId());
+                        ps.setString(2, types.get(i).name());
+                        ps.setString(3, row.title());
+                        ps.setString(4, row.message());
+                        ps.setString(5, row.relatedType());
+                        ps.setTimestamp(6, createdAt);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return rows.size();
+                    }
+                }, keys);
+
+        List<Map<String, Object>> generated = keys.getKeyList();
+        Map<Long, Map<Notification.NotificationType, Integer>> addedByUser = new HashMap<>();
+        for (int i = 0; i < rows.size(); i++) {
+            NewNotification row = rows.get(i);
+            addedByUser.computeIfAbsent(row.userId(), id -> new EnumMap<>(Notification.NotificationType.class))
+                    .merge(types.get(i), 1, Integer::sum);
+            webSocketNotificationService.created(row.userId(), NotificationDto.builder()
+                    .id(i < generated.size() ? generatedId(generated.get(i)) : null)
+                    .type(types.get(i).name())
+                    .title(row.title())
+                    .message(row.message())
+                    .relatedType(row.relatedType())
+                    .createdAt(now)
+                    .build());
+        }
+        addedByUser.forEach(notificationCounterService::added);
+        log.info("Created {} notifications for {} users in one batch", rows.size(), addedByUser.size());
     }
 
+    // Scheduled with the other retention policies in RetentionService
     @Override
-    @Scheduled(cron = "0 0 2 * * *") // Run daily at 2 AM
     public void cleanupOldNotifications() {
         cleanupOldNotifications(30); // Keep notifications for 30 days by default
     }
@@ -198,8 +321,12 @@ public class NotificationServiceImpl implements NotificationService {
     public void testOneTimeDeletion() {
         if (!hasRun) {
             notificationRepository.deleteAll();
+            notificationCounterService.invalidateAll();
+            messageSearchTermRepository.deleteAllInBatch();
+            messageArchiveService.deleteAll();
             messageRepository.deleteAll();
             conversationRepository.deleteAll();
+            conversationCache.clear();
             log.info("Notifications & Messages Deleted");
             System.out.println("Notifications & Messages Deleted");
             hasRun = true;
@@ -208,22 +335,7 @@ public class NotificationServiceImpl implements NotificationService {
 
     @Override
     public void cleanupOldNotifications(int daysToKeep) {
-        LocalDateTime cutoffDate = LocalDateTime.now().minusDays(daysToKeep);
-
-        List<User> users = userRepository.findAll();
-        int totalDeleted = 0;
-
-        for (User user : users) {
-            int deleted = notificationRepository.deleteOldNotifications(user, cutoffDate);
-            totalDeleted += deleted;
-            if (deleted > 0) {
-                log.debug("Deleted {} old notifications for user: {}", deleted, user.getEmail());
-            }
-        }
-
-        if (totalDeleted > 0) {
-            log.info("Total {} old notifications deleted for all users", totalDeleted);
-        }
+        retentionService.purgeNotifications(daysToKeep);
     }
 
     @Override
@@ -239,6 +351,10 @@ public class NotificationServiceImpl implements NotificationService {
         }
 
         notificationRepository.delete(notification);
+        notificationCounterService.removed(currentUser.getId(), notification.getType(),
+                !notification.isRead(), !notification.isSeen());
+        webSocketNotificationService.deleted(currentUser.getId(), notificationId, notification.getType(),
+                !notification.isRead(), !notification.isSeen());
         log.info("Notification {} deleted by user {}", notificationId, currentUser.getEmail());
     }
 
@@ -261,19 +377,16 @@ public class NotificationServiceImpl implements NotificationService {
     }
 
     /**
-     * Send profile view notification
+     * Send profile view notification, folded into the owner's rollup of views
      */
     public void sendProfileViewNotification(User viewer, User profileOwner) {
-        String title = "Profile Viewed";
-        String message = viewer.getEmail() + " viewed your profile";
-
-        createNotification(
-                profileOwner.getId(),
+        eventPublisher.publishEvent(new NotificationEvent(
+                this,
+                profileOwner,
+                viewer,
                 Notification.NotificationType.PROFILE_VIEW.name(),
-                title,
-                message,
-                viewer.getId(),
-                "USER");
+                viewer.getEmail() + " viewed your profile",
+                null));
     }
 
     /**
@@ -351,6 +464,30 @@ public class NotificationServiceImpl implements NotificationService {
                 .orElseThrow(() -> new ResourceNotFoundException("User not found with email: " + email));
     }
 
+    private Upserted upsert(Long userId, Notification.NotificationType type, String title, String message,
+            Long relatedId, String relatedType, LocalDateTime createdAt, Long timeBucket) {
+        KeyHolder key = new GeneratedKeyHolder();
+        int affected = jdbcTemplate.update(connection -> {
+            PreparedStatement ps = connection.prepareStatement(UPSERT_SQL, Statement.RETURN_GENERATED_KEYS);
+            ps.setLong(1, userId);
+            ps.setString(2, type.name());
+            ps.setString(3, title);
+            ps.setString(4, message);
+            ps.setObject(5, relatedId);
+            ps.setString(6, relatedType);
+            ps.setTimestamp(7, Timestamp.valueOf(createdAt));
+            ps.setObject(8, timeBucket);
+            return ps;
+        }, key);
+        return new Upserted(key.getKeyList().isEmpty() ? null : generatedId(key.getKeyList().get(0)), affected);
+    }
+
+    // MySQL reports the key as GENERATED_KEY, other drivers as the column name
+    private static Long generatedId(Map<String, Object> key) {
+        Object id = key.containsKey("GENERATED_KEY") ? key.get("GENERATED_KEY") : key.get("id");
+        return id instanceof Number number ? number.longValue() : null;
+    }
+
     private NotificationDto mapToDto(Notification notification) {
         // Fetch additional data based on notification type
         Object data = fetchAdditionalData(notification);
@@ -405,6 +542,8 @@ public class NotificationServiceImpl implements NotificationService {
 
         if (!notifications.isEmpty()) {
             notificationRepository.deleteAll(notifications);
+            notificationCounterService.invalidate(currentUser.getId());
+            webSocketNotificationService.cleared(currentUser.getId());
             log.info("Cleared all {} notifications for user: {}",
                     notifications.size(), currentUser.getEmail());
         }
@@ -454,6 +593,7 @@ public class NotificationServiceImpl implements NotificationService {
         prefs.setShortlistAlerts(dto.isShortlistAlerts());
 
         com.punarmilan.backend.entity.NotificationPreference saved = preferenceRepository.save(prefs);
+        notificationPreferenceCache.evict(user.getId());
         return mapToPreferenceDto(saved);
     }
 
@@ -469,7 +609,9 @@ public class NotificationServiceImpl implements NotificationService {
                 .messageAlerts(true)
                 .shortlistAlerts(true)
                 .build();
-        return preferenceRepository.save(prefs);
+        com.punarmilan.backend.entity.NotificationPreference saved = preferenceRepository.save(prefs);
+        notificationPreferenceCache.evict(user.getId());
+        return saved;
     }
 
     private com.punarmilan.backend.dto.NotificationPreferenceDto mapToPreferenceDto(
@@ -10,6 +10,7 @@ import com.punarmilan.backend.repository.ProfileRepository;
 import com.punarmilan.backend.repository.UserRepository;
 import com.punarmilan.backend.service.NotificationService;
 import com.punarmilan.backend.service.PartnerPreferenceService;
+import com.punarmilan.backend.service.ImageDerivativeService.ImageVariant;
 import com.punarmilan.backend.service.PhotoVisibilityService;
 import com.punarmilan.backend.service.UserService;
 import lombok.RequiredArgsConstructor;
@@ -422,7 +423,7 @@ public class PartnerPreferenceServiceImpl implements PartnerPreferenceService {
                 .state(profile.getState())
                 .religion(profile.getReligion())
                 .occupation(profile.getOccupation())
-                .profilePhotoUrl(photoVisibilityService.getProfilePhoto(viewer, owner))
+                .profilePhotoUrl(photoVisibilityService.getProfilePhoto(viewer, owner, ImageVariant.CARD))
                 .isPremium(profile.isPremium())
                 .build();
     }
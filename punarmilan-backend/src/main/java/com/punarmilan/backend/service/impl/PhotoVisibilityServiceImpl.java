@@ -7,11 +7,15 @@ import com.punarmilan.backend.entity.enums.AlbumPhotoVisibility;
 import com.punarmilan.backend.entity.enums.ProfilePhotoVisibility;
 import com.punarmilan.backend.repository.MatchRepository;
 import com.punarmilan.backend.repository.ProfileRepository;
+import com.punarmilan.backend.service.ImageDerivativeService;
+import com.punarmilan.backend.service.ImageDerivativeService.ImageVariant;
 import com.punarmilan.backend.service.PhotoVisibilityService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.util.function.BooleanSupplier;
+
 @Slf4j
 @Service
 @RequiredArgsConstructor
@@ -19,11 +23,17 @@ public class PhotoVisibilityServiceImpl implements PhotoVisibilityService {
 
     private final MatchRepository matchRepository;
     private final ProfileRepository profileRepository;
+    private final ImageDerivativeService imageDerivativeService;
 
     private static final String BLURRED_PLACEHOLDER = "/assets/images/blurred-photo.jpg";
 
     @Override
     public PhotoDto getProfilePhoto(User viewer, User owner) {
+        return getProfilePhoto(viewer, owner, ImageVariant.ORIGINAL);
+    }
+
+    @Override
+    public PhotoDto getProfilePhoto(User viewer, User owner, ImageVariant variant) {
         Profile ownerProfile = profileRepository.findByUser(owner)
                 .orElseThrow(() -> new RuntimeException("Profile not found for owner"));
 
@@ -32,40 +42,40 @@ public class PhotoVisibilityServiceImpl implements PhotoVisibilityService {
             return null;
         }
 
-        if (canViewProfilePhoto(viewer, owner)) {
-            return PhotoDto.builder()
-                    .url(actualUrl)
-                    .blurred(false)
-                    .build();
+        if (canViewProfilePhoto(viewer, ownerProfile, () -> isLikedByOwner(owner, viewer))) {
+            return visiblePhoto(actualUrl, variant);
         }
 
-        // Determine reason
-        String reason = "LIKE_REQUIRED";
-        if (ownerProfile.getProfilePhotoVisibility() == ProfilePhotoVisibility.LIKED_AND_PREMIUM) {
-            // LIKED_AND_PREMIUM means: Premium OR Liked.
-            // If they can't view it, it means they are neither.
-            // We usually prompt for PREMIUM first as it's the easiest way to unlock.
-            reason = "PREMIUM_ONLY";
+        return blurredPhoto(actualUrl, profilePhotoRestriction(ownerProfile));
+    }
+
+    @Override
+    public PhotoDto getProfilePhoto(User viewer, Profile ownerProfile, boolean likedByOwner, ImageVariant variant) {
+        String actualUrl = ownerProfile.getProfilePhotoUrl();
+        if (actualUrl == null || actualUrl.isEmpty()) {
+            return null;
         }
 
-        return PhotoDto.builder()
-                .url(BLURRED_PLACEHOLDER)
-                .blurred(true)
-                .restrictionReason(reason)
-                .build();
+        if (canViewProfilePhoto(viewer, ownerProfile, () -> likedByOwner)) {
+            return visiblePhoto(actualUrl, variant);
+        }
+
+        return blurredPhoto(actualUrl, profilePhotoRestriction(ownerProfile));
     }
 
     @Override
     public PhotoDto getAlbumPhoto(User viewer, User owner, String photoUrl) {
+        return getAlbumPhoto(viewer, owner, photoUrl, ImageVariant.ORIGINAL);
+    }
+
+    @Override
+    public PhotoDto getAlbumPhoto(User viewer, User owner, String photoUrl, ImageVariant variant) {
         if (photoUrl == null || photoUrl.isEmpty()) {
             return null;
         }
 
         if (canViewAlbumPhoto(viewer, owner)) {
-            return PhotoDto.builder()
-                    .url(photoUrl)
-                    .blurred(false)
-                    .build();
+            return visiblePhoto(photoUrl, variant);
         }
 
         Profile ownerProfile = profileRepository.findByUser(owner)
@@ -76,11 +86,7 @@ public class PhotoVisibilityServiceImpl implements PhotoVisibilityService {
             reason = "PREMIUM_ONLY";
         }
 
-        return PhotoDto.builder()
-                .url(BLURRED_PLACEHOLDER)
-                .blurred(true)
-                .restrictionReason(reason)
-                .build();
+        return blurredPhoto(photoUrl, reason);
     }
 
     @Override
@@ -91,17 +97,7 @@ public class PhotoVisibilityServiceImpl implements PhotoVisibilityService {
         Profile ownerProfile = profileRepository.findByUser(owner)
                 .orElseThrow(() -> new RuntimeException("Profile not found for owner"));
 
-        ProfilePhotoVisibility visibility = ownerProfile.getProfilePhotoVisibility();
-
-        if (visibility == ProfilePhotoVisibility.ALL_MEMBERS) {
-            return true;
-        }
-
-        if (visibility == ProfilePhotoVisibility.LIKED_AND_PREMIUM) {
-            return isPremium(viewer) || isLikedByOwner(owner, viewer);
-        }
-
-        return false;
+        return canViewProfilePhoto(viewer, ownerProfile, () -> isLikedByOwner(owner, viewer));
     }
 
     @Override
@@ -125,6 +121,52 @@ public class PhotoVisibilityServiceImpl implements PhotoVisibilityService {
         return false;
     }
 
+    // The one profile photo rule; the like lookup only runs when the visibility needs it
+    private boolean canViewProfilePhoto(User viewer, Profile ownerProfile, BooleanSupplier likedByOwner) {
+        if (viewer.getId().equals(ownerProfile.getUser().getId()))
+            return true; // Self view
+
+        ProfilePhotoVisibility visibility = ownerProfile.getProfilePhotoVisibility();
+
+        if (visibility == ProfilePhotoVisibility.ALL_MEMBERS) {
+            return true;
+        }
+
+        if (visibility == ProfilePhotoVisibility.LIKED_AND_PREMIUM) {
+            return isPremium(viewer) || likedByOwner.getAsBoolean();
+        }
+
+        return false;
+    }
+
+    private String profilePhotoRestriction(Profile ownerProfile) {
+        // LIKED_AND_PREMIUM means: Premium OR Liked.
+        // If they can't view it, it means they are neither.
+        // We usually prompt for PREMIUM first as it's the easiest way to unlock.
+        return ownerProfile.getProfilePhotoVisibility() == ProfilePhotoVisibility.LIKED_AND_PREMIUM
+                ? "PREMIUM_ONLY"
+                : "LIKE_REQUIRED";
+    }
+
+    private PhotoDto visiblePhoto(String photoUrl, ImageVariant variant) {
+        return PhotoDto.builder()
+                .url(imageDerivativeService.resolve(photoUrl, variant))
+                .thumbnailUrl(imageDerivativeService.resolve(photoUrl, ImageVariant.THUMB))
+                .blurred(false)
+                .build();
+    }
+
+    private PhotoDto blurredPhoto(String photoUrl, String reason) {
+        // Never fall back to the original here, only to the shared placeholder
+        String blurredUrl = imageDerivativeService.resolveBlurred(photoUrl).orElse(BLURRED_PLACEHOLDER);
+        return PhotoDto.builder()
+                .url(blurredUrl)
+                .thumbnailUrl(blurredUrl)
+                .blurred(true)
+                .restrictionReason(reason)
+                .build();
+    }
+
     private boolean isPremium(User user) {
         return Boolean.TRUE.equals(user.getPremium());
     }
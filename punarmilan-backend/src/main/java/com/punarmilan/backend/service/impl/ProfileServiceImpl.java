@@ -9,6 +9,7 @@ import com.punarmilan.backend.exception.ResourceNotFoundException;
 import com.punarmilan.backend.repository.ProfileRepository;
 import com.punarmilan.backend.repository.UserRepository;
 import com.punarmilan.backend.service.FileStorageService;
+import com.punarmilan.backend.service.ImageDerivativeService;
 import com.punarmilan.backend.service.NotificationService;
 import com.punarmilan.backend.service.PhotoVisibilityService;
 import com.punarmilan.backend.service.ProfileService;
@@ -34,6 +35,7 @@ public class ProfileServiceImpl implements ProfileService {
     private final ProfileRepository profileRepository;
     private final UserRepository userRepository;
     private final FileStorageService fileStorageService;
+    private final ImageDerivativeService imageDerivativeService;
     private final NotificationService notificationService;
     private final PhotoVisibilityService photoVisibilityService;
     private final com.punarmilan.backend.repository.MatchRepository matchRepository;
@@ -133,12 +135,12 @@ public class ProfileServiceImpl implements ProfileService {
         parseEnum(dto.getAstroVisibility(), AstroVisibility.class, profile::setAstroVisibility);
 
         // Photos
-        updateIfPresent(dto.getProfilePhotoUrl(), profile::setProfilePhotoUrl);
-        updateIfPresent(dto.getPhotoUrl2(), profile::setPhotoUrl2);
-        updateIfPresent(dto.getPhotoUrl3(), profile::setPhotoUrl3);
-        updateIfPresent(dto.getPhotoUrl4(), profile::setPhotoUrl4);
-        updateIfPresent(dto.getPhotoUrl5(), profile::setPhotoUrl5);
-        updateIfPresent(dto.getPhotoUrl6(), profile::setPhotoUrl6);
+        replacePhotoIfPresent(profile, 0, dto.getProfilePhotoUrl());
+        replacePhotoIfPresent(profile, 1, dto.getPhotoUrl2());
+        replacePhotoIfPresent(profile, 2, dto.getPhotoUrl3());
+        replacePhotoIfPresent(profile, 3, dto.getPhotoUrl4());
+        replacePhotoIfPresent(profile, 4, dto.getPhotoUrl5());
+        replacePhotoIfPresent(profile, 5, dto.getPhotoUrl6());
 
         // Astro Details
         updateIfPresent(dto.getTimeOfBirth(), profile::setTimeOfBirth);
@@ -148,6 +150,10 @@ public class ProfileServiceImpl implements ProfileService {
 
         // 4. Verification Fields
         if (dto.getIdProofUrl() != null && !dto.getIdProofUrl().isEmpty()) {
+            if (!dto.getIdProofUrl().equals(profile.getIdProofUrl())) {
+                fileStorageService.addReference(dto.getIdProofUrl());
+                fileStorageService.releaseFile(profile.getIdProofUrl());
+            }
             profile.setIdProofUrl(dto.getIdProofUrl());
             updateIfPresent(dto.getIdProofType(), profile::setIdProofType);
             updateIfPresent(dto.getIdProofNumber(), profile::setIdProofNumber);
@@ -309,7 +315,13 @@ public class ProfileServiceImpl implements ProfileService {
                 .orElseThrow(() -> new ResourceNotFoundException("Profile not found. Please create a profile first."));
 
         // Store file and get URL
-        String photoUrl = fileStorageService.storeFile(file);
+        String photoUrl = fileStorageService.storeImage(file);
+
+        // Thumbnails, WebP and blurred preview are built in the background
+        imageDerivativeService.generateDerivatives(photoUrl);
+
+        // Replacing a photo drops the reference to the old file
+        fileStorageService.releaseFile(getPhotoUrlByIndex(profile, photoIndex));
 
         // Update profile with photo URL based on index
         updatePhotoUrlByIndex(profile, photoIndex, photoUrl);
@@ -367,6 +379,7 @@ public class ProfileServiceImpl implements ProfileService {
                 .orElseThrow(() -> new ResourceNotFoundException("Profile not found"));
 
         // Clear photo URL based on index
+        fileStorageService.releaseFile(getPhotoUrlByIndex(profile, photoIndex));
         updatePhotoUrlByIndex(profile, photoIndex, null);
 
         // Update photo count and save
@@ -399,33 +412,21 @@ public class ProfileServiceImpl implements ProfileService {
             return;
         }
 
-        // Store current primary photo URL
+        // Only move URLs between slots, never copy them: every slot holds one
+        // reference to its stored file
         String oldPrimaryUrl = profile.getProfilePhotoUrl();
-
-        // Set new primary photo
         profile.setProfilePhotoUrl(photoUrlToSetAsPrimary);
+        updatePhotoUrlByIndex(profile, photoIndex, null);
 
-        // If there was an old primary photo and it's different from the new one
-        if (oldPrimaryUrl != null && !oldPrimaryUrl.isEmpty() && !oldPrimaryUrl.equals(photoUrlToSetAsPrimary)) {
-            // Find an empty slot for the old primary photo
-            boolean moved = false;
+        // The old primary goes to the first empty slot, at the latest the one just freed
+        if (oldPrimaryUrl != null && !oldPrimaryUrl.isEmpty()) {
             for (int i = 1; i <= 5; i++) {
-                if (getPhotoUrlByIndex(profile, i) == null || getPhotoUrlByIndex(profile, i).isEmpty()) {
+                String slot = getPhotoUrlByIndex(profile, i);
+                if (slot == null || slot.isEmpty()) {
                     updatePhotoUrlByIndex(profile, i, oldPrimaryUrl);
-                    moved = true;
                     break;
                 }
             }
-
-            // If no empty slot and photoIndex > 0, swap it into the slot where the new
-            // primary came from
-            if (!moved && photoIndex > 0) {
-                updatePhotoUrlByIndex(profile, photoIndex, oldPrimaryUrl);
-            }
-        } else if (photoIndex > 0) {
-            // If setting a non-primary photo as primary and no old primary existed, clear
-            // its original slot
-            updatePhotoUrlByIndex(profile, photoIndex, null);
         }
 
         // Update photo count and save
@@ -466,6 +467,7 @@ public class ProfileServiceImpl implements ProfileService {
         String idProofUrl = fileStorageService.storeFile(file);
 
         // Update profile
+        fileStorageService.releaseFile(profile.getIdProofUrl());
         profile.setIdProofUrl(idProofUrl);
         profile.setIdProofType(idProofType);
         profile.setIdProofNumber(idProofNumber);
@@ -537,6 +539,20 @@ public class ProfileServiceImpl implements ProfileService {
 
     // ================= HELPER METHODS =================
 
+    // A photo URL set directly takes a reference of its own, the one it replaces is released
+    private void replacePhotoIfPresent(Profile profile, int index, String url) {
+        if (url == null) {
+            return;
+        }
+        String current = getPhotoUrlByIndex(profile, index);
+        if (url.equals(current)) {
+            return;
+        }
+        fileStorageService.addReference(url);
+        fileStorageService.releaseFile(current);
+        updatePhotoUrlByIndex(profile, index, url);
+    }
+
     private void updatePhotoUrlByIndex(Profile profile, int index, String url) {
         switch (index) {
             case 0 -> profile.setProfilePhotoUrl(url);
@@ -13,6 +13,7 @@ import com.punarmilan.backend.repository.ConnectionRequestRepository;
 import com.punarmilan.backend.repository.ConversationRepository;
 import com.punarmilan.backend.repository.MatchRepository;
 import com.punarmilan.backend.repository.MessageRepository;
+import com.punarmilan.backend.repository.MessageSearchTermRepository;
 import com.punarmilan.backend.repository.NotificationRepository;
 import com.punarmilan.backend.repository.PartnerPreferenceRepository;
 import com.punarmilan.backend.repository.PaymentTransactionRepository;
@@ -21,6 +22,9 @@ import com.punarmilan.backend.repository.UserViewHistoryRepository;
 import com.punarmilan.backend.repository.ProfileRepository;
 import com.punarmilan.backend.repository.UserRepository;
 import com.punarmilan.backend.security.JwtUtil;
+import com.punarmilan.backend.service.ConversationCache;
+import com.punarmilan.backend.service.FileStorageService;
+import com.punarmilan.backend.service.MessageArchiveService;
 import com.punarmilan.backend.service.UserService;
 import com.punarmilan.backend.service.VerificationService;
 
@@ -34,6 +38,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -48,6 +53,7 @@ public class UserServiceImpl implements UserService {
     private final ProfileRepository profileRepository;
     private final MatchRepository matchRepository;
     private final MessageRepository messageRepository;
+    private final MessageSearchTermRepository messageSearchTermRepository;
     private final NotificationRepository notificationRepository;
     private final PartnerPreferenceRepository partnerPreferenceRepository;
     private final UserViewHistoryRepository userViewHistoryRepository;
@@ -56,6 +62,9 @@ public class UserServiceImpl implements UserService {
     private final AuditLogRepository auditLogRepository;
     private final ConnectionRequestRepository connectionRequestRepository;
     private final ConversationRepository conversationRepository;
+    private final ConversationCache conversationCache;
+    private final FileStorageService fileStorageService;
+    private final MessageArchiveService messageArchiveService;
     private final VerificationService verificationService;
 
     @Override
@@ -123,15 +132,24 @@ public class UserServiceImpl implements UserService {
 
         // 1. Delete Social/Interaction Data
         matchRepository.deleteByUser(user);
+        // Search postings and archive blocks go with the conversations, so purge them first
+        messageSearchTermRepository.deleteByConversationsOfUser(user.getId());
+        messageArchiveService.deleteForUser(user.getId());
         messageRepository.deleteByUser(user);
         notificationRepository.deleteByUser(user);
         connectionRequestRepository.deleteByUser(user);
         conversationRepository.deleteByUser(user);
+        conversationCache.evictUser(user.getId());
         userViewHistoryRepository.deleteByUser(user);
 
         // 2. Delete Profile and Preferences
         profileRepository.findByUser(user).ifPresent(profile -> {
             partnerPreferenceRepository.deleteByProfile(profile);
+            // Photos and ID proof lose their reference, the cleanup job purges them
+            Stream.of(profile.getProfilePhotoUrl(), profile.getPhotoUrl2(), profile.getPhotoUrl3(),
+                    profile.getPhotoUrl4(), profile.getPhotoUrl5(), profile.getPhotoUrl6(),
+                    profile.getIdProofUrl())
+                    .forEach(fileStorageService::releaseFile);
             profileRepository.delete(profile);
         });
 
@@ -0,0 +1,50 @@
+package com.punarmilan.backend.config;
+
+import com.punarmilan.backend.repository.DataMigrationRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * The column is altered once and the migration recorded; later startups
+ * leave the table alone.
+ */
+class NotificationTypeColumnMigrationTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private DataMigrationRepository dataMigrationRepository;
+    private NotificationTypeColumnMigration migration;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        dataMigrationRepository = mock(DataMigrationRepository.class);
+        migration = new NotificationTypeColumnMigration(jdbcTemplate, dataMigrationRepository);
+    }
+
+    @Test
+    void firstStartupAltersTheColumnAndRecordsIt() {
+        when(dataMigrationRepository.existsById(NotificationTypeColumnMigration.NAME)).thenReturn(false);
+
+        migration.widenNotificationType();
+
+        verify(jdbcTemplate).execute("ALTER TABLE notifications MODIFY COLUMN type VARCHAR(40) NOT NULL");
+        verify(dataMigrationRepository).markApplied(eq(NotificationTypeColumnMigration.NAME), any());
+    }
+
+    @Test
+    void laterStartupsLeaveTheTableAlone() {
+        when(dataMigrationRepository.existsById(NotificationTypeColumnMigration.NAME)).thenReturn(true);
+
+        migration.widenNotificationType();
+
+        verifyNoInteractions(jdbcTemplate);
+    }
+}
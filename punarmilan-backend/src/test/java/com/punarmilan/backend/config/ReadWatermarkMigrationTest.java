@@ -0,0 +1,51 @@
+package com.punarmilan.backend.config;
+
+import com.punarmilan.backend.repository.ConversationRepository;
+import com.punarmilan.backend.repository.DataMigrationRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * The backfill runs on the first startup and records itself; every later
+ * startup only reads the marker row.
+ */
+class ReadWatermarkMigrationTest {
+
+    private ConversationRepository conversationRepository;
+    private DataMigrationRepository dataMigrationRepository;
+    private ReadWatermarkMigration migration;
+
+    @BeforeEach
+    void setUp() {
+        conversationRepository = mock(ConversationRepository.class);
+        dataMigrationRepository = mock(DataMigrationRepository.class);
+        migration = new ReadWatermarkMigration(conversationRepository, dataMigrationRepository);
+    }
+
+    @Test
+    void firstStartupBackfillsAndRecordsTheMigration() {
+        when(dataMigrationRepository.existsById(ReadWatermarkMigration.NAME)).thenReturn(false);
+
+        migration.backfillReadWatermarks();
+
+        verify(conversationRepository).backfillReadWatermarksUser1();
+        verify(conversationRepository).backfillReadWatermarksUser2();
+        verify(dataMigrationRepository).markApplied(eq(ReadWatermarkMigration.NAME), any());
+    }
+
+    @Test
+    void laterStartupsSkipTheBackfill() {
+        when(dataMigrationRepository.existsById(ReadWatermarkMigration.NAME)).thenReturn(true);
+
+        migration.backfillReadWatermarks();
+
+        verifyNoInteractions(conversationRepository);
+    }
+}
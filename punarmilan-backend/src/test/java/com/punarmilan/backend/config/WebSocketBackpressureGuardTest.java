@@ -0,0 +1,183 @@
+package com.punarmilan.backend.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Harness for the outbound channel with simulated clients. Each session
+ * behaves like Spring's concurrent session decorator: one thread flushes while
+ * the others buffer and return, and a slow client makes every flush take long.
+ */
+class WebSocketBackpressureGuardTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private WebSocketBackpressureGuard guard;
+    private ExecutorSubscribableChannel channel;
+
+    private final Map<String, List<String>> delivered = new ConcurrentHashMap<>();
+    private final Map<String, Long> flushMillis = new ConcurrentHashMap<>();
+    private final Map<String, ReentrantLock> flushLocks = new ConcurrentHashMap<>();
+    private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
+    private volatile CountDownLatch gate;
+
+    @AfterEach
+    void tearDown() {
+        if (gate != null) {
+            gate.countDown();
+        }
+        guard.shutdown();
+    }
+
+    @Test
+    void slowClientLosesTypingFramesAndIsEvictedWhileFastClientGetsEverything() throws Exception {
+        start(4, 1000, 500, 1000);
+        connect("fast", 0);
+        connect("slow", 100);
+
+        for (int i = 0; i < 100; i++) {
+            for (String session : List.of("fast", "slow")) {
+                channel.send(frame(session, "/user/queue/messages", "m" + i));
+                channel.send(frame(session, "/user/queue/typing", "t" + i));
+            }
+            Thread.sleep(10);
+        }
+
+        verify(sessions.get("slow"), timeout(5000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+        awaitDelivered("fast", 200);
+        verify(sessions.get("fast"), never()).close(CloseStatus.SESSION_NOT_RELIABLE);
+
+        assertTrue(count("websocket.outbound.dropped") > 0);
+        assertEquals(1.0, count("websocket.outbound.evicted"));
+        assertTrue(delivered.getOrDefault("slow", List.of()).size() < 200);
+    }
+
+    @Test
+    void queuePressureDropsTypingForEveryoneButKeepsMessages() throws Exception {
+        start(1, 1000, 20, 1000);
+        connect("blocker", 0);
+        connect("busy", 0);
+        connect("idle", 0);
+        gate = new CountDownLatch(1);
+
+        channel.send(frame("blocker", "/user/queue/messages", "stuck"));
+        for (int i = 0; i < 30; i++) {
+            channel.send(frame("busy", "/user/queue/messages", "m" + i));
+        }
+        for (int i = 0; i < 10; i++) {
+            channel.send(frame("idle", "/user/queue/typing", "t" + i));
+            channel.send(frame("idle", "/user/queue/presence", "p" + i));
+        }
+        gate.countDown();
+
+        awaitDelivered("busy", 30);
+        assertEquals(20.0, count("websocket.outbound.dropped"));
+        assertTrue(delivered.getOrDefault("idle", List.of()).isEmpty());
+        assertEquals(0.0, count("websocket.outbound.evicted"));
+    }
+
+    @Test
+    void sessionReachingHardLimitIsClosed() throws Exception {
+        start(1, 1000, 1000, 25);
+        connect("blocker", 0);
+        connect("flooded", 0);
+        gate = new CountDownLatch(1);
+
+        channel.send(frame("blocker", "/user/queue/messages", "stuck"));
+        for (int i = 0; i < 40; i++) {
+            channel.send(frame("flooded", "/user/queue/messages", "m" + i));
+        }
+        gate.countDown();
+
+        verify(sessions.get("flooded"), timeout(2000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+        assertEquals(1.0, count("websocket.outbound.evicted"));
+    }
+
+    // ==================== HARNESS ====================
+
+    private void start(int poolSize, int queueCapacity, int pressureQueue, int hardPendingLimit) {
+        meterRegistry = new SimpleMeterRegistry();
+        guard = new WebSocketBackpressureGuard(meterRegistry, poolSize, queueCapacity, pressureQueue,
+                List.of("/queue/typing", "/queue/presence", "/queue/online-status"),
+                5, hardPendingLimit, 50, 300, 1000);
+        channel = new ExecutorSubscribableChannel(guard.getOutboundExecutor());
+        channel.addInterceptor(guard);
+        channel.subscribe(this::deliver);
+    }
+
+    private void connect(String sessionId, long flush) throws Exception {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(sessionId);
+        sessions.put(sessionId, session);
+        flushMillis.put(sessionId, flush);
+        flushLocks.put(sessionId, new ReentrantLock());
+        guard.decorate(mock(WebSocketHandler.class)).afterConnectionEstablished(session);
+    }
+
+    private void deliver(Message<?> message) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        if ("blocker".equals(sessionId) && gate != null) {
+            try {
+                gate.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        delivered.computeIfAbsent(sessionId, key -> new CopyOnWriteArrayList<>()).add((String) message.getPayload());
+
+        ReentrantLock lock = flushLocks.get(sessionId);
+        if (lock.tryLock()) {
+            try {
+                Thread.sleep(flushMillis.get(sessionId));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static Message<String> frame(String sessionId, String destination, String payload) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setDestination(destination);
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(payload, accessor.getMessageHeaders());
+    }
+
+    private void awaitDelivered(String sessionId, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (delivered.getOrDefault(sessionId, List.of()).size() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, delivered.getOrDefault(sessionId, List.of()).size());
+    }
+
+    private double count(String name) {
+        return meterRegistry.get(name).counter().count();
+    }
+}
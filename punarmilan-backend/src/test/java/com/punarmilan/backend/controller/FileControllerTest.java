@@ -0,0 +1,113 @@
+package com.punarmilan.backend.controller;
+
+import com.punarmilan.backend.service.FileStorageService;
+import com.punarmilan.backend.service.impl.LocalStorageBackend;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Downloads a content addressed file from a local backend: the hash is the
+ * ETag, a matching If-None-Match is a 304, a single range is a 206 and a
+ * range past the end is a 416. A stale If-Range gets the whole body.
+ */
+class FileControllerTest {
+
+    private static final String HASH = "a".repeat(64);
+    private static final String NAME = HASH + ".jpg";
+    private static final String ETAG = "\"" + HASH + "\"";
+
+    @TempDir
+    Path uploadDir;
+
+    private FileController controller;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Files.writeString(uploadDir.resolve(NAME), "0123456789", StandardCharsets.US_ASCII);
+        FileStorageService fileStorageService = mock(FileStorageService.class);
+        when(fileStorageService.getStorageBackend()).thenReturn(new LocalStorageBackend(uploadDir.toString()));
+        controller = new FileController(fileStorageService);
+    }
+
+    @Test
+    void fullDownloadCarriesTheContentHashAsETag() throws Exception {
+        MockHttpServletResponse response = download(new MockHttpServletRequest("GET", "/uploads/" + NAME));
+
+        assertEquals(200, response.getStatus());
+        assertEquals(ETAG, response.getHeader("ETag"));
+        assertEquals("bytes", response.getHeader("Accept-Ranges"));
+        assertEquals("0123456789", response.getContentAsString());
+    }
+
+    @Test
+    void matchingETagIsNotModified() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/uploads/" + NAME);
+        request.addHeader("If-None-Match", ETAG);
+
+        MockHttpServletResponse response = download(request);
+
+        assertEquals(304, response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    void singleRangeIsPartialContent() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/uploads/" + NAME);
+        request.addHeader("Range", "bytes=2-5");
+
+        MockHttpServletResponse response = download(request);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 2-5/10", response.getHeader("Content-Range"));
+        assertEquals(4, response.getContentLengthLong());
+        assertEquals("2345", response.getContentAsString());
+    }
+
+    @Test
+    void rangePastTheEndIsNotSatisfiable() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/uploads/" + NAME);
+        request.addHeader("Range", "bytes=20-30");
+
+        MockHttpServletResponse response = download(request);
+
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */10", response.getHeader("Content-Range"));
+    }
+
+    @Test
+    void staleIfRangeGetsTheWholeBody() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/uploads/" + NAME);
+        request.addHeader("Range", "bytes=2-5");
+        request.addHeader("If-Range", "\"something-else\"");
+
+        MockHttpServletResponse response = download(request);
+
+        assertEquals(200, response.getStatus());
+        assertEquals("0123456789", response.getContentAsString());
+    }
+
+    @Test
+    void pathTraversalIsNotFound() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        controller.download("../" + NAME, new MockHttpServletRequest("GET", "/uploads/x"), response);
+
+        assertEquals(404, response.getStatus());
+    }
+
+    private MockHttpServletResponse download(MockHttpServletRequest request) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        controller.download(NAME, request, response);
+        return response;
+    }
+}
@@ -0,0 +1,118 @@
+package com.punarmilan.backend.event;
+
+import com.punarmilan.backend.entity.User;
+import com.punarmilan.backend.service.EmailService;
+import com.punarmilan.backend.service.NotificationPreferenceCache;
+import com.punarmilan.backend.service.NotificationRollupService;
+import com.punarmilan.backend.service.NotificationService;
+import com.punarmilan.backend.service.NotificationService.NewNotification;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Events arriving within the linger time go out as one grouped insert. Once
+ * the queue is full an event is handled on the overflow thread, outside the
+ * publisher's finished transaction, and the publisher waits for it.
+ */
+class NotificationEventListenerTest {
+
+    private NotificationService notificationService;
+    private NotificationPreferenceCache preferenceCache;
+    private NotificationEventListener listener;
+
+    @BeforeEach
+    void setUp() {
+        notificationService = mock(NotificationService.class);
+        preferenceCache = mock(NotificationPreferenceCache.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        listener.stop();
+    }
+
+    @Test
+    void eventsWithinTheLingerShareOneInsert() {
+        start(100, 50, 300);
+
+        listener.handleNotificationEvent(event(1L));
+        listener.handleNotificationEvent(event(2L));
+        listener.handleNotificationEvent(event(3L));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<NewNotification>> batch = ArgumentCaptor.forClass(List.class);
+        verify(notificationService, timeout(2000)).createNotifications(batch.capture());
+        assertEquals(List.of(1L, 2L, 3L), batch.getValue().stream().map(NewNotification::userId).toList());
+        verify(preferenceCache, times(1)).getAll(anyCollection());
+    }
+
+    @Test
+    void fullQueueIsHandledOutsideThePublishersTransaction() throws Exception {
+        CountDownLatch busy = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Map<Long, String> handledOn = new ConcurrentHashMap<>();
+        doAnswer(invocation -> {
+            Long userId = invocation.<List<NewNotification>>getArgument(0).get(0).userId();
+            handledOn.put(userId, Thread.currentThread().getName() + ":"
+                    + TransactionSynchronizationManager.isSynchronizationActive());
+            if (userId == 1L) {
+                busy.countDown();
+                release.await(5, TimeUnit.SECONDS);
+            }
+            return null;
+        }).when(notificationService).createNotifications(anyList());
+        start(1, 1, 0);
+
+        // The worker is stuck on 1 and 2 fills the queue
+        listener.handleNotificationEvent(event(1L));
+        assertTrue(busy.await(2, TimeUnit.SECONDS));
+        listener.handleNotificationEvent(event(2L));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            listener.handleNotificationEvent(event(3L));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        // Already done by the time the publisher gets control back
+        assertEquals("notification-events-overflow:false", handledOn.get(3L));
+        release.countDown();
+        verify(notificationService, timeout(2000).times(3)).createNotifications(anyList());
+        assertEquals("notification-events:false", handledOn.get(2L));
+    }
+
+    private void start(int queueCapacity, int batchSize, long lingerMillis) {
+        listener = new NotificationEventListener(mock(EmailService.class), notificationService, preferenceCache,
+                mock(NotificationRollupService.class), new SimpleMeterRegistry(), queueCapacity, batchSize,
+                lingerMillis);
+        listener.start();
+    }
+
+    private static NotificationEvent event(Long recipientId) {
+        User recipient = new User();
+        recipient.setId(recipientId);
+        return new NotificationEvent(NotificationEventListenerTest.class, recipient, null, "NEW_MATCH",
+                "You have a new match", null);
+    }
+}
@@ -0,0 +1,54 @@
+package com.punarmilan.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Stopping waits for the batch in flight instead of interrupting it, and only
+ * then drains what is left on the stopping thread, so the two never overlap.
+ */
+class BatchDrainerTest {
+
+    @Test
+    void stopWaitsForTheBatchInFlightBeforeDraining() throws Exception {
+        BlockingQueue<Integer> queue = new LinkedBlockingQueue<>();
+        List<String> batches = new CopyOnWriteArrayList<>();
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        CountDownLatch busy = new CountDownLatch(1);
+        BatchDrainer<Integer> drainer = new BatchDrainer<>("drainer-test", queue, 10, 0, item -> 1, batch -> {
+            if (active.incrementAndGet() > 1) {
+                overlaps.incrementAndGet();
+            }
+            busy.countDown();
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                batches.add("interrupted");
+            }
+            batches.add(Thread.currentThread().getName() + ":" + batch);
+            active.decrementAndGet();
+        });
+        drainer.start();
+
+        queue.add(1);
+        assertTrue(busy.await(2, TimeUnit.SECONDS));
+        queue.add(2);
+        queue.add(3);
+        drainer.stop();
+
+        assertEquals(List.of("drainer-test:[1]", Thread.currentThread().getName() + ":[2, 3]"), batches);
+        assertEquals(0, overlaps.get());
+    }
+}
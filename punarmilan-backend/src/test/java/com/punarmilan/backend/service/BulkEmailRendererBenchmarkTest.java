@@ -0,0 +1,112 @@
+package com.punarmilan.backend.service;
+
+import com.punarmilan.backend.entity.Profile;
+import com.punarmilan.backend.entity.User;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Renders the profile blaster for a few thousand recipients both ways, a
+ * Thymeleaf pass each versus one prepared body, checks they produce the same
+ * HTML and logs the messages rendered per second of each. The prepared body
+ * must be at least twice as fast, far below what it measures, so a slow or
+ * busy machine doesn't fail the build. Profile text that looks like a field
+ * marker comes out as written.
+ */
+@Slf4j
+class BulkEmailRendererBenchmarkTest {
+
+    private static final int RECIPIENTS = 5_000;
+    private static final String[] NAMES = { "Asha", "Rohan", "O'Brien", "Meera & Co", "<Dev>" };
+
+    private TemplateEngine templateEngine;
+    private BulkEmailRenderer renderer;
+    private Profile profile;
+
+    @BeforeEach
+    void setUp() {
+        ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
+        resolver.setPrefix("templates/");
+        resolver.setSuffix(".html");
+        resolver.setTemplateMode(TemplateMode.HTML);
+        resolver.setCharacterEncoding("UTF-8");
+        templateEngine = new SpringTemplateEngine();
+        templateEngine.setTemplateResolver(resolver);
+        renderer = new BulkEmailRenderer(templateEngine, 8);
+
+        User owner = new User();
+        owner.setId(7L);
+        profile = new Profile();
+        profile.setId(30L);
+        profile.setUser(owner);
+        profile.setFullName("Priya Sharma");
+        profile.setDateOfBirth(LocalDate.of(1996, 4, 2));
+        profile.setCity("Pune");
+        profile.setReligion("Hindu");
+        profile.setOccupation("Architect");
+        profile.setAboutMe("Loves trekking, books & filter coffee.");
+    }
+
+    @Test
+    void preparedBodyMatchesAFullRenderAndIsFaster() {
+        for (String name : NAMES) {
+            assertEquals(processOnce(name), prepare().render(name));
+        }
+
+        // Warm up both paths before timing them
+        for (int i = 0; i < 500; i++) {
+            processOnce(NAMES[i % NAMES.length]);
+            prepare().render(NAMES[i % NAMES.length]);
+        }
+
+        long started = System.nanoTime();
+        for (int i = 0; i < RECIPIENTS; i++) {
+            processOnce(NAMES[i % NAMES.length]);
+        }
+        double perRecipient = RECIPIENTS / ((System.nanoTime() - started) / 1e9);
+
+        started = System.nanoTime();
+        for (int i = 0; i < RECIPIENTS; i++) {
+            prepare().render(NAMES[i % NAMES.length]);
+        }
+        double prepared = RECIPIENTS / ((System.nanoTime() - started) / 1e9);
+
+        log.info("Profile blaster: {} msgs/s rendering per recipient, {} msgs/s prepared once ({}x)",
+                Math.round(perRecipient), Math.round(prepared), Math.round(prepared / perRecipient));
+        assertTrue(prepared > 2 * perRecipient,
+                "prepared " + Math.round(prepared) + " msgs/s vs " + Math.round(perRecipient) + " per recipient");
+    }
+
+    @Test
+    void markerLookalikesInProfileTextAreNotFields() {
+        profile.setAboutMe("%%PM_FIELD_7%% and %%PM_x_%% are just text");
+        profile.setOccupation("%%PM_");
+
+        assertEquals(processOnce("Asha"), prepare().render("Asha"));
+    }
+
+    private String processOnce(String firstName) {
+        Context context = new Context();
+        context.setVariable("frontendUrl", "https://punarmilan.com");
+        context.setVariable("profile", profile);
+        context.setVariable("firstName", firstName);
+        return templateEngine.process("email/profile-blaster", context);
+    }
+
+    private BulkEmailRenderer.Prepared prepare() {
+        return renderer.prepare("profile-blaster:30", "email/profile-blaster",
+                () -> Map.of("frontendUrl", "https://punarmilan.com", "profile", profile), "firstName");
+    }
+}
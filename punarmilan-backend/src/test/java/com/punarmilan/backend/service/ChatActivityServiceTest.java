@@ -0,0 +1,137 @@
+package com.punarmilan.backend.service;
+
+import com.punarmilan.backend.entity.Conversation;
+import com.punarmilan.backend.entity.User;
+import com.punarmilan.backend.repository.ConversationRepository;
+import com.punarmilan.backend.service.ChatActivityService.Activity;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+/**
+ * Load test for the typing channel: thousands of typists hammering at once
+ * must produce one frame each per window and never reach the database.
+ */
+class ChatActivityServiceTest {
+
+    private static final int CONVERSATIONS = 2000;
+    private static final int FRAMES_PER_TYPIST = 50;
+
+    private ConversationRepository conversationRepository;
+    private ConversationCache conversationCache;
+    private CountingTemplate messagingTemplate;
+    private ChatActivityService chatActivityService;
+
+    @BeforeEach
+    void setUp() {
+        conversationRepository = mock(ConversationRepository.class);
+        conversationCache = new ConversationCache(conversationRepository, mock(RedisTemplate.class),
+                CONVERSATIONS * 2, 60);
+        messagingTemplate = new CountingTemplate();
+        chatActivityService = new ChatActivityService(conversationCache, messagingTemplate, 60000);
+
+        // Users 2i+1 and 2i+2 share conversation i+1, as if both had opened it
+        for (int i = 0; i < CONVERSATIONS; i++) {
+            conversationCache.put(conversation(i + 1L, 2L * i + 1, 2L * i + 2));
+        }
+    }
+
+    @Test
+    void thousandsOfConcurrentTypistsAreCoalescedWithoutDatabaseAccess() throws Exception {
+        int typists = CONVERSATIONS * 2;
+        ExecutorService pool = Executors.newFixedThreadPool(64);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < typists; t++) {
+            long userId = t + 1L;
+            long conversationId = t / 2 + 1L;
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int f = 0; f < FRAMES_PER_TYPIST; f++) {
+                    chatActivityService.publish(userId, false, conversationId, Activity.TYPING, true);
+                }
+                return null;
+            }));
+        }
+
+        long began = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - began);
+        pool.shutdown();
+
+        assertEquals(typists, messagingTemplate.sent.get());
+        assertEquals(typists, messagingTemplate.recipients.size());
+        messagingTemplate.recipients.values().forEach(count -> assertEquals(1, count.get()));
+        verifyNoInteractions(conversationRepository);
+        assertTrue(elapsedMillis < 10000, "Took " + elapsedMillis + "ms for " + typists * FRAMES_PER_TYPIST + " frames");
+    }
+
+    @Test
+    void stopIsForwardedOnlyAfterAStart() {
+        assertFalse(chatActivityService.publish(1L, false, 1L, Activity.TYPING, false));
+        assertTrue(chatActivityService.publish(1L, false, 1L, Activity.TYPING, true));
+        assertFalse(chatActivityService.publish(1L, false, 1L, Activity.TYPING, true));
+        assertTrue(chatActivityService.publish(1L, false, 1L, Activity.TYPING, false));
+        assertFalse(chatActivityService.publish(1L, false, 1L, Activity.TYPING, false));
+
+        assertEquals(2, messagingTemplate.sent.get());
+    }
+
+    @Test
+    void nonParticipantsAndHiddenUsersAreDropped() {
+        assertFalse(chatActivityService.publish(3L, false, 1L, Activity.TYPING, true));
+        assertFalse(chatActivityService.publish(1L, true, 1L, Activity.TYPING, true));
+
+        assertEquals(0, messagingTemplate.sent.get());
+        verifyNoInteractions(conversationRepository);
+    }
+
+    private static Conversation conversation(Long id, Long user1Id, Long user2Id) {
+        User user1 = new User();
+        user1.setId(user1Id);
+        User user2 = new User();
+        user2.setId(user2Id);
+        Conversation conversation = new Conversation();
+        conversation.setId(id);
+        conversation.setUser1(user1);
+        conversation.setUser2(user2);
+        return conversation;
+    }
+
+    private static class CountingTemplate extends SimpMessagingTemplate {
+
+        final AtomicInteger sent = new AtomicInteger();
+        final ConcurrentHashMap<String, AtomicInteger> recipients = new ConcurrentHashMap<>();
+
+        CountingTemplate() {
+            super((message, timeout) -> true);
+        }
+
+        @Override
+        public void convertAndSendToUser(String user, String destination, Object payload) {
+            sent.incrementAndGet();
+            recipients.computeIfAbsent(user, key -> new AtomicInteger()).incrementAndGet();
+        }
+    }
+}
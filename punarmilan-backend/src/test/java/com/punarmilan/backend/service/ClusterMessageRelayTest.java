@@ -0,0 +1,187 @@
+package com.punarmilan.backend.service;
+
+import com.punarmilan.backend.config.ClusterUserDestinationInterceptor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Two nodes on one in-memory Redis: a frame for a user whose session lives
+ * on the other node is relayed there once, under the user id the principal
+ * carries, and is not relayed again from the receiving node.
+ */
+class ClusterMessageRelayTest {
+
+    private static final GenericJackson2JsonRedisSerializer SERIALIZER = new GenericJackson2JsonRedisSerializer();
+
+    private final Map<String, Map<Object, Object>> hashes = new ConcurrentHashMap<>();
+    private final Map<String, Map<Object, Double>> sortedSets = new ConcurrentHashMap<>();
+    private final Map<String, ClusterMessageRelay> subscribers = new ConcurrentHashMap<>();
+
+    private Node nodeA;
+    private Node nodeB;
+
+    private record Node(ClusterSessionRegistry registry, ClusterMessageRelay relay,
+            ClusterUserDestinationInterceptor interceptor, List<Message<?>> delivered) {
+    }
+
+    @BeforeEach
+    void setUp() {
+        RedisTemplate<String, Object> redis = inMemoryRedis();
+        nodeA = node(redis, "node-a");
+        nodeB = node(redis, "node-b");
+        // A node learns about the other one on its next heartbeat
+        nodeA.registry().heartbeat();
+        nodeB.registry().heartbeat();
+        nodeA.registry().heartbeat();
+    }
+
+    @Test
+    void frameForAUserOnTheOtherNodeIsRelayedOnce() {
+        connect(nodeB, "s1", "42");
+
+        Message<?> frame = userMessage("/user/42/queue/messages", "hi");
+        nodeA.interceptor().preSend(frame, mock(MessageChannel.class));
+
+        assertEquals(1, nodeB.delivered().size());
+        Message<?> relayed = nodeB.delivered().get(0);
+        assertEquals("/user/42/queue/messages", SimpMessageHeaderAccessor.getDestination(relayed.getHeaders()));
+        assertArrayEquals("hi".getBytes(StandardCharsets.UTF_8), (byte[]) relayed.getPayload());
+        assertTrue(nodeA.delivered().isEmpty());
+
+        // The receiving node hands the replay to its own broker without forwarding it back
+        nodeB.interceptor().preSend(relayed, mock(MessageChannel.class));
+        assertTrue(nodeA.delivered().isEmpty());
+    }
+
+    @Test
+    void usersWithoutRemoteSessionsAreNotRelayed() {
+        connect(nodeA, "s1", "42");
+        connect(nodeB, "s2", "7");
+
+        nodeA.interceptor().preSend(userMessage("/user/42/queue/messages", "local"), mock(MessageChannel.class));
+        assertTrue(nodeB.delivered().isEmpty());
+
+        nodeB.registry().onDisconnect(new SessionDisconnectEvent(this,
+                MessageBuilder.withPayload(new byte[0]).build(), "s2", CloseStatus.NORMAL));
+        nodeA.interceptor().preSend(userMessage("/user/7/queue/messages", "gone"), mock(MessageChannel.class));
+        assertTrue(nodeB.delivered().isEmpty());
+    }
+
+    private Node node(RedisTemplate<String, Object> redis, String id) {
+        ClusterSessionRegistry registry = new ClusterSessionRegistry(redis, new NodeIdentity(id), 30);
+        List<Message<?>> delivered = new ArrayList<>();
+        MessageChannel brokerChannel = (message, timeout) -> delivered.add(message);
+        ClusterMessageRelay relay = new ClusterMessageRelay(redis, registry, brokerChannel, new SimpleMeterRegistry());
+        subscribers.put(relay.getInboundChannel(), relay);
+        return new Node(registry, relay, new ClusterUserDestinationInterceptor(relay), delivered);
+    }
+
+    private void connect(Node node, String sessionId, String userId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT_ACK);
+        accessor.setSessionId(sessionId);
+        Message<byte[]> connectAck = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+        // Principal as WebSocketAuthInterceptor builds it
+        node.registry().onConnected(new SessionConnectedEvent(this, connectAck,
+                new UsernamePasswordAuthenticationToken(userId, null, List.of())));
+    }
+
+    private static Message<?> userMessage(String destination, String body) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage(body.getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders());
+    }
+
+    // Just the hash, sorted set and pub/sub calls the registry and relay make
+    @SuppressWarnings("unchecked")
+    private RedisTemplate<String, Object> inMemoryRedis() {
+        RedisTemplate<String, Object> redis = mock(RedisTemplate.class);
+        HashOperations<String, Object, Object> hashOps = mock(HashOperations.class);
+        ZSetOperations<String, Object> zSetOps = mock(ZSetOperations.class);
+        doReturn(hashOps).when(redis).opsForHash();
+        doReturn(zSetOps).when(redis).opsForZSet();
+        doReturn(SERIALIZER).when(redis).getValueSerializer();
+
+        doAnswer(inv -> {
+            hashes.computeIfAbsent(inv.getArgument(0), k -> new ConcurrentHashMap<>())
+                    .put(inv.getArgument(1), inv.getArgument(2));
+            return null;
+        }).when(hashOps).put(anyString(), any(), any());
+        doAnswer(inv -> {
+            Map<Object, Object> hash = hashes.get(inv.<String>getArgument(0));
+            if (hash != null) {
+                hash.remove(inv.getArgument(1));
+            }
+            return 1L;
+        }).when(hashOps).delete(anyString(), any());
+        when(hashOps.entries(anyString()))
+                .thenAnswer(inv -> new HashMap<>(hashes.getOrDefault(inv.<String>getArgument(0), Map.of())));
+
+        when(zSetOps.add(anyString(), any(), anyDouble())).thenAnswer(inv -> {
+            sortedSets.computeIfAbsent(inv.getArgument(0), k -> new ConcurrentHashMap<>())
+                    .put(inv.getArgument(1), inv.<Double>getArgument(2));
+            return true;
+        });
+        when(zSetOps.rangeByScore(anyString(), anyDouble(), anyDouble())).thenAnswer(inv -> {
+            double min = inv.getArgument(1);
+            double max = inv.getArgument(2);
+            Set<Object> members = new LinkedHashSet<>();
+            sortedSets.getOrDefault(inv.<String>getArgument(0), Map.of()).forEach((member, score) -> {
+                if (score >= min && score <= max) {
+                    members.add(member);
+                }
+            });
+            return members;
+        });
+
+        when(redis.executePipelined(any(SessionCallback.class))).thenAnswer(inv -> {
+            inv.<SessionCallback<Object>>getArgument(0).execute(redis);
+            return List.of();
+        });
+        doAnswer(inv -> {
+            String channel = inv.getArgument(0);
+            ClusterMessageRelay subscriber = subscribers.get(channel);
+            if (subscriber != null) {
+                subscriber.onMessage(new DefaultMessage(channel.getBytes(StandardCharsets.UTF_8),
+                        SERIALIZER.serialize(inv.getArgument(1))), null);
+            }
+            return 1L;
+        }).when(redis).convertAndSend(anyString(), any());
+        return redis;
+    }
+}
@@ -0,0 +1,113 @@
+package com.punarmilan.backend.service;
+
+import com.punarmilan.backend.entity.Conversation;
+import com.punarmilan.backend.entity.User;
+import com.punarmilan.backend.repository.ConversationRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Two nodes sharing one channel: a block on one node evicts the pair on the
+ * other, a load that raced with an eviction is not cached, and an expired
+ * entry is not handed out by peek.
+ */
+class ConversationCacheTest {
+
+    private static final GenericJackson2JsonRedisSerializer SERIALIZER = new GenericJackson2JsonRedisSerializer();
+
+    private ConversationRepository conversationRepository;
+    private RedisTemplate<String, Object> redisTemplate;
+    private ConversationCache cache;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        conversationRepository = mock(ConversationRepository.class);
+        redisTemplate = mock(RedisTemplate.class);
+        doReturn(SERIALIZER).when(redisTemplate).getValueSerializer();
+        cache = new ConversationCache(conversationRepository, redisTemplate, 100, 60);
+    }
+
+    @Test
+    void evictionIsBroadcastAndAppliedByOtherNodes() {
+        cache.put(conversation(10L, 1L, 2L, false));
+        ConversationCache otherNode = new ConversationCache(conversationRepository, redisTemplate, 100, 60);
+        otherNode.put(conversation(10L, 1L, 2L, false));
+        otherNode.put(conversation(11L, 1L, 3L, false));
+
+        cache.evict(2L, 1L);
+        verify(redisTemplate).convertAndSend(eq(ConversationCache.INVALIDATION_CHANNEL), eq("1:2"));
+        otherNode.onMessage(message("1:2"), null);
+
+        assertTrue(otherNode.peek(10L).isEmpty());
+        assertTrue(otherNode.peek(11L).isPresent());
+
+        cache.evictUser(3L);
+        verify(redisTemplate).convertAndSend(eq(ConversationCache.INVALIDATION_CHANNEL), eq("user:3"));
+        otherNode.onMessage(message("user:3"), null);
+
+        assertTrue(otherNode.peek(11L).isEmpty());
+    }
+
+    @Test
+    void loadRacingAnEvictionIsNotCached() {
+        // The block lands while the old, unblocked row is being read
+        when(conversationRepository.findById(10L)).thenAnswer(invocation -> {
+            cache.onMessage(message("1:2"), null);
+            return Optional.of(conversation(10L, 1L, 2L, false));
+        });
+
+        assertFalse(cache.findById(10L).orElseThrow().isBlocked());
+        assertTrue(cache.peek(10L).isEmpty());
+
+        when(conversationRepository.findById(10L)).thenReturn(Optional.of(conversation(10L, 1L, 2L, true)));
+        assertTrue(cache.findById(10L).orElseThrow().isBlocked());
+        verify(conversationRepository, times(2)).findById(10L);
+    }
+
+    @Test
+    void expiredEntryIsNotPeekedAndReloadsTheBlock() throws Exception {
+        ConversationCache shortLived = new ConversationCache(conversationRepository, redisTemplate, 100, 0);
+        shortLived.put(conversation(10L, 1L, 2L, false));
+        Thread.sleep(5);
+
+        assertTrue(shortLived.peek(10L).isEmpty());
+
+        // The activity path falls back to a load and sees the block
+        when(conversationRepository.findById(10L)).thenReturn(Optional.of(conversation(10L, 1L, 2L, true)));
+        SimpMessagingTemplate messagingTemplate = mock(SimpMessagingTemplate.class);
+        ChatActivityService activity = new ChatActivityService(shortLived, messagingTemplate, 2000);
+        assertFalse(activity.publish(1L, false, 10L, ChatActivityService.Activity.TYPING, true));
+        verifyNoInteractions(messagingTemplate);
+    }
+
+    private static DefaultMessage message(String key) {
+        return new DefaultMessage(ConversationCache.INVALIDATION_CHANNEL.getBytes(StandardCharsets.UTF_8),
+                SERIALIZER.serialize(key));
+    }
+
+    private static Conversation conversation(Long id, Long user1Id, Long user2Id, boolean blocked) {
+        User user1 = new User();
+        user1.setId(user1Id);
+        User user2 = new User();
+        user2.setId(user2Id);
+        return Conversation.builder().id(id).user1(user1).user2(user2).blocked(blocked).build();
+    }
+}
@@ -0,0 +1,164 @@
+package com.punarmilan.backend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.punarmilan.backend.dto.ConversationDeltaDto;
+import com.punarmilan.backend.dto.ConversationDto;
+import com.punarmilan.backend.dto.PhotoDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Replays a burst of chat traffic through the old full-row frames and the
+ * delta aggregator, and compares frame counts and serialized bytes.
+ */
+class ConversationDeltaAggregatorTest {
+
+    private static final int CHATS = 200;
+    private static final int MESSAGES_PER_CHAT = 20;
+    private static final int TICKS = 4;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final List<Object> pushed = new ArrayList<>();
+    private ConversationDeltaAggregator aggregator;
+    private RealtimeDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        SimpMessagingTemplate template = new SimpMessagingTemplate((message, timeout) -> true) {
+            @Override
+            public void convertAndSendToUser(String user, String destination, Object payload) {
+                synchronized (pushed) {
+                    pushed.add(payload);
+                }
+            }
+        };
+        dispatcher = new RealtimeDispatcher(template, new SimpleMeterRegistry(), 2, 200, 1000, 50);
+        dispatcher.start();
+        aggregator = new ConversationDeltaAggregator(dispatcher, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void changesWithinATickMergeIntoOneFramePerUser() throws Exception {
+        aggregator.record(1L, delta(10L, "hi", 1));
+        aggregator.record(1L, delta(10L, "how are you", 2));
+        aggregator.record(1L, ConversationDeltaDto.builder().conversationId(11L).unreadCount(0).build());
+        aggregator.flush();
+        awaitPushed(1);
+
+        assertEquals(1, pushed.size());
+        @SuppressWarnings("unchecked")
+        List<ConversationDeltaDto> frame = (List<ConversationDeltaDto>) pushed.get(0);
+        assertEquals(2, frame.size());
+        ConversationDeltaDto merged = frame.stream().filter(d -> d.getConversationId() == 10L).findFirst().orElseThrow();
+        assertEquals("how are you", merged.getLastMessage());
+        assertEquals(2, merged.getUnreadCount());
+    }
+
+    @Test
+    void burstNeedsFarFewerFramesAndBytesThanFullRows() throws Exception {
+        // Before: every message pushed a full row to both users
+        long fullFrames = 0;
+        long fullBytes = 0;
+        for (int m = 0; m < MESSAGES_PER_CHAT; m++) {
+            for (int c = 0; c < CHATS; c++) {
+                for (long user : participants(c)) {
+                    fullBytes += objectMapper.writeValueAsBytes(fullRow(c, user, m)).length;
+                    fullFrames++;
+                }
+            }
+        }
+
+        // After: the same traffic spread over a few ticks
+        for (int m = 0; m < MESSAGES_PER_CHAT; m++) {
+            for (int c = 0; c < CHATS; c++) {
+                for (long user : participants(c)) {
+                    aggregator.record(user, delta(c, "message " + m, m));
+                }
+            }
+            if ((m + 1) % (MESSAGES_PER_CHAT / TICKS) == 0) {
+                aggregator.flush();
+            }
+        }
+        awaitPushed(CHATS * 2 * TICKS);
+        long deltaBytes = 0;
+        for (Object frame : pushed) {
+            deltaBytes += objectMapper.writeValueAsBytes(frame).length;
+        }
+
+        assertEquals((long) CHATS * 2 * MESSAGES_PER_CHAT, fullFrames);
+        assertEquals((long) CHATS * 2 * TICKS, pushed.size());
+        assertTrue(pushed.size() * 5L <= fullFrames,
+                pushed.size() + " delta frames against " + fullFrames + " full rows");
+        assertTrue(deltaBytes * 5 < fullBytes,
+                deltaBytes + " delta bytes against " + fullBytes + " full row bytes");
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.stop();
+    }
+
+    private void awaitPushed(int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            synchronized (pushed) {
+                if (pushed.size() >= expected) {
+                    return;
+                }
+            }
+            Thread.sleep(5);
+        }
+        synchronized (pushed) {
+            fail("Expected " + expected + " frames within 5 s, got " + pushed.size());
+        }
+    }
+
+    private static long[] participants(int chat) {
+        return new long[] { 2L * chat + 1, 2L * chat + 2 };
+    }
+
+    private static ConversationDeltaDto delta(long conversationId, String lastMessage, int unread) {
+        return ConversationDeltaDto.builder()
+                .conversationId(conversationId)
+                .lastMessage(lastMessage)
+                .lastMessageTime(LocalDateTime.now())
+                .lastMessageBy(1L)
+                .unreadCount(unread)
+                .build();
+    }
+
+    private static ConversationDto fullRow(int chat, long userId, int message) {
+        long[] users = participants(chat);
+        long other = users[0] == userId ? users[1] : users[0];
+        return ConversationDto.builder()
+                .id((long) chat)
+                .user1Id(users[0])
+                .user1Name("user" + users[0] + "@example.com")
+                .user2Id(users[1])
+                .user2Name("user" + users[1] + "@example.com")
+                .otherUserId(other)
+                .otherUserName("user" + other + "@example.com")
+                .otherUserPhotoUrl(PhotoDto.builder()
+                        .url("https://cdn.example.com/photos/" + other + "/thumb.jpg")
+                        .build())
+                .lastMessage("message " + message)
+                .lastMessageTime(LocalDateTime.now())
+                .lastMessageBy(users[0])
+                .unreadCount(message)
+                .blocked(false)
+                .updatedAt(LocalDateTime.now())
+                .build();
+    }
+}
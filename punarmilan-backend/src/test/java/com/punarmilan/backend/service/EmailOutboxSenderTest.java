@@ -0,0 +1,109 @@
+package com.punarmilan.backend.service;
+
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import com.punarmilan.backend.entity.OutboxEmail;
+import com.punarmilan.backend.repository.OutboxEmailRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Drains a claimed batch into a local GreenMail SMTP server: everything
+ * within its domain's rate is delivered, the rest waits, and a server that
+ * is down turns into retries until the last attempt.
+ */
+class EmailOutboxSenderTest {
+
+    private GreenMail greenMail;
+    private OutboxEmailRepository repository;
+    private EmailOutboxSender sender;
+
+    @BeforeEach
+    void setUp() {
+        greenMail = new GreenMail(ServerSetupTest.SMTP.dynamicPort());
+        greenMail.start();
+
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("localhost");
+        mailSender.setPort(greenMail.getSmtp().getPort());
+
+        repository = mock(OutboxEmailRepository.class);
+        sender = new EmailOutboxSender(repository, mailSender, Runnable::run, new SimpleMeterRegistry(),
+                "noreply@punarmilan.com", 10, 2, 8, 300, 30, 3600, 0, "slow.example=1");
+    }
+
+    @AfterEach
+    void tearDown() {
+        greenMail.stop();
+    }
+
+    @Test
+    void claimedEmailsGoOutOneConnectionPerSlice() {
+        claim(email(1L, "a@example.com", 0), email(2L, "b@example.com", 0), email(3L, "c@example.org", 0));
+
+        sender.drain();
+
+        assertEquals(3, greenMail.getReceivedMessages().length);
+        verify(repository, times(2)).markSent(anyCollection(), anyString(), any());
+        verify(repository, never()).retryLater(anyLong(), anyString(), any(), anyString());
+    }
+
+    @Test
+    void emailsOverTheDomainRateWaitForTheNextPoll() {
+        claim(email(1L, "a@slow.example", 0), email(2L, "b@slow.example", 0), email(3L, "c@example.com", 0));
+
+        sender.drain();
+
+        assertEquals(2, greenMail.getReceivedMessages().length);
+        verify(repository).release(eq(List.of(2L)), anyString(), any());
+    }
+
+    @Test
+    void serverDownIsRetriedUntilTheLastAttempt() {
+        greenMail.stop();
+        claim(email(1L, "a@example.com", 0), email(2L, "b@example.com", 7));
+
+        sender.drain();
+
+        verify(repository).retryLater(eq(1L), anyString(), any(), anyString());
+        verify(repository).markDead(eq(2L), anyString(), anyString());
+        verify(repository, never()).markSent(anyCollection(), anyString(), any());
+    }
+
+    private void claim(OutboxEmail... emails) {
+        List<Long> ids = java.util.Arrays.stream(emails).map(OutboxEmail::getId).toList();
+        when(repository.findDue(any(), any(Pageable.class))).thenReturn(ids);
+        when(repository.claim(eq(ids), anyString(), any(), any())).thenReturn(ids.size());
+        when(repository.findByClaimToken(anyString())).thenReturn(List.of(emails));
+    }
+
+    private static OutboxEmail email(Long id, String recipient, int attempts) {
+        return OutboxEmail.builder()
+                .id(id)
+                .kind("welcome-email")
+                .recipient(recipient)
+                .domain(recipient.substring(recipient.indexOf('@') + 1))
+                .subject("Welcome to Punar Milan!")
+                .body("<p>Hello</p>")
+                .attempts(attempts)
+                .build();
+    }
+}
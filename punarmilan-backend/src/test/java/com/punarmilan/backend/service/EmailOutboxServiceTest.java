@@ -0,0 +1,61 @@
+package com.punarmilan.backend.service;
+
+import com.punarmilan.backend.entity.OutboxEmail;
+import com.punarmilan.backend.repository.OutboxEmailRepository;
+import com.punarmilan.backend.service.EmailOutboxService.QueuedEmail;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Verification and password reset mail is queued ahead of everything else,
+ * and bulk sends behind it, so the sender picks them up in that order.
+ */
+class EmailOutboxServiceTest {
+
+    private OutboxEmailRepository repository;
+    private JdbcTemplate jdbcTemplate;
+    private EmailOutboxService service;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(OutboxEmailRepository.class);
+        jdbcTemplate = mock(JdbcTemplate.class);
+        service = new EmailOutboxService(repository, jdbcTemplate);
+    }
+
+    @Test
+    void accountMailJumpsTheQueue() {
+        service.enqueue("password-reset", "a@example.com", "Reset Your Password", "<p>reset</p>");
+        service.enqueue("shortlist-alert", "b@example.com", "Someone liked you", "<p>liked</p>");
+
+        ArgumentCaptor<OutboxEmail> saved = ArgumentCaptor.forClass(OutboxEmail.class);
+        verify(repository, times(2)).save(saved.capture());
+        assertEquals(OutboxEmail.PRIORITY_ACCOUNT, saved.getAllValues().get(0).getPriority());
+        assertEquals(OutboxEmail.PRIORITY_NORMAL, saved.getAllValues().get(1).getPriority());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void bulkSendsQueueBehindTheRest() {
+        service.enqueueAll("match-mail", "Your matches", List.of(new QueuedEmail("a@example.com", "<p>1</p>")));
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate).batchUpdate(sql.capture(), any(Collection.class), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class));
+        assertTrue(sql.getValue().contains("'PENDING', " + OutboxEmail.PRIORITY_BULK + ", 0,"));
+    }
+}
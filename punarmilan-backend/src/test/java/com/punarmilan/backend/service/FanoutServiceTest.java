@@ -0,0 +1,163 @@
+package com.punarmilan.backend.service;
+
+import com.punarmilan.backend.entity.FanoutJob;
+import com.punarmilan.backend.entity.FanoutJob.Kind;
+import com.punarmilan.backend.entity.FanoutJob.Status;
+import com.punarmilan.backend.entity.Profile;
+import com.punarmilan.backend.entity.User;
+import com.punarmilan.backend.repository.FanoutJobRepository;
+import com.punarmilan.backend.repository.ProfileRepository;
+import com.punarmilan.backend.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Walks a small blast chunk by chunk: the cursor must only ever move forward
+ * from where the job was left, and a cancelled job must stop after its chunk.
+ */
+class FanoutServiceTest {
+
+    private static final long JOB_ID = 7L;
+    private static final long PROFILE_USER_ID = 3L;
+
+    private FanoutJobRepository jobRepository;
+    private UserRepository userRepository;
+    private EmailService emailService;
+    private NotificationCounterService counterService;
+    private JdbcTemplate jdbcTemplate;
+    private FanoutService fanoutService;
+    private List<List<Long>> batches;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        jobRepository = mock(FanoutJobRepository.class);
+        userRepository = mock(UserRepository.class);
+        ProfileRepository profileRepository = mock(ProfileRepository.class);
+        emailService = mock(EmailService.class);
+        counterService = mock(NotificationCounterService.class);
+        jdbcTemplate = mock(JdbcTemplate.class);
+        fanoutService = new FanoutService(jobRepository, userRepository, profileRepository, emailService,
+                counterService, mock(WebSocketNotificationService.class), mock(PresenceService.class), jdbcTemplate,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)), Runnable::run, new SimpleMeterRegistry(), new NodeIdentity("node-a"), 2, 0, 300);
+
+        Profile profile = new Profile();
+        profile.setId(30L);
+        when(profileRepository.findById(30L)).thenReturn(Optional.of(profile));
+        when(emailService.deliverProfileBlasterEmails(eq(profile), any()))
+                .thenAnswer(invocation -> invocation.<List<User>>getArgument(1).size());
+        when(jobRepository.findResumable(any())).thenReturn(List.of(JOB_ID));
+        when(jobRepository.claim(eq(JOB_ID), eq("node-a"), any(), any())).thenReturn(1);
+        when(jobRepository.recordProgress(eq(JOB_ID), eq("node-a"), anyLong(), anyLong(), anyLong(),
+                anyLong(), anyLong(), any())).thenReturn(1);
+
+        // Active users 1..5 in pages of two
+        when(userRepository.findActiveAfter(anyLong(), any(Pageable.class))).thenAnswer(invocation -> {
+            long afterId = invocation.getArgument(0);
+            return LongStream.rangeClosed(afterId + 1, Math.min(afterId + 2, 5)).mapToObj(FanoutServiceTest::user).toList();
+        });
+
+        batches = new ArrayList<>();
+        when(jdbcTemplate.batchUpdate(anyString(), any(Collection.class), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class))).thenAnswer(invocation -> {
+                    Collection<User> users = invocation.getArgument(1);
+                    batches.add(users.stream().map(User::getId).toList());
+                    return new int[0][];
+                });
+    }
+
+    @Test
+    void blastWalksEveryChunkAndSkipsTheFeaturedUser() {
+        when(jobRepository.findById(JOB_ID)).thenReturn(Optional.of(blast(0L)));
+
+        fanoutService.resumeStale();
+
+        assertEquals(List.of(List.of(1L, 2L), List.of(4L), List.of(5L)), batches);
+        verify(emailService, times(3)).deliverProfileBlasterEmails(any(), any());
+        verify(jobRepository).recordProgress(eq(JOB_ID), eq("node-a"), eq(2L), eq(2L), eq(2L), eq(2L), eq(0L), any());
+        verify(jobRepository).recordProgress(eq(JOB_ID), eq("node-a"), eq(4L), eq(2L), eq(1L), eq(1L), eq(0L), any());
+        verify(jobRepository).recordProgress(eq(JOB_ID), eq("node-a"), eq(5L), eq(1L), eq(1L), eq(1L), eq(0L), any());
+        verify(jobRepository).finish(eq(JOB_ID), eq("node-a"), eq(Status.COMPLETED), isNull(), any());
+    }
+
+    @Test
+    void resumedJobContinuesFromItsCursor() {
+        when(jobRepository.findById(JOB_ID)).thenReturn(Optional.of(blast(4L)));
+
+        fanoutService.resumeStale();
+
+        assertEquals(List.of(List.of(5L)), batches);
+        verify(userRepository, never()).findActiveAfter(eq(0L), any(Pageable.class));
+        verify(emailService, times(1)).deliverProfileBlasterEmails(any(), any());
+        verify(jobRepository).finish(eq(JOB_ID), eq("node-a"), eq(Status.COMPLETED), isNull(), any());
+    }
+
+    @Test
+    void cancelledJobStopsAfterTheChunkInFlight() {
+        when(jobRepository.findById(JOB_ID)).thenReturn(Optional.of(blast(0L)));
+        when(jobRepository.recordProgress(eq(JOB_ID), eq("node-a"), anyLong(), anyLong(), anyLong(),
+                anyLong(), anyLong(), any())).thenReturn(0);
+
+        fanoutService.resumeStale();
+
+        assertEquals(1, batches.size());
+        verify(jobRepository, never()).finish(anyLong(), anyString(), any(), any(), any());
+    }
+
+    @Test
+    void jobClaimedElsewhereIsLeftAlone() {
+        when(jobRepository.claim(eq(JOB_ID), eq("node-a"), any(), any())).thenReturn(0);
+
+        fanoutService.resumeStale();
+
+        assertEquals(0, batches.size());
+        verify(jobRepository, never()).findById(anyLong());
+    }
+
+    private static FanoutJob blast(Long lastUserId) {
+        return FanoutJob.builder()
+                .id(JOB_ID)
+                .kind(Kind.PROFILE_BLAST)
+                .status(Status.RUNNING)
+                .title("Featured Profile")
+                .relatedId(30L)
+                .relatedType("PROFILE")
+                .excludeUserId(PROFILE_USER_ID)
+                .sendEmail(true)
+                .timeBucket(1L)
+                .lastUserId(lastUserId)
+                .build();
+    }
+
+    private static User user(long id) {
+        User user = new User();
+        user.setId(id);
+        user.setEmail("user" + id + "@example.com");
+        return user;
+    }
+}
@@ -0,0 +1,125 @@
+package com.punarmilan.backend.service;
+
+import com.punarmilan.backend.entity.StoredFile;
+import com.punarmilan.backend.exception.BadRequestException;
+import com.punarmilan.backend.repository.StoredFileRepository;
+import com.punarmilan.backend.service.impl.LocalStorageBackend;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Stores uploads into a local backend: identical bytes share one blob with a
+ * reference per upload, a file whose magic bytes are not an image is refused
+ * whatever its name says, and a blob whose reference rolled back is deleted.
+ */
+class FileStorageServiceTest {
+
+    private static final byte[] PNG = { (byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0, 0, 0, 0x0D, 'I', 'H' };
+
+    @TempDir
+    Path uploadDir;
+
+    private StoredFileRepository storedFileRepository;
+    private FileStorageService service;
+
+    @BeforeEach
+    void setUp() {
+        storedFileRepository = mock(StoredFileRepository.class);
+        service = new FileStorageService(uploadDir.toString(), 1024 * 1024,
+                new LocalStorageBackend(uploadDir.toString()), storedFileRepository,
+                mock(PlatformTransactionManager.class));
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void identicalUploadsShareOneBlobWithAReferenceEach() throws Exception {
+        String first = service.storeImage(new MockMultipartFile("file", "a.png", "image/png", PNG));
+        String second = service.storeImage(new MockMultipartFile("file", "b.png", "image/png", PNG));
+
+        assertEquals(first, second);
+        String key = service.keyOf(first).orElseThrow();
+        assertTrue(key.matches("[0-9a-f]{64}\\.png"));
+        verify(storedFileRepository, times(2)).addReference(eq(key), eq("image/png"), eq((long) PNG.length), any());
+        try (var files = Files.list(uploadDir)) {
+            assertEquals(1, files.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    void textNamedLikeAnImageIsRejected() throws Exception {
+        MockMultipartFile fake = new MockMultipartFile("file", "photo.jpg", "image/jpeg",
+                "<script>alert(1)</script>".getBytes(StandardCharsets.US_ASCII));
+
+        assertThrows(BadRequestException.class, () -> service.storeImage(fake));
+
+        verify(storedFileRepository, never()).addReference(anyString(), anyString(), anyLong(), any());
+        try (var files = Files.list(uploadDir)) {
+            assertEquals(0, files.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    void rolledBackUploadLeavesNoOrphanedBlob() {
+        TransactionSynchronizationManager.initSynchronization();
+        String url = service.storeImage(new MockMultipartFile("file", "a.png", "image/png", PNG));
+        String key = service.keyOf(url).orElseThrow();
+        assertTrue(Files.exists(uploadDir.resolve(key)));
+
+        when(storedFileRepository.findByKeyForUpdate(key)).thenReturn(Optional.empty());
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+        }
+
+        assertFalse(Files.exists(uploadDir.resolve(key)));
+    }
+
+    @Test
+    void rollbackKeepsABlobThatAnotherUploadReferences() {
+        TransactionSynchronizationManager.initSynchronization();
+        String key = service.keyOf(service.storeImage(new MockMultipartFile("file", "a.png", "image/png", PNG)))
+                .orElseThrow();
+
+        when(storedFileRepository.findByKeyForUpdate(key)).thenReturn(Optional.of(new StoredFile()));
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+        }
+
+        assertTrue(Files.exists(uploadDir.resolve(key)));
+    }
+}
@@ -0,0 +1,75 @@
+package com.punarmilan.backend.service;
+
+import com.punarmilan.backend.service.ImageDerivativeService.ImageVariant;
+import com.punarmilan.backend.service.impl.LocalStorageBackend;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Generates the variants of a real JPEG on disk: sizes are capped per
+ * variant, the blurred preview's name does not reveal the original, and
+ * purging an original makes its variants resolve to the original URL again.
+ */
+class ImageDerivativeServiceTest {
+
+    private static final String ORIGINAL_URL = "http://localhost:8080/uploads/abc123.jpg";
+
+    @TempDir
+    Path uploadDir;
+
+    private ImageDerivativeService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        service = new ImageDerivativeService(uploadDir.toString(), "test-blur-key", 1000, 0,
+                new LocalStorageBackend(uploadDir.toString()));
+        ImageIO.write(new BufferedImage(1200, 800, BufferedImage.TYPE_INT_RGB), "jpg",
+                uploadDir.resolve("abc123.jpg").toFile());
+    }
+
+    @Test
+    void variantsAreResolvedOnceGenerated() throws Exception {
+        assertEquals(ORIGINAL_URL, service.resolve(ORIGINAL_URL, ImageVariant.THUMB));
+        assertEquals(Optional.empty(), service.resolveBlurred(ORIGINAL_URL));
+
+        service.generateDerivatives(ORIGINAL_URL);
+
+        String thumb = service.resolve(ORIGINAL_URL, ImageVariant.THUMB);
+        assertEquals("http://localhost:8080/uploads/variants/abc123_thumb.jpg", thumb);
+        BufferedImage written = ImageIO.read(uploadDir.resolve("variants/abc123_thumb.jpg").toFile());
+        assertEquals(160, Math.max(written.getWidth(), written.getHeight()));
+        assertEquals(ORIGINAL_URL, service.resolve(ORIGINAL_URL, ImageVariant.ORIGINAL));
+    }
+
+    @Test
+    void blurredPreviewNameDoesNotRevealTheOriginal() {
+        service.generateDerivatives(ORIGINAL_URL);
+
+        String blurred = service.resolveBlurred(ORIGINAL_URL).orElseThrow();
+        assertTrue(blurred.startsWith("http://localhost:8080/uploads/blurred/"));
+        assertFalse(blurred.contains("abc123"));
+    }
+
+    @Test
+    void purgedOriginalFallsBackToItsOwnUrl() {
+        service.generateDerivatives(ORIGINAL_URL);
+        service.resolve(ORIGINAL_URL, ImageVariant.CARD);
+
+        service.deleteDerivatives("abc123.jpg");
+
+        assertFalse(Files.exists(uploadDir.resolve("variants/abc123_card.jpg")));
+        assertEquals(ORIGINAL_URL, service.resolve(ORIGINAL_URL, ImageVariant.CARD));
+        assertEquals(Optional.empty(), service.resolveBlurred(ORIGINAL_URL));
+    }
+}
@@ -0,0 +1,185 @@
+package com.punarmilan.backend.service;
+
+import com.punarmilan.backend.dto.ConversationDto;
+import com.punarmilan.backend.dto.PhotoDto;
+import com.punarmilan.backend.repository.ConversationRepository.InboxEntry;
+import com.punarmilan.backend.service.InboxService.InboxRow;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * The rebuild handshake against a mocked Redis whose two scripts are modelled
+ * by a version counter: a bump that lands while the index is loading keeps
+ * the marker unset and the page goes to MySQL, a quiet rebuild is marked and
+ * served, cached rows never carry the other party's photo, and updates wait
+ * for commit.
+ */
+class InboxServiceTest {
+
+    private static final Long USER_ID = 1L;
+
+    private RedisTemplate<String, Object> redisTemplate;
+    private StringRedisTemplate stringRedisTemplate;
+    private HashOperations<String, Object, Object> hashOps;
+    private InboxService inboxService;
+
+    // The inbox-version key and whether the rows hash holds the marker
+    private String version;
+    private boolean built;
+    private final List<String> scripts = new ArrayList<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisTemplate = mock(RedisTemplate.class);
+        stringRedisTemplate = mock(StringRedisTemplate.class);
+        hashOps = mock(HashOperations.class);
+        ValueOperations<String, String> valueOps = mock(ValueOperations.class);
+        doReturn(hashOps).when(redisTemplate).opsForHash();
+        doReturn(new GenericJackson2JsonRedisSerializer()).when(redisTemplate).getHashValueSerializer();
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOps);
+        when(valueOps.get("inbox-version:" + USER_ID)).thenAnswer(invocation -> version);
+        when(hashOps.hasKey("inbox-rows:" + USER_ID, "_built")).thenAnswer(invocation -> built);
+        inboxService = new InboxService(redisTemplate, stringRedisTemplate, 24);
+
+        when(redisTemplate.execute(any(RedisScript.class), any(RedisSerializer.class), any(RedisSerializer.class),
+                anyList(), any(Object[].class))).thenAnswer(invocation -> {
+                    String script = invocation.<RedisScript<Long>>getArgument(0).getScriptAsString();
+                    if (script.contains("INCR")) {
+                        scripts.add("record");
+                        if (!built) {
+                            version = String.valueOf(version == null ? 1 : Long.parseLong(version) + 1);
+                            return 0L;
+                        }
+                        return 1L;
+                    }
+                    scripts.add("mark");
+                    String expected = (String) invocation.getArgument(4);
+                    if (!expected.equals(version == null ? "" : version)) {
+                        return 0L;
+                    }
+                    built = true;
+                    return 1L;
+                });
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void bumpDuringRebuildLeavesTheInboxUnbuilt() {
+        Page<ConversationDto> page = inboxService.getPage(USER_ID, PageRequest.of(0, 20), () -> {
+            // Another request's message commits between the index query and the marker
+            inboxService.record(USER_ID, conversation(10L), false);
+            return List.of(entry(11L));
+        }, ids -> Map.of());
+
+        assertNull(page);
+        assertEquals(List.of("record", "mark"), scripts);
+        assertFalse(built);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void quietRebuildIsMarkedAndRowsLeaveThePhotoOut() {
+        when(stringRedisTemplate.executePipelined(any(SessionCallback.class)))
+                .thenReturn(List.of(), List.of(new LinkedHashSet<>(List.of("10")), 1L));
+        when(hashOps.multiGet(eq("inbox-rows:" + USER_ID), anyList()))
+                .thenReturn(Collections.singletonList(null));
+
+        Page<ConversationDto> page = inboxService.getPage(USER_ID, PageRequest.of(0, 20),
+                () -> List.of(entry(10L)), ids -> Map.of(10L, conversation(10L)));
+
+        assertNotNull(page);
+        assertEquals(List.of("mark"), scripts);
+        assertEquals(1, page.getContent().size());
+        assertNull(page.getContent().get(0).getOtherUserPhotoUrl());
+        verify(hashOps).putAll(eq("inbox-rows:" + USER_ID), any(Map.class));
+    }
+
+    @Test
+    void updatesWaitForCommitAndInvalidateBumpsTheVersion() {
+        when(hashOps.get(anyString(), any())).thenReturn(InboxRow.builder().id(10L).build());
+
+        TransactionSynchronizationManager.initSynchronization();
+        inboxService.record(USER_ID, conversation(10L), false);
+        inboxService.invalidate(USER_ID);
+        assertTrue(scripts.isEmpty());
+        verify(stringRedisTemplate.opsForValue(), never()).increment(anyString());
+
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(
+                TransactionSynchronization.STATUS_COMMITTED));
+
+        assertEquals(List.of("record"), scripts);
+        verify(stringRedisTemplate.opsForValue()).increment("inbox-version:" + USER_ID);
+    }
+
+    private static ConversationDto conversation(Long id) {
+        return ConversationDto.builder()
+                .id(id)
+                .user1Id(USER_ID)
+                .user2Id(2L)
+                .otherUserId(2L)
+                .otherUserName("other@example.com")
+                .otherUserPhotoUrl(PhotoDto.builder().url("/uploads/a.jpg").build())
+                .lastMessage("hi")
+                .lastMessageTime(LocalDateTime.now())
+                .build();
+    }
+
+    private static InboxEntry entry(Long id) {
+        LocalDateTime sortTime = LocalDateTime.now();
+        return new InboxEntry() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public LocalDateTime getSortTime() {
+                return sortTime;
+            }
+        };
+    }
+}
@@ -0,0 +1,142 @@
+package com.punarmilan.backend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.punarmilan.backend.entity.Conversation;
+import com.punarmilan.backend.entity.Message;
+import com.punarmilan.backend.entity.MessageArchiveBlock;
+import com.punarmilan.backend.entity.User;
+import com.punarmilan.backend.repository.ConversationRepository;
+import com.punarmilan.backend.repository.MessageArchiveBlockRepository;
+import com.punarmilan.backend.repository.MessageArchiveBlockRepository.ArchiveTotals;
+import com.punarmilan.backend.repository.MessageArchiveBlockRepository.BlockSpan;
+import com.punarmilan.backend.repository.MessageRepository;
+import com.punarmilan.backend.service.MessageArchiveService.ArchivedMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Archives one conversation into a real zstd block and reads single messages
+ * back out of it, the way search hits, late receipts and offset pages do
+ * once the hot rows are gone.
+ */
+class MessageArchiveServiceTest {
+
+    private MessageArchiveBlockRepository blockRepository;
+    private MessageArchiveService service;
+    private MessageArchiveBlock block;
+    private Conversation conversation;
+
+    @BeforeEach
+    void setUp() {
+        MessageRepository messageRepository = mock(MessageRepository.class);
+        blockRepository = mock(MessageArchiveBlockRepository.class);
+        ConversationRepository conversationRepository = mock(ConversationRepository.class);
+        service = new MessageArchiveService(messageRepository, blockRepository, conversationRepository,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)),
+                new ObjectMapper().findAndRegisterModules(), new SimpleMeterRegistry(), true, 180, 500, 3);
+
+        conversation = Conversation.builder().id(5L).user1(user(7L)).user2(user(8L)).build();
+        LocalDateTime old = LocalDateTime.now().minusDays(400);
+        List<Message> messages = List.of(
+                message(21L, conversation, 7L, 8L, "see you at the wedding", old),
+                message(22L, conversation, 8L, 7L, "on wednesday then", old.plusMinutes(1)));
+
+        when(messageRepository.findConversationIdsWithMessagesBefore(any(LocalDateTime.class), eq(0L),
+                any(Pageable.class))).thenReturn(List.of(5L));
+        when(messageRepository.findAfter(eq(5L), eq(0L), any(Pageable.class))).thenReturn(messages, List.of());
+        when(messageRepository.deleteByIds(anyList())).thenReturn(2);
+        when(blockRepository.save(any(MessageArchiveBlock.class))).thenAnswer(invocation -> {
+            block = invocation.getArgument(0);
+            return block;
+        });
+        when(blockRepository.summarize()).thenReturn(mock(ArchiveTotals.class));
+        when(conversationRepository.findById(5L)).thenReturn(Optional.of(conversation));
+
+        assertEquals(2, service.archive());
+    }
+
+    @Test
+    void receivedMessageIsReadBackFromItsBlock() {
+        when(blockRepository.findUserBlocksContaining(8L, 21L)).thenReturn(List.of(block));
+
+        Message message = service.findForUser(8L, 21L).orElseThrow();
+
+        assertEquals("see you at the wedding", message.getContent());
+        assertEquals(7L, message.getSender().getId());
+        assertEquals(8L, message.getReceiver().getId());
+        assertEquals(5L, message.getConversation().getId());
+        assertTrue(service.findForUser(8L, 99L).isEmpty());
+    }
+
+    @Test
+    void idsOfOneBlockAreDecodedTogether() {
+        when(blockRepository.findBlockContaining(eq(5L), anyLong())).thenReturn(List.of(block));
+
+        Map<Long, ArchivedMessage> found = service.findByIds(5L, List.of(22L, 21L));
+
+        assertEquals(2, found.size());
+        assertEquals("on wednesday then", found.get(22L).content());
+        assertEquals(8L, found.get(22L).senderId());
+    }
+
+    @Test
+    void offsetPageSkipsIntoTheBlockNewestFirst() {
+        when(blockRepository.findSpans(5L)).thenReturn(List.of(span(block.getId(), 2)));
+        when(blockRepository.findById(block.getId())).thenReturn(Optional.of(block));
+
+        assertEquals(2, service.countMessages(5L));
+        assertEquals(List.of(21L), service.findPage(conversation, 1, 5).stream()
+                .map(Message::getId).toList());
+    }
+
+    private static BlockSpan span(Long id, int messageCount) {
+        return new BlockSpan() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public int getMessageCount() {
+                return messageCount;
+            }
+        };
+    }
+
+    private static User user(Long id) {
+        User user = new User();
+        user.setId(id);
+        return user;
+    }
+
+    private static Message message(Long id, Conversation conversation, Long senderId, Long receiverId,
+            String content, LocalDateTime createdAt) {
+        return Message.builder()
+                .id(id)
+                .conversation(conversation)
+                .sender(user(senderId))
+                .receiver(user(receiverId))
+                .content(content)
+                .messageType(Message.MessageType.TEXT)
+                .createdAt(createdAt)
+                .build();
+    }
+}
@@ -0,0 +1,203 @@
+package com.punarmilan.backend.service;
+
+import com.punarmilan.backend.dto.MessageSearchResultDto;
+import com.punarmilan.backend.entity.Conversation;
+import com.punarmilan.backend.entity.Message;
+import com.punarmilan.backend.entity.MessageSearchTerm;
+import com.punarmilan.backend.entity.User;
+import com.punarmilan.backend.repository.MessageRepository;
+import com.punarmilan.backend.repository.MessageRepository.IndexSource;
+import com.punarmilan.backend.repository.MessageRepository.SearchSource;
+import com.punarmilan.backend.repository.MessageSearchTermRepository;
+import com.punarmilan.backend.service.MessageArchiveService.ArchivedBlock;
+import com.punarmilan.backend.service.MessageArchiveService.ArchivedMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Prefix search expands into exact words read newest first off the index,
+ * archived hits are still returned, and a rebuild only posts a message for the
+ * sides that still have the conversation, archived messages included.
+ */
+class MessageSearchServiceTest {
+
+    private MessageSearchTermRepository searchTermRepository;
+    private MessageRepository messageRepository;
+    private MessageArchiveService messageArchiveService;
+    private MessageSearchService service;
+
+    @BeforeEach
+    void setUp() {
+        searchTermRepository = mock(MessageSearchTermRepository.class);
+        messageRepository = mock(MessageRepository.class);
+        messageArchiveService = mock(MessageArchiveService.class);
+        service = new MessageSearchService(searchTermRepository, messageRepository, messageArchiveService);
+    }
+
+    @Test
+    void prefixIsExpandedIntoOrderedTermReads() {
+        when(searchTermRepository.findTermsByPrefix(eq(1L), eq("wed%"), any(Pageable.class)))
+                .thenReturn(List.of("wedding", "wednesday"));
+        when(searchTermRepository.findMessageIds(eq(1L), eq("wedding"), anyLong(), any(Pageable.class)))
+                .thenReturn(List.of(40L, 12L));
+        when(searchTermRepository.findMessageIds(eq(1L), eq("wednesday"), anyLong(), any(Pageable.class)))
+                .thenReturn(List.of(33L, 12L));
+        when(messageRepository.findSearchSources(anyList())).thenAnswer(invocation ->
+                invocation.<List<Long>>getArgument(0).stream().map(id -> source(id, "wedding on wednesday")).toList());
+
+        List<MessageSearchResultDto> results = service.search(1L, "wed", null, 10);
+
+        assertEquals(List.of(40L, 33L, 12L), results.stream().map(MessageSearchResultDto::getMessageId).toList());
+        verify(messageRepository).findSearchSources(List.of(40L, 33L, 12L));
+    }
+
+    @Test
+    void hitsThatWereArchivedAreReadFromTheirBlocks() {
+        when(searchTermRepository.findMessageIds(eq(1L), eq("wedding"), anyLong(), any(Pageable.class)))
+                .thenReturn(List.of(40L, 12L));
+        when(messageRepository.findSearchSources(anyList())).thenReturn(List.of(source(40L, "the wedding")));
+        when(searchTermRepository.findConversationIds(1L, List.of(12L)))
+                .thenReturn(List.<Object[]>of(new Object[] { 12L, 5L }));
+        when(messageArchiveService.findByIds(5L, List.of(12L))).thenReturn(Map.of(12L, new ArchivedMessage(12L,
+                8L, 7L, "wedding photos", Message.MessageType.TEXT, null, null, null, true, true, false, false,
+                null, LocalDateTime.now().minusYears(1))));
+
+        List<MessageSearchResultDto> results = service.search(1L, "wedding ", null, 10);
+
+        assertEquals(List.of(40L, 12L), results.stream().map(MessageSearchResultDto::getMessageId).toList());
+        assertEquals("wedding photos", results.get(1).getSnippet());
+        assertEquals(5L, results.get(1).getConversationId());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void rebuildSkipsTheSideThatDeletedTheConversation() {
+        IndexSource keptByBoth = indexSource(1L, false, false);
+        IndexSource deletedBySender = indexSource(2L, true, false);
+        when(messageRepository.findSearchSourcesAfter(eq(0L), any(Pageable.class)))
+                .thenReturn(List.of(keptByBoth, deletedBySender));
+        List<MessageSearchTerm> saved = new ArrayList<>();
+        when(searchTermRepository.saveAll(any(Collection.class))).thenAnswer(invocation -> {
+            saved.addAll(invocation.getArgument(0));
+            return saved;
+        });
+
+        service.rebuild(null);
+
+        assertEquals(List.of("1:7", "1:8", "2:8"), saved.stream()
+                .map(posting -> posting.getMessageId() + ":" + posting.getUserId())
+                .distinct()
+                .sorted()
+                .toList());
+        verify(searchTermRepository, never()).deleteByUser(anyLong());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void userRebuildPostsArchivedMessagesAgain() {
+        User user7 = User.builder().id(7L).build();
+        User user8 = User.builder().id(8L).build();
+        Conversation conversation = Conversation.builder().id(5L).user1(user7).user2(user8).build();
+        doAnswer(invocation -> {
+            invocation.<Consumer<ArchivedBlock>>getArgument(1).accept(new ArchivedBlock(conversation, List.of(
+                    new ArchivedMessage(12L, 8L, 7L, "wedding photos", Message.MessageType.TEXT, null, null, null,
+                            true, true, false, false, null, LocalDateTime.now().minusYears(1)))));
+            return null;
+        }).when(messageArchiveService).forEachBlock(eq(7L), any());
+        when(messageRepository.findSearchSourcesForUserAfter(eq(7L), eq(0L), any(Pageable.class)))
+                .thenReturn(List.of(indexSource(40L, false, false)));
+        List<MessageSearchTerm> saved = new ArrayList<>();
+        when(searchTermRepository.saveAll(any(Collection.class))).thenAnswer(invocation -> {
+            saved.addAll(invocation.getArgument(0));
+            return saved;
+        });
+
+        service.rebuild(7L);
+
+        verify(searchTermRepository).deleteByUser(7L);
+        assertEquals(List.of("12:photos", "12:wedding", "40:at", "40:see", "40:the", "40:wedding", "40:you"),
+                saved.stream()
+                        .map(posting -> posting.getMessageId() + ":" + posting.getTerm())
+                        .sorted()
+                        .toList());
+        assertTrue(saved.stream().allMatch(posting -> posting.getUserId().equals(7L)));
+    }
+
+    private static SearchSource source(Long id, String content) {
+        return indexSource(id, content, false, false);
+    }
+
+    private static IndexSource indexSource(Long id, boolean senderDeleted, boolean receiverDeleted) {
+        return indexSource(id, "see you at the wedding", senderDeleted, receiverDeleted);
+    }
+
+    private static IndexSource indexSource(Long id, String content, boolean senderDeleted, boolean receiverDeleted) {
+        LocalDateTime createdAt = LocalDateTime.now();
+        return new IndexSource() {
+            @Override
+            public Boolean getSenderDeleted() {
+                return senderDeleted;
+            }
+
+            @Override
+            public Boolean getReceiverDeleted() {
+                return receiverDeleted;
+            }
+
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public Long getConversationId() {
+                return 5L;
+            }
+
+            @Override
+            public Long getSenderId() {
+                return 7L;
+            }
+
+            @Override
+            public Long getReceiverId() {
+                return 8L;
+            }
+
+            @Override
+            public String getContent() {
+                return content;
+            }
+
+            @Override
+            public String getFileName() {
+                return null;
+            }
+
+            @Override
+            public LocalDateTime getCreatedAt() {
+                return createdAt;
+            }
+        };
+    }
+}
@@ -0,0 +1,143 @@
+package com.punarmilan.backend.service;
+
+import com.punarmilan.backend.entity.Notification.NotificationType;
+import com.punarmilan.backend.repository.NotificationRepository;
+import com.punarmilan.backend.repository.NotificationRepository.TypeCount;
+import com.punarmilan.backend.service.NotificationCounterService.Counts;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Seeding reads the version before the GROUP BY and hands it to the store
+ * script, which writes fields and TTL together. Adjustments only touch the
+ * per-type and unseen fields, and the unread total is summed on read.
+ */
+class NotificationCounterServiceTest {
+
+    private static final Long USER_ID = 1L;
+
+    private RedisTemplate<String, Object> redisTemplate;
+    private HashOperations<String, Object, Object> hashOps;
+    private NotificationRepository notificationRepository;
+    private NotificationCounterService service;
+
+    // Script source and its ARGV, in call order
+    private final List<String> scripts = new ArrayList<>();
+    private final List<List<Object>> args = new ArrayList<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisTemplate = mock(RedisTemplate.class);
+        hashOps = mock(HashOperations.class);
+        notificationRepository = mock(NotificationRepository.class);
+        doReturn(hashOps).when(redisTemplate).opsForHash();
+        service = new NotificationCounterService(redisTemplate, notificationRepository, 24);
+
+        when(redisTemplate.execute(any(RedisScript.class), any(RedisSerializer.class), any(RedisSerializer.class),
+                anyList(), any(Object[].class))).thenAnswer(invocation -> {
+                    String script = invocation.<RedisScript<Long>>getArgument(0).getScriptAsString();
+                    scripts.add(script);
+                    args.add(Arrays.asList(invocation.getRawArguments()).subList(4,
+                            invocation.getRawArguments().length));
+                    return script.startsWith("return tonumber") ? 4L : 1L;
+                });
+    }
+
+    @Test
+    void missingHashIsSeededAgainstTheVersionReadBeforeLoading() {
+        when(hashOps.entries("notif-counts:" + USER_ID)).thenReturn(Map.of());
+        when(notificationRepository.countUnreadByType(USER_ID)).thenReturn(List.of(
+                typeCount(NotificationType.NEW_MATCH, 2), typeCount(NotificationType.MESSAGE_RECEIVED, 1)));
+        when(notificationRepository.countUnseen(USER_ID)).thenReturn(5L);
+
+        Counts counts = service.get(USER_ID);
+
+        assertEquals(3, counts.unread());
+        assertEquals(5, counts.unseen());
+        InOrder order = inOrder(redisTemplate, notificationRepository);
+        order.verify(redisTemplate).execute(any(RedisScript.class), any(RedisSerializer.class),
+                any(RedisSerializer.class), anyList(), any(Object[].class));
+        order.verify(notificationRepository).countUnreadByType(USER_ID);
+
+        assertEquals(2, scripts.size());
+        List<Object> stored = flatten(args.get(1));
+        assertEquals(List.of("86400", "4"), stored.subList(0, 2));
+        assertTrue(stored.containsAll(List.of("unread:NEW_MATCH", "2", "unread:MESSAGE_RECEIVED", "1", "unseen", "5")));
+        assertFalse(stored.contains("unread"));
+        verify(hashOps, never()).putAll(any(), anyMap());
+    }
+
+    @Test
+    void adjustmentsLeaveTheUnreadTotalToTheRead() {
+        service.added(USER_ID, NotificationType.NEW_MATCH, true, true);
+        service.removed(USER_ID, NotificationType.NEW_MATCH, true, false);
+
+        assertEquals(List.of("86400", "unread:NEW_MATCH", "1", "unseen", "1"), flatten(args.get(0)));
+        assertEquals(List.of("86400", "unread:NEW_MATCH", "-1"), flatten(args.get(1)));
+    }
+
+    @Test
+    void unreadTotalIsTheSumOfTheTypes() {
+        // A hash written before the total was derived still has its own "unread" field
+        when(hashOps.entries("notif-counts:" + USER_ID)).thenReturn(Map.of(
+                "unread:NEW_MATCH", 2, "unread:PROFILE_VIEW", 1, "unread", 9, "unseen", 4));
+
+        Counts counts = service.get(USER_ID);
+
+        assertEquals(3, counts.unread());
+        assertEquals(1, counts.unread(NotificationType.PROFILE_VIEW));
+        assertEquals(4, counts.unseen());
+        assertTrue(scripts.isEmpty());
+    }
+
+    // Mockito hands varargs over either spread or as one array
+    private static List<Object> flatten(List<Object> raw) {
+        List<Object> flat = new ArrayList<>();
+        for (Object arg : raw) {
+            if (arg instanceof Object[] array) {
+                flat.addAll(Arrays.asList(array));
+            } else {
+                flat.add(arg);
+            }
+        }
+        return flat;
+    }
+
+    private static TypeCount typeCount(NotificationType type, long total) {
+        return new TypeCount() {
+            @Override
+            public NotificationType getNotificationType() {
+                return type;
+            }
+
+            @Override
+            public long getTotal() {
+                return total;
+            }
+        };
+    }
+}
@@ -0,0 +1,70 @@
+package com.punarmilan.backend.service;
+
+import com.punarmilan.backend.entity.NotificationPreference;
+import com.punarmilan.backend.entity.User;
+import com.punarmilan.backend.repository.NotificationPreferenceRepository;
+import com.punarmilan.backend.service.NotificationPreferenceCache.Preferences;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * A batch of recipients costs one query, repeats cost none, and a saved
+ * change is read again instead of served from the cache.
+ */
+class NotificationPreferenceCacheTest {
+
+    private NotificationPreferenceRepository repository;
+    private RedisTemplate<String, Object> redisTemplate;
+    private NotificationPreferenceCache cache;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        repository = mock(NotificationPreferenceRepository.class);
+        redisTemplate = mock(RedisTemplate.class);
+        cache = new NotificationPreferenceCache(repository, redisTemplate, 100, 600);
+        when(repository.findByUserIds(any())).thenReturn(List.of(preferences(1L, false)));
+    }
+
+    @Test
+    void missesAreLoadedTogetherAndThenServedFromTheCache() {
+        Map<Long, Preferences> first = cache.getAll(List.of(1L, 2L));
+        Map<Long, Preferences> second = cache.getAll(List.of(1L, 2L));
+
+        assertFalse(first.get(1L).webNotifications());
+        assertEquals(Preferences.DEFAULTS, first.get(2L));
+        assertEquals(first, second);
+        verify(repository, times(1)).findByUserIds(any());
+    }
+
+    @Test
+    void evictReloadsAndTellsTheOtherNodes() {
+        cache.get(1L);
+        when(repository.findByUserIds(any())).thenReturn(List.of(preferences(1L, true)));
+
+        cache.evict(1L);
+
+        assertEquals(Preferences.DEFAULTS, cache.get(1L));
+        verify(repository, times(2)).findByUserIds(any());
+        verify(redisTemplate).convertAndSend(eq(NotificationPreferenceCache.INVALIDATION_CHANNEL), eq(1L));
+    }
+
+    private static NotificationPreference preferences(long userId, boolean web) {
+        User user = new User();
+        user.setId(userId);
+        return NotificationPreference.builder().user(user).webNotifications(web).build();
+    }
+}
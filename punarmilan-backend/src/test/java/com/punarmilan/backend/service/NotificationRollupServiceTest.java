@@ -0,0 +1,135 @@
+package com.punarmilan.backend.service;
+
+import com.punarmilan.backend.entity.Profile;
+import com.punarmilan.backend.entity.User;
+import com.punarmilan.backend.repository.ProfileRepository;
+import com.punarmilan.backend.repository.UserRepository;
+import com.punarmilan.backend.service.NotificationPreferenceCache.Preferences;
+import com.punarmilan.backend.service.NotificationService.NewNotification;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * With Redis down and a zero-length window, a spill closes the windows on the
+ * spot, which shows what a rollup turns into without a running Redis. A
+ * window whose insert fails is kept and emitted on the next spill instead.
+ */
+class NotificationRollupServiceTest {
+
+    private NotificationService notificationService;
+    private EmailService emailService;
+    private NotificationRollupService rollupService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        notificationService = mock(NotificationService.class);
+        emailService = mock(EmailService.class);
+        UserRepository userRepository = mock(UserRepository.class);
+        ProfileRepository profileRepository = mock(ProfileRepository.class);
+        NotificationPreferenceCache preferenceCache = mock(NotificationPreferenceCache.class);
+        RedisTemplate<String, Object> redisTemplate = mock(RedisTemplate.class);
+        rollupService = new NotificationRollupService(notificationService, preferenceCache, emailService,
+                userRepository, profileRepository, redisTemplate, new SimpleMeterRegistry(), true, 0, 3, 100, 50);
+
+        List<User> users = List.of(user(1L), user(11L), user(12L));
+        when(userRepository.findAllById(any())).thenReturn(users);
+        when(profileRepository.findAllByUserIn(anyList())).thenReturn(List.of(profile(users.get(1), "Rahul"),
+                profile(users.get(2), "Asha")));
+        when(preferenceCache.getAll(any())).thenReturn(Map.of(1L, Preferences.DEFAULTS));
+        when(redisTemplate.execute(any(RedisScript.class), any(), any(), anyList(), any(Object[].class)))
+                .thenThrow(new RedisConnectionFailureException("down"));
+    }
+
+    @Test
+    void viewsFromSeveralPeopleBecomeOneRollup() {
+        rollupService.record(1L, 12L, "PROFILE_VIEW");
+        rollupService.record(1L, 11L, "PROFILE_VIEW");
+        rollupService.record(1L, 11L, "PROFILE_VIEW");
+
+        rollupService.spill();
+
+        NewNotification rollup = single(emitted());
+        assertEquals("PROFILE_VIEW", rollup.type());
+        assertEquals("2 people viewed your profile", rollup.title());
+        assertEquals("Rahul and Asha viewed your profile", rollup.message());
+        assertNull(rollup.relatedId());
+    }
+
+    @Test
+    void aSingleShortlistStaysAPlainNotification() {
+        rollupService.record(1L, 12L, "SHORTLISTED");
+
+        rollupService.spill();
+
+        NewNotification notification = single(emitted());
+        assertEquals("Asha liked your profile", notification.message());
+        assertEquals(12L, notification.relatedId());
+        verify(emailService).sendShortlistEmail(any(User.class), any(User.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void failedInsertKeepsTheWindowAndHoldsBackTheMail() {
+        doThrow(new DataAccessResourceFailureException("db down")).doNothing()
+                .when(notificationService).createNotifications(anyList());
+        rollupService.record(1L, 12L, "SHORTLISTED");
+
+        rollupService.spill();
+
+        verify(emailService, never()).sendShortlistEmail(any(User.class), any(User.class));
+
+        rollupService.spill();
+
+        ArgumentCaptor<List<NewNotification>> captor = ArgumentCaptor.forClass(List.class);
+        verify(notificationService, times(2)).createNotifications(captor.capture());
+        assertEquals("Asha liked your profile", single(captor.getValue()).message());
+        verify(emailService).sendShortlistEmail(any(User.class), any(User.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<NewNotification> emitted() {
+        ArgumentCaptor<List<NewNotification>> captor = ArgumentCaptor.forClass(List.class);
+        verify(notificationService).createNotifications(captor.capture());
+        return captor.getValue();
+    }
+
+    private static NewNotification single(List<NewNotification> notifications) {
+        assertEquals(1, notifications.size());
+        return notifications.get(0);
+    }
+
+    private static User user(long id) {
+        User user = new User();
+        user.setId(id);
+        user.setEmail("user" + id + "@example.com");
+        return user;
+    }
+
+    private static Profile profile(User user, String name) {
+        Profile profile = new Profile();
+        profile.setUser(user);
+        profile.setFullName(name);
+        return profile;
+    }
+}
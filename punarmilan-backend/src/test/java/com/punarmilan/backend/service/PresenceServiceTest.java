@@ -0,0 +1,136 @@
+package com.punarmilan.backend.service;
+
+import com.punarmilan.backend.config.WebSocketAuthInterceptor;
+import com.punarmilan.backend.repository.MatchRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.security.Principal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * One node's view of presence: sessions are published under the node id the
+ * rest of the node uses, hidden sessions never show, lookups skip Redis for
+ * local users and recent answers, and a user who flaps is pushed to their
+ * matches once.
+ */
+class PresenceServiceTest {
+
+    private static final String NODE = "node-a";
+
+    private RedisTemplate<String, Object> redisTemplate;
+    private HashOperations<String, Object, Object> hashOperations;
+    private MatchRepository matchRepository;
+    private SimpMessagingTemplate messagingTemplate;
+    private PresenceService presenceService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisTemplate = mock(RedisTemplate.class);
+        hashOperations = mock(HashOperations.class);
+        doReturn(hashOperations).when(redisTemplate).opsForHash();
+        matchRepository = mock(MatchRepository.class);
+        messagingTemplate = mock(SimpMessagingTemplate.class);
+        presenceService = new PresenceService(redisTemplate, matchRepository, messagingTemplate,
+                new NodeIdentity(NODE), 90, 60000, 30000);
+    }
+
+    @Test
+    void sessionsArePublishedUnderTheSharedNodeId() {
+        presenceService.onConnected(connected("s1", 7L, false));
+        presenceService.onConnected(connected("s2", 7L, false));
+        verify(hashOperations).put("presence:7", NODE, 1);
+        verify(hashOperations).put("presence:7", NODE, 2);
+
+        presenceService.onDisconnect(disconnected("s1", 7L));
+        presenceService.onDisconnect(disconnected("s2", 7L));
+        verify(hashOperations, times(2)).put("presence:7", NODE, 1);
+        verify(hashOperations).delete("presence:7", NODE);
+    }
+
+    @Test
+    void hiddenSessionsStayOffline() {
+        presenceService.onConnected(connected("s1", 7L, true));
+
+        verify(hashOperations, never()).put(anyString(), any(), any());
+        when(redisTemplate.executePipelined(any(SessionCallback.class))).thenReturn(List.of(0L));
+        assertEquals(false, presenceService.isOnline(7L));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void lookupsSkipRedisForLocalUsersAndRecentAnswers() {
+        presenceService.onConnected(connected("s1", 7L, false));
+        when(redisTemplate.executePipelined(any(SessionCallback.class))).thenReturn(List.of(1L, 0L));
+
+        Map<Long, Boolean> first = presenceService.areOnline(List.of(7L, 8L, 9L));
+        Map<Long, Boolean> second = presenceService.areOnline(List.of(8L, 9L));
+
+        assertEquals(Map.of(7L, true, 8L, true, 9L, false), first);
+        assertEquals(Map.of(8L, true, 9L, false), second);
+        // Only the two misses of the first call went to Redis, in one round trip
+        verify(redisTemplate, times(1)).executePipelined(any(SessionCallback.class));
+    }
+
+    @Test
+    void flappingUserIsPushedToMatchesOnce() {
+        when(matchRepository.findMatchedUserIds(7L)).thenReturn(List.of(20L, 21L));
+
+        presenceService.onConnected(connected("s1", 7L, false));
+        presenceService.onDisconnect(disconnected("s1", 7L));
+        presenceService.onConnected(connected("s2", 7L, false));
+        presenceService.pushChanges();
+        presenceService.onDisconnect(disconnected("s2", 7L));
+        presenceService.onConnected(connected("s3", 7L, false));
+        presenceService.pushChanges();
+
+        verify(messagingTemplate).convertAndSendToUser(eq("20"), eq("/queue/online-status"), any(Object.class));
+        verify(messagingTemplate).convertAndSendToUser(eq("21"), eq("/queue/online-status"), any(Object.class));
+    }
+
+    private static SessionConnectedEvent connected(String sessionId, Long userId, boolean hidden) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT_ACK);
+        accessor.setSessionId(sessionId);
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put(WebSocketAuthInterceptor.SESSION_HIDDEN, hidden);
+        accessor.setSessionAttributes(attributes);
+        Message<byte[]> message = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+        return new SessionConnectedEvent(new Object(), message, principal(userId));
+    }
+
+    private static SessionDisconnectEvent disconnected(String sessionId, Long userId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.DISCONNECT);
+        accessor.setSessionId(sessionId);
+        Message<byte[]> message = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+        return new SessionDisconnectEvent(new Object(), message, sessionId, CloseStatus.NORMAL, principal(userId));
+    }
+
+    private static Principal principal(Long userId) {
+        return userId::toString;
+    }
+}
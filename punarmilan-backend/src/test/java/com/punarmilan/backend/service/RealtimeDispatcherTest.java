@@ -0,0 +1,186 @@
+package com.punarmilan.backend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Frames must wait for commit, vanish on rollback and keep per conversation
+ * order. Transactions run through a real transaction manager so the
+ * synchronization phases happen in the order Spring drives them.
+ */
+class RealtimeDispatcherTest {
+
+    private final List<String> delivered = new CopyOnWriteArrayList<>();
+    private final TransactionTemplate transactionTemplate = new TransactionTemplate(new InMemoryTransactionManager());
+    private RealtimeDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        SimpMessagingTemplate template = new SimpMessagingTemplate((message, timeout) -> true) {
+            @Override
+            public void convertAndSendToUser(String user, String destination, Object payload) {
+                delivered.add(user + destination + ":" + payload);
+            }
+        };
+        dispatcher = new RealtimeDispatcher(template, new SimpleMeterRegistry(), 2, 200, 1000, 50);
+        dispatcher.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.stop();
+    }
+
+    @Test
+    void framesWaitForCommitAndKeepOrderAndCoalesce() throws Exception {
+        transactionTemplate.executeWithoutResult(status -> {
+            dispatcher.send("2", "/queue/messages", "m1", "conversation:10");
+            dispatcher.send("2", "/queue/conversations", "c1", "conversation:10", "2:c:10");
+            dispatcher.send("2", "/queue/messages", "m2", "conversation:10");
+            dispatcher.send("2", "/queue/conversations", "c2", "conversation:10", "2:c:10");
+
+            sleep(100);
+            assertTrue(delivered.isEmpty());
+        });
+        awaitDelivered(3);
+
+        assertEquals(List.of("2/queue/messages:m1", "2/queue/messages:m2", "2/queue/conversations:c2"), delivered);
+    }
+
+    @Test
+    void rolledBackFramesAreNeverSent() throws Exception {
+        transactionTemplate.executeWithoutResult(status -> {
+            dispatcher.send("2", "/queue/messages", "m1", "conversation:10");
+            status.setRollbackOnly();
+        });
+
+        dispatcher.send("2", "/queue/messages", "m2", "conversation:10");
+        awaitDelivered(1);
+        Thread.sleep(100);
+
+        assertEquals(List.of("2/queue/messages:m2"), delivered);
+    }
+
+    @Test
+    void framesSentFromAfterCommitCallbacksAreNotLost() throws Exception {
+        transactionTemplate.executeWithoutResult(status -> {
+            dispatcher.send("2", "/queue/messages", "m1", "conversation:10");
+            // Like an AFTER_COMMIT event listener pushing a notification, with and without frames already pending
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    dispatcher.send("2", "/queue/messages", "m2", "conversation:10");
+                }
+            });
+        });
+        transactionTemplate.executeWithoutResult(status ->
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        dispatcher.send("3", "/queue/notifications", "n1", "notifications:3");
+                    }
+
+                    @Override
+                    public void afterCompletion(int completionStatus) {
+                        dispatcher.send("3", "/queue/notifications", "n2", "notifications:3");
+                    }
+                }));
+        awaitDelivered(4);
+
+        assertTrue(delivered.containsAll(List.of("2/queue/messages:m1", "2/queue/messages:m2",
+                "3/queue/notifications:n1", "3/queue/notifications:n2")), delivered.toString());
+        assertEquals(4, delivered.size());
+        // Nothing is left bound to the thread for the next transaction to inherit
+        assertTrue(TransactionSynchronizationManager.getResourceMap().isEmpty());
+    }
+
+    @Test
+    void fullQueueDropsInsteadOfGrowing() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch unblock = new CountDownLatch(1);
+        SimpMessagingTemplate slow = new SimpMessagingTemplate((message, timeout) -> true) {
+            @Override
+            public void convertAndSendToUser(String user, String destination, Object payload) {
+                blocked.countDown();
+                try {
+                    unblock.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                delivered.add(user + destination + ":" + payload);
+            }
+        };
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        RealtimeDispatcher bounded = new RealtimeDispatcher(slow, registry, 1, 1, 2, 10);
+        bounded.start();
+        try {
+            bounded.send("2", "/queue/messages", "m0", "conversation:10");
+            assertTrue(blocked.await(5, TimeUnit.SECONDS));
+            for (int i = 1; i <= 5; i++) {
+                bounded.send("2", "/queue/messages", "m" + i, "conversation:10");
+            }
+            unblock.countDown();
+            awaitDelivered(3);
+            Thread.sleep(100);
+
+            assertEquals(List.of("2/queue/messages:m0", "2/queue/messages:m1", "2/queue/messages:m2"), delivered);
+            assertEquals(3.0, registry.counter("realtime.dispatch.dropped").count());
+        } finally {
+            unblock.countDown();
+            bounded.stop();
+        }
+    }
+
+    private void awaitDelivered(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (delivered.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Drives synchronizations through commit and completion without a resource behind it
+    private static class InMemoryTransactionManager extends AbstractPlatformTransactionManager {
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}
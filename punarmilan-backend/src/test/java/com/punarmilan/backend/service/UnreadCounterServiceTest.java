@@ -0,0 +1,145 @@
+package com.punarmilan.backend.service;
+
+import com.punarmilan.backend.repository.ConversationRepository;
+import com.punarmilan.backend.repository.MatchRepository;
+import com.punarmilan.backend.repository.MessageRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Seeding and reconciliation against a mocked Redis: the seed is handed to a
+ * create-if-missing script instead of a blind putAll, and reconciliation
+ * counts one page of users per query, leaves recently changed users alone
+ * and ties its corrections to the change stamp it compared against.
+ */
+class UnreadCounterServiceTest {
+
+    private RedisTemplate<String, Object> redisTemplate;
+    private HashOperations<String, Object, Object> hashOps;
+    private ConversationRepository conversationRepository;
+    private MessageRepository messageRepository;
+    private UnreadCounterService service;
+
+    // Keys and arguments of every script run, in order
+    private final List<String> scriptKeys = new ArrayList<>();
+    private final List<List<Object>> scriptArgs = new ArrayList<>();
+    private final List<Long> scriptResults = new ArrayList<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisTemplate = mock(RedisTemplate.class);
+        hashOps = mock(HashOperations.class);
+        doReturn(hashOps).when(redisTemplate).opsForHash();
+        conversationRepository = mock(ConversationRepository.class);
+        messageRepository = mock(MessageRepository.class);
+        service = new UnreadCounterService(redisTemplate, conversationRepository, mock(MatchRepository.class),
+                messageRepository, mock(ConversationCache.class), 2, 60);
+
+        when(redisTemplate.execute(any(RedisScript.class), any(RedisSerializer.class), any(RedisSerializer.class),
+                anyList(), any(Object[].class))).thenAnswer(invocation -> {
+                    scriptKeys.add(invocation.<List<String>>getArgument(3).get(0));
+                    Object[] args = Arrays.copyOfRange(invocation.getArguments(), 4, invocation.getArguments().length);
+                    scriptArgs.add(Arrays.asList(args));
+                    return scriptResults.isEmpty() ? 1L : scriptResults.remove(0);
+                });
+    }
+
+    @Test
+    void missingCountersAreSeededOnlyIfStillMissing() {
+        ConversationRepository.ConversationUnread row = mock(ConversationRepository.ConversationUnread.class);
+        when(row.getId()).thenReturn(10L);
+        when(row.getUnreadCount()).thenReturn(3);
+        when(conversationRepository.findUnreadCountsForUser(1L)).thenReturn(List.of(row));
+        // The first increment finds no hash, the retry after seeding counts
+        scriptResults.addAll(List.of(-1L, 1L, 4L));
+
+        assertEquals(4, service.increment(1L, 10L));
+
+        assertEquals(List.of("unread:1", "unread:1", "unread:1"), scriptKeys);
+        assertEquals(List.of("0", "10", "3"), scriptArgs.get(1));
+        verify(hashOps, never()).putAll(anyString(), anyMap());
+    }
+
+    @Test
+    void reconcilePagesUsersAndSkipsRecentChanges() {
+        long old = System.currentTimeMillis() - 3_600_000;
+        doReturn(cursor("unread:1", "unread:2", "unread:3")).when(redisTemplate).scan(any(ScanOptions.class));
+        when(hashOps.entries("unread:1")).thenReturn(Map.of("10", 2, "_total", 2, "_changed", old));
+        when(hashOps.entries("unread:2")).thenReturn(Map.of("20", 1, "_total", 1,
+                "_changed", System.currentTimeMillis()));
+        when(hashOps.entries("unread:3")).thenReturn(Map.of("30", 5, "_total", 5));
+        List<Collection<Long>> pages = new ArrayList<>();
+        when(messageRepository.countUnreadByConversationForReceivers(anyCollection())).thenAnswer(invocation -> {
+            Collection<Long> ids = invocation.getArgument(0);
+            pages.add(List.copyOf(ids));
+            // User 1 really has 3 unread in conversation 10, user 3 read everything
+            return ids.contains(1L) ? List.<Object[]>of(new Object[] { 1L, 10L, 3L }) : List.of();
+        });
+
+        service.reconcile();
+
+        // User 2 was active a moment ago, it is left for the next run
+        assertEquals(List.of(List.of(1L), List.of(3L)), pages);
+        assertEquals(List.of("unread:1", "unread:3"), scriptKeys);
+        assertEquals(List.of(Long.toString(old), "10", "3"), scriptArgs.get(0));
+        assertEquals(List.of("", "30", "0"), scriptArgs.get(1));
+    }
+
+    @Test
+    void usersWithUnreadColumnsButNoCountersAreSeededFromMessages() {
+        doReturn(cursor()).when(redisTemplate).scan(any(ScanOptions.class));
+        when(conversationRepository.findUser1WithUnreadAfter(eq(0L), any(Pageable.class))).thenReturn(List.of(4L, 5L));
+        when(conversationRepository.findUser1WithUnreadAfter(eq(5L), any(Pageable.class))).thenReturn(List.of());
+        when(conversationRepository.findUser2WithUnreadAfter(anyLong(), any(Pageable.class))).thenReturn(List.of());
+        when(messageRepository.countUnreadByConversationForReceivers(anyCollection()))
+                .thenReturn(List.<Object[]>of(new Object[] { 4L, 40L, 2L }));
+
+        service.reconcile();
+
+        verify(messageRepository).countUnreadByConversationForReceivers(List.of(4L, 5L));
+
+        assertEquals(List.of("unread:4"), scriptKeys);
+        // '1' queues the seeded conversation so its columns get flushed too
+        assertEquals(List.of("1", "40", "2"), scriptArgs.get(0));
+        assertTrue(scriptArgs.stream().noneMatch(List::isEmpty));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Cursor<String> cursor(String... keys) {
+        Iterator<String> iterator = List.of(keys).iterator();
+        Cursor<String> cursor = mock(Cursor.class);
+        when(cursor.hasNext()).thenAnswer(invocation -> iterator.hasNext());
+        when(cursor.next()).thenAnswer(invocation -> iterator.next());
+        return cursor;
+    }
+}
@@ -0,0 +1,66 @@
+package com.punarmilan.backend.service;
+
+import com.punarmilan.backend.dto.NotificationDto;
+import com.punarmilan.backend.dto.NotificationPushDto;
+import com.punarmilan.backend.dto.PaymentResponseDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Frames go to the versioned destination, while the old one keeps getting the
+ * bare NotificationDto it always carried.
+ */
+class WebSocketNotificationServiceTest {
+
+    private RealtimeDispatcher realtimeDispatcher;
+    private WebSocketNotificationService service;
+
+    @BeforeEach
+    void setUp() {
+        realtimeDispatcher = mock(RealtimeDispatcher.class);
+        service = new WebSocketNotificationService(realtimeDispatcher);
+    }
+
+    @Test
+    void paymentKeepsTheOldPayloadOnTheOldDestination() {
+        PaymentResponseDto payment = new PaymentResponseDto();
+        payment.setAmount(499.0);
+        payment.setSubscriptionId(12L);
+
+        service.sendPaymentNotification(5L, payment);
+
+        ArgumentCaptor<Object> legacy = ArgumentCaptor.forClass(Object.class);
+        verify(realtimeDispatcher).send(eq("5"), eq("/queue/notifications"), legacy.capture(), eq("notifications:5"));
+        assertEquals("PAYMENT_SUCCESS", ((NotificationDto) legacy.getValue()).getType());
+
+        ArgumentCaptor<Object> frame = ArgumentCaptor.forClass(Object.class);
+        verify(realtimeDispatcher).send(eq("5"), eq("/queue/notifications/v2"), frame.capture(), eq("notifications:5"));
+        assertEquals(NotificationPushDto.CREATED, ((NotificationPushDto) frame.getValue()).getEvent());
+    }
+
+    @Test
+    void changeFramesOnlyGoToTheVersionedDestination() {
+        service.updated(5L, NotificationDto.builder().id(40L).type("NEW_MATCH").build());
+
+        ArgumentCaptor<Object> frame = ArgumentCaptor.forClass(Object.class);
+        verify(realtimeDispatcher).send(eq("5"), eq("/queue/notifications/v2"), frame.capture(), eq("notifications:5"));
+        NotificationPushDto pushed = (NotificationPushDto) frame.getValue();
+        assertEquals(NotificationPushDto.UPDATED, pushed.getEvent());
+        assertNull(pushed.getUnreadDelta());
+        // The counts come from the sync the client is asked for
+        verify(realtimeDispatcher).send(eq("5"), eq("/queue/notifications/v2"),
+                eq(NotificationPushDto.builder().event(NotificationPushDto.SYNC).build()), eq("notifications:5"),
+                eq("notification-sync:5"));
+        verify(realtimeDispatcher, never()).send(anyString(), eq("/queue/notifications"), any(), anyString());
+    }
+}
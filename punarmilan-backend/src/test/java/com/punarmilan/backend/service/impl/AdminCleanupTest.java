@@ -0,0 +1,56 @@
+package com.punarmilan.backend.service.impl;
+
+import com.punarmilan.backend.repository.AuditLogRepository;
+import com.punarmilan.backend.repository.MessageRepository;
+import com.punarmilan.backend.repository.NotificationRepository;
+import com.punarmilan.backend.repository.PaymentTransactionRepository;
+import com.punarmilan.backend.repository.PremiumSubscriptionRepository;
+import com.punarmilan.backend.repository.ProfileRepository;
+import com.punarmilan.backend.repository.UserRepository;
+import com.punarmilan.backend.service.EmailService;
+import com.punarmilan.backend.service.FanoutService;
+import com.punarmilan.backend.service.NotificationService;
+import com.punarmilan.backend.service.RetentionService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+/**
+ * The admin cleanup only ever expires audit logs. Notifications, view history
+ * and the outbox are left to the nightly retention run.
+ */
+class AdminCleanupTest {
+
+    private RetentionService retentionService;
+    private AdminServiceImpl adminService;
+
+    @BeforeEach
+    void setUp() {
+        retentionService = mock(RetentionService.class);
+        adminService = new AdminServiceImpl(mock(UserRepository.class), mock(ProfileRepository.class),
+                mock(PremiumSubscriptionRepository.class), mock(PaymentTransactionRepository.class),
+                mock(NotificationRepository.class), mock(MessageRepository.class), mock(AuditLogRepository.class),
+                mock(NotificationService.class), mock(EmailService.class), mock(FanoutService.class),
+                retentionService, mock(HttpServletRequest.class));
+    }
+
+    @Test
+    void defaultCleanupKeepsThirtyDaysOfAuditLogs() {
+        adminService.cleanupOldData();
+
+        verify(retentionService).purgeAuditLogs(30);
+        verifyNoMoreInteractions(retentionService);
+    }
+
+    @Test
+    void cleanupWithDaysOnlyTouchesAuditLogs() {
+        adminService.cleanupOldData(90);
+
+        verify(retentionService).purgeAuditLogs(90);
+        verifyNoMoreInteractions(retentionService);
+    }
+}
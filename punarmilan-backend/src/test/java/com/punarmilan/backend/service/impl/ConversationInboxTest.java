@@ -0,0 +1,114 @@
+package com.punarmilan.backend.service.impl;
+
+import com.punarmilan.backend.dto.ConversationDto;
+import com.punarmilan.backend.dto.PhotoDto;
+import com.punarmilan.backend.entity.Profile;
+import com.punarmilan.backend.entity.User;
+import com.punarmilan.backend.repository.ConversationRepository;
+import com.punarmilan.backend.repository.MatchRepository;
+import com.punarmilan.backend.repository.MessageRepository;
+import com.punarmilan.backend.repository.ProfileRepository;
+import com.punarmilan.backend.repository.UserRepository;
+import com.punarmilan.backend.service.ConversationCache;
+import com.punarmilan.backend.service.ConversationFeedService;
+import com.punarmilan.backend.service.ImageDerivativeService.ImageVariant;
+import com.punarmilan.backend.service.MessageArchiveService;
+import com.punarmilan.backend.service.MessageSearchService;
+import com.punarmilan.backend.service.PhotoVisibilityService;
+import com.punarmilan.backend.service.UnreadCounterService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Cached inbox rows get the other party's name and photo from the current
+ * profile and likes on every read, so an edit or a like since the row was
+ * cached shows up on the next page load.
+ */
+class ConversationInboxTest {
+
+    private ProfileRepository profileRepository;
+    private MatchRepository matchRepository;
+    private PhotoVisibilityService photoVisibilityService;
+    private ConversationFeedService conversationFeedService;
+    private MessagingServiceImpl messagingService;
+    private User me;
+
+    @BeforeEach
+    void setUp() {
+        UserRepository userRepository = mock(UserRepository.class);
+        ConversationRepository conversationRepository = mock(ConversationRepository.class);
+        profileRepository = mock(ProfileRepository.class);
+        matchRepository = mock(MatchRepository.class);
+        photoVisibilityService = mock(PhotoVisibilityService.class);
+        conversationFeedService = mock(ConversationFeedService.class);
+        messagingService = new MessagingServiceImpl(mock(MessageRepository.class), conversationRepository,
+                userRepository, matchRepository, mock(ApplicationEventPublisher.class), photoVisibilityService,
+                profileRepository, new ConversationCache(conversationRepository, mock(RedisTemplate.class), 100, 60),
+                mock(UnreadCounterService.class), mock(MessageSearchService.class), mock(MessageArchiveService.class),
+                conversationFeedService);
+
+        me = User.builder().id(1L).email("me@example.com").build();
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(me.getEmail(), null, List.of()));
+        when(userRepository.findByEmail(me.getEmail())).thenReturn(Optional.of(me));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void cachedRowsGetTheCurrentNameAndPhoto() {
+        User liker = User.builder().id(2L).email("renamed@example.com").build();
+        User stranger = User.builder().id(3L).email("stranger@example.com").build();
+        Profile likerProfile = Profile.builder().id(20L).user(liker).build();
+        Profile strangerProfile = Profile.builder().id(30L).user(stranger).build();
+        Page<ConversationDto> cached = new PageImpl<>(List.of(
+                row(10L, 2L, "old@example.com"), row(11L, 3L, "stranger@example.com")));
+        when(conversationFeedService.inboxPage(eq(1L), any(), any(), any())).thenReturn(cached);
+        when(profileRepository.findAllByUserIdIn(anyCollection())).thenReturn(List.of(likerProfile, strangerProfile));
+        when(matchRepository.findLikersAmong(eq(1L), anyCollection())).thenReturn(List.of(2L));
+        PhotoDto visible = PhotoDto.builder().url("/uploads/new.jpg").build();
+        PhotoDto blurred = PhotoDto.builder().blurred(true).restrictionReason("LIKE_REQUIRED").build();
+        when(photoVisibilityService.getProfilePhoto(me, likerProfile, true, ImageVariant.THUMB)).thenReturn(visible);
+        when(photoVisibilityService.getProfilePhoto(me, strangerProfile, false, ImageVariant.THUMB)).thenReturn(blurred);
+
+        List<ConversationDto> page = messagingService.getConversations(PageRequest.of(0, 20)).getContent();
+
+        assertEquals("renamed@example.com", page.get(0).getOtherUserName());
+        assertEquals("renamed@example.com", page.get(0).getUser2Name());
+        assertEquals(visible, page.get(0).getOtherUserPhotoUrl());
+        assertEquals(blurred, page.get(1).getOtherUserPhotoUrl());
+    }
+
+    private static ConversationDto row(Long id, Long otherUserId, String otherUserName) {
+        return ConversationDto.builder()
+                .id(id)
+                .user1Id(1L)
+                .user1Name("me@example.com")
+                .user2Id(otherUserId)
+                .user2Name(otherUserName)
+                .otherUserId(otherUserId)
+                .otherUserName(otherUserName)
+                .build();
+    }
+}
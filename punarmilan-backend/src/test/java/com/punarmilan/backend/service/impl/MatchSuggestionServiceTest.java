@@ -0,0 +1,142 @@
+package com.punarmilan.backend.service.impl;
+
+import com.punarmilan.backend.entity.MatchSuggestion;
+import com.punarmilan.backend.entity.Profile;
+import com.punarmilan.backend.entity.User;
+import com.punarmilan.backend.repository.MatchRepository;
+import com.punarmilan.backend.repository.MatchSuggestionRepository;
+import com.punarmilan.backend.repository.ProfileRepository;
+import com.punarmilan.backend.repository.UserRepository;
+import com.punarmilan.backend.repository.UserViewHistoryRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Refreshes the suggestions of two users against a small pool: each gets the
+ * best scoring candidates of the other gender, minus the ones already seen,
+ * and reading them back drops candidates that have since gone inactive or hidden.
+ */
+class MatchSuggestionServiceTest {
+
+    private UserRepository userRepository;
+    private ProfileRepository profileRepository;
+    private MatchRepository matchRepository;
+    private UserViewHistoryRepository viewHistoryRepository;
+    private MatchSuggestionRepository suggestionRepository;
+    private MatchSuggestionService service;
+    private List<MatchSuggestion> inserted;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        userRepository = mock(UserRepository.class);
+        profileRepository = mock(ProfileRepository.class);
+        matchRepository = mock(MatchRepository.class);
+        viewHistoryRepository = mock(UserViewHistoryRepository.class);
+        suggestionRepository = mock(MatchSuggestionRepository.class);
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        service = new MatchSuggestionService(userRepository, profileRepository, matchRepository,
+                viewHistoryRepository, suggestionRepository, jdbcTemplate,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)), 500, 100, 2);
+
+        inserted = new ArrayList<>();
+        when(jdbcTemplate.batchUpdate(anyString(), any(Collection.class), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class))).thenAnswer(invocation -> {
+                    inserted.addAll(invocation.<Collection<MatchSuggestion>>getArgument(1));
+                    return new int[0][];
+                });
+    }
+
+    @Test
+    void refreshKeepsTheBestUnseenCandidatesOfThePreferredGender() {
+        Profile rahul = profile(1L, "Male", "Pune", 1994);
+        Profile priya = profile(2L, "Female", "Mumbai", 1995);
+        List<Profile> pool = List.of(priya,
+                profile(10L, "Female", "Pune", 1994),
+                profile(11L, "Female", "Delhi", 1994),
+                profile(12L, "Female", "Pune", 1994),
+                profile(13L, "Female", "Pune", 1986),
+                profile(20L, "Male", "Mumbai", 1993),
+                rahul);
+
+        when(profileRepository.findSuggestionCandidates(any(Pageable.class))).thenReturn(pool);
+        when(userRepository.findActiveAfter(eq(0L), any(Pageable.class)))
+                .thenReturn(List.of(rahul.getUser(), priya.getUser()));
+        when(userRepository.findActiveAfter(eq(2L), any(Pageable.class))).thenReturn(List.of());
+        when(profileRepository.findAllByUserIdIn(anyCollection())).thenReturn(List.of(rahul, priya));
+        // Rahul already opened 12, Priya liked 20
+        when(viewHistoryRepository.findViewedPairs(anyCollection()))
+                .thenReturn(List.<Object[]>of(new Object[] { 1L, 12L }));
+        when(matchRepository.findLikedOrMatchedByUser1(anyCollection())).thenReturn(List.of());
+        when(matchRepository.findLikedOrMatchedByUser2(anyCollection()))
+                .thenReturn(List.<Object[]>of(new Object[] { 2L, 20L }));
+
+        service.refresh();
+
+        // Same city and age scores 55, same city eight years apart 40, beating the 30s of an age match alone
+        assertEquals(List.of("1->10#1:55", "1->13#2:40", "2->1#1:30"), inserted.stream()
+                .map(row -> row.getUserId() + "->" + row.getCandidateId() + "#" + row.getRank() + ":" + row.getScore())
+                .toList());
+    }
+
+    @Test
+    void topMatchesSkipsCandidatesThatWentInactiveOrHidden() {
+        Profile active = profile(10L, "Female", "Pune", 1994);
+        Profile gone = profile(11L, "Female", "Pune", 1994);
+        gone.getUser().setActive(false);
+        Profile hidden = profile(12L, "Female", "Pune", 1994);
+        hidden.getUser().setHidden(true);
+        when(suggestionRepository.findTopForUsers(List.of(1L), 5)).thenReturn(List.of(
+                suggestion(1L, 11L, 1, 80), suggestion(1L, 12L, 2, 70), suggestion(1L, 10L, 3, 60)));
+        when(profileRepository.findAllByUserIdIn(anyCollection())).thenReturn(List.of(active, gone, hidden));
+
+        Map<Long, List<MatchSuggestionService.Suggestion>> matches = service.topMatches(List.of(1L), 5);
+
+        assertEquals(1, matches.get(1L).size());
+        assertEquals(10L, matches.get(1L).get(0).profile().getUser().getId());
+        assertEquals(60, matches.get(1L).get(0).score());
+    }
+
+    private static Profile profile(Long userId, String gender, String city, int birthYear) {
+        User user = new User();
+        user.setId(userId);
+        Profile profile = new Profile();
+        profile.setId(userId * 100);
+        profile.setUser(user);
+        profile.setGender(gender);
+        profile.setCity(city);
+        profile.setDateOfBirth(LocalDate.of(birthYear, 1, 1));
+        return profile;
+    }
+
+    private static MatchSuggestion suggestion(Long userId, Long candidateId, int rank, int score) {
+        return MatchSuggestion.builder()
+                .userId(userId)
+                .candidateId(candidateId)
+                .rank(rank)
+                .score(score)
+                .computedAt(LocalDateTime.now())
+                .build();
+    }
+}
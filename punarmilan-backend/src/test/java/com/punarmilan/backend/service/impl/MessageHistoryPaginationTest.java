@@ -0,0 +1,264 @@
+package com.punarmilan.backend.service.impl;
+
+import com.punarmilan.backend.dto.MessageDto;
+import com.punarmilan.backend.dto.MessageWindowDto;
+import com.punarmilan.backend.entity.Conversation;
+import com.punarmilan.backend.entity.Message;
+import com.punarmilan.backend.entity.User;
+import com.punarmilan.backend.exception.BadRequestException;
+import com.punarmilan.backend.exception.ResourceNotFoundException;
+import com.punarmilan.backend.repository.ConversationRepository;
+import com.punarmilan.backend.repository.MatchRepository;
+import com.punarmilan.backend.repository.MessageRepository;
+import com.punarmilan.backend.repository.ProfileRepository;
+import com.punarmilan.backend.repository.UserRepository;
+import com.punarmilan.backend.service.ConversationCache;
+import com.punarmilan.backend.service.ConversationFeedService;
+import com.punarmilan.backend.service.MessageArchiveService;
+import com.punarmilan.backend.service.MessageSearchService;
+import com.punarmilan.backend.service.PhotoVisibilityService;
+import com.punarmilan.backend.service.UnreadCounterService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Keyset history over a conversation of messages 1 to 10, where 1 to 4 may
+ * live in the cold archive: each cursor returns the right window newest
+ * first, the has-more flags come from the one look-ahead row, pages stitch
+ * across the archive boundary, and only a window reaching the newest message
+ * marks the conversation read. The older offset pages read on into the
+ * archive the same way.
+ */
+class MessageHistoryPaginationTest {
+
+    private static final long CONVERSATION_ID = 10L;
+    private static final long LATEST = 10L;
+
+    private MessageRepository messageRepository;
+    private ConversationRepository conversationRepository;
+    private MessageArchiveService messageArchiveService;
+    private MessagingServiceImpl messagingService;
+
+    private User me;
+    private User other;
+    private Conversation conversation;
+    private List<Message> all;
+
+    @BeforeEach
+    void setUp() {
+        messageRepository = mock(MessageRepository.class);
+        conversationRepository = mock(ConversationRepository.class);
+        messageArchiveService = mock(MessageArchiveService.class);
+        UserRepository userRepository = mock(UserRepository.class);
+        ProfileRepository profileRepository = mock(ProfileRepository.class);
+        MatchRepository matchRepository = mock(MatchRepository.class);
+        messagingService = new MessagingServiceImpl(messageRepository, conversationRepository, userRepository,
+                matchRepository, mock(ApplicationEventPublisher.class), mock(PhotoVisibilityService.class),
+                profileRepository, new ConversationCache(conversationRepository, mock(RedisTemplate.class), 100, 60),
+                mock(UnreadCounterService.class), mock(MessageSearchService.class), messageArchiveService,
+                mock(ConversationFeedService.class));
+
+        me = User.builder().id(1L).email("me@example.com").build();
+        other = User.builder().id(2L).email("other@example.com").build();
+        conversation = Conversation.builder().id(CONVERSATION_ID).user1(me).user2(other).build();
+        all = LongStream.rangeClosed(1, LATEST).mapToObj(this::message).toList();
+
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(me.getEmail(), null, List.of()));
+        when(userRepository.findByEmail(me.getEmail())).thenReturn(Optional.of(me));
+        when(conversationRepository.findById(CONVERSATION_ID)).thenReturn(Optional.of(conversation));
+        when(messageRepository.findLatestMessageId(CONVERSATION_ID)).thenReturn(LATEST);
+        when(matchRepository.findMatchBetweenUserIds(anyLong(), anyLong())).thenReturn(Optional.empty());
+        liveFrom(1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void latestWindowIsNewestFirstAndMarksTheConversationRead() {
+        MessageWindowDto window = messagingService.getMessageHistory(CONVERSATION_ID, null, null, null, 3);
+
+        assertEquals(List.of(10L, 9L, 8L), ids(window));
+        assertTrue(window.isHasOlder());
+        assertFalse(window.isHasNewer());
+        assertEquals(8L, window.getOldestId());
+        assertEquals(10L, window.getNewestId());
+        verify(conversationRepository).advanceReadWatermark(CONVERSATION_ID, me.getId(), LATEST);
+    }
+
+    @Test
+    void beforeScrollsBackWithoutMarkingRead() {
+        MessageWindowDto window = messagingService.getMessageHistory(CONVERSATION_ID, 8L, null, null, 3);
+
+        assertEquals(List.of(7L, 6L, 5L), ids(window));
+        assertTrue(window.isHasOlder());
+        assertTrue(window.isHasNewer());
+
+        MessageWindowDto first = messagingService.getMessageHistory(CONVERSATION_ID, 3L, null, null, 3);
+        assertEquals(List.of(2L, 1L), ids(first));
+        assertFalse(first.isHasOlder());
+        verify(conversationRepository, never()).advanceReadWatermark(anyLong(), anyLong(), anyLong());
+    }
+
+    @Test
+    void afterCatchesUpUntilTheNewestMessage() {
+        MessageWindowDto middle = messagingService.getMessageHistory(CONVERSATION_ID, null, 2L, null, 3);
+        assertEquals(List.of(5L, 4L, 3L), ids(middle));
+        assertTrue(middle.isHasNewer());
+        assertTrue(middle.isHasOlder());
+        verify(conversationRepository, never()).advanceReadWatermark(anyLong(), anyLong(), anyLong());
+
+        MessageWindowDto end = messagingService.getMessageHistory(CONVERSATION_ID, null, 7L, null, 3);
+        assertEquals(List.of(10L, 9L, 8L), ids(end));
+        assertFalse(end.isHasNewer());
+        verify(conversationRepository).advanceReadWatermark(CONVERSATION_ID, me.getId(), LATEST);
+    }
+
+    @Test
+    void aroundCentresTheWindowOnTheMessage() {
+        MessageWindowDto window = messagingService.getMessageHistory(CONVERSATION_ID, null, null, 5L, 4);
+
+        assertEquals(List.of(7L, 6L, 5L, 4L), ids(window));
+        assertTrue(window.isHasOlder());
+        assertTrue(window.isHasNewer());
+    }
+
+    @Test
+    void aroundAMessageOfAnotherConversationIsNotFound() {
+        assertThrows(ResourceNotFoundException.class,
+                () -> messagingService.getMessageHistory(CONVERSATION_ID, null, null, 42L, 4));
+    }
+
+    @Test
+    void onlyOneCursorIsAccepted() {
+        assertThrows(BadRequestException.class,
+                () -> messagingService.getMessageHistory(CONVERSATION_ID, 5L, 2L, null, 3));
+    }
+
+    @Test
+    void pagesStitchAcrossTheArchiveBoundary() {
+        conversation.setArchivedThroughMessageId(4L);
+        liveFrom(5);
+        when(messageArchiveService.findBefore(eq(conversation), anyLong(), anyInt())).thenAnswer(invocation ->
+                older(invocation.getArgument(1), invocation.getArgument(2), 1, 4));
+        when(messageArchiveService.findAfter(eq(conversation), anyLong(), anyInt())).thenAnswer(invocation ->
+                newer(invocation.getArgument(1), invocation.getArgument(2), 1, 4));
+
+        MessageWindowDto back = messagingService.getMessageHistory(CONVERSATION_ID, 7L, null, null, 4);
+        assertEquals(List.of(6L, 5L, 4L, 3L), ids(back));
+        assertTrue(back.isHasOlder());
+
+        MessageWindowDto forward = messagingService.getMessageHistory(CONVERSATION_ID, null, 2L, null, 4);
+        assertEquals(List.of(6L, 5L, 4L, 3L), ids(forward));
+        assertTrue(forward.isHasNewer());
+    }
+
+    @Test
+    void offsetPagesContinueIntoTheArchive() {
+        conversation.setArchivedThroughMessageId(4L);
+        List<Message> hot = older(Long.MAX_VALUE, 10, 5, LATEST);
+        when(messageRepository.findByConversationOrderByCreatedAtDesc(eq(conversation), any(Pageable.class)))
+                .thenAnswer(invocation -> {
+                    Pageable page = invocation.getArgument(1);
+                    int from = (int) Math.min(page.getOffset(), hot.size());
+                    return new PageImpl<>(hot.subList(from, Math.min(from + page.getPageSize(), hot.size())),
+                            page, hot.size());
+                });
+        when(messageArchiveService.countMessages(CONVERSATION_ID)).thenReturn(4L);
+        when(messageArchiveService.findPage(eq(conversation), anyLong(), anyInt())).thenAnswer(invocation -> {
+            List<Message> archived = older(Long.MAX_VALUE, 10, 1, 4);
+            int from = (int) (long) invocation.<Long>getArgument(1);
+            return archived.subList(from, Math.min(from + invocation.<Integer>getArgument(2), archived.size()));
+        });
+
+        Page<MessageDto> second = messagingService.getMessages(CONVERSATION_ID, PageRequest.of(1, 4));
+        assertEquals(List.of(6L, 5L, 4L, 3L), second.map(MessageDto::getId).getContent());
+        assertEquals(10, second.getTotalElements());
+
+        Page<MessageDto> last = messagingService.getMessages(CONVERSATION_ID, PageRequest.of(2, 4));
+        assertEquals(List.of(2L, 1L), last.map(MessageDto::getId).getContent());
+        assertFalse(last.hasNext());
+    }
+
+    @Test
+    void limitIsCappedAtOneHundred() {
+        messagingService.getMessageHistory(CONVERSATION_ID, null, null, null, 1000);
+
+        // The cap plus the look-ahead row
+        verify(messageRepository).findBefore(eq(CONVERSATION_ID), eq(Long.MAX_VALUE), eq(PageRequest.of(0, 101)));
+    }
+
+    // Messages from `first` on are in the messages table
+    private void liveFrom(long first) {
+        when(messageRepository.findBefore(eq(CONVERSATION_ID), anyLong(), any(Pageable.class))).thenAnswer(
+                invocation -> older(invocation.getArgument(1), invocation.<Pageable>getArgument(2).getPageSize(),
+                        first, LATEST));
+        when(messageRepository.findAfter(eq(CONVERSATION_ID), anyLong(), any(Pageable.class))).thenAnswer(
+                invocation -> newer(invocation.getArgument(1), invocation.<Pageable>getArgument(2).getPageSize(),
+                        first, LATEST));
+    }
+
+    private List<Message> older(long before, int limit, long from, long to) {
+        return all.stream()
+                .filter(m -> m.getId() < before && m.getId() >= from && m.getId() <= to)
+                .sorted(Comparator.comparing(Message::getId).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    private List<Message> newer(long after, int limit, long from, long to) {
+        return all.stream()
+                .filter(m -> m.getId() > after && m.getId() >= from && m.getId() <= to)
+                .sorted(Comparator.comparing(Message::getId))
+                .limit(limit)
+                .toList();
+    }
+
+    private Message message(long id) {
+        boolean mine = id % 2 == 0;
+        return Message.builder()
+                .id(id)
+                .sender(mine ? me : other)
+                .receiver(mine ? other : me)
+                .conversation(conversation)
+                .content("message " + id)
+                .messageType(Message.MessageType.TEXT)
+                .createdAt(LocalDateTime.now().minusMinutes(LATEST - id))
+                .build();
+    }
+
+    private static List<Long> ids(MessageWindowDto window) {
+        return window.getMessages().stream().map(MessageDto::getId).toList();
+    }
+}
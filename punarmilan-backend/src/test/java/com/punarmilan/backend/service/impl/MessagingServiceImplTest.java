@@ -0,0 +1,231 @@
+package com.punarmilan.backend.service.impl;
+
+import com.punarmilan.backend.dto.MessageDto;
+import com.punarmilan.backend.dto.SendMessageDto;
+import com.punarmilan.backend.entity.Conversation;
+import com.punarmilan.backend.entity.Message;
+import com.punarmilan.backend.entity.Profile;
+import com.punarmilan.backend.entity.User;
+import com.punarmilan.backend.repository.ConversationRepository;
+import com.punarmilan.backend.repository.MatchRepository;
+import com.punarmilan.backend.repository.MessageRepository;
+import com.punarmilan.backend.repository.ProfileRepository;
+import com.punarmilan.backend.repository.UserRepository;
+import com.punarmilan.backend.service.ChatActivityService;
+import com.punarmilan.backend.service.ConversationCache;
+import com.punarmilan.backend.service.ConversationDeltaAggregator;
+import com.punarmilan.backend.service.ConversationFeedService;
+import com.punarmilan.backend.service.InboxService;
+import com.punarmilan.backend.service.MessageArchiveService;
+import com.punarmilan.backend.service.MessageSearchService;
+import com.punarmilan.backend.service.PhotoVisibilityService;
+import com.punarmilan.backend.service.RealtimeDispatcher;
+import com.punarmilan.backend.service.UnreadCounterService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Pins the statements issued per sent message, so the send path can't drift
+ * back to loading and re-saving the conversation, match and both users.
+ */
+@ExtendWith(MockitoExtension.class)
+class MessagingServiceImplTest {
+
+    @Mock
+    private MessageRepository messageRepository;
+    @Mock
+    private ConversationRepository conversationRepository;
+    @Mock
+    private UserRepository userRepository;
+    @Mock
+    private MatchRepository matchRepository;
+    @Mock
+    private ProfileRepository profileRepository;
+    @Mock
+    private RealtimeDispatcher realtimeDispatcher;
+    @Mock
+    private InboxService inboxService;
+    @Mock
+    private MessageSearchService messageSearchService;
+    @Mock
+    private MessageArchiveService messageArchiveService;
+    @Mock
+    private ConversationDeltaAggregator conversationDeltaAggregator;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+    @Mock
+    private PhotoVisibilityService photoVisibilityService;
+    @Mock
+    private UnreadCounterService unreadCounterService;
+    @Mock
+    private ChatActivityService chatActivityService;
+
+    private ConversationCache conversationCache;
+    private MessagingServiceImpl messagingService;
+
+    private User sender;
+    private User receiver;
+    private Conversation conversation;
+
+    @BeforeEach
+    void setUp() {
+        conversationCache = new ConversationCache(conversationRepository, mock(RedisTemplate.class), 100, 60);
+        messagingService = messagingService(false);
+
+        sender = User.builder().id(1L).email("sender@example.com").build();
+        receiver = User.builder().id(2L).email("receiver@example.com").build();
+        conversation = Conversation.builder().id(10L).user1(sender).user2(receiver).build();
+
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(sender.getEmail(), null, List.of()));
+
+        when(userRepository.findByEmail(sender.getEmail())).thenReturn(Optional.of(sender));
+        when(userRepository.findById(receiver.getId())).thenReturn(Optional.of(receiver));
+        when(conversationRepository.getReferenceById(conversation.getId())).thenReturn(conversation);
+        when(messageRepository.save(any(Message.class))).thenAnswer(invocation -> {
+            Message message = invocation.getArgument(0);
+            message.setId(100L);
+            return message;
+        });
+        when(unreadCounterService.increment(receiver.getId(), conversation.getId())).thenReturn(1);
+        lenient().when(unreadCounterService.get(sender.getId(), conversation.getId())).thenReturn(0);
+        when(profileRepository.findAllByUserIn(anyList())).thenReturn(List.of(
+                Profile.builder().id(1L).user(sender).build(),
+                Profile.builder().id(2L).user(receiver).build()));
+        when(matchRepository.findMatchBetweenUserIds(sender.getId(), receiver.getId())).thenReturn(Optional.empty());
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void sendMessageOnCachedConversationRunsFixedStatements() {
+        conversationCache.put(conversation);
+
+        MessageDto result = messagingService.sendMessage(message("hello"));
+
+        assertEquals(100L, result.getId());
+        assertEquals(conversation.getId(), result.getConversationId());
+
+        verify(userRepository).findByEmail(sender.getEmail());
+        verify(userRepository).findById(receiver.getId());
+        verify(messageRepository).save(any(Message.class));
+        verify(conversationRepository).getReferenceById(conversation.getId());
+        // Unread counters are in Redis, the columns are not bumped on the send path
+        verify(conversationRepository).recordMessage(eq(conversation.getId()), eq("hello"), any(),
+                eq(sender.getId()), eq(0), eq(0));
+        verify(matchRepository).recordMessage(eq(sender.getId()), eq(receiver.getId()), eq("hello"), any(), eq(0));
+        verify(matchRepository).findMatchBetweenUserIds(sender.getId(), receiver.getId());
+        verify(profileRepository).findAllByUserIn(anyList());
+
+        verify(conversationRepository, never()).findConversationBetweenUserIds(anyLong(), anyLong());
+        verifyNoMoreInteractions(userRepository, messageRepository, conversationRepository, matchRepository,
+                profileRepository);
+        verify(realtimeDispatcher).send(eq("2"), eq("/queue/messages"), any(), eq("conversation:10"));
+        // With legacy rows off an existing conversation only gets compact deltas, no full rows
+        verify(realtimeDispatcher, never()).send(anyString(), eq("/queue/conversations"), any(),
+                anyString(), anyString());
+        verify(conversationDeltaAggregator).record(eq(sender.getId()), any());
+        verify(conversationDeltaAggregator).record(eq(receiver.getId()), any());
+        verify(inboxService).record(eq(sender.getId()), any(), eq(false));
+        verify(inboxService).record(eq(receiver.getId()), any(), eq(false));
+    }
+
+    @Test
+    void sendMessageBumpsColumnsWhenRedisIsUnavailable() {
+        conversationCache.put(conversation);
+        when(unreadCounterService.increment(receiver.getId(), conversation.getId())).thenReturn(null);
+        ConversationRepository.UnreadCounts counts = unreadCounts(0, 1);
+        when(conversationRepository.findUnreadCounts(conversation.getId())).thenReturn(Optional.of(counts));
+
+        messagingService.sendMessage(message("hello"));
+
+        verify(conversationRepository).recordMessage(eq(conversation.getId()), eq("hello"), any(),
+                eq(sender.getId()), eq(0), eq(1));
+        verify(matchRepository).recordMessage(eq(sender.getId()), eq(receiver.getId()), eq("hello"), any(), eq(1));
+        verify(conversationRepository).findUnreadCounts(conversation.getId());
+    }
+
+    @Test
+    void firstMessageLooksUpAndCreatesConversationOnce() {
+        when(conversationRepository.findConversationBetweenUserIds(sender.getId(), receiver.getId()))
+                .thenReturn(Optional.empty());
+        when(conversationRepository.save(any(Conversation.class))).thenReturn(conversation);
+
+        messagingService.sendMessage(message("first"));
+        messagingService.sendMessage(message("second"));
+
+        // The second send is served from the cache
+        verify(conversationRepository, times(1)).findConversationBetweenUserIds(sender.getId(), receiver.getId());
+        verify(conversationRepository, times(1)).save(any(Conversation.class));
+        verify(conversationRepository, times(2)).recordMessage(anyLong(), anyString(), any(), anyLong(),
+                anyInt(), anyInt());
+        // Only the creating send inserts into the inboxes unconditionally
+        verify(inboxService, times(2)).record(anyLong(), any(), eq(true));
+        verify(inboxService, times(2)).record(anyLong(), any(), eq(false));
+    }
+
+    @Test
+    void legacyRowsKeepFullFramesForExistingConversations() {
+        conversationCache.put(conversation);
+        messagingService = messagingService(true);
+
+        messagingService.sendMessage(message("hello"));
+
+        verify(conversationDeltaAggregator).record(eq(sender.getId()), any());
+        verify(realtimeDispatcher).send(eq("1"), eq("/queue/conversations"), any(), eq("conversation:10"),
+                eq("1:/queue/conversations:10"));
+        verify(realtimeDispatcher).send(eq("2"), eq("/queue/conversations"), any(), eq("conversation:10"),
+                eq("2:/queue/conversations:10"));
+    }
+
+    private MessagingServiceImpl messagingService(boolean legacyRows) {
+        return new MessagingServiceImpl(messageRepository, conversationRepository, userRepository,
+                matchRepository, eventPublisher, photoVisibilityService, profileRepository,
+                conversationCache, unreadCounterService, messageSearchService, messageArchiveService,
+                new ConversationFeedService(realtimeDispatcher, conversationDeltaAggregator, inboxService,
+                        chatActivityService, legacyRows));
+    }
+
+    private SendMessageDto message(String content) {
+        return SendMessageDto.builder()
+                .receiverId(receiver.getId())
+                .content(content)
+                .build();
+    }
+
+    private ConversationRepository.UnreadCounts unreadCounts(int user1, int user2) {
+        ConversationRepository.UnreadCounts counts = mock(ConversationRepository.UnreadCounts.class);
+        when(counts.getUnreadCountUser1()).thenReturn(user1);
+        when(counts.getUnreadCountUser2()).thenReturn(user2);
+        return counts;
+    }
+}
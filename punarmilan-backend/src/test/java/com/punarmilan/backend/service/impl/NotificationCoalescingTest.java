@@ -0,0 +1,161 @@
+package com.punarmilan.backend.service.impl;
+
+import com.punarmilan.backend.dto.NotificationDto;
+import com.punarmilan.backend.dto.NotificationSyncDto;
+import com.punarmilan.backend.entity.Notification;
+import com.punarmilan.backend.entity.Notification.NotificationType;
+import com.punarmilan.backend.entity.User;
+import com.punarmilan.backend.repository.ConversationRepository;
+import com.punarmilan.backend.repository.MessageRepository;
+import com.punarmilan.backend.repository.MessageSearchTermRepository;
+import com.punarmilan.backend.repository.NotificationPreferenceRepository;
+import com.punarmilan.backend.repository.NotificationRepository;
+import com.punarmilan.backend.repository.UserRepository;
+import com.punarmilan.backend.service.ConversationCache;
+import com.punarmilan.backend.service.MessageArchiveService;
+import com.punarmilan.backend.service.NotificationCounterService;
+import com.punarmilan.backend.service.NotificationCounterService.Counts;
+import com.punarmilan.backend.service.NotificationPreferenceCache;
+import com.punarmilan.backend.service.RetentionService;
+import com.punarmilan.backend.service.WebSocketNotificationService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * A repeated notification folds into the row it duplicates, without reading
+ * it first. Affected rows tell a bump from an insert; a bump drops the
+ * counters since the flags it cleared are unknown. A bump keeps its id, so
+ * sync pages by (createdAt, id) to still return it.
+ */
+class NotificationCoalescingTest {
+
+    private static final Long USER_ID = 3L;
+
+    private NotificationRepository notificationRepository;
+    private NotificationCounterService notificationCounterService;
+    private WebSocketNotificationService webSocketNotificationService;
+    private JdbcTemplate jdbcTemplate;
+    private NotificationServiceImpl notificationService;
+
+    @BeforeEach
+    void setUp() {
+        notificationRepository = mock(NotificationRepository.class);
+        notificationCounterService = mock(NotificationCounterService.class);
+        webSocketNotificationService = mock(WebSocketNotificationService.class);
+        jdbcTemplate = mock(JdbcTemplate.class);
+        UserRepository userRepository = mock(UserRepository.class);
+        notificationService = new NotificationServiceImpl(mock(ConversationRepository.class),
+                mock(ConversationCache.class), notificationRepository, userRepository,
+                mock(NotificationPreferenceRepository.class), mock(MessageRepository.class),
+                mock(MessageSearchTermRepository.class), mock(MessageArchiveService.class),
+                notificationCounterService, mock(RetentionService.class), webSocketNotificationService,
+                mock(NotificationPreferenceCache.class), jdbcTemplate, mock(ApplicationEventPublisher.class));
+
+        User user = new User();
+        user.setId(USER_ID);
+        user.setEmail("user3@example.com");
+        when(userRepository.findById(USER_ID)).thenReturn(Optional.of(user));
+        when(userRepository.findByEmail(user.getEmail())).thenReturn(Optional.of(user));
+        when(notificationCounterService.get(USER_ID)).thenReturn(new Counts(Map.of(), 0, 0));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void newRowCountsAsUnreadAndUnseen() {
+        upsertReturns(50L, 1);
+
+        create();
+
+        verify(notificationCounterService).added(USER_ID, NotificationType.PROFILE_VIEW, true, true);
+        ArgumentCaptor<NotificationDto> pushed = ArgumentCaptor.forClass(NotificationDto.class);
+        verify(webSocketNotificationService).created(eq(USER_ID), pushed.capture());
+        assertEquals(50L, pushed.getValue().getId());
+    }
+
+    @Test
+    void bumpDropsTheCountersInsteadOfGuessingTheClearedFlags() {
+        upsertReturns(40L, 2);
+
+        create();
+
+        verify(notificationCounterService).invalidate(USER_ID);
+        verify(notificationCounterService, never()).added(anyLong(), any(NotificationType.class), anyBoolean(),
+                anyBoolean());
+        verify(webSocketNotificationService, never()).created(anyLong(), any());
+        ArgumentCaptor<NotificationDto> pushed = ArgumentCaptor.forClass(NotificationDto.class);
+        verify(webSocketNotificationService).updated(eq(USER_ID), pushed.capture());
+        assertEquals(40L, pushed.getValue().getId());
+    }
+
+    @Test
+    void repeatIsWrittenWithoutReadingTheRowFirst() {
+        upsertReturns(40L, 2);
+
+        create();
+
+        verifyNoInteractions(notificationRepository);
+    }
+
+    @Test
+    void syncReturnsABumpedRowBehindTheCursorId() {
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken("user3@example.com", null, List.of()));
+        LocalDateTime since = LocalDateTime.of(2026, 10, 18, 9, 30);
+        LocalDateTime bumpedAt = since.plusMinutes(2);
+        // Row 40 is older than the last id the client saw, but was bumped after it
+        when(notificationRepository.findChangedSince(eq(USER_ID), eq(since), eq(45L), any(Pageable.class)))
+                .thenReturn(List.of(Notification.builder()
+                        .id(40L)
+                        .type(NotificationType.PROFILE_VIEW)
+                        .title("Profile viewed")
+                        .createdAt(bumpedAt)
+                        .build()));
+
+        NotificationSyncDto sync = notificationService.sync(since, 45L, 20);
+
+        assertEquals(List.of(40L), sync.getNotifications().stream().map(NotificationDto::getId).toList());
+        assertEquals(bumpedAt, sync.getLastCreatedAt());
+        assertEquals(40L, sync.getLastId());
+    }
+
+    private void create() {
+        notificationService.createNotification(USER_ID, "profile_view", "Profile viewed",
+                "Someone viewed your profile", 9L, "PROFILE");
+    }
+
+    private void upsertReturns(Long id, int affected) {
+        when(jdbcTemplate.update(any(PreparedStatementCreator.class), any(KeyHolder.class))).thenAnswer(invocation -> {
+            invocation.<KeyHolder>getArgument(1).getKeyList().add(Map.of("GENERATED_KEY", id));
+            return affected;
+        });
+    }
+}